@@ -0,0 +1,139 @@
+/*
+ * Copyright 2019 Azul Systems, Inc.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.openjsse.benchmarks;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLException;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import org.openjsse.javax.net.ssl.SSLParameters;
+
+/*
+ * Bulk transfer through SSLEngine.wrap() and unwrap() with and without
+ * multi-record batching, see SSLParameters.setEnableRecordBatching().
+ *
+ * Without batching, one call is needed per record of the payload.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BatchBenchmark {
+
+    @Param({"TLS_AES_128_GCM_SHA256",
+            "TLS_ECDHE_RSA_WITH_AES_128_GCM_SHA256"})
+    String cipherSuite;
+
+    @Param({"65536", "262144"})
+    int payloadSize;
+
+    @Param({"false", "true"})
+    boolean batching;
+
+    private BenchmarkSupport.EnginePair pair;
+    private ByteBuffer plaintext;
+    private ByteBuffer records;
+    private ByteBuffer received;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        SSLContext context =
+                BenchmarkSupport.createContext(BenchmarkSupport.OPENJSSE);
+        pair = new BenchmarkSupport.EnginePair(context, context,
+                BenchmarkSupport.protocolOf(cipherSuite), cipherSuite, null);
+        pair.handshake();
+
+        for (SSLEngine engine : new SSLEngine[] {pair.client, pair.server}) {
+            SSLParameters params = (SSLParameters)engine.getSSLParameters();
+            params.setEnableRecordBatching(batching);
+            engine.setSSLParameters(params);
+        }
+
+        int packetSize = pair.client.getSession().getPacketBufferSize();
+        // Leave room for one more record, the fragments may be less than
+        // the maximum plaintext size.
+        int records = (payloadSize + 16383) / 16384 + 1;
+        plaintext = ByteBuffer.allocate(payloadSize);
+        this.records = ByteBuffer.allocate(records * packetSize);
+        received = ByteBuffer.allocate(payloadSize + packetSize);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SSLException {
+        pair.close();
+    }
+
+    /*
+     * Encrypt the payload, and decrypt it at the peer.  Return the
+     * number of wrap() and unwrap() calls needed.
+     */
+    @Benchmark
+    public int transfer() throws SSLException {
+        int calls = 0;
+
+        plaintext.clear();
+        records.clear();
+        while (plaintext.hasRemaining()) {
+            SSLEngineResult result = pair.client.wrap(plaintext, records);
+            if (result.getStatus() != SSLEngineResult.Status.OK) {
+                throw new IllegalStateException("wrap: " + result);
+            }
+            calls++;
+        }
+
+        records.flip();
+        received.clear();
+        while (records.hasRemaining()) {
+            SSLEngineResult result = pair.server.unwrap(records, received);
+            if (result.getStatus() != SSLEngineResult.Status.OK) {
+                throw new IllegalStateException("unwrap: " + result);
+            }
+            calls++;
+        }
+
+        return calls;
+    }
+}
@@ -0,0 +1,245 @@
+/*
+ * Copyright 2019 Azul Systems, Inc.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.openjsse.benchmarks;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.security.Security;
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLEngineResult.HandshakeStatus;
+import javax.net.ssl.SSLException;
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.TrustManagerFactory;
+
+import org.openjsse.net.ssl.OpenJSSE;
+
+/*
+ * Shared set up of the benchmarks: the SSLContext of the provider under
+ * test, and an in-memory SSLEngine client/server pair.
+ *
+ * The same keystore, with an RSA and an EC key entry, is used as both the
+ * key store and the trust store, so that OpenJSSE and SunJSSE can be
+ * compared on the same JVM with the same credentials.
+ */
+final class BenchmarkSupport {
+    static final String OPENJSSE = "OpenJSSE";
+    static final String SUNJSSE = "SunJSSE";
+
+    private static final String KEYSTORE = "/benchmark.jks";
+    private static final char[] PASSPHRASE = "passphrase".toCharArray();
+
+    // Prevent instantiation of this class.
+    private BenchmarkSupport() {
+        // blank
+    }
+
+    /*
+     * Create an SSLContext of the specified JSSE provider, either
+     * "OpenJSSE" or "SunJSSE".
+     */
+    static SSLContext createContext(String provider)
+            throws GeneralSecurityException, IOException {
+        if (OPENJSSE.equals(provider) &&
+                Security.getProvider(OPENJSSE) == null) {
+            Security.addProvider(new OpenJSSE());
+        }
+
+        KeyStore ks = KeyStore.getInstance("JKS");
+        try (InputStream is =
+                BenchmarkSupport.class.getResourceAsStream(KEYSTORE)) {
+            ks.load(is, PASSPHRASE);
+        }
+
+        KeyManagerFactory kmf =
+                KeyManagerFactory.getInstance("NewSunX509", provider);
+        kmf.init(ks, PASSPHRASE);
+        TrustManagerFactory tmf =
+                TrustManagerFactory.getInstance("PKIX", provider);
+        tmf.init(ks);
+
+        SSLContext context = SSLContext.getInstance("TLS", provider);
+        context.init(kmf.getKeyManagers(), tmf.getTrustManagers(), null);
+
+        return context;
+    }
+
+    /*
+     * Return the protocol version of the specified cipher suite.
+     */
+    static String protocolOf(String cipherSuite) {
+        // TLS 1.3 cipher suites do not name the key exchange.
+        return cipherSuite.contains("_WITH_") ? "TLSv1.2" : "TLSv1.3";
+    }
+
+    /*
+     * An in-memory client/server SSLEngine pair, connected by two network
+     * buffers.
+     */
+    static final class EnginePair {
+        final SSLEngine client;
+        final SSLEngine server;
+
+        final ByteBuffer clientOut;     // client application data to send
+        final ByteBuffer serverOut;     // server application data to send
+        final ByteBuffer clientIn;      // client received application data
+        final ByteBuffer serverIn;      // server received application data
+
+        final ByteBuffer cTOs;          // client -> server network data
+        final ByteBuffer sTOc;          // server -> client network data
+
+        /*
+         * Create a new engine pair.  If the peer host is not null, the
+         * client engine uses it to look up a session to resume.
+         */
+        EnginePair(SSLContext clientContext, SSLContext serverContext,
+                String protocol, String cipherSuite, String peerHost) {
+            if (peerHost != null) {
+                client = clientContext.createSSLEngine(peerHost, 443);
+            } else {
+                client = clientContext.createSSLEngine();
+            }
+            client.setUseClientMode(true);
+            server = serverContext.createSSLEngine();
+            server.setUseClientMode(false);
+
+            if (protocol != null) {
+                client.setEnabledProtocols(new String[] {protocol});
+                server.setEnabledProtocols(new String[] {protocol});
+            }
+            if (cipherSuite != null) {
+                client.setEnabledCipherSuites(new String[] {cipherSuite});
+            }
+
+            SSLSession session = client.getSession();
+            int appSize = session.getApplicationBufferSize();
+            int netSize = session.getPacketBufferSize();
+
+            clientOut = ByteBuffer.allocate(appSize);
+            serverOut = ByteBuffer.allocate(appSize);
+            clientIn = ByteBuffer.allocate(appSize + 64);
+            serverIn = ByteBuffer.allocate(appSize + 64);
+
+            cTOs = ByteBuffer.allocate(netSize);
+            sTOc = ByteBuffer.allocate(netSize);
+        }
+
+        /*
+         * Run the handshake of the engine pair to completion, including
+         * the TLS 1.3 post-handshake NewSessionTicket messages.
+         */
+        void handshake() throws SSLException {
+            client.beginHandshake();
+            server.beginHandshake();
+
+            clientOut.flip();
+            serverOut.flip();
+            while (!isDone(client) || !isDone(server)) {
+                transfer(client, clientOut, cTOs);
+                transfer(server, serverOut, sTOc);
+
+                receive(server, cTOs, serverIn);
+                receive(client, sTOc, clientIn);
+            }
+
+            // Deliver the post-handshake messages, if any.
+            transfer(server, serverOut, sTOc);
+            receive(client, sTOc, clientIn);
+
+            clientOut.clear();
+            serverOut.clear();
+            clientIn.clear();
+            serverIn.clear();
+        }
+
+        /*
+         * Close both engines of the pair.
+         */
+        void close() throws SSLException {
+            client.closeOutbound();
+            server.closeOutbound();
+            cTOs.clear();
+            sTOc.clear();
+            while (!client.isOutboundDone()) {
+                client.wrap(clientOut, cTOs);
+                cTOs.clear();
+            }
+            while (!server.isOutboundDone()) {
+                server.wrap(serverOut, sTOc);
+                sTOc.clear();
+            }
+        }
+
+        private static boolean isDone(SSLEngine engine) {
+            HandshakeStatus hs = engine.getHandshakeStatus();
+            return hs == HandshakeStatus.FINISHED ||
+                    hs == HandshakeStatus.NOT_HANDSHAKING;
+        }
+
+        private static void transfer(SSLEngine engine,
+                ByteBuffer source, ByteBuffer network) throws SSLException {
+            SSLEngineResult result;
+            do {
+                result = engine.wrap(source, network);
+                runDelegatedTasks(engine, result);
+            } while (result.getStatus() == SSLEngineResult.Status.OK &&
+                    result.bytesProduced() > 0 &&
+                    engine.getHandshakeStatus() ==
+                            HandshakeStatus.NEED_WRAP);
+            network.flip();
+        }
+
+        private static void receive(SSLEngine engine,
+                ByteBuffer network, ByteBuffer sink) throws SSLException {
+            while (network.hasRemaining()) {
+                SSLEngineResult result = engine.unwrap(network, sink);
+                runDelegatedTasks(engine, result);
+                if (result.getStatus() != SSLEngineResult.Status.OK ||
+                        result.bytesConsumed() == 0) {
+                    break;
+                }
+            }
+            network.compact();
+            sink.clear();
+        }
+
+        private static void runDelegatedTasks(SSLEngine engine,
+                SSLEngineResult result) {
+            if (result.getHandshakeStatus() == HandshakeStatus.NEED_TASK) {
+                Runnable runnable;
+                while ((runnable = engine.getDelegatedTask()) != null) {
+                    runnable.run();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright 2019 Azul Systems, Inc.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.openjsse.benchmarks;
+
+import java.security.SecureRandom;
+import java.security.Security;
+import java.util.concurrent.TimeUnit;
+import javax.crypto.Cipher;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import org.openjsse.net.ssl.OpenJSSE;
+
+/*
+ * ChaCha20-Poly1305 record encryption of the OpenJSSE provider, with the
+ * direct whole-block XOR and limb based Poly1305 engine, and with the
+ * legacy engine selected by the "org.openjsse.crypto.chacha20.legacy"
+ * system property in a separate fork.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class ChaCha20Poly1305Benchmark {
+
+    @Param({"64", "1024", "16384"})
+    int dataSize;
+
+    private Cipher cipher;
+    private SecretKeySpec key;
+    private byte[] nonce;
+    private byte[] aad;
+    private byte[] data;
+    private byte[] out;
+    private long sequence;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        if (Security.getProvider(BenchmarkSupport.OPENJSSE) == null) {
+            Security.addProvider(new OpenJSSE());
+        }
+        cipher = Cipher.getInstance(
+                "ChaCha20-Poly1305", BenchmarkSupport.OPENJSSE);
+
+        SecureRandom random = new SecureRandom();
+        byte[] keyBytes = new byte[32];
+        random.nextBytes(keyBytes);
+        key = new SecretKeySpec(keyBytes, "ChaCha20");
+        nonce = new byte[12];
+        aad = new byte[5];
+        data = new byte[dataSize];
+        random.nextBytes(data);
+        out = new byte[dataSize + 16];
+    }
+
+    @Benchmark
+    @Fork(1)
+    public int encrypt() throws Exception {
+        return encryptRecord();
+    }
+
+    @Benchmark
+    @Fork(value = 1,
+            jvmArgsAppend = "-Dorg.openjsse.crypto.chacha20.legacy=true")
+    public int encryptLegacy() throws Exception {
+        return encryptRecord();
+    }
+
+    /*
+     * Encrypt one record, with a new nonce as TLS does for every record.
+     */
+    private int encryptRecord() throws Exception {
+        long sn = ++sequence;
+        for (int i = 0; i < 8; i++) {
+            nonce[11 - i] = (byte)(sn >>> (i * 8));
+        }
+        cipher.init(Cipher.ENCRYPT_MODE, key, new IvParameterSpec(nonce));
+        cipher.updateAAD(aad);
+        return cipher.doFinal(data, 0, data.length, out, 0);
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright 2019 Azul Systems, Inc.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.openjsse.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import javax.net.ssl.SSLContext;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/*
+ * Full and resumed handshakes per second, over an in-memory SSLEngine
+ * pair, for TLS 1.2 and TLS 1.3.
+ *
+ * The resumed handshakes reuse the session established in the set up:
+ * the client engines are created with the same peer host and port, so
+ * that the client session cache offers the session again.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HandshakeBenchmark {
+
+    @Param({BenchmarkSupport.OPENJSSE, BenchmarkSupport.SUNJSSE})
+    String provider;
+
+    @Param({"TLSv1.3", "TLSv1.2"})
+    String protocol;
+
+    private SSLContext clientContext;
+    private SSLContext serverContext;
+    private String cipherSuite;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        clientContext = BenchmarkSupport.createContext(provider);
+        serverContext = BenchmarkSupport.createContext(provider);
+
+        if ("TLSv1.3".equals(protocol)) {
+            cipherSuite = "TLS_AES_128_GCM_SHA256";
+        } else {
+            cipherSuite = "TLS_ECDHE_RSA_WITH_AES_128_GCM_SHA256";
+        }
+
+        // Establish the session to resume.
+        handshake("localhost");
+    }
+
+    @Benchmark
+    public BenchmarkSupport.EnginePair fullHandshake() throws Exception {
+        return handshake(null);
+    }
+
+    @Benchmark
+    public BenchmarkSupport.EnginePair resumedHandshake() throws Exception {
+        return handshake("localhost");
+    }
+
+    private BenchmarkSupport.EnginePair handshake(
+            String peerHost) throws Exception {
+        BenchmarkSupport.EnginePair pair = new BenchmarkSupport.EnginePair(
+                clientContext, serverContext, protocol, cipherSuite, peerHost);
+        pair.handshake();
+        pair.close();
+
+        return pair;
+    }
+}
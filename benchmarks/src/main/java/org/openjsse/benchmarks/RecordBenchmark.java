@@ -0,0 +1,123 @@
+/*
+ * Copyright 2019 Azul Systems, Inc.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.openjsse.benchmarks;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLException;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/*
+ * Record layer throughput of SSLEngine.wrap() and unwrap(), per cipher
+ * suite and application record size, over an established in-memory
+ * connection.
+ *
+ * Run with "-prof gc" to report the allocation rate per record.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RecordBenchmark {
+
+    @Param({BenchmarkSupport.OPENJSSE, BenchmarkSupport.SUNJSSE})
+    String provider;
+
+    @Param({"TLS_AES_128_GCM_SHA256",
+            "TLS_AES_256_GCM_SHA384",
+            "TLS_ECDHE_RSA_WITH_AES_128_GCM_SHA256",
+            "TLS_ECDHE_RSA_WITH_AES_128_CBC_SHA256"})
+    String cipherSuite;
+
+    @Param({"64", "1024", "16384"})
+    int recordSize;
+
+    private BenchmarkSupport.EnginePair pair;
+    private ByteBuffer plaintext;
+    private ByteBuffer record;      // one wrapped record, for unwrap()
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        SSLContext context = BenchmarkSupport.createContext(provider);
+        pair = new BenchmarkSupport.EnginePair(context, context,
+                BenchmarkSupport.protocolOf(cipherSuite), cipherSuite, null);
+        pair.handshake();
+
+        plaintext = ByteBuffer.allocate(recordSize);
+        record = ByteBuffer.allocate(pair.cTOs.capacity());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SSLException {
+        pair.close();
+    }
+
+    /*
+     * Encrypt one application data record.
+     */
+    @Benchmark
+    public SSLEngineResult wrap() throws SSLException {
+        plaintext.clear();
+        pair.cTOs.clear();
+        return pair.client.wrap(plaintext, pair.cTOs);
+    }
+
+    /*
+     * Encrypt one application data record, and decrypt it at the peer.
+     *
+     * The sequence numbers of a connection must advance in step, so the
+     * decryption cost is measured together with the encryption, and is
+     * the difference to the wrap() score.
+     */
+    @Benchmark
+    public SSLEngineResult wrapUnwrap() throws SSLException {
+        plaintext.clear();
+        record.clear();
+        pair.client.wrap(plaintext, record);
+        record.flip();
+
+        pair.serverIn.clear();
+        return pair.server.unwrap(record, pair.serverIn);
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright 2019 Azul Systems, Inc.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.openjsse.benchmarks;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.util.concurrent.TimeUnit;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLServerSocket;
+import javax.net.ssl.SSLSocket;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/*
+ * SSLSocket throughput over a loopback connection: the client writes a
+ * message and reads it back from an echo server thread.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SocketBenchmark {
+
+    @Param({BenchmarkSupport.OPENJSSE, BenchmarkSupport.SUNJSSE})
+    String provider;
+
+    @Param({"TLS_AES_128_GCM_SHA256",
+            "TLS_ECDHE_RSA_WITH_AES_128_GCM_SHA256"})
+    String cipherSuite;
+
+    @Param({"1024", "16384", "65536"})
+    int messageSize;
+
+    private SSLServerSocket serverSocket;
+    private SSLSocket socket;
+    private Thread echoThread;
+    private byte[] message;
+    private OutputStream out;
+    private InputStream in;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        SSLContext context = BenchmarkSupport.createContext(provider);
+        String protocol = BenchmarkSupport.protocolOf(cipherSuite);
+
+        serverSocket = (SSLServerSocket)context.getServerSocketFactory()
+                .createServerSocket(0, 1, InetAddress.getLoopbackAddress());
+        serverSocket.setEnabledProtocols(new String[] {protocol});
+        echoThread = new Thread(this::serve, "SocketBenchmark-echo");
+        echoThread.setDaemon(true);
+        echoThread.start();
+
+        socket = (SSLSocket)context.getSocketFactory().createSocket(
+                InetAddress.getLoopbackAddress(), serverSocket.getLocalPort());
+        socket.setEnabledProtocols(new String[] {protocol});
+        socket.setEnabledCipherSuites(new String[] {cipherSuite});
+        socket.setTcpNoDelay(true);
+        socket.startHandshake();
+
+        message = new byte[messageSize];
+        out = socket.getOutputStream();
+        in = socket.getInputStream();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        socket.close();
+        serverSocket.close();
+        echoThread.join(TimeUnit.SECONDS.toMillis(10));
+    }
+
+    @Benchmark
+    public int echo() throws IOException {
+        out.write(message);
+        out.flush();
+
+        int received = 0;
+        while (received < message.length) {
+            int n = in.read(message, received, message.length - received);
+            if (n < 0) {
+                throw new IOException("Unexpected end of stream");
+            }
+            received += n;
+        }
+
+        return received;
+    }
+
+    private void serve() {
+        try (SSLSocket peer = (SSLSocket)serverSocket.accept()) {
+            peer.setTcpNoDelay(true);
+            InputStream peerIn = peer.getInputStream();
+            OutputStream peerOut = peer.getOutputStream();
+            byte[] buffer = new byte[16384];
+            int n;
+            while ((n = peerIn.read(buffer)) > 0) {
+                peerOut.write(buffer, 0, n);
+                peerOut.flush();
+            }
+        } catch (IOException ioe) {
+            // the connection is closed by the benchmark tear down
+        }
+    }
+}
@@ -62,6 +62,7 @@ import org.openjsse.javax.crypto.spec.ChaCha20ParameterSpec;
 import javax.crypto.spec.IvParameterSpec;
 import javax.crypto.spec.SecretKeySpec;
 import javax.crypto.*;
+import sun.security.action.GetBooleanAction;
 import sun.security.util.DerValue;
 
 /**
@@ -85,6 +86,11 @@ abstract class ChaCha20Cipher extends CipherSpi {
     private static final int KS_SIZE_INTS = KEYSTREAM_SIZE / Integer.BYTES;
     private static final int CIPHERBUF_BASE = 1024;
 
+    // Use the original engine: every block goes through the keystream
+    // buffer, and the IntegerModuloP based Poly1305.
+    static final boolean useLegacyEngine = AccessController.doPrivileged(
+            new GetBooleanAction("org.openjsse.crypto.chacha20.legacy"));
+
     // The initialization state of the cipher
     private boolean initialized;
 
@@ -114,9 +120,12 @@ abstract class ChaCha20Cipher extends CipherSpi {
     // with the counter and the ChaCha20 block function.
     private final int[] startState = new int[KS_SIZE_INTS];
     private final byte[] keyStream = new byte[KEYSTREAM_SIZE];
+    private final ByteBuffer keyStreamBuf =
+            ByteBuffer.wrap(keyStream).order(ByteOrder.LITTLE_ENDIAN);
 
-    // The offset into the current keystream
+    // The offset into, and the length of, the current keystream
     private int keyStrOffset;
+    private int keyStrLimit;
 
     // AEAD-related fields and constants
     private static final int TAG_LENGTH = 16;
@@ -572,12 +581,12 @@ abstract class ChaCha20Cipher extends CipherSpi {
             }
         }
 
-        // We can also get one block's worth of keystream created
+        // The keystream is generated on demand, in chaCha20Transform().
         finalCounterValue = counter + MAX_UINT32;
-        generateKeystream();
         direction = opmode;
         aadDone = false;
         this.keyStrOffset = 0;
+        this.keyStrLimit = 0;
         initialized = true;
     }
 
@@ -845,24 +854,35 @@ abstract class ChaCha20Cipher extends CipherSpi {
      * block function the counter will be incremented.
      */
     private void generateKeystream() {
-        chaCha20Block(startState, counter, keyStream);
+        chaCha20Block(startState, counter, null, 0, keyStreamBuf, 0);
         counter++;
+        keyStrOffset = 0;
+        keyStrLimit = KEYSTREAM_SIZE;
     }
 
     /**
      * Perform a full 20-round ChaCha20 transform on the initial state.
      *
+     * If {@code in} is null the keystream block is written to the result,
+     * otherwise the result is the 64 bytes of input XORed with the
+     * keystream block, word by word.  Each input word is read before the
+     * corresponding result word is written, so the input and the result
+     * may be the same array at the same offset.
+     *
      * @param initState the starting state, not including the counter
      *      value.
      * @param counter the counter value to apply
-     * @param result  the array that will hold the result of the ChaCha20
-     *      block function.
+     * @param in the little endian input buffer, or null
+     * @param inOff the offset into the input buffer.
+     * @param result the little endian buffer that will hold the result of
+     *      the ChaCha20 block function.
+     * @param resOff the offset into the result buffer.
      *
      * @note it is the caller's responsibility to ensure that the workState
      * is sized the same as the initState, no checking is performed internally.
      */
     private static void chaCha20Block(int[] initState, long counter,
-                                      byte[] result) {
+            ByteBuffer in, int inOff, ByteBuffer result, int resOff) {
         // Create an initial state and clone a working copy
         int ws00 = STATE_CONST_0;
         int ws01 = STATE_CONST_1;
@@ -980,30 +1000,39 @@ abstract class ChaCha20Cipher extends CipherSpi {
             ws04 = Integer.rotateLeft(ws04 ^ ws09, 7);
         }
 
-        //JDK8
         // Add the end working state back into the original state
-        ByteBuffer bb = ByteBuffer.allocate(16 * (Integer.SIZE / Byte.SIZE));
-        bb.order(ByteOrder.LITTLE_ENDIAN);
-        bb.putInt(ws00 + STATE_CONST_0);
-        bb.putInt(ws01 + STATE_CONST_1);
-        bb.putInt(ws02 + STATE_CONST_2);
-        bb.putInt(ws03 + STATE_CONST_3);
-        bb.putInt(ws04 + initState[4]);
-        bb.putInt(ws05 + initState[5]);
-        bb.putInt(ws06 + initState[6]);
-        bb.putInt(ws07 + initState[7]);
-        bb.putInt(ws08 + initState[8]);
-        bb.putInt(ws09 + initState[9]);
-        bb.putInt(ws10 + initState[10]);
-        bb.putInt(ws11 + initState[11]);
+        putInt(ws00 + STATE_CONST_0, in, inOff, result, resOff);
+        putInt(ws01 + STATE_CONST_1, in, inOff + 4, result, resOff + 4);
+        putInt(ws02 + STATE_CONST_2, in, inOff + 8, result, resOff + 8);
+        putInt(ws03 + STATE_CONST_3, in, inOff + 12, result, resOff + 12);
+        putInt(ws04 + initState[4], in, inOff + 16, result, resOff + 16);
+        putInt(ws05 + initState[5], in, inOff + 20, result, resOff + 20);
+        putInt(ws06 + initState[6], in, inOff + 24, result, resOff + 24);
+        putInt(ws07 + initState[7], in, inOff + 28, result, resOff + 28);
+        putInt(ws08 + initState[8], in, inOff + 32, result, resOff + 32);
+        putInt(ws09 + initState[9], in, inOff + 36, result, resOff + 36);
+        putInt(ws10 + initState[10], in, inOff + 40, result, resOff + 40);
+        putInt(ws11 + initState[11], in, inOff + 44, result, resOff + 44);
         // Add the counter back into workState[12]
-        bb.putInt(ws12 + (int)counter);
-        bb.putInt(ws13 + initState[13]);
-        bb.putInt(ws14 + initState[14]);
-        bb.putInt(ws15 + initState[15]);
+        putInt(ws12 + (int)counter, in, inOff + 48, result, resOff + 48);
+        putInt(ws13 + initState[13], in, inOff + 52, result, resOff + 52);
+        putInt(ws14 + initState[14], in, inOff + 56, result, resOff + 56);
+        putInt(ws15 + initState[15], in, inOff + 60, result, resOff + 60);
+    }
 
-        bb.rewind();
-        bb.get(result);
+    private static void putInt(int keyStreamWord,
+            ByteBuffer in, int inOff, ByteBuffer result, int resOff) {
+        if (in != null) {
+            keyStreamWord ^= in.getInt(inOff);
+        }
+        result.putInt(resOff, keyStreamWord);
+    }
+
+    private static void putIntLE(int value, byte[] buf, int offset) {
+        buf[offset] = (byte)value;
+        buf[offset + 1] = (byte)(value >>> 8);
+        buf[offset + 2] = (byte)(value >>> 16);
+        buf[offset + 3] = (byte)(value >>> 24);
     }
 
     /**
@@ -1021,13 +1050,43 @@ abstract class ChaCha20Cipher extends CipherSpi {
             byte[] out, int outOff) throws KeyException {
         int remainingData = inLen;
 
+        // Once the buffered keystream is used up, the whole blocks are
+        // XORed with the block function output directly.
+        if (!useLegacyEngine && remainingData - (keyStrLimit - keyStrOffset)
+                >= KEYSTREAM_SIZE) {
+            int ksRemain = keyStrLimit - keyStrOffset;
+            if (ksRemain > 0) {
+                xor(keyStream, keyStrOffset, in, inOff, out, outOff, ksRemain);
+                keyStrOffset = keyStrLimit;
+                inOff += ksRemain;
+                outOff += ksRemain;
+                remainingData -= ksRemain;
+            }
+
+            ByteBuffer inBuf = ByteBuffer.wrap(in).order(
+                    ByteOrder.LITTLE_ENDIAN);
+            ByteBuffer outBuf = (out == in) ? inBuf :
+                    ByteBuffer.wrap(out).order(ByteOrder.LITTLE_ENDIAN);
+            while (remainingData >= KEYSTREAM_SIZE) {
+                if (counter > finalCounterValue) {
+                    throw new KeyException("Counter exhausted.  " +
+                            "Reinitialize with new key and/or nonce");
+                }
+                chaCha20Block(startState, counter,
+                        inBuf, inOff, outBuf, outOff);
+                counter++;
+                inOff += KEYSTREAM_SIZE;
+                outOff += KEYSTREAM_SIZE;
+                remainingData -= KEYSTREAM_SIZE;
+            }
+        }
+
         while (remainingData > 0) {
-            int ksRemain = keyStream.length - keyStrOffset;
+            int ksRemain = keyStrLimit - keyStrOffset;
             if (ksRemain <= 0) {
                 if (counter <= finalCounterValue) {
                     generateKeystream();
-                    keyStrOffset = 0;
-                    ksRemain = keyStream.length;
+                    ksRemain = keyStrLimit;
                 } else {
                     throw new KeyException("Counter exhausted.  " +
                             "Reinitialize with new key and/or nonce");
@@ -1046,29 +1105,8 @@ abstract class ChaCha20Cipher extends CipherSpi {
 
     private static void xor(byte[] in1, int off1, byte[] in2, int off2,
             byte[] out, int outOff, int len) {
-        //JDK8
-        ByteBuffer bb = ByteBuffer.allocate(2 * Long.BYTES);
-        bb.order(ByteOrder.nativeOrder());
-        while (len >= 8) {
-            bb.rewind();
-            bb.put(in1, off1, Long.BYTES);
-            bb.put(in2, off2, Long.BYTES);
-            long v1 = bb.getLong(0);
-            long v2 = bb.getLong(Long.BYTES);
-            bb.putLong(0, v1 ^ v2);
-            bb.rewind();
-            bb.get(out, outOff, Long.BYTES);
-            off1 += 8;
-            off2 += 8;
-            outOff += 8;
-            len -= 8;
-        }
-        while (len > 0) {
-            out[outOff] = (byte) (in1[off1] ^ in2[off2]);
-            off1++;
-            off2++;
-            outOff++;
-            len--;
+        for (int i = 0; i < len; i++) {
+            out[outOff + i] = (byte)(in1[off1 + i] ^ in2[off2 + i]);
         }
     }
 
@@ -1079,11 +1117,13 @@ abstract class ChaCha20Cipher extends CipherSpi {
      *      (invalid length, etc.)
      */
     private void initAuthenticator() throws InvalidKeyException {
-        authenticator = new Poly1305();
+        authenticator = new Poly1305(useLegacyEngine);
 
         // Derive the Poly1305 key from the starting state
         byte[] serializedKey = new byte[KEYSTREAM_SIZE];
-        chaCha20Block(startState, 0, serializedKey);
+        chaCha20Block(startState, 0, null, 0,
+                ByteBuffer.wrap(serializedKey).order(ByteOrder.LITTLE_ENDIAN),
+                0);
 
         authenticator.engineInit(new SecretKeySpec(serializedKey, 0, 32,
                 authAlgName), null);
@@ -1164,12 +1204,10 @@ abstract class ChaCha20Cipher extends CipherSpi {
      */
     private void authWriteLengths(long aLen, long dLen, byte[] buf) {
         //JDK8
-        ByteBuffer bb = ByteBuffer.allocate(2 * Long.BYTES);
-        bb.order(ByteOrder.LITTLE_ENDIAN);
-        bb.putLong(aLen);
-        bb.putLong(dLen);
-        bb.rewind();
-        bb.get(buf, 0, 2 * Long.BYTES);
+        putIntLE((int)aLen, buf, 0);
+        putIntLE((int)(aLen >>> 32), buf, 4);
+        putIntLE((int)dLen, buf, 8);
+        putIntLE((int)(dLen >>> 32), buf, 12);
     }
 
     private int checkFromIndexSize(int fromIndex, int size, int length) throws IndexOutOfBoundsException {
@@ -1423,12 +1461,10 @@ abstract class ChaCha20Cipher extends CipherSpi {
             // if and only if the tag matches.
             authFinalizeData(ctPlusTag, 0, ctLen, tag, 0);
             //JDK8
-            ByteBuffer bb = ByteBuffer.allocate(4 * Long.BYTES);
-            bb.order(ByteOrder.nativeOrder());
-            bb.put(ctPlusTag, ctLen, 2 *Long.BYTES);
-            bb.put(tag, 0, 2 *Long.BYTES);
-            long tagCompare = (bb.getLong(0) ^ bb.getLong(2 * Long.BYTES)) |
-                    (bb.getLong(Long.BYTES) ^ bb.getLong(3 * Long.BYTES));
+            int tagCompare = 0;
+            for (int i = 0; i < TAG_LENGTH; i++) {
+                tagCompare |= ctPlusTag[ctLen + i] ^ tag[i];
+            }
 
             if (tagCompare != 0) {
                 throw new AEADBadTagException("Tag mismatch");
@@ -40,6 +40,9 @@ import sun.security.util.math.intpoly.*;
  *
  * This function is used in the implementation of ChaCha20/Poly1305
  * AEAD mode.
+ *
+ * The accumulator is computed with five 26-bit limbs held in primitive
+ * longs, unless the IntegerModuloP based arithmetic is requested.
  */
 final class Poly1305 {
 
@@ -51,16 +54,44 @@ final class Poly1305 {
     private static final IntegerFieldModuloP ipl1305 =
             new IntegerPolynomial1305();
 
+    private static final long LIMB_MASK = 0x3ffffffL;   // 26 bits
+    private static final long INT_MASK = 0xffffffffL;
+
+    private final boolean useIntegerModuloP;
+
     private byte[] keyBytes;
     private final byte[] block = new byte[BLOCK_LENGTH];
     private int blockOffset;
 
+    // The IntegerModuloP based arithmetic
     private IntegerModuloP r;
     private IntegerModuloP s;
     private MutableIntegerModuloP a;
-    private final MutableIntegerModuloP n = ipl1305.get1().mutable();
+    private MutableIntegerModuloP n;
+
+    // The limb based arithmetic: the clamped r, r * 5 for the reduction
+    // of the limbs above 2^130, the s half of the key, and the accumulator
+    private long r0, r1, r2, r3, r4;
+    private long s1, s2, s3, s4;
+    private long pad0, pad1, pad2, pad3;
+    private long h0, h1, h2, h3, h4;
+
+    Poly1305() {
+        this(false);
+    }
 
-    Poly1305() { }
+    /**
+     * Create a Poly1305 object.
+     *
+     * @param useIntegerModuloP whether to use the IntegerModuloP based
+     *      arithmetic rather than the limb based one.
+     */
+    Poly1305(boolean useIntegerModuloP) {
+        this.useIntegerModuloP = useIntegerModuloP;
+        if (useIntegerModuloP) {
+            n = ipl1305.get1().mutable();
+        }
+    }
 
     /**
      * Initialize the Poly1305 object
@@ -104,7 +135,11 @@ final class Poly1305 {
         Arrays.fill(block, (byte)0);
         blockOffset = 0;
         // Discard any previous accumulator and start at zero
-        a = ipl1305.get0().mutable();
+        if (useIntegerModuloP) {
+            a = ipl1305.get0().mutable();
+        } else {
+            h0 = h1 = h2 = h3 = h4 = 0;
+        }
     }
 
     /**
@@ -210,7 +245,11 @@ final class Poly1305 {
         }
 
         // Add in the s-half of the key to the accumulator
-        a.addModPowerTwo(s, tag);
+        if (useIntegerModuloP) {
+            a.addModPowerTwo(s, tag);
+        } else {
+            finish(tag);
+        }
 
         // Reset for the next auth
         engineReset();
@@ -223,6 +262,13 @@ final class Poly1305 {
      * be a full 16 bytes if the last block has less than 16 bytes.
      */
     private void processBlock(ByteBuffer buf, int len) {
+        if (!useIntegerModuloP) {
+            // Only full blocks are processed from a buffer.
+            buf.get(block, 0, len);
+            processBlock(block, 0, len);
+            return;
+        }
+
         n.setValue(buf, len, (byte)0x01);
         a.setSum(n);                    // a += (n | 0x01)
         a.setProduct(r);                // a = (a * r) % p
@@ -230,11 +276,145 @@ final class Poly1305 {
 
     private void processBlock(byte[] block, int offset, int length) {
         checkFromIndexSize(offset, length, block.length);
+        if (!useIntegerModuloP) {
+            processLimbs(block, offset, length);
+            return;
+        }
+
         n.setValue(block, offset, length, (byte)0x01);
         a.setSum(n);                    // a += (n | 0x01)
         a.setProduct(r);                // a = (a * r) % p
     }
 
+    /*
+     * Process a block with the limb based arithmetic:
+     *     h = ((h + (n | 0x01)) * r) % (2^130 - 5)
+     */
+    private void processLimbs(byte[] input, int offset, int length) {
+        long hibit;
+        if (length == BLOCK_LENGTH) {
+            hibit = 1L << 24;           // 2^128, in the top limb
+        } else {
+            // Append the 0x01 byte to the partial block, and zero pad it.
+            if (input != block) {
+                System.arraycopy(input, offset, block, 0, length);
+                offset = 0;
+            }
+            block[offset + length] = 1;
+            Arrays.fill(block, offset + length + 1, BLOCK_LENGTH, (byte)0);
+            input = block;
+            hibit = 0;
+        }
+
+        h0 += getIntLE(input, offset) & LIMB_MASK;
+        h1 += (getIntLE(input, offset + 3) >>> 2) & LIMB_MASK;
+        h2 += (getIntLE(input, offset + 6) >>> 4) & LIMB_MASK;
+        h3 += (getIntLE(input, offset + 9) >>> 6) & LIMB_MASK;
+        h4 += (getIntLE(input, offset + 12) >>> 8) | hibit;
+
+        // h * r, with the limbs above 2^130 folded back in with r * 5
+        long d0 = h0 * r0 + h1 * s4 + h2 * s3 + h3 * s2 + h4 * s1;
+        long d1 = h0 * r1 + h1 * r0 + h2 * s4 + h3 * s3 + h4 * s2;
+        long d2 = h0 * r2 + h1 * r1 + h2 * r0 + h3 * s4 + h4 * s3;
+        long d3 = h0 * r3 + h1 * r2 + h2 * r1 + h3 * r0 + h4 * s4;
+        long d4 = h0 * r4 + h1 * r3 + h2 * r2 + h3 * r1 + h4 * r0;
+
+        // Partial reduction mod 2^130 - 5
+        long c = d0 >>> 26;
+        h0 = d0 & LIMB_MASK;
+        d1 += c;
+        c = d1 >>> 26;
+        h1 = d1 & LIMB_MASK;
+        d2 += c;
+        c = d2 >>> 26;
+        h2 = d2 & LIMB_MASK;
+        d3 += c;
+        c = d3 >>> 26;
+        h3 = d3 & LIMB_MASK;
+        d4 += c;
+        c = d4 >>> 26;
+        h4 = d4 & LIMB_MASK;
+        h0 += c * 5;
+        c = h0 >>> 26;
+        h0 &= LIMB_MASK;
+        h1 += c;
+    }
+
+    /*
+     * Fully reduce the limb based accumulator, add the s half of the key,
+     * and write the 128-bit result into the tag.
+     */
+    private void finish(byte[] tag) {
+        long c = h1 >>> 26;
+        h1 &= LIMB_MASK;
+        h2 += c;
+        c = h2 >>> 26;
+        h2 &= LIMB_MASK;
+        h3 += c;
+        c = h3 >>> 26;
+        h3 &= LIMB_MASK;
+        h4 += c;
+        c = h4 >>> 26;
+        h4 &= LIMB_MASK;
+        h0 += c * 5;
+        c = h0 >>> 26;
+        h0 &= LIMB_MASK;
+        h1 += c;
+
+        // Compute g = h + 5 - 2^130, and select h if g is negative,
+        // without branching on the secret value.
+        long g0 = h0 + 5;
+        c = g0 >>> 26;
+        g0 &= LIMB_MASK;
+        long g1 = h1 + c;
+        c = g1 >>> 26;
+        g1 &= LIMB_MASK;
+        long g2 = h2 + c;
+        c = g2 >>> 26;
+        g2 &= LIMB_MASK;
+        long g3 = h3 + c;
+        c = g3 >>> 26;
+        g3 &= LIMB_MASK;
+        long g4 = h4 + c - (1L << 26);
+
+        long mask = g4 >> 63;           // all ones if h < 2^130 - 5
+        h0 = (h0 & mask) | (g0 & ~mask);
+        h1 = (h1 & mask) | (g1 & ~mask);
+        h2 = (h2 & mask) | (g2 & ~mask);
+        h3 = (h3 & mask) | (g3 & ~mask);
+        h4 = (h4 & mask) | (g4 & ~mask);
+
+        // h % 2^128, as four 32-bit words
+        long w0 = (h0 | (h1 << 26)) & INT_MASK;
+        long w1 = ((h1 >>> 6) | (h2 << 20)) & INT_MASK;
+        long w2 = ((h2 >>> 12) | (h3 << 14)) & INT_MASK;
+        long w3 = ((h3 >>> 18) | (h4 << 8)) & INT_MASK;
+
+        // tag = (h + s) % 2^128
+        long f = w0 + pad0;
+        putIntLE((int)f, tag, 0);
+        f = w1 + pad1 + (f >>> 32);
+        putIntLE((int)f, tag, 4);
+        f = w2 + pad2 + (f >>> 32);
+        putIntLE((int)f, tag, 8);
+        f = w3 + pad3 + (f >>> 32);
+        putIntLE((int)f, tag, 12);
+    }
+
+    private static long getIntLE(byte[] buf, int offset) {
+        return (buf[offset] & 0xFFL) |
+                ((buf[offset + 1] & 0xFFL) << 8) |
+                ((buf[offset + 2] & 0xFFL) << 16) |
+                ((buf[offset + 3] & 0xFFL) << 24);
+    }
+
+    private static void putIntLE(int value, byte[] buf, int offset) {
+        buf[offset] = (byte)value;
+        buf[offset + 1] = (byte)(value >>> 8);
+        buf[offset + 2] = (byte)(value >>> 16);
+        buf[offset + 3] = (byte)(value >>> 24);
+    }
+
     /**
      * Partition the authentication key into the R and S components, clamp
      * the R value, and instantiate IntegerModuloP objects to R and S's
@@ -250,9 +430,28 @@ final class Poly1305 {
         keyBytes[8] &= 252;
         keyBytes[12] &= 252;
 
-        // Create IntegerModuloP elements from the r and s values
-        r = ipl1305.getElement(keyBytes, 0, RS_LENGTH, (byte)0);
-        s = ipl1305.getElement(keyBytes, RS_LENGTH, RS_LENGTH, (byte)0);
+        if (useIntegerModuloP) {
+            // Create IntegerModuloP elements from the r and s values
+            r = ipl1305.getElement(keyBytes, 0, RS_LENGTH, (byte)0);
+            s = ipl1305.getElement(keyBytes, RS_LENGTH, RS_LENGTH, (byte)0);
+            return;
+        }
+
+        // Split r into 26-bit limbs
+        r0 = getIntLE(keyBytes, 0) & LIMB_MASK;
+        r1 = (getIntLE(keyBytes, 3) >>> 2) & LIMB_MASK;
+        r2 = (getIntLE(keyBytes, 6) >>> 4) & LIMB_MASK;
+        r3 = (getIntLE(keyBytes, 9) >>> 6) & LIMB_MASK;
+        r4 = (getIntLE(keyBytes, 12) >>> 8) & LIMB_MASK;
+        s1 = r1 * 5;
+        s2 = r2 * 5;
+        s3 = r3 * 5;
+        s4 = r4 * 5;
+
+        pad0 = getIntLE(keyBytes, 16);
+        pad1 = getIntLE(keyBytes, 20);
+        pad2 = getIntLE(keyBytes, 24);
+        pad3 = getIntLE(keyBytes, 28);
     }
     private int checkFromIndexSize(int fromIndex, int size, int length) throws IndexOutOfBoundsException {
         if ((length | fromIndex | size) < 0 || size > length - fromIndex)
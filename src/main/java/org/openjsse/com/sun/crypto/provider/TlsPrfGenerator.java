@@ -298,6 +298,13 @@ abstract class TlsPrfGenerator extends KeyGeneratorSpi {
             pad2[i] ^= secret[i + secOff];
         }
 
+        /*
+         * Hash the padding blocks only once per secret, and start every
+         * HMAC computation from a copy of the resulting digest states.
+         */
+        MessageDigest inner = digestPad(digest, pad1);
+        MessageDigest outer = (inner == null) ? null : digestPad(digest, pad2);
+
         byte[] tmp = new byte[hmacSize];
         byte[] aBytes = null;
 
@@ -315,41 +322,75 @@ abstract class TlsPrfGenerator extends KeyGeneratorSpi {
         int remaining = output.length;
         int ofs = 0;
         while (remaining > 0) {
-            /*
-             * compute A() ...
-             */
-            // inner digest
-            digest.update(pad1);
-            if (aBytes == null) {
-                digest.update(label);
-                digest.update(seed);
+            if (outer != null) {
+                /*
+                 * compute A() ...
+                 */
+                MessageDigest md = copyOf(inner);
+                if (aBytes == null) {
+                    md.update(label);
+                    md.update(seed);
+                } else {
+                    md.update(aBytes);
+                }
+                md.digest(tmp, 0, hmacSize);
+
+                md = copyOf(outer);
+                md.update(tmp);
+                if (aBytes == null) {
+                    aBytes = new byte[hmacSize];
+                }
+                md.digest(aBytes, 0, hmacSize);
+
+                /*
+                 * compute HMAC_hash() ...
+                 */
+                md = copyOf(inner);
+                md.update(aBytes);
+                md.update(label);
+                md.update(seed);
+                md.digest(tmp, 0, hmacSize);
+
+                md = copyOf(outer);
+                md.update(tmp);
+                md.digest(tmp, 0, hmacSize);
             } else {
+                /*
+                 * compute A() ...
+                 */
+                // inner digest
+                digest.update(pad1);
+                if (aBytes == null) {
+                    digest.update(label);
+                    digest.update(seed);
+                } else {
+                    digest.update(aBytes);
+                }
+                digest.digest(tmp, 0, hmacSize);
+
+                // outer digest
+                digest.update(pad2);
+                digest.update(tmp);
+                if (aBytes == null) {
+                    aBytes = new byte[hmacSize];
+                }
+                digest.digest(aBytes, 0, hmacSize);
+
+                /*
+                 * compute HMAC_hash() ...
+                 */
+                // inner digest
+                digest.update(pad1);
                 digest.update(aBytes);
-            }
-            digest.digest(tmp, 0, hmacSize);
+                digest.update(label);
+                digest.update(seed);
+                digest.digest(tmp, 0, hmacSize);
 
-            // outer digest
-            digest.update(pad2);
-            digest.update(tmp);
-            if (aBytes == null) {
-                aBytes = new byte[hmacSize];
+                // outer digest
+                digest.update(pad2);
+                digest.update(tmp);
+                digest.digest(tmp, 0, hmacSize);
             }
-            digest.digest(aBytes, 0, hmacSize);
-
-            /*
-             * compute HMAC_hash() ...
-             */
-            // inner digest
-            digest.update(pad1);
-            digest.update(aBytes);
-            digest.update(label);
-            digest.update(seed);
-            digest.digest(tmp, 0, hmacSize);
-
-            // outer digest
-            digest.update(pad2);
-            digest.update(tmp);
-            digest.digest(tmp, 0, hmacSize);
 
             int k = Math.min(hmacSize, remaining);
             for (int i = 0; i < k; i++) {
@@ -359,6 +400,30 @@ abstract class TlsPrfGenerator extends KeyGeneratorSpi {
         }
     }
 
+    /*
+     * Returns a copy of the digest state after hashing the padding, or
+     * null if the digest cannot be cloned.  The digest is left reset.
+     */
+    private static MessageDigest digestPad(MessageDigest digest, byte[] pad) {
+        try {
+            digest.update(pad);
+            return (MessageDigest)digest.clone();
+        } catch (CloneNotSupportedException e) {
+            return null;
+        } finally {
+            digest.reset();
+        }
+    }
+
+    private static MessageDigest copyOf(MessageDigest digest)
+            throws DigestException {
+        try {
+            return (MessageDigest)digest.clone();
+        } catch (CloneNotSupportedException e) {
+            throw new DigestException("Digest cannot be cloned", e);
+        }
+    }
+
     /**
      * A KeyGenerator implementation that supports TLS 1.2.
      * <p>
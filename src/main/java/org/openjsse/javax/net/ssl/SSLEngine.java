@@ -448,4 +448,76 @@ public abstract class SSLEngine extends javax.net.ssl.SSLEngine {
      */
     public abstract boolean needUnwrapAgain();
 
+    /**
+     * Sets the application data to be sent as TLS 1.3 early data (0-RTT)
+     * in the initial handshake of this client mode {@code SSLEngine}.
+     * <p>
+     * Early data is only sent when a TLS 1.3 session that allows early data
+     * is resumed, and the data fits within the max_early_data_size limit
+     * of the session.  The server may reject the early data, in which case
+     * the application should send the data again once the handshake has
+     * completed.  See {@link #isEarlyDataAccepted()}.
+     * <p>
+     * Early data is not protected against replay in the way that the rest
+     * of the connection is.  Applications should only send early data for
+     * requests that are safe to repeat.
+     * <p>
+     * This method must be called before the initial handshake is started.
+     *
+     * @implSpec
+     * The implementation in this class throws
+     * {@code UnsupportedOperationException} and performs no other action.
+     *
+     * @param  earlyData the early data, or {@code null} to send none.
+     * @throws UnsupportedOperationException if the underlying provider
+     *         does not implement the operation.
+     */
+    public void setEarlyData(byte[] earlyData) {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Returns whether the TLS 1.3 early data of the initial handshake has
+     * been accepted by the server.
+     * <p>
+     * In client mode, the result is only meaningful once the server's
+     * handshake messages have been received.  In server mode, the early
+     * data is accepted if it is allowed by the
+     * {@link SSLParameters#setMaxEarlyDataSize(int) max_early_data_size}
+     * limit, and passes the anti-replay checks.
+     *
+     * @implSpec
+     * The implementation in this class throws
+     * {@code UnsupportedOperationException} and performs no other action.
+     *
+     * @return true if the early data has been accepted.
+     * @throws UnsupportedOperationException if the underlying provider
+     *         does not implement the operation.
+     */
+    public boolean isEarlyDataAccepted() {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Returns the TLS 1.3 early data received in the initial handshake of
+     * this server mode {@code SSLEngine}.
+     * <p>
+     * Early data is delivered separately from the application data of the
+     * connection, and is available once the client has finished sending
+     * it, that is, once the end_of_early_data handshake message
+     * has been unwrapped.
+     *
+     * @implSpec
+     * The implementation in this class throws
+     * {@code UnsupportedOperationException} and performs no other action.
+     *
+     * @return the early data, or {@code null} if no early data has been
+     *         accepted.
+     * @throws UnsupportedOperationException if the underlying provider
+     *         does not implement the operation.
+     */
+    public byte[] getEarlyData() {
+        throw new UnsupportedOperationException();
+    }
+
 }
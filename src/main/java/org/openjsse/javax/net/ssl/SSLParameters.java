@@ -59,6 +59,7 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.LinkedHashMap;
+import java.util.concurrent.Executor;
 
 /**
  * Encapsulates parameters for an SSL/TLS/DTLS connection. The parameters
@@ -98,6 +99,11 @@ public class SSLParameters extends javax.net.ssl.SSLParameters {
 
     private boolean enableRetransmissions = true;
     private int maximumPacketSize = 0;
+    private int maxEarlyDataSize = 0;
+    private boolean enableRecordBatching = false;
+    private boolean delegateAllHandshakeTasks = false;
+    private Executor delegatedTaskExecutor = null;
+    private Runnable delegatedTaskCallback = null;
     private String[] applicationProtocols = new String[0];
 
     /**
@@ -252,4 +258,214 @@ public class SSLParameters extends javax.net.ssl.SSLParameters {
     public int getMaximumPacketSize() {
         return maximumPacketSize;
     }
+
+    /**
+     * Sets the maximum amount of TLS 1.3 early data in bytes that a
+     * server is willing to receive on a resumed connection.
+     * <p>
+     * A server advertises this limit in the session tickets it issues, and
+     * may accept early data up to the advertised limit when a client
+     * resumes the session with such a ticket.  This method applies to
+     * TLS 1.3 servers only.
+     *
+     * @apiNote  Early data is not protected against replay in the way that
+     *           the rest of the connection is.  Applications should only
+     *           accept early data for requests that are safe to repeat.
+     *
+     * @param   maxEarlyDataSize
+     *          the maximum amount of early data in bytes, or {@code 0} to
+     *          disable early data.
+     * @throws  IllegalArgumentException
+     *          if {@code maxEarlyDataSize} is negative.
+     *
+     * @see     #getMaxEarlyDataSize()
+     */
+    public void setMaxEarlyDataSize(int maxEarlyDataSize) {
+        if (maxEarlyDataSize < 0) {
+            throw new IllegalArgumentException(
+                "The maximum early data size cannot be negative");
+        }
+
+        this.maxEarlyDataSize = maxEarlyDataSize;
+    }
+
+    /**
+     * Returns the maximum amount of TLS 1.3 early data in bytes that a
+     * server is willing to receive on a resumed connection.
+     *
+     * @return  the maximum amount of early data in bytes, or {@code 0} if
+     *          early data is disabled.
+     *
+     * @see     #setMaxEarlyDataSize(int)
+     */
+    public int getMaxEarlyDataSize() {
+        return maxEarlyDataSize;
+    }
+
+    /**
+     * Sets whether a single {@code SSLEngine} wrap or unwrap operation
+     * may produce or consume more than one TLS record.
+     * <p>
+     * If enabled, once the handshake has completed, a wrap operation
+     * encodes application data into as many records as fit in the
+     * destination buffer, and an unwrap operation decodes every complete
+     * application data record of the source buffers that fits in the
+     * destination buffers.  Otherwise, at most one record is produced or
+     * consumed per operation.
+     * <p>
+     * This method applies to {@code SSLEngine} only.
+     *
+     * @param   enableRecordBatching
+     *          {@code true} indicates that a wrap or unwrap operation may
+     *          process multiple records; {@code false} indicates that it
+     *          processes at most one record.
+     *
+     * @see     #getEnableRecordBatching()
+     */
+    public void setEnableRecordBatching(boolean enableRecordBatching) {
+        this.enableRecordBatching = enableRecordBatching;
+    }
+
+    /**
+     * Returns whether a single {@code SSLEngine} wrap or unwrap operation
+     * may produce or consume more than one TLS record.
+     *
+     * @return  true, if a wrap or unwrap operation may process multiple
+     *          records
+     *
+     * @see     #setEnableRecordBatching(boolean)
+     */
+    public boolean getEnableRecordBatching() {
+        return enableRecordBatching;
+    }
+
+    /**
+     * Sets whether all of the handshake processing of an {@code SSLEngine}
+     * is performed by delegated tasks.
+     * <p>
+     * By default, the first handshake message of a client, and the
+     * handshake messages that end a flight, such as {@code Finished}, are
+     * processed within the wrap or unwrap operations, even though they may
+     * involve key generation or private key signing.  If enabled, every
+     * handshake message is produced or consumed by a delegated task, and
+     * the wrap and unwrap operations report the
+     * {@code SSLEngineResult.HandshakeStatus.NEED_TASK} status instead.
+     * <p>
+     * This method applies to {@code SSLEngine} only.
+     *
+     * @param   delegateAllHandshakeTasks
+     *          {@code true} indicates that all handshake messages are
+     *          processed by delegated tasks.
+     *
+     * @see     #getDelegateAllHandshakeTasks()
+     * @see     javax.net.ssl.SSLEngine#getDelegatedTask()
+     */
+    public void setDelegateAllHandshakeTasks(
+            boolean delegateAllHandshakeTasks) {
+        this.delegateAllHandshakeTasks = delegateAllHandshakeTasks;
+    }
+
+    /**
+     * Returns whether all of the handshake processing of an
+     * {@code SSLEngine} is performed by delegated tasks.
+     *
+     * @return  true, if all handshake messages are processed by delegated
+     *          tasks
+     *
+     * @see     #setDelegateAllHandshakeTasks(boolean)
+     */
+    public boolean getDelegateAllHandshakeTasks() {
+        return delegateAllHandshakeTasks;
+    }
+
+    /**
+     * Sets the executor on which an {@code SSLEngine} runs its delegated
+     * tasks.
+     * <p>
+     * If an executor is set, all handshake messages are processed by
+     * delegated tasks, as if {@link #setDelegateAllHandshakeTasks} was
+     * enabled, and the engine submits the tasks to the executor itself.
+     * While a task is pending, the wrap and unwrap operations return
+     * immediately with the
+     * {@code SSLEngineResult.HandshakeStatus.NEED_TASK} status, and
+     * {@code getDelegatedTask()} returns {@code null}.  If the executor
+     * rejects a task, the task is returned by {@code getDelegatedTask()}
+     * instead.  If the engine is closed while a task is pending, the
+     * wrap and unwrap operations wait for the task and report the closure.
+     * <p>
+     * This method is equivalent to
+     * {@code setDelegatedTaskExecutor(executor, null)}.
+     * <p>
+     * This method applies to {@code SSLEngine} only.
+     *
+     * @param   executor
+     *          the executor of the delegated tasks, or {@code null} to let
+     *          the application run them.
+     *
+     * @see     #getDelegatedTaskExecutor()
+     * @see     #setDelegatedTaskExecutor(Executor, Runnable)
+     */
+    public void setDelegatedTaskExecutor(Executor executor) {
+        setDelegatedTaskExecutor(executor, null);
+    }
+
+    /**
+     * Sets the executor on which an {@code SSLEngine} runs its delegated
+     * tasks, and the callback to run when such a task completes.
+     * <p>
+     * The executor is used as described in
+     * {@link #setDelegatedTaskExecutor(Executor)}.  The callback is run
+     * on the executor thread once a task submitted by the engine has
+     * completed, whether successfully or not.  When the callback runs,
+     * the engine no longer reports the task as pending and does not hold
+     * any lock, so the callback may call the wrap and unwrap operations
+     * of the engine, or schedule them, to resume the handshake.  Any
+     * failure of the task is reported by these operations.  The callback
+     * is shared by all of the engines using these parameters, and may be
+     * run concurrently for different engines.  The callback is not run
+     * for tasks returned by {@code getDelegatedTask()}.
+     * <p>
+     * This method applies to {@code SSLEngine} only.
+     *
+     * @param   executor
+     *          the executor of the delegated tasks, or {@code null} to let
+     *          the application run them.
+     * @param   onTaskDone
+     *          the callback to run after each task run on the executor, or
+     *          {@code null} for none.  It is ignored if {@code executor}
+     *          is {@code null}.
+     *
+     * @see     #getDelegatedTaskExecutor()
+     * @see     #getDelegatedTaskCallback()
+     */
+    public void setDelegatedTaskExecutor(
+            Executor executor, Runnable onTaskDone) {
+        this.delegatedTaskExecutor = executor;
+        this.delegatedTaskCallback = (executor == null) ? null : onTaskDone;
+    }
+
+    /**
+     * Returns the executor on which an {@code SSLEngine} runs its
+     * delegated tasks.
+     *
+     * @return  the executor of the delegated tasks, or {@code null} if the
+     *          application runs them
+     *
+     * @see     #setDelegatedTaskExecutor(Executor)
+     */
+    public Executor getDelegatedTaskExecutor() {
+        return delegatedTaskExecutor;
+    }
+
+    /**
+     * Returns the callback run when a delegated task run on the executor
+     * of an {@code SSLEngine} completes.
+     *
+     * @return  the callback, or {@code null} if none
+     *
+     * @see     #setDelegatedTaskExecutor(Executor, Runnable)
+     */
+    public Runnable getDelegatedTaskCallback() {
+        return delegatedTaskCallback;
+    }
 }
@@ -0,0 +1,424 @@
+/*
+ * Copyright 2019 Azul Systems, Inc.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.openjsse.net.ssl;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * An implementation of {@link SSLSessionStore} keeping the session states
+ * in a memory-mapped file, so that the processes of a host mapping the
+ * same file share their sessions.
+ * <P>
+ * The file is a hash table of fixed-size slots.  A key is hashed to a
+ * few consecutive candidate slots; a new entry replaces an expired or
+ * empty candidate, or the first candidate if all of them are in use.
+ * Entries which do not fit into a slot are not stored.
+ * <P>
+ * The slots are protected by file locks against concurrent updates from
+ * other processes, and by striped monitors against the threads of this
+ * process.  A process should therefore open the file once, and share the
+ * store between its {@code SSLContext}s.  All processes sharing the file
+ * must use the same slot size and slot count, which are recorded in the
+ * file header.
+ * <P>
+ * The file is not encrypted: it contains the session secrets in clear,
+ * and must be protected by the file system permissions accordingly.  On
+ * file systems supporting POSIX permissions, a new file is created
+ * readable and writable by its owner only, and an existing file which
+ * other users can read or write is refused.
+ * <P>
+ * The content of the file is not trusted: a slot whose lengths do not
+ * fit into the slot is treated as an empty slot.
+ */
+public final class MappedFileSSLSessionStore
+        implements SSLSessionStore, Closeable {
+
+    //  struct {
+    //      uint32 magic;
+    //      uint32 slot_size;
+    //      uint32 slot_count;
+    //      uint32 reserved;
+    //  } Header;
+    //
+    //  struct {
+    //      uint32 key_length;          // 0: empty slot
+    //      uint32 state_length;
+    //      uint64 expiration_time;
+    //      opaque key[key_length];
+    //      opaque state[state_length];
+    //  } Slot;
+    private static final int MAGIC = 0x4F4A5353;            // "OJSS"
+    private static final int HEADER_SIZE = 16;
+    private static final int SLOT_HEADER_SIZE = 16;
+    private static final int PROBES = 4;
+    private static final int STRIPES = 64;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final int slotSize;
+    private final int slotCount;
+    private final Object[] locks;
+
+    /**
+     * Opens, or creates, a session store file.
+     *
+     * @param  path the path of the file
+     * @param  slotSize the size in bytes of a slot, which limits the size
+     *         of the entries of the store; 8192 bytes are enough for most
+     *         sessions, but sessions holding long certificate chains may
+     *         need more
+     * @param  slotCount the number of slots, which limits the number of
+     *         entries of the store
+     * @throws IllegalArgumentException if the slot size or the slot count
+     *         is not positive, or if the file is larger than 2GB
+     * @throws IOException if the file cannot be opened or mapped, if
+     *         other users can read or write it, or if it is not a session
+     *         store file with the same slot size and slot count
+     */
+    public MappedFileSSLSessionStore(Path path,
+            int slotSize, int slotCount) throws IOException {
+        if (slotSize <= SLOT_HEADER_SIZE || slotCount <= 0) {
+            throw new IllegalArgumentException(
+                    "Invalid slot size or slot count");
+        }
+        if (((long)slotSize * slotCount + HEADER_SIZE) > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException(
+                    "The session store file cannot be larger than 2GB");
+        }
+
+        this.slotSize = slotSize;
+        this.slotCount = slotCount;
+        this.locks = new Object[STRIPES];
+        for (int i = 0; i < STRIPES; i++) {
+            locks[i] = new Object();
+        }
+
+        int size = HEADER_SIZE + slotSize * slotCount;
+        this.channel = open(path);
+        boolean done = false;
+        try (FileLock lock = lock(0, HEADER_SIZE, false)) {
+            checkPermissions(path);
+            boolean created = (channel.size() == 0);
+            this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            if (created) {
+                buffer.putInt(4, slotSize);
+                buffer.putInt(8, slotCount);
+                buffer.putInt(0, MAGIC);
+                buffer.force();
+            } else if (buffer.getInt(0) != MAGIC ||
+                    buffer.getInt(4) != slotSize ||
+                    buffer.getInt(8) != slotCount) {
+                throw new IOException(path +
+                        " is not a session store file of slot size " +
+                        slotSize + " and slot count " + slotCount);
+            }
+            done = true;
+        } finally {
+            if (!done) {
+                channel.close();
+            }
+        }
+    }
+
+    @Override
+    public byte[] get(byte[] key) {
+        int first = firstSlot(key);
+        long currentTime = System.currentTimeMillis();
+        for (int i = 0; i < PROBES; i++) {
+            int slot = (first + i) % slotCount;
+            synchronized (lockOf(slot)) {
+                try (FileLock lock = lockSlot(slot, true)) {
+                    int offset = offsetOf(slot);
+                    if (matches(offset, key)) {
+                        int stateLength = stateLength(offset, key.length);
+                        if (stateLength < 0 ||
+                                isExpired(offset, currentTime)) {
+                            return null;
+                        }
+
+                        byte[] state = new byte[stateLength];
+                        read(offset + SLOT_HEADER_SIZE + key.length, state);
+                        return state;
+                    }
+                } catch (IOException ioe) {
+                    return null;
+                }
+            }
+        }
+
+        return null;
+    }
+
+    @Override
+    public void put(byte[] key, byte[] state, long expirationTime) {
+        if (key.length == 0 ||
+                (SLOT_HEADER_SIZE + key.length + state.length) > slotSize) {
+            return;     // too large, the store is a cache anyway
+        }
+
+        int first = firstSlot(key);
+        long currentTime = System.currentTimeMillis();
+
+        // Replace the existing entry, or use a free slot.
+        int target = -1;
+        for (int i = 0; i < PROBES; i++) {
+            int slot = (first + i) % slotCount;
+            synchronized (lockOf(slot)) {
+                try (FileLock lock = lockSlot(slot, true)) {
+                    int offset = offsetOf(slot);
+                    if (matches(offset, key)) {
+                        target = slot;
+                        break;
+                    }
+
+                    if (target < 0 && (buffer.getInt(offset) == 0 ||
+                            isExpired(offset, currentTime))) {
+                        target = slot;
+                    }
+                } catch (IOException ioe) {
+                    return;
+                }
+            }
+        }
+
+        if (target < 0) {
+            target = first;
+        }
+
+        synchronized (lockOf(target)) {
+            try (FileLock lock = lockSlot(target, false)) {
+                int offset = offsetOf(target);
+                buffer.putInt(offset, 0);       // invalidate first
+                buffer.putInt(offset + 4, state.length);
+                buffer.putLong(offset + 8, expirationTime);
+                write(offset + SLOT_HEADER_SIZE, key);
+                write(offset + SLOT_HEADER_SIZE + key.length, state);
+                buffer.putInt(offset, key.length);
+            } catch (IOException ioe) {
+                // ignore, the store is a cache anyway
+            }
+        }
+    }
+
+    @Override
+    public void remove(byte[] key) {
+        int first = firstSlot(key);
+        for (int i = 0; i < PROBES; i++) {
+            int slot = (first + i) % slotCount;
+            synchronized (lockOf(slot)) {
+                try (FileLock lock = lockSlot(slot, false)) {
+                    int offset = offsetOf(slot);
+                    if (matches(offset, key)) {
+                        buffer.putInt(offset, 0);
+                        return;
+                    }
+                } catch (IOException ioe) {
+                    return;
+                }
+            }
+        }
+    }
+
+    @Override
+    public void visit(Visitor visitor) {
+        long currentTime = System.currentTimeMillis();
+        for (int slot = 0; slot < slotCount; slot++) {
+            byte[] key;
+            byte[] state;
+            synchronized (lockOf(slot)) {
+                try (FileLock lock = lockSlot(slot, true)) {
+                    int offset = offsetOf(slot);
+                    int keyLength = buffer.getInt(offset);
+                    int stateLength = stateLength(offset, keyLength);
+                    if (stateLength < 0 || isExpired(offset, currentTime)) {
+                        continue;
+                    }
+
+                    key = new byte[keyLength];
+                    read(offset + SLOT_HEADER_SIZE, key);
+                    state = new byte[stateLength];
+                    read(offset + SLOT_HEADER_SIZE + keyLength, state);
+                } catch (IOException ioe) {
+                    return;
+                }
+            }
+
+            // Call the visitor out of the locks.
+            visitor.visit(key, state);
+        }
+    }
+
+    /**
+     * Closes the session store file.  The store cannot be used after it
+     * is closed.
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /*
+     * Open the file, and create it readable and writable by its owner
+     * only if the file system supports POSIX permissions.
+     */
+    private static FileChannel open(Path path) throws IOException {
+        Set<StandardOpenOption> options = EnumSet.of(
+                StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        if (isPosix(path)) {
+            return FileChannel.open(path, options,
+                    PosixFilePermissions.asFileAttribute(
+                            PosixFilePermissions.fromString("rw-------")));
+        }
+
+        return FileChannel.open(path, options);
+    }
+
+    /*
+     * Refuse a file which other users can read or write.
+     */
+    private static void checkPermissions(Path path) throws IOException {
+        if (!isPosix(path)) {
+            return;
+        }
+
+        Set<PosixFilePermission> permissions =
+                Files.getPosixFilePermissions(path);
+        if (permissions.contains(PosixFilePermission.GROUP_READ) ||
+                permissions.contains(PosixFilePermission.GROUP_WRITE) ||
+                permissions.contains(PosixFilePermission.OTHERS_READ) ||
+                permissions.contains(PosixFilePermission.OTHERS_WRITE)) {
+            throw new IOException(path +
+                    " is accessible to other users, " +
+                    "the session store file must be private to its owner");
+        }
+    }
+
+    private static boolean isPosix(Path path) {
+        return path.getFileSystem().
+                supportedFileAttributeViews().contains("posix");
+    }
+
+    private int firstSlot(byte[] key) {
+        int h = Arrays.hashCode(key);
+        h ^= (h >>> 16);
+        return (h & 0x7FFFFFFF) % slotCount;
+    }
+
+    private int offsetOf(int slot) {
+        return HEADER_SIZE + slot * slotSize;
+    }
+
+    private Object lockOf(int slot) {
+        return locks[slot % STRIPES];
+    }
+
+    private FileLock lockSlot(int slot, boolean shared) throws IOException {
+        return lock(offsetOf(slot), slotSize, shared);
+    }
+
+    /*
+     * File locks are held on behalf of the whole JVM, so another store of
+     * this JVM on the same file may already hold an overlapping lock.
+     * Report it as an I/O error, the store is a cache anyway.
+     */
+    private FileLock lock(long position, long size,
+            boolean shared) throws IOException {
+        try {
+            return channel.lock(position, size, shared);
+        } catch (OverlappingFileLockException ofle) {
+            throw new IOException(
+                    "The session store file is locked in this JVM", ofle);
+        }
+    }
+
+    private boolean matches(int offset, byte[] key) {
+        if (buffer.getInt(offset) != key.length ||
+                key.length > slotSize - SLOT_HEADER_SIZE) {
+            return false;
+        }
+
+        int keyOffset = offset + SLOT_HEADER_SIZE;
+        for (int i = 0; i < key.length; i++) {
+            if (buffer.get(keyOffset + i) != key[i]) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /*
+     * Return the state length of the slot, or -1 if the slot is empty or
+     * its lengths do not fit into the slot.  The file may be written by
+     * other processes, so the lengths are not trusted.
+     */
+    private int stateLength(int offset, int keyLength) {
+        if (keyLength <= 0 || keyLength > slotSize - SLOT_HEADER_SIZE) {
+            return -1;
+        }
+
+        int stateLength = buffer.getInt(offset + 4);
+        if (stateLength < 0 ||
+                stateLength > slotSize - SLOT_HEADER_SIZE - keyLength) {
+            return -1;
+        }
+
+        return stateLength;
+    }
+
+    private boolean isExpired(int offset, long currentTime) {
+        long expirationTime = buffer.getLong(offset + 8);
+        return expirationTime != 0 && expirationTime <= currentTime;
+    }
+
+    private void read(int offset, byte[] dst) {
+        ByteBuffer bb = buffer.duplicate();
+        bb.position(offset);
+        bb.get(dst);
+    }
+
+    private void write(int offset, byte[] src) {
+        ByteBuffer bb = buffer.duplicate();
+        bb.position(offset);
+        bb.put(src);
+    }
+}
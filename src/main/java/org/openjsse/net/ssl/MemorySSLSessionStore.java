@@ -0,0 +1,123 @@
+/*
+ * Copyright 2019 Azul Systems, Inc.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.openjsse.net.ssl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import org.openjsse.sun.security.util.Cache;
+import org.openjsse.sun.security.util.Cache.EqualByteArray;
+
+/**
+ * The reference implementation of {@link SSLSessionStore}, keeping the
+ * session states in the memory of the process.
+ * <P>
+ * The store holds up to a fixed number of entries, and replaces the least
+ * recently used ones when it is full.  It can be shared by several
+ * {@code SSLContext}s of the same process.
+ */
+public final class MemorySSLSessionStore implements SSLSessionStore {
+
+    private final Cache<EqualByteArray, Entry> cache;
+
+    /**
+     * Creates a session store holding at most {@code capacity} entries.
+     *
+     * @param  capacity the maximum number of entries, or 0 for no limit
+     * @throws IllegalArgumentException if {@code capacity} is negative
+     */
+    public MemorySSLSessionStore(int capacity) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException(
+                    "The capacity cannot be negative: " + capacity);
+        }
+        this.cache = Cache.newHardMemoryCache(capacity);
+    }
+
+    @Override
+    public byte[] get(byte[] key) {
+        EqualByteArray k = new EqualByteArray(key);
+        Entry entry = cache.get(k);
+        if (entry == null) {
+            return null;
+        }
+
+        if (entry.isExpired(System.currentTimeMillis())) {
+            cache.remove(k);
+            return null;
+        }
+
+        return entry.state.clone();
+    }
+
+    @Override
+    public void put(byte[] key, byte[] state, long expirationTime) {
+        byte[] k = key.clone();
+        cache.put(new EqualByteArray(k),
+                new Entry(k, state.clone(), expirationTime));
+    }
+
+    @Override
+    public void remove(byte[] key) {
+        cache.remove(new EqualByteArray(key));
+    }
+
+    @Override
+    public void visit(Visitor visitor) {
+        final List<Entry> entries = new ArrayList<>();
+        cache.accept(new Cache.CacheVisitor<EqualByteArray, Entry>() {
+            @Override
+            public void visit(Map<EqualByteArray, Entry> map) {
+                entries.addAll(map.values());
+            }
+        });
+
+        // Call the visitor out of the cache lock.
+        long currentTime = System.currentTimeMillis();
+        for (Entry entry : entries) {
+            if (!entry.isExpired(currentTime)) {
+                visitor.visit(entry.key.clone(), entry.state.clone());
+            }
+        }
+    }
+
+    private static final class Entry {
+        final byte[] key;
+        final byte[] state;
+        final long expirationTime;
+
+        Entry(byte[] key, byte[] state, long expirationTime) {
+            this.key = key;
+            this.state = state;
+            this.expirationTime = expirationTime;
+        }
+
+        boolean isExpired(long currentTime) {
+            return expirationTime != 0 && expirationTime <= currentTime;
+        }
+    }
+}
@@ -56,6 +56,91 @@ public final class OpenJSSE extends org.openjsse.sun.security.ssl.OpenJSSE {
         return org.openjsse.sun.security.ssl.OpenJSSE.isFIPS();
     }
 
+    /**
+     * Installs a session store behind a session context of an OpenJSSE
+     * {@code SSLContext}, for example
+     * {@code setSessionStore(sslContext.getServerSessionContext(), store)}.
+     * The resumable sessions of the context are then also put into the
+     * store, and looked up in the store when they are not cached in memory.
+     *
+     * @param context the client or server session context of an OpenJSSE
+     *        {@code SSLContext}
+     * @param store the session store, or null to remove the session store
+     * @throws IllegalArgumentException if {@code context} is not a session
+     *         context of an OpenJSSE {@code SSLContext}
+     * @see SSLSessionStore
+     */
+    public static void setSessionStore(javax.net.ssl.SSLSessionContext context,
+            SSLSessionStore store) {
+        org.openjsse.sun.security.ssl.OpenJSSE.setSessionStore(context, store);
+    }
+
+    /**
+     * Returns the metrics of an OpenJSSE {@code SSLContext}.
+     *
+     * @param context an OpenJSSE {@code SSLContext}
+     * @return the metrics of the context
+     * @throws IllegalArgumentException if {@code context} is not an
+     *         OpenJSSE {@code SSLContext}
+     * @see SSLMetricsMXBean
+     */
+    public static SSLMetricsMXBean getMetrics(
+            javax.net.ssl.SSLContext context) {
+        return org.openjsse.sun.security.ssl.OpenJSSE.getMetrics(context);
+    }
+
+    /**
+     * Registers a listener of the metrics events of an OpenJSSE
+     * {@code SSLContext}.
+     *
+     * @param context an OpenJSSE {@code SSLContext}
+     * @param listener the listener to register
+     * @throws IllegalArgumentException if {@code context} is not an
+     *         OpenJSSE {@code SSLContext}
+     * @see SSLMetricsListener
+     */
+    public static void addMetricsListener(javax.net.ssl.SSLContext context,
+            SSLMetricsListener listener) {
+        org.openjsse.sun.security.ssl.OpenJSSE.addMetricsListener(
+                context, listener);
+    }
+
+    /**
+     * Removes a listener of the metrics events of an OpenJSSE
+     * {@code SSLContext}, if it is registered.
+     *
+     * @param context an OpenJSSE {@code SSLContext}
+     * @param listener the listener to remove
+     * @throws IllegalArgumentException if {@code context} is not an
+     *         OpenJSSE {@code SSLContext}
+     */
+    public static void removeMetricsListener(javax.net.ssl.SSLContext context,
+            SSLMetricsListener listener) {
+        org.openjsse.sun.security.ssl.OpenJSSE.removeMetricsListener(
+                context, listener);
+    }
+
+    /**
+     * Reloads the key entries of an OpenJSSE "PKIX" key manager from its
+     * key stores, for example after certificates were added to or removed
+     * from them.
+     * <P>
+     * If the "org.openjsse.keymanager.indexed" system property is true, the
+     * key manager keeps an index of the key entries, so that choosing an
+     * alias does not depend on the number of entries.  The index is built
+     * when the key manager is created, and only rebuilt by this method.
+     * Otherwise, the key manager reads the key stores as needed, and this
+     * method only drops the key entries it cached.
+     *
+     * @param keyManager a key manager of the OpenJSSE "PKIX"
+     *        {@code KeyManagerFactory}
+     * @throws IllegalArgumentException if {@code keyManager} is not a key
+     *         manager of the OpenJSSE "PKIX" {@code KeyManagerFactory}
+     */
+    public static void reloadKeyManager(javax.net.ssl.KeyManager keyManager) {
+        org.openjsse.sun.security.ssl.OpenJSSE.reloadKeyManager(keyManager);
+    }
+
     /**
      * Installs the JSSE provider.
      */
@@ -0,0 +1,82 @@
+/*
+ * Copyright 2019 Azul Systems, Inc.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.openjsse.net.ssl;
+
+import javax.net.ssl.SSLSession;
+
+/**
+ * A listener of the events counted in the metrics of an OpenJSSE
+ * {@code SSLContext}.
+ * <P>
+ * Listeners are registered with
+ * {@link OpenJSSE#addMetricsListener OpenJSSE.addMetricsListener()}.
+ * They are called synchronously, by the thread that drives the
+ * connection, so they must return quickly and should not throw
+ * exceptions.  Exceptions thrown by a listener are ignored.
+ * <P>
+ * All methods have empty default implementations.
+ *
+ * @see SSLMetricsMXBean
+ */
+public interface SSLMetricsListener {
+
+    /**
+     * Called when a handshake has completed.
+     *
+     * @param  session the negotiated session
+     * @param  isClient whether the connection is in client mode
+     * @param  isResumed whether the handshake resumed a session
+     * @param  durationNanos the duration of the handshake, in nanoseconds
+     */
+    default void handshakeCompleted(SSLSession session,
+            boolean isClient, boolean isResumed, long durationNanos) {
+        // blank
+    }
+
+    /**
+     * Called when an alert has been sent or received.
+     *
+     * @param  isSent whether the alert was sent, rather than received
+     * @param  isFatal whether the alert is fatal
+     * @param  description the alert description, for example
+     *         {@code "handshake_failure"}
+     */
+    default void alert(boolean isSent, boolean isFatal, String description) {
+        // blank
+    }
+
+    /**
+     * Called when the traffic keys have been updated by a TLS 1.3
+     * KeyUpdate message.
+     *
+     * @param  isSent whether the KeyUpdate message was sent, rather than
+     *         received
+     */
+    default void keyUpdated(boolean isSent) {
+        // blank
+    }
+}
@@ -0,0 +1,184 @@
+/*
+ * Copyright 2019 Azul Systems, Inc.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.openjsse.net.ssl;
+
+import java.util.Map;
+
+/**
+ * The metrics of an OpenJSSE {@code SSLContext}, counted over all the
+ * connections created from the context.
+ * <P>
+ * The metrics of a context can be obtained with
+ * {@link OpenJSSE#getMetrics OpenJSSE.getMetrics()}.  If the system
+ * property {@code org.openjsse.metrics.jmx} is set to {@code true}, the
+ * metrics of every context are also registered with the platform MBean
+ * server, under an object name like
+ * {@code org.openjsse:type=SSLContext,name=TLSContext-1}.
+ * <P>
+ * The counters are updated without locking, and are not consistent with
+ * each other at any point in time.  All durations are in microseconds.
+ *
+ * @see SSLMetricsListener
+ */
+public interface SSLMetricsMXBean {
+
+    /**
+     * Returns the number of completed full handshakes.
+     *
+     * @return the number of completed full handshakes
+     */
+    long getFullHandshakes();
+
+    /**
+     * Returns the number of completed abbreviated (resumed) handshakes.
+     *
+     * @return the number of completed resumed handshakes
+     */
+    long getResumedHandshakes();
+
+    /**
+     * Returns the number of completed handshakes per protocol version and
+     * kind of handshake, with keys like {@code "TLSv1.3/full"} or
+     * {@code "TLSv1.2/resumed"}.
+     *
+     * @return the number of handshakes per protocol version
+     */
+    Map<String, Long> getHandshakesByProtocol();
+
+    /**
+     * Returns the number of completed handshakes per negotiated cipher
+     * suite, keyed by the standard name of the cipher suite.
+     *
+     * @return the number of handshakes per cipher suite
+     */
+    Map<String, Long> getHandshakesByCipherSuite();
+
+    /**
+     * Returns the distribution of the handshake durations, per phase of
+     * the handshake.
+     * <P>
+     * The phases are {@code "hello"}, from the start of the handshake
+     * to the (last) ServerHello message, {@code "keyExchange"}, from the
+     * ServerHello message to the first Finished message, {@code "finish"},
+     * from the first Finished message to the completion of the handshake,
+     * and {@code "total"}.  For each phase, the keys {@code "<phase>.count"},
+     * {@code "<phase>.mean"}, {@code "<phase>.p50"}, {@code "<phase>.p90"},
+     * {@code "<phase>.p99"} and {@code "<phase>.max"} are present.  The
+     * percentiles are rounded up to the next power of two.
+     *
+     * @return the handshake durations, in microseconds
+     */
+    Map<String, Long> getHandshakeDurations();
+
+    /**
+     * Returns the number of alerts sent, keyed by alert description,
+     * for example {@code "close_notify"}.
+     *
+     * @return the number of alerts sent per description
+     */
+    Map<String, Long> getAlertsSent();
+
+    /**
+     * Returns the number of alerts received, keyed by alert description.
+     *
+     * @return the number of alerts received per description
+     */
+    Map<String, Long> getAlertsReceived();
+
+    /**
+     * Returns the number of session lookups that were answered from the
+     * session cache or the session store.
+     *
+     * @return the number of session cache hits
+     */
+    long getSessionCacheHits();
+
+    /**
+     * Returns the number of session lookups that found no session.
+     *
+     * @return the number of session cache misses
+     */
+    long getSessionCacheMisses();
+
+    /**
+     * Returns the outcomes of server side OCSP stapling: the number of
+     * handshakes with {@code "stapled"} responses, or with responses
+     * {@code "unavailable"}, and the {@code "cacheHits"},
+     * {@code "cacheMisses"}, {@code "refreshes"} and
+     * {@code "sharedFetches"} of the OCSP response cache.
+     *
+     * @return the OCSP stapling outcomes
+     */
+    Map<String, Long> getStaplingOutcomes();
+
+    /**
+     * Returns the number of TLS 1.3 KeyUpdate messages sent.
+     *
+     * @return the number of KeyUpdate messages sent
+     */
+    long getKeyUpdatesSent();
+
+    /**
+     * Returns the number of TLS 1.3 KeyUpdate messages received.
+     *
+     * @return the number of KeyUpdate messages received
+     */
+    long getKeyUpdatesReceived();
+
+    /**
+     * Returns the number of application data records encrypted.
+     *
+     * @return the number of records encrypted
+     */
+    long getRecordsEncrypted();
+
+    /**
+     * Returns the number of application data bytes encrypted.
+     *
+     * @return the number of bytes encrypted
+     */
+    long getBytesEncrypted();
+
+    /**
+     * Returns the number of application data records decrypted.
+     *
+     * @return the number of records decrypted
+     */
+    long getRecordsDecrypted();
+
+    /**
+     * Returns the number of application data bytes decrypted.
+     *
+     * @return the number of bytes decrypted
+     */
+    long getBytesDecrypted();
+
+    /**
+     * Resets all the counters to zero.
+     */
+    void reset();
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright 2019 Azul Systems, Inc.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.openjsse.net.ssl;
+
+/**
+ * A store of resumable TLS sessions, used behind the session cache of an
+ * OpenJSSE {@code SSLContext}.
+ * <P>
+ * By default, the sessions of an {@code SSLContext} are cached in the
+ * memory of the process only, so a session can be resumed only by the
+ * process that created it.  When a session store is installed with
+ * {@link OpenJSSE#setSessionStore OpenJSSE.setSessionStore()}, the
+ * serialized state of every resumable session is also put into the store,
+ * and sessions that are missing from the memory cache are looked up in the
+ * store.  A store shared by several processes, for example a file mapped
+ * by all of them or an external key-value service, lets any of them resume
+ * the sessions created by the others.
+ * <P>
+ * The keys and the session states are opaque byte arrays.  The session
+ * states contain the session secrets in clear, so the store must protect
+ * them accordingly.  A store is a cache: it may drop any entry at any
+ * time, for example when it runs out of space.
+ * <P>
+ * Implementations must be safe for use by multiple concurrent threads,
+ * and should not throw exceptions.
+ *
+ * @see MemorySSLSessionStore
+ * @see MappedFileSSLSessionStore
+ */
+public interface SSLSessionStore {
+
+    /**
+     * Returns the session state stored with the specified key.
+     *
+     * @param  key the key of the session state
+     * @return the session state, or null if there is no unexpired state
+     *         stored with the key
+     */
+    byte[] get(byte[] key);
+
+    /**
+     * Stores a session state with the specified key, replacing any
+     * existing state with the same key.
+     *
+     * @param  key the key of the session state
+     * @param  state the session state
+     * @param  expirationTime the time, in milliseconds since the epoch,
+     *         after which the state is no longer valid; or 0 if the state
+     *         does not expire
+     */
+    void put(byte[] key, byte[] state, long expirationTime);
+
+    /**
+     * Removes the session state stored with the specified key, if any.
+     *
+     * @param  key the key of the session state
+     */
+    void remove(byte[] key);
+
+    /**
+     * Visits all unexpired session states of the store.
+     *
+     * @param  visitor the visitor to call for each entry of the store
+     */
+    void visit(Visitor visitor);
+
+    /**
+     * A visitor of the entries of a session store.
+     */
+    interface Visitor {
+        /**
+         * Visits an entry of the session store.
+         *
+         * @param  key the key of the session state
+         * @param  state the session state
+         */
+        void visit(byte[] key, byte[] state);
+    }
+}
@@ -240,6 +240,10 @@ enum Alert {
 
             Level level = Level.valueOf(am.level);
             Alert alert = Alert.valueOf(am.id);
+            if (alert != null) {
+                tc.metrics.alert(false, level, alert);
+            }
+
             if (alert == Alert.CLOSE_NOTIFY) {
                 tc.isInputCloseNotified = true;
                 tc.closeInbound();
@@ -140,6 +140,15 @@ abstract class Authenticator {
                 "Epoch numbers apply to DTLS protocols only");
     }
 
+    /**
+     * Resets the sequence number to the specified value, for records
+     * which are skipped without being processed, such as rejected TLS 1.3
+     * early data.
+     */
+    final void resetSequenceNumber(byte[] sequence) {
+        System.arraycopy(sequence, 0, block, 0, sequence.length);
+    }
+
     /**
      * Increase the sequence number.
      */
@@ -170,6 +179,26 @@ abstract class Authenticator {
         throw new UnsupportedOperationException("Used by AEAD algorithms only");
     }
 
+    /**
+     * Acquires the current message authentication information into the
+     * specified array, rather than a newly allocated one, and then increases
+     * the sequence number if using implicit sequence number.
+     *
+     * @param  type the record type
+     * @param  length the fragment of the record
+     * @param  sequence the explicit sequence number of the record
+     * @param  ad the array to hold the message authentication information,
+     *         which must not be shorter than the authenticator block
+     *
+     * @return the length of the current message authentication information
+     */
+    int acquireAuthenticationBytes(
+            byte type, int length, byte[] sequence, byte[] ad) {
+        byte[] bytes = acquireAuthenticationBytes(type, length, sequence);
+        System.arraycopy(bytes, 0, ad, 0, bytes.length);
+        return bytes.length;
+    }
+
     private static class SSLAuthenticator extends Authenticator {
         private SSLAuthenticator(byte[] block) {
             super(block);
@@ -291,6 +320,21 @@ abstract class Authenticator {
 
             return ad;
         }
+
+        @Override
+        int acquireAuthenticationBytes(
+                byte type, int length, byte[] sequence, byte[] ad) {
+            System.arraycopy(block, 8, ad, 0, 5);
+
+            // Increase the implicit sequence number in the block array.
+            increaseSequenceNumber();
+
+            ad[0] = type;
+            ad[3] = (byte)(length >> 8);
+            ad[4] = (byte)(length & 0xFF);
+
+            return 5;
+        }
     }
 
     private static class DTLSAuthenticator extends Authenticator {
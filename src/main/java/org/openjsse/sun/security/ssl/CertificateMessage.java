@@ -58,6 +58,7 @@ import org.openjsse.sun.security.ssl.ClientHello.ClientHelloMessage;
 import org.openjsse.sun.security.ssl.SSLHandshake.HandshakeMessage;
 import org.openjsse.sun.security.ssl.X509Authentication.X509Credentials;
 import org.openjsse.sun.security.ssl.X509Authentication.X509Possession;
+import org.openjsse.sun.security.util.Cache;
 
 /**
  * Pack of the CertificateMessage handshake message.
@@ -73,6 +74,74 @@ final class CertificateMessage {
     static final HandshakeProducer t13HandshakeProducer =
         new T13CertificateProducer();
 
+    /**
+     * The pre-encoded certificate_list of a local certificate chain.
+     *
+     * The same certificate chain is sent in every handshake, so the DER
+     * encodings and the encoded certificate_list are computed once per
+     * chain and protocol, and the list is written with one bulk copy.  The
+     * templates are keyed by the certificates themselves, so a chain with
+     * new key material gets a new template, and the old one ages out.
+     *
+     * The TLS 1.3 template encodes empty extensions for every entry, and
+     * cannot be used if any CertificateEntry has extensions.
+     */
+    private static final class CertificateListTemplate {
+        private static final
+                Cache<List<X509Certificate>, CertificateListTemplate>
+                t12Templates = Cache.newSoftMemoryCache(64);
+        private static final
+                Cache<List<X509Certificate>, CertificateListTemplate>
+                t13Templates = Cache.newSoftMemoryCache(64);
+
+        final List<byte[]> encodedCerts;
+        final byte[] encoded;           // the encoded certificate_list
+
+        private CertificateListTemplate(X509Certificate[] certChain,
+                boolean isTLS13) throws CertificateEncodingException {
+            List<byte[]> certs = new ArrayList<>(certChain.length);
+            int listLen = 0;
+            for (X509Certificate cert : certChain) {
+                byte[] encodedCert = cert.getEncoded();
+                certs.add(encodedCert);
+                listLen += (3 + encodedCert.length + (isTLS13 ? 2 : 0));
+            }
+
+            ByteBuffer m = ByteBuffer.allocate(3 + listLen);
+            putInt24(m, listLen);
+            for (byte[] encodedCert : certs) {
+                putInt24(m, encodedCert.length);
+                m.put(encodedCert);
+                if (isTLS13) {
+                    m.putShort((short)0);       // empty extensions
+                }
+            }
+
+            this.encodedCerts = Collections.unmodifiableList(certs);
+            this.encoded = m.array();
+        }
+
+        static CertificateListTemplate valueOf(X509Certificate[] certChain,
+                boolean isTLS13) throws CertificateEncodingException {
+            Cache<List<X509Certificate>, CertificateListTemplate> templates =
+                    isTLS13 ? t13Templates : t12Templates;
+            List<X509Certificate> key = Arrays.asList(certChain.clone());
+            CertificateListTemplate template = templates.get(key);
+            if (template == null) {
+                template = new CertificateListTemplate(certChain, isTLS13);
+                templates.put(key, template);
+            }
+
+            return template;
+        }
+
+        private static void putInt24(ByteBuffer m, int i) {
+            m.put((byte)((i >> 16) & 0xFF));
+            m.put((byte)((i >> 8) & 0xFF));
+            m.put((byte)(i & 0xFF));
+        }
+    }
+
     /**
      * The Certificate handshake message for TLS 1.2 and previous
      * SSL/TLS protocol versions.
@@ -100,25 +169,24 @@ final class CertificateMessage {
      */
     static final class T12CertificateMessage extends HandshakeMessage {
         final List<byte[]> encodedCertChain;
+        private final byte[] encodedCertList;   // null if not a local chain
 
         T12CertificateMessage(HandshakeContext handshakeContext,
                 X509Certificate[] certChain) throws SSLException {
             super(handshakeContext);
 
-            List<byte[]> encodedCerts = new ArrayList<>(certChain.length);
-            for (X509Certificate cert : certChain) {
-                try {
-                    encodedCerts.add(cert.getEncoded());
-                } catch (CertificateEncodingException cee) {
-                    // unlikely
-                    throw handshakeContext.conContext.fatal(
-                            Alert.INTERNAL_ERROR,
-                            "Could not encode certificate (" +
-                            cert.getSubjectX500Principal() + ")", cee);
-                }
+            CertificateListTemplate template;
+            try {
+                template = CertificateListTemplate.valueOf(certChain, false);
+            } catch (CertificateEncodingException cee) {
+                // unlikely
+                throw handshakeContext.conContext.fatal(
+                        Alert.INTERNAL_ERROR,
+                        "Could not encode certificate chain", cee);
             }
 
-            this.encodedCertChain = encodedCerts;
+            this.encodedCertChain = template.encodedCerts;
+            this.encodedCertList = template.encoded;
         }
 
         T12CertificateMessage(HandshakeContext handshakeContext,
@@ -151,6 +219,7 @@ final class CertificateMessage {
             } else {
                 this.encodedCertChain = Collections.emptyList();
             }
+            this.encodedCertList = null;
         }
 
         @Override
@@ -160,6 +229,10 @@ final class CertificateMessage {
 
         @Override
         public int messageLength() {
+            if (encodedCertList != null) {
+                return encodedCertList.length;
+            }
+
             int msgLen = 3;
             for (byte[] encodedCert : encodedCertChain) {
                 msgLen += (encodedCert.length + 3);
@@ -170,6 +243,11 @@ final class CertificateMessage {
 
         @Override
         public void send(HandshakeOutStream hos) throws IOException {
+            if (encodedCertList != null) {
+                hos.write(encodedCertList, 0, encodedCertList.length);
+                return;
+            }
+
             int listLen = 0;
             for (byte[] encodedCert : encodedCertChain) {
                 listLen += (encodedCert.length + 3);
@@ -397,11 +475,10 @@ final class CertificateMessage {
             X509Certificate[] x509Certs =
                     new X509Certificate[encodedCerts.size()];
             try {
-                CertificateFactory cf = CertificateFactory.getInstance("X.509");
                 int i = 0;
                 for (byte[] encodedCert : encodedCerts) {
-                    x509Certs[i++] = (X509Certificate)cf.generateCertificate(
-                                    new ByteArrayInputStream(encodedCert));
+                    x509Certs[i++] =
+                        X509CertificateCache.generateCertificate(encodedCert);
                 }
             } catch (CertificateException ce) {
                 throw shc.conContext.fatal(Alert.BAD_CERTIFICATE,
@@ -429,11 +506,10 @@ final class CertificateMessage {
             X509Certificate[] x509Certs =
                     new X509Certificate[encodedCerts.size()];
             try {
-                CertificateFactory cf = CertificateFactory.getInstance("X.509");
                 int i = 0;
                 for (byte[] encodedCert : encodedCerts) {
-                    x509Certs[i++] = (X509Certificate)cf.generateCertificate(
-                                    new ByteArrayInputStream(encodedCert));
+                    x509Certs[i++] =
+                        X509CertificateCache.generateCertificate(encodedCert);
                 }
             } catch (CertificateException ce) {
                 throw chc.conContext.fatal(Alert.BAD_CERTIFICATE,
@@ -801,19 +877,22 @@ final class CertificateMessage {
     static final class T13CertificateMessage extends HandshakeMessage {
         private final byte[] requestContext;
         private final List<CertificateEntry> certEntries;
+        private final byte[] encodedCertList;   // null if not a local chain
 
         T13CertificateMessage(HandshakeContext context,
                 byte[] requestContext, X509Certificate[] certificates)
                 throws SSLException, CertificateException  {
             super(context);
 
+            CertificateListTemplate template =
+                    CertificateListTemplate.valueOf(certificates, true);
             this.requestContext = requestContext.clone();
             this.certEntries = new LinkedList<>();
-            for (X509Certificate cert : certificates) {
-                byte[] encoded = cert.getEncoded();
+            for (byte[] encoded : template.encodedCerts) {
                 SSLExtensions extensions = new SSLExtensions(this);
                 certEntries.add(new CertificateEntry(encoded, extensions));
             }
+            this.encodedCertList = template.encoded;
         }
 
         T13CertificateMessage(HandshakeContext handshakeContext,
@@ -822,6 +901,7 @@ final class CertificateMessage {
 
             this.requestContext = requestContext.clone();
             this.certEntries = certificates;
+            this.encodedCertList = null;
         }
 
         T13CertificateMessage(HandshakeContext handshakeContext,
@@ -879,6 +959,7 @@ final class CertificateMessage {
             }
 
             this.certEntries = Collections.unmodifiableList(certList);
+            this.encodedCertList = null;
         }
 
         @Override
@@ -898,6 +979,12 @@ final class CertificateMessage {
 
         @Override
         public void send(HandshakeOutStream hos) throws IOException {
+            if (encodedCertList != null && !hasExtensions()) {
+                hos.putBytes8(requestContext);
+                hos.write(encodedCertList, 0, encodedCertList.length);
+                return;
+            }
+
             int entryListLen = 0;
             for (CertificateEntry entry : certEntries) {
                 entryListLen += entry.getEncodedSize();
@@ -916,6 +1003,17 @@ final class CertificateMessage {
             }
         }
 
+        // Does any certificate entry carry extensions?
+        private boolean hasExtensions() {
+            for (CertificateEntry entry : certEntries) {
+                if (entry.extensions.length() != 0) {
+                    return true;
+                }
+            }
+
+            return false;
+        }
+
         @Override
         public String toString() {
             MessageFormat messageFormat = new MessageFormat(
@@ -1244,11 +1342,10 @@ final class CertificateMessage {
             X509Certificate[] certs =
                     new X509Certificate[certEntries.size()];
             try {
-                CertificateFactory cf = CertificateFactory.getInstance("X.509");
                 int i = 0;
                 for (CertificateEntry entry : certEntries) {
-                    certs[i++] = (X509Certificate)cf.generateCertificate(
-                                    new ByteArrayInputStream(entry.encoded));
+                    certs[i++] =
+                        X509CertificateCache.generateCertificate(entry.encoded);
                 }
             } catch (CertificateException ce) {
                 throw shc.conContext.fatal(Alert.BAD_CERTIFICATE,
@@ -1309,11 +1406,10 @@ final class CertificateMessage {
             X509Certificate[] certs =
                     new X509Certificate[certEntries.size()];
             try {
-                CertificateFactory cf = CertificateFactory.getInstance("X.509");
                 int i = 0;
                 for (CertificateEntry entry : certEntries) {
-                    certs[i++] = (X509Certificate)cf.generateCertificate(
-                                    new ByteArrayInputStream(entry.encoded));
+                    certs[i++] =
+                        X509CertificateCache.generateCertificate(entry.encoded);
                 }
             } catch (CertificateException ce) {
                 throw chc.conContext.fatal(Alert.BAD_CERTIFICATE,
@@ -66,6 +66,61 @@ final class CertificateRequest {
     static final HandshakeProducer t13HandshakeProducer =
         new T13CertificateRequestProducer();
 
+    /*
+     * The encoded subject names of the accepted issuers of the trust
+     * manager of an SSLContext.
+     *
+     * The trust manager usually returns the same certificate objects for
+     * every handshake, so the encodings are computed once and then shared
+     * until the trust manager returns other certificates.
+     */
+    static final class EncodedAuthorities {
+        private final X509Certificate[] issuers;
+        private final List<byte[]> encoded;
+
+        private EncodedAuthorities(X509Certificate[] issuers) {
+            List<byte[]> names = new ArrayList<>(issuers.length);
+            for (X509Certificate cert : issuers) {
+                X500Principal x500Principal = cert.getSubjectX500Principal();
+                names.add(x500Principal.getEncoded());
+            }
+
+            this.issuers = issuers.clone();
+            this.encoded = Collections.unmodifiableList(names);
+        }
+
+        // Compare the references only, a certificate object is immutable.
+        private boolean isEncodingOf(X509Certificate[] certs) {
+            if (certs.length != issuers.length) {
+                return false;
+            }
+
+            for (int i = 0; i < certs.length; i++) {
+                if (certs[i] != issuers[i]) {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+    }
+
+    /*
+     * Return the encoded subject names of the trusted certificates.
+     */
+    private static List<byte[]> getEncodedAuthorities(
+            HandshakeContext handshakeContext,
+            X509Certificate[] trustedCerts) {
+        SSLContextImpl sslContext = handshakeContext.sslContext;
+        EncodedAuthorities authorities = sslContext.getEncodedAuthorities();
+        if (authorities == null || !authorities.isEncodingOf(trustedCerts)) {
+            authorities = new EncodedAuthorities(trustedCerts);
+            sslContext.setEncodedAuthorities(authorities);
+        }
+
+        return authorities.encoded;
+    }
+
     // TLS 1.2 and prior versions
     private static enum ClientCertificateType {
         // RFC 2246
@@ -155,11 +210,8 @@ final class CertificateRequest {
                 X509Certificate[] trustedCerts, KeyExchange keyExchange) {
             super(handshakeContext);
 
-            this.authorities = new ArrayList<>(trustedCerts.length);
-            for (X509Certificate cert : trustedCerts) {
-                X500Principal x500Principal = cert.getSubjectX500Principal();
-                authorities.add(x500Principal.getEncoded());
-            }
+            this.authorities =
+                    getEncodedAuthorities(handshakeContext, trustedCerts);
 
             this.types = ClientCertificateType.CERT_TYPES;
         }
@@ -438,11 +490,8 @@ final class CertificateRequest {
                 algorithmIds[i++] = scheme.id;
             }
 
-            this.authorities = new ArrayList<>(trustedCerts.length);
-            for (X509Certificate cert : trustedCerts) {
-                X500Principal x500Principal = cert.getSubjectX500Principal();
-                authorities.add(x500Principal.getEncoded());
-            }
+            this.authorities =
+                    getEncodedAuthorities(handshakeContext, trustedCerts);
         }
 
         T12CertificateRequestMessage(HandshakeContext handshakeContext,
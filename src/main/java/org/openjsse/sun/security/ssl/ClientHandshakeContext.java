@@ -26,9 +26,12 @@
 package org.openjsse.sun.security.ssl;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.security.cert.X509Certificate;
+import java.util.AbstractMap.SimpleImmutableEntry;
 
 import org.openjsse.sun.security.ssl.ClientHello.ClientHelloMessage;
+import org.openjsse.sun.security.ssl.SSLCipher.SSLWriteCipher;
 
 class ClientHandshakeContext extends HandshakeContext {
     /*
@@ -98,6 +101,16 @@ class ClientHandshakeContext extends HandshakeContext {
     // PSK identity is selected in first Hello and used again after HRR
     byte[] pskIdentity;
 
+    // TLS 1.3 early data has been sent with the ClientHello.
+    boolean isEarlyDataSent = false;
+
+    // The handshake traffic write cipher, reserved until the early data
+    // is ended or rejected.
+    SSLWriteCipher reservedWriteCipher = null;
+
+    // The ClientHello message is produced by a delegated task.
+    private boolean kickstartDelegated = false;
+
     ClientHandshakeContext(SSLContextImpl sslContext,
             TransportContext conContext) throws IOException {
         super(sslContext, conContext);
@@ -105,11 +118,35 @@ class ClientHandshakeContext extends HandshakeContext {
 
     @Override
     void kickstart() throws IOException {
-        if (kickstartMessageDelivered) {
+        if (kickstartMessageDelivered || kickstartDelegated) {
+            return;
+        }
+
+        // The ClientHello message generates the key shares, so produce it
+        // in a delegated task if all handshake tasks are delegated.  The
+        // delegated action has no message fragment.
+        if (conContext.transport.useDelegatedTask() &&
+                sslConfig.delegatesAllHandshakeTasks()) {
+            kickstartDelegated = true;
+            delegatedActions.add(new SimpleImmutableEntry<>(
+                    SSLHandshake.CLIENT_HELLO.id, (ByteBuffer)null));
             return;
         }
 
         SSLHandshake.kickstart(this);
         kickstartMessageDelivered = true;
     }
+
+    @Override
+    void dispatch(byte handshakeType,
+            ByteBuffer fragment) throws IOException {
+        if (fragment == null) {         // the delegated kickstart
+            kickstartDelegated = false;
+            SSLHandshake.kickstart(this);
+            kickstartMessageDelivered = true;
+            return;
+        }
+
+        super.dispatch(handshakeType, fragment);
+    }
 }
@@ -637,6 +637,16 @@ final class ClientHello {
                     SSLHandshake.CLIENT_HELLO, chc.activeProtocols);
             chm.extensions.produce(chc, extTypes);
 
+            // Early data can be sent with a pre-shared key only.  Note that
+            // the "early_data" extension is produced before the PSK binder.
+            if (chc.handshakeExtensions.containsKey(
+                        SSLExtension.CH_EARLY_DATA) &&
+                    !chc.handshakeExtensions.containsKey(
+                        SSLExtension.CH_PRE_SHARED_KEY)) {
+                chm.extensions.remove(SSLExtension.CH_EARLY_DATA);
+                chc.handshakeExtensions.remove(SSLExtension.CH_EARLY_DATA);
+            }
+
             if (SSLLogger.isOn && SSLLogger.isOn("ssl,handshake")) {
                 SSLLogger.fine("Produced ClientHello handshake message", chm);
             }
@@ -645,6 +655,12 @@ final class ClientHello {
             chm.write(chc.handshakeOutput);
             chc.handshakeOutput.flush();
 
+            // Send the early data, if offered.
+            if (chc.handshakeExtensions.containsKey(
+                    SSLExtension.CH_EARLY_DATA)) {
+                EarlyDataExtension.send(chc, chm);
+            }
+
             // Reserve the initial ClientHello message for the follow on
             // cookie exchange if needed.
             chc.initialClientHelloMsg = chm;
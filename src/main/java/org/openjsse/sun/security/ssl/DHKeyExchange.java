@@ -103,7 +103,16 @@ final class DHKeyExchange {
         final DHPublicKey publicKey;
         final NamedGroup namedGroup;
 
-        DHEPossession(NamedGroup namedGroup, SecureRandom random) {
+        DHEPossession(NamedGroup namedGroup, SSLContextImpl sslContext) {
+            KeyPair kp = sslContext.getEphemeralKeyManager().getKeyPair(
+                    namedGroup, sslContext.getSecureRandom());
+            privateKey = kp.getPrivate();
+            publicKey = (DHPublicKey)kp.getPublic();
+            this.namedGroup = namedGroup;
+        }
+
+        static KeyPair generateKeyPair(
+                NamedGroup namedGroup, SecureRandom random) {
             try {
                 KeyPairGenerator kpg =
                         JsseJce.getKeyPairGenerator("DiffieHellman");
@@ -114,14 +123,11 @@ final class DHKeyExchange {
                 if (kp == null) {
                     throw new RuntimeException("Could not generate DH keypair");
                 }
-                privateKey = kp.getPrivate();
-                publicKey = (DHPublicKey)kp.getPublic();
+                return kp;
             } catch (GeneralSecurityException gse) {
                 throw new RuntimeException(
                         "Could not generate DH keypair", gse);
             }
-
-            this.namedGroup = namedGroup;
         }
 
         DHEPossession(int keyLength, SecureRandom random) {
@@ -172,7 +178,7 @@ final class DHKeyExchange {
         }
 
         // Generate and validate DHPublicKeySpec
-        private KeyPair generateDHKeyPair(
+        private static KeyPair generateDHKeyPair(
                 KeyPairGenerator kpg) throws GeneralSecurityException {
             boolean doExtraValiadtion =
                     (!KeyUtil.isOracleJCEProvider(kpg.getProvider().getName()));
@@ -309,8 +315,8 @@ final class DHKeyExchange {
                                 NamedGroupType.NAMED_GROUP_FFDHE,
                                 context.clientRequestedNamedGroups);
                 if (preferableNamedGroup != null) {
-                    return new DHEPossession(preferableNamedGroup,
-                                context.sslContext.getSecureRandom());
+                    return new DHEPossession(
+                            preferableNamedGroup, context.sslContext);
                 }
             }
 
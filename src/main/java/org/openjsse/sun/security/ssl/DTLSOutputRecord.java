@@ -272,6 +272,10 @@ final class DTLSOutputRecord extends OutputRecord implements DTLSRecord {
                     ", length = " + destination.remaining());
         }
 
+        if (metrics != null) {
+            metrics.recordEncrypted(fragLen);
+        }
+
         // Encrypt the fragment and wrap up a record.
         long recordSN = encrypt(writeCipher,
                 ContentType.APPLICATION_DATA.id, destination,
@@ -206,8 +206,8 @@ final class ECDHClientKeyExchange {
                     "Unsupported EC server cert for ECDH client key exchange");
             }
 
-            ECDHEPossession ecdhePossession = new ECDHEPossession(
-                    namedGroup, chc.sslContext.getSecureRandom());
+            ECDHEPossession ecdhePossession =
+                    new ECDHEPossession(namedGroup, chc.sslContext);
             chc.handshakePossessions.add(ecdhePossession);
             ECDHClientKeyExchangeMessage cke =
                     new ECDHClientKeyExchangeMessage(
@@ -389,7 +389,7 @@ final class ECDHClientKeyExchange {
             }
 
             ECDHEPossession ecdhePossession = new ECDHEPossession(
-                    ecdheCredentials, chc.sslContext.getSecureRandom());
+                    ecdheCredentials.namedGroup, chc.sslContext);
             chc.handshakePossessions.add(ecdhePossession);
             ECDHClientKeyExchangeMessage cke =
                     new ECDHClientKeyExchangeMessage(
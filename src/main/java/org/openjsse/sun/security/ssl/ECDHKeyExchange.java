@@ -103,37 +103,26 @@ final class ECDHKeyExchange {
         final ECPublicKey publicKey;
         final NamedGroup namedGroup;
 
-        ECDHEPossession(NamedGroup namedGroup, SecureRandom random) {
-            try {
-                KeyPairGenerator kpg = JsseJce.getKeyPairGenerator("EC");
-                ECGenParameterSpec params =
-                        (ECGenParameterSpec)namedGroup.getParameterSpec();
-                kpg.initialize(params, random);
-                KeyPair kp = kpg.generateKeyPair();
-                privateKey = kp.getPrivate();
-                publicKey = (ECPublicKey)kp.getPublic();
-            } catch (GeneralSecurityException e) {
-                throw new RuntimeException(
-                    "Could not generate ECDH keypair", e);
-            }
-
+        ECDHEPossession(NamedGroup namedGroup, SSLContextImpl sslContext) {
+            KeyPair kp = sslContext.getEphemeralKeyManager().getKeyPair(
+                    namedGroup, sslContext.getSecureRandom());
+            privateKey = kp.getPrivate();
+            publicKey = (ECPublicKey)kp.getPublic();
             this.namedGroup = namedGroup;
         }
 
-        ECDHEPossession(ECDHECredentials credentials, SecureRandom random) {
-            ECParameterSpec params = credentials.popPublicKey.getParams();
+        static KeyPair generateKeyPair(
+                NamedGroup namedGroup, SecureRandom random) {
             try {
                 KeyPairGenerator kpg = JsseJce.getKeyPairGenerator("EC");
+                ECGenParameterSpec params =
+                        (ECGenParameterSpec)namedGroup.getParameterSpec();
                 kpg.initialize(params, random);
-                KeyPair kp = kpg.generateKeyPair();
-                privateKey = kp.getPrivate();
-                publicKey = (ECPublicKey)kp.getPublic();
+                return kpg.generateKeyPair();
             } catch (GeneralSecurityException e) {
                 throw new RuntimeException(
                     "Could not generate ECDH keypair", e);
             }
-
-            this.namedGroup = credentials.namedGroup;
         }
 
         @Override
@@ -226,8 +215,8 @@ final class ECDHKeyExchange {
             }
 
             if (preferableNamedGroup != null) {
-                return new ECDHEPossession(preferableNamedGroup,
-                            context.sslContext.getSecureRandom());
+                return new ECDHEPossession(
+                        preferableNamedGroup, context.sslContext);
             }
 
             // no match found, cannot use this cipher suite.
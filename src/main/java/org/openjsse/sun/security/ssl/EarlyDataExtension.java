@@ -0,0 +1,779 @@
+/*
+ * Copyright 2019 Azul Systems, Inc.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.openjsse.sun.security.ssl;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.text.MessageFormat;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.IvParameterSpec;
+import javax.net.ssl.SSLProtocolException;
+import org.openjsse.sun.security.ssl.ClientHello.ClientHelloMessage;
+import org.openjsse.sun.security.ssl.SSLCipher.SSLReadCipher;
+import org.openjsse.sun.security.ssl.SSLCipher.SSLWriteCipher;
+import org.openjsse.sun.security.ssl.SSLExtension.ExtensionConsumer;
+import org.openjsse.sun.security.ssl.SSLExtension.SSLExtensionSpec;
+import org.openjsse.sun.security.ssl.SSLHandshake.HandshakeMessage;
+import org.openjsse.sun.security.ssl.SSLTrafficKeyDerivation.T13TrafficKeyDerivation;
+import org.openjsse.sun.security.util.Cache.EqualByteArray;
+import static org.openjsse.sun.security.ssl.SSLExtension.*;
+
+/**
+ * Pack of the "early_data" extensions [RFC 8446].
+ *
+ * The client may send application data in the first flight (0-RTT) when
+ * resuming a TLS 1.3 session whose ticket allows early data.  The server
+ * accepts the early data only if it is enabled (see the
+ * "org.openjsse.server.maxEarlyDataSize" System Property), the ticket is
+ * fresh, and the ClientHello has not been seen before by the same
+ * SSLContext (see {@link ReplayStore}).  Rejected early
+ * data is skipped, and the handshake falls back to 1-RTT.
+ *
+ * Early data is not forward secret and may be replayed across servers
+ * that do not share the anti-replay state, so applications should only
+ * send idempotent requests as early data.
+ */
+final class EarlyDataExtension {
+    static final HandshakeProducer chNetworkProducer =
+            new CHEarlyDataProducer();
+    static final ExtensionConsumer chOnLoadConsumer =
+            new CHEarlyDataConsumer();
+
+    static final HandshakeProducer eeNetworkProducer =
+            new EEEarlyDataProducer();
+    static final ExtensionConsumer eeOnLoadConsumer =
+            new EEEarlyDataConsumer();
+    static final HandshakeAbsence eeOnLoadAbsence =
+            new EEEarlyDataAbsence();
+
+    static final HandshakeProducer nstNetworkProducer =
+            new NSTEarlyDataProducer();
+    static final ExtensionConsumer nstOnLoadConsumer =
+            new NSTEarlyDataConsumer();
+
+    static final SSLStringizer edStringizer = new EarlyDataStringizer();
+
+    // The tolerated difference between the ticket age reported by the
+    // client and the ticket age seen by the server, in milliseconds.
+    private static final long TICKET_AGE_TOLERANCE = 10000L;
+
+    /**
+     * The ClientHello binders of the accepted early data of an SSLContext.
+     *
+     * A ClientHello is fresh for at most twice the ticket age tolerance,
+     * so a binder only needs to be remembered for that long.  The binders
+     * are kept in two sets, each covering one such window: new binders go
+     * into the current set, and when the window ends the current set
+     * becomes the previous one and the previous one is dropped.  A binder
+     * is therefore remembered for one to two windows, without any limit
+     * on the number of binders per window.
+     *
+     * Binders are recorded under the read lock, so that concurrent
+     * handshakes only contend on the insertion into the current set;
+     * the rotation of the sets, once per window, takes the write lock.
+     */
+    static final class ReplayStore {
+        private static final long WINDOW = TICKET_AGE_TOLERANCE * 2;
+
+        private final ReadWriteLock lock = new ReentrantReadWriteLock();
+        private ConcurrentMap<EqualByteArray, Boolean> current =
+                new ConcurrentHashMap<>();
+        private ConcurrentMap<EqualByteArray, Boolean> previous =
+                new ConcurrentHashMap<>();
+        private volatile long windowStart = System.currentTimeMillis();
+
+        /**
+         * Record the binder, and return false if it has been recorded
+         * before.
+         */
+        boolean record(byte[] binder) {
+            long currentTime = System.currentTimeMillis();
+            if (currentTime - windowStart >= WINDOW) {
+                rotate(currentTime);
+            }
+
+            EqualByteArray key = new EqualByteArray(binder);
+            lock.readLock().lock();
+            try {
+                // The previous set is not updated under the read lock.
+                return !previous.containsKey(key) &&
+                        current.putIfAbsent(key, Boolean.TRUE) == null;
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        private void rotate(long currentTime) {
+            lock.writeLock().lock();
+            try {
+                long elapsed = currentTime - windowStart;
+                if (elapsed < WINDOW) {
+                    return;     // rotated by another thread
+                }
+
+                previous = (elapsed < WINDOW * 2) ?
+                        current : new ConcurrentHashMap<>();
+                current = new ConcurrentHashMap<>();
+                windowStart = currentTime;
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * The "early_data" extension.
+     *
+     *      struct {} Empty;
+     *
+     *      struct {
+     *          select (Handshake.msg_type) {
+     *              case new_session_ticket:   uint32 max_early_data_size;
+     *              case client_hello:         Empty;
+     *              case encrypted_extensions: Empty;
+     *          };
+     *      } EarlyDataIndication;
+     */
+    static final class EarlyDataSpec implements SSLExtensionSpec {
+        // A nominal object for the empty extension_data field.
+        static final EarlyDataSpec NOMINAL = new EarlyDataSpec(-1);
+
+        // The max_early_data_size, or -1 for the empty extension_data.
+        final int maxEarlyDataSize;
+
+        private EarlyDataSpec(int maxEarlyDataSize) {
+            this.maxEarlyDataSize = maxEarlyDataSize;
+        }
+
+        private EarlyDataSpec(ByteBuffer m) throws IOException {
+            if (!m.hasRemaining()) {
+                this.maxEarlyDataSize = -1;
+            } else if (m.remaining() == 4) {
+                long size = Record.getInt32(m) & 0xFFFFFFFFL;
+                this.maxEarlyDataSize = (int)Math.min(size, Integer.MAX_VALUE);
+            } else {
+                throw new SSLProtocolException(
+                    "Invalid early_data extension: unexpected data");
+            }
+        }
+
+        @Override
+        public String toString() {
+            if (maxEarlyDataSize < 0) {
+                return "<empty>";
+            }
+
+            MessageFormat messageFormat = new MessageFormat(
+                "\"max_early_data_size\": {0}", Locale.ENGLISH);
+
+            Object[] messageFields = {
+                    Integer.toUnsignedString(maxEarlyDataSize)
+                };
+            return messageFormat.format(messageFields);
+        }
+    }
+
+    private static final
+            class EarlyDataStringizer implements SSLStringizer {
+        @Override
+        public String toString(ByteBuffer buffer) {
+            try {
+                return (new EarlyDataSpec(buffer)).toString();
+            } catch (IOException ioe) {
+                // For debug logging only, so please swallow exceptions.
+                return ioe.getMessage();
+            }
+        }
+    }
+
+    /**
+     * Network data producer of the extension in a ClientHello
+     * handshake message.
+     */
+    private static final
+            class CHEarlyDataProducer implements HandshakeProducer {
+        // Prevent instantiation of this class.
+        private CHEarlyDataProducer() {
+            // blank
+        }
+
+        @Override
+        public byte[] produce(ConnectionContext context,
+                HandshakeMessage message) throws IOException {
+            // The producing happens in client side only.
+            ClientHandshakeContext chc = (ClientHandshakeContext)context;
+
+            // Is it a supported and enabled extension?
+            if (!chc.sslConfig.isAvailable(CH_EARLY_DATA)) {
+                if (SSLLogger.isOn && SSLLogger.isOn("ssl,handshake")) {
+                    SSLLogger.fine(
+                        "Ignore unavailable early_data extension");
+                }
+                return null;
+            }
+
+            byte[] earlyData = chc.conContext.earlyData;
+            if (earlyData == null || earlyData.length == 0) {
+                // No early data to send.
+                return null;
+            }
+
+            // Early data can be sent with a TLS 1.3 session resumption only.
+            SSLSessionImpl session = chc.resumingSession;
+            if (!chc.isResumption || session == null ||
+                    !session.getProtocolVersion().useTLS13PlusSpec() ||
+                    session.getPreSharedKey() == null) {
+                if (SSLLogger.isOn && SSLLogger.isOn("ssl,handshake")) {
+                    SSLLogger.fine(
+                        "No TLS 1.3 session to resume, no early data sent");
+                }
+                return null;
+            }
+
+            if (earlyData.length > session.getMaxEarlyDataSize()) {
+                if (SSLLogger.isOn && SSLLogger.isOn("ssl,handshake")) {
+                    SSLLogger.fine(
+                        "Too much early data for the session, " +
+                        "max_early_data_size: " +
+                        session.getMaxEarlyDataSize());
+                }
+                return null;
+            }
+
+            // The early data is bound to the application protocol of
+            // the session.
+            String ap = session.getApplicationProtocol();
+            if (!ap.isEmpty() && !Arrays.asList(
+                    chc.sslConfig.applicationProtocols).contains(ap)) {
+                if (SSLLogger.isOn && SSLLogger.isOn("ssl,handshake")) {
+                    SSLLogger.fine(
+                        "Application protocol of the session is not " +
+                        "offered, no early data sent: " + ap);
+                }
+                return null;
+            }
+
+            // Update the context.
+            chc.handshakeExtensions.put(CH_EARLY_DATA, EarlyDataSpec.NOMINAL);
+
+            return new byte[0];
+        }
+    }
+
+    /**
+     * Network data consumer of the extension in a ClientHello
+     * handshake message.
+     */
+    private static final
+            class CHEarlyDataConsumer implements ExtensionConsumer {
+        // Prevent instantiation of this class.
+        private CHEarlyDataConsumer() {
+            // blank
+        }
+
+        @Override
+        public void consume(ConnectionContext context,
+            HandshakeMessage message, ByteBuffer buffer) throws IOException {
+            // The consuming happens in server side only.
+            ServerHandshakeContext shc = (ServerHandshakeContext)context;
+
+            // Is it a supported and enabled extension?
+            if (!shc.sslConfig.isAvailable(CH_EARLY_DATA)) {
+                if (SSLLogger.isOn && SSLLogger.isOn("ssl,handshake")) {
+                    SSLLogger.fine(
+                        "Ignore unavailable early_data extension");
+                }
+                return;     // ignore the extension
+            }
+
+            // Parse the extension.
+            EarlyDataSpec spec;
+            try {
+                spec = new EarlyDataSpec(buffer);
+            } catch (IOException ioe) {
+                throw shc.conContext.fatal(Alert.UNEXPECTED_MESSAGE, ioe);
+            }
+
+            if (spec.maxEarlyDataSize >= 0) {
+                throw shc.conContext.fatal(Alert.ILLEGAL_PARAMETER,
+                    "Invalid early_data extension in ClientHello: not empty");
+            }
+
+            // Unless accepted later, the early data will be skipped.  The
+            // "pre_shared_key" extension has been loaded, so the resuming
+            // session, if any, is known here.
+            int maxEarlyDataSize = shc.sslConfig.maxEarlyDataSize;
+            if (shc.resumingSession != null) {
+                maxEarlyDataSize = Math.max(maxEarlyDataSize,
+                        shc.resumingSession.getMaxEarlyDataSize());
+            }
+            if (maxEarlyDataSize > 0) {
+                // Allow for the record protection expansion.
+                int records = maxEarlyDataSize / Record.maxDataSize + 1;
+                shc.conContext.inputRecord.skipEarlyData((int)Math.min(
+                        (long)maxEarlyDataSize +
+                                (long)records * Record.maxPadding,
+                        Integer.MAX_VALUE));
+            }
+
+            // Update the context.
+            shc.handshakeExtensions.put(CH_EARLY_DATA, spec);
+        }
+    }
+
+    /**
+     * Network data producer of the extension in an EncryptedExtensions
+     * handshake message.
+     *
+     * The early data is accepted or rejected here, after the negotiation
+     * of the application protocol.
+     */
+    private static final
+            class EEEarlyDataProducer implements HandshakeProducer {
+        // Prevent instantiation of this class.
+        private EEEarlyDataProducer() {
+            // blank
+        }
+
+        @Override
+        public byte[] produce(ConnectionContext context,
+                HandshakeMessage message) throws IOException {
+            // The producing happens in server side only.
+            ServerHandshakeContext shc = (ServerHandshakeContext)context;
+
+            SSLReadCipher earlyReadCipher = shc.earlyReadCipher;
+            if (earlyReadCipher == null) {
+                // No early data offered, or not a resumption.
+                return null;
+            }
+            shc.earlyReadCipher = null;
+
+            if (!isAcceptable(shc)) {
+                // Skip the early data, and use the handshake traffic keys.
+                shc.conContext.inputRecord.changeReadCiphers(
+                        shc.reservedReadCipher);
+                shc.reservedReadCipher = null;
+                earlyReadCipher.dispose();
+
+                return null;
+            }
+
+            if (SSLLogger.isOn && SSLLogger.isOn("ssl,handshake")) {
+                SSLLogger.fine("Accept the early data");
+            }
+
+            // Update the context.
+            shc.conContext.isEarlyDataAccepted = true;
+            shc.conContext.inputRecord.skipEarlyData(0);
+            shc.conContext.inputRecord.changeReadCiphers(earlyReadCipher);
+            shc.earlyData = new ByteArrayOutputStream();
+            shc.handshakeConsumers.put(SSLHandshake.END_OF_EARLY_DATA.id,
+                    SSLHandshake.END_OF_EARLY_DATA);
+
+            return new byte[0];
+        }
+
+        private static boolean isAcceptable(ServerHandshakeContext shc) {
+            SSLSessionImpl session = shc.resumingSession;
+            String reason = null;
+            if (shc.sslConfig.maxEarlyDataSize <= 0) {
+                reason = "early data is not enabled";
+            } else if (session == null || session.getMaxEarlyDataSize() <= 0) {
+                reason = "the session does not allow early data";
+            } else if (PreSharedKeyExtension.getSelectedIdentity(shc) != 0) {
+                reason = "not the first PSK identity";
+            } else if (!session.getApplicationProtocol().equals(
+                    (shc.applicationProtocol == null) ?
+                            "" : shc.applicationProtocol)) {
+                reason = "application protocol changed";
+            } else if (!isFresh(shc, session)) {
+                reason = "the ticket age does not match";
+            } else if (isReplayed(shc)) {
+                reason = "the ClientHello may be replayed";
+            }
+
+            if (reason != null) {
+                if (SSLLogger.isOn && SSLLogger.isOn("ssl,handshake")) {
+                    SSLLogger.fine("Reject the early data, " + reason);
+                }
+                return false;
+            }
+
+            return true;
+        }
+
+        // Compare the ticket age of the client with the ticket age seen
+        // by the server.
+        private static boolean isFresh(ServerHandshakeContext shc,
+                SSLSessionImpl session) {
+            long obfuscatedAge = PreSharedKeyExtension.getSelectedTicketAge(shc);
+            if (obfuscatedAge < 0) {
+                return false;
+            }
+
+            long clientAge = (obfuscatedAge -
+                    (session.getTicketAgeAdd() & 0xFFFFFFFFL)) & 0xFFFFFFFFL;
+            long serverAge =
+                    System.currentTimeMillis() - session.getTicketCreationTime();
+
+            return Math.abs(clientAge - serverAge) <= TICKET_AGE_TOLERANCE;
+        }
+
+        // Record the binder of the ClientHello, and check for replays.
+        //
+        // The binder is unique per ClientHello.
+        private static boolean isReplayed(ServerHandshakeContext shc) {
+            byte[] binder = PreSharedKeyExtension.getSelectedBinder(shc);
+            if (binder == null) {
+                return true;
+            }
+
+            return !shc.sslContext.getEarlyDataReplayStore().record(binder);
+        }
+    }
+
+    /**
+     * Network data consumer of the extension in an EncryptedExtensions
+     * handshake message.
+     */
+    private static final
+            class EEEarlyDataConsumer implements ExtensionConsumer {
+        // Prevent instantiation of this class.
+        private EEEarlyDataConsumer() {
+            // blank
+        }
+
+        @Override
+        public void consume(ConnectionContext context,
+            HandshakeMessage message, ByteBuffer buffer) throws IOException {
+            // The consuming happens in client side only.
+            ClientHandshakeContext chc = (ClientHandshakeContext)context;
+
+            // Is it a response of the specific request?
+            if (!chc.handshakeExtensions.containsKey(CH_EARLY_DATA)) {
+                throw chc.conContext.fatal(Alert.UNSUPPORTED_EXTENSION,
+                    "Unexpected early_data extension in EncryptedExtensions");
+            }
+
+            // Parse the extension.
+            EarlyDataSpec spec;
+            try {
+                spec = new EarlyDataSpec(buffer);
+            } catch (IOException ioe) {
+                throw chc.conContext.fatal(Alert.UNEXPECTED_MESSAGE, ioe);
+            }
+
+            if (spec.maxEarlyDataSize >= 0) {
+                throw chc.conContext.fatal(Alert.ILLEGAL_PARAMETER,
+                    "Invalid early_data extension in EncryptedExtensions: " +
+                    "not empty");
+            }
+
+            // The early data is bound to the resumed session, and to its
+            // application protocol.
+            if (!chc.isResumption || chc.resumingSession == null) {
+                throw chc.conContext.fatal(Alert.ILLEGAL_PARAMETER,
+                    "Early data accepted without session resumption");
+            }
+
+            String ap = (chc.applicationProtocol == null) ?
+                    "" : chc.applicationProtocol;
+            if (!ap.equals(chc.resumingSession.getApplicationProtocol())) {
+                throw chc.conContext.fatal(Alert.ILLEGAL_PARAMETER,
+                    "Early data accepted with a different " +
+                    "application protocol");
+            }
+
+            // Update the context.
+            chc.conContext.isEarlyDataAccepted = true;
+            chc.handshakeExtensions.put(EE_EARLY_DATA, spec);
+            chc.handshakeProducers.put(SSLHandshake.END_OF_EARLY_DATA.id,
+                    SSLHandshake.END_OF_EARLY_DATA);
+        }
+    }
+
+    /**
+     * The absence processing if the extension is not present in
+     * an EncryptedExtensions handshake message.
+     */
+    private static final
+            class EEEarlyDataAbsence implements HandshakeAbsence {
+        @Override
+        public void absent(ConnectionContext context,
+                HandshakeMessage message) throws IOException {
+            // The consuming happens in client side only.
+            ClientHandshakeContext chc = (ClientHandshakeContext)context;
+
+            // The early data is rejected, use the handshake traffic keys.
+            if (chc.reservedWriteCipher != null) {
+                if (SSLLogger.isOn && SSLLogger.isOn("ssl,handshake")) {
+                    SSLLogger.fine("The early data is rejected");
+                }
+
+                chc.conContext.outputRecord.changeWriteCiphers(
+                        chc.reservedWriteCipher, false);
+                chc.reservedWriteCipher = null;
+            }
+        }
+    }
+
+    /**
+     * Network data producer of the extension in a NewSessionTicket
+     * handshake message.
+     */
+    private static final
+            class NSTEarlyDataProducer implements HandshakeProducer {
+        // Prevent instantiation of this class.
+        private NSTEarlyDataProducer() {
+            // blank
+        }
+
+        @Override
+        public byte[] produce(ConnectionContext context,
+                HandshakeMessage message) throws IOException {
+            // The producing happens in server side only.
+            HandshakeContext hc = (HandshakeContext)context;
+
+            int maxEarlyDataSize = hc.sslConfig.maxEarlyDataSize;
+            if (maxEarlyDataSize <= 0) {
+                // Early data is not enabled.
+                return null;
+            }
+
+            byte[] extData = new byte[4];
+            ByteBuffer m = ByteBuffer.wrap(extData);
+            Record.putInt32(m, maxEarlyDataSize);
+
+            return extData;
+        }
+    }
+
+    /**
+     * Network data consumer of the extension in a NewSessionTicket
+     * handshake message.
+     */
+    private static final
+            class NSTEarlyDataConsumer implements ExtensionConsumer {
+        // Prevent instantiation of this class.
+        private NSTEarlyDataConsumer() {
+            // blank
+        }
+
+        @Override
+        public void consume(ConnectionContext context,
+            HandshakeMessage message, ByteBuffer buffer) throws IOException {
+            // The consuming happens in client side only.
+            HandshakeContext hc = (HandshakeContext)context;
+
+            // Parse the extension.
+            EarlyDataSpec spec;
+            try {
+                spec = new EarlyDataSpec(buffer);
+            } catch (IOException ioe) {
+                throw hc.conContext.fatal(Alert.UNEXPECTED_MESSAGE, ioe);
+            }
+
+            if (spec.maxEarlyDataSize < 0) {
+                throw hc.conContext.fatal(Alert.ILLEGAL_PARAMETER,
+                    "Invalid early_data extension in NewSessionTicket: " +
+                    "no max_early_data_size");
+            }
+
+            // Update the context.
+            hc.handshakeExtensions.put(NST_EARLY_DATA, spec);
+        }
+    }
+
+    /*
+     * Return the max_early_data_size of the NewSessionTicket handshake
+     * message, and clean up the context.
+     */
+    static int getMaxEarlyDataSize(HandshakeContext hc) {
+        EarlyDataSpec spec = (EarlyDataSpec)
+                hc.handshakeExtensions.remove(NST_EARLY_DATA);
+        return (spec == null) ? 0 : spec.maxEarlyDataSize;
+    }
+
+    /*
+     * Send the early data with the client early traffic keys, right after
+     * the ClientHello handshake message.
+     */
+    static void send(ClientHandshakeContext chc,
+            ClientHelloMessage clientHello) throws IOException {
+        SSLSessionImpl session = chc.resumingSession;
+        CipherSuite suite = session.getSuite();
+        ProtocolVersion protocol = session.getProtocolVersion();
+
+        SSLWriteCipher writeCipher;
+        try {
+            // The transcript is the ClientHello message only.
+            HandshakeHash transcript = chc.handshakeHash.copy();
+            transcript.determine(protocol, suite);
+            transcript.update();
+
+            SSLKeyDerivation kd = createKeyDerivation(suite,
+                    session.getPreSharedKey(), transcript.digest());
+            SecretKey writeKey = kd.deriveKey("TlsKey", null);
+            SecretKey writeIvSecret = kd.deriveKey("TlsIv", null);
+            IvParameterSpec writeIv =
+                    new IvParameterSpec(writeIvSecret.getEncoded());
+            writeCipher = suite.bulkCipher.createWriteCipher(
+                    Authenticator.valueOf(protocol), protocol,
+                    writeKey, writeIv, chc.sslContext.getSecureRandom());
+        } catch (GeneralSecurityException gse) {
+            throw chc.conContext.fatal(Alert.INTERNAL_ERROR,
+                    "Failure to derive early traffic keys", gse);
+        }
+
+        if (writeCipher == null) {
+            throw chc.conContext.fatal(Alert.ILLEGAL_PARAMETER,
+                "Illegal cipher suite (" + suite +
+                ") and protocol version (" + protocol + ")");
+        }
+
+        // In compatibility mode, the dummy change_cipher_spec record is
+        // sent before the early data.
+        chc.conContext.outputRecord.changeWriteCiphers(
+                writeCipher, (clientHello.sessionId.length() != 0));
+
+        byte[] earlyData = chc.conContext.earlyData;
+        chc.conContext.outputRecord.encodeEarlyData(
+                earlyData, 0, earlyData.length);
+        chc.conContext.outputRecord.flush();
+        chc.isEarlyDataSent = true;
+
+        if (SSLLogger.isOn && SSLLogger.isOn("ssl,handshake")) {
+            SSLLogger.fine("Sent early data, length = " + earlyData.length);
+        }
+    }
+
+    /*
+     * Create the read cipher of the client early traffic keys, or null if
+     * early data is not offered.
+     *
+     * The handshake key derivation should be of the early secret, and the
+     * transcript of the ClientHello message.
+     */
+    static SSLReadCipher createReadCipher(
+            ServerHandshakeContext shc) throws IOException {
+        if (!shc.handshakeExtensions.containsKey(CH_EARLY_DATA) ||
+                shc.sslConfig.maxEarlyDataSize <= 0) {
+            return null;
+        }
+
+        SSLReadCipher readCipher;
+        try {
+            SecretKey readSecret = shc.handshakeKeyDerivation.deriveKey(
+                    "TlsClientEarlyTrafficSecret", null);
+            SSLKeyDerivation kd = new T13TrafficKeyDerivation(
+                    shc.negotiatedCipherSuite, readSecret);
+            SecretKey readKey = kd.deriveKey("TlsKey", null);
+            SecretKey readIvSecret = kd.deriveKey("TlsIv", null);
+            IvParameterSpec readIv =
+                    new IvParameterSpec(readIvSecret.getEncoded());
+            readCipher =
+                    shc.negotiatedCipherSuite.bulkCipher.createReadCipher(
+                        Authenticator.valueOf(shc.negotiatedProtocol),
+                        shc.negotiatedProtocol, readKey, readIv,
+                        shc.sslContext.getSecureRandom());
+        } catch (GeneralSecurityException gse) {
+            throw shc.conContext.fatal(Alert.INTERNAL_ERROR,
+                    "Failure to derive early traffic keys", gse);
+        }
+
+        return readCipher;
+    }
+
+    private static final byte[] earlyTrafficLabel =
+            "tls13 c e traffic".getBytes();
+
+    // Derive the client early traffic keys on the client side, where the
+    // cipher suite has not been negotiated yet.
+    private static SSLKeyDerivation createKeyDerivation(CipherSuite suite,
+            SecretKey psk, byte[] transcriptHash)
+            throws GeneralSecurityException {
+        CipherSuite.HashAlg hashAlg = suite.hashAlg;
+        HKDF hkdf = new HKDF(hashAlg.name);
+        byte[] zeros = new byte[hashAlg.hashLength];
+        SecretKey earlySecret = hkdf.extract(zeros, psk, "TlsEarlySecret");
+        byte[] hkdfInfo = SSLSecretDerivation.createHkdfInfo(
+                earlyTrafficLabel, transcriptHash,
+                hashAlg.hashLength);
+        SecretKey writeSecret = hkdf.expand(earlySecret, hkdfInfo,
+                hashAlg.hashLength, "TlsClientEarlyTrafficSecret");
+
+        return new T13TrafficKeyDerivation(suite, writeSecret);
+    }
+
+    /*
+     * Buffer the early data received before the EndOfEarlyData handshake
+     * message.  Return false if no early data is expected.
+     */
+    static boolean receive(TransportContext context,
+            ByteBuffer fragment) throws IOException {
+        if (!(context.handshakeContext instanceof ServerHandshakeContext)) {
+            return false;
+        }
+
+        ServerHandshakeContext shc =
+                (ServerHandshakeContext)context.handshakeContext;
+        if (shc.earlyData == null) {
+            return false;
+        }
+
+        int length = fragment.remaining();
+        if (shc.earlyData.size() + length >
+                shc.resumingSession.getMaxEarlyDataSize()) {
+            throw context.fatal(Alert.UNEXPECTED_MESSAGE,
+                    "Too much early data");
+        }
+
+        if (fragment.hasArray()) {
+            shc.earlyData.write(fragment.array(),
+                    fragment.arrayOffset() + fragment.position(), length);
+            fragment.position(fragment.limit());
+        } else {
+            byte[] bytes = new byte[length];
+            fragment.get(bytes);
+            shc.earlyData.write(bytes, 0, length);
+        }
+
+        if (SSLLogger.isOn && SSLLogger.isOn("ssl,handshake")) {
+            SSLLogger.fine("Received early data, length = " + length);
+        }
+
+        return true;
+    }
+}
@@ -0,0 +1,178 @@
+/*
+ * Copyright 2019 Azul Systems, Inc.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.openjsse.sun.security.ssl;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import org.openjsse.sun.security.ssl.SSLHandshake.HandshakeMessage;
+
+/**
+ * Pack of the EndOfEarlyData handshake message.
+ */
+final class EndOfEarlyData {
+    static final SSLConsumer handshakeConsumer =
+        new EndOfEarlyDataConsumer();
+    static final HandshakeProducer handshakeProducer =
+        new EndOfEarlyDataProducer();
+
+    /**
+     * The EndOfEarlyData handshake message.
+     *
+     * [RFC 8446] If the server sent an "early_data" extension in
+     * EncryptedExtensions, the client MUST send an EndOfEarlyData message
+     * after receiving the server Finished.
+     *
+     *      struct {} EndOfEarlyData;
+     */
+    static final class EndOfEarlyDataMessage extends HandshakeMessage {
+        EndOfEarlyDataMessage(HandshakeContext handshakeContext) {
+            super(handshakeContext);
+        }
+
+        EndOfEarlyDataMessage(HandshakeContext handshakeContext,
+                ByteBuffer m) throws IOException {
+            super(handshakeContext);
+            if (m.hasRemaining()) {
+                throw handshakeContext.conContext.fatal(Alert.ILLEGAL_PARAMETER,
+                    "Error parsing EndOfEarlyData message: not empty");
+            }
+        }
+
+        @Override
+        public SSLHandshake handshakeType() {
+            return SSLHandshake.END_OF_EARLY_DATA;
+        }
+
+        @Override
+        public int messageLength() {
+            return 0;
+        }
+
+        @Override
+        public void send(HandshakeOutStream s) throws IOException {
+            // empty, nothing to send
+        }
+
+        @Override
+        public String toString() {
+            return "<empty>";
+        }
+    }
+
+    /**
+     * The "EndOfEarlyData" handshake message producer.
+     */
+    private static final class EndOfEarlyDataProducer
+            implements HandshakeProducer {
+        // Prevent instantiation of this class.
+        private EndOfEarlyDataProducer() {
+            // blank
+        }
+
+        @Override
+        public byte[] produce(ConnectionContext context,
+                HandshakeMessage message) throws IOException {
+            // The producing happens in client side only.
+            ClientHandshakeContext chc = (ClientHandshakeContext)context;
+
+            EndOfEarlyDataMessage eoedm = new EndOfEarlyDataMessage(chc);
+            if (SSLLogger.isOn && SSLLogger.isOn("ssl,handshake")) {
+                SSLLogger.fine(
+                        "Produced EndOfEarlyData handshake message", eoedm);
+            }
+
+            // Output the handshake message, with the early traffic keys.
+            eoedm.write(chc.handshakeOutput);
+            chc.handshakeOutput.flush();
+
+            // update the context
+            //
+            // Use the handshake traffic keys from now on.
+            if (chc.reservedWriteCipher == null) {
+                // unlikely
+                throw chc.conContext.fatal(Alert.INTERNAL_ERROR,
+                        "No handshake traffic keys");
+            }
+            chc.conContext.outputRecord.changeWriteCiphers(
+                    chc.reservedWriteCipher, false);
+            chc.reservedWriteCipher = null;
+
+            // The handshake message has been delivered.
+            return null;
+        }
+    }
+
+    /**
+     * The "EndOfEarlyData" handshake message consumer.
+     */
+    private static final class EndOfEarlyDataConsumer
+            implements SSLConsumer {
+        // Prevent instantiation of this class.
+        private EndOfEarlyDataConsumer() {
+            // blank
+        }
+
+        @Override
+        public void consume(ConnectionContext context,
+                ByteBuffer message) throws IOException {
+            // The consuming happens in server side only.
+            ServerHandshakeContext shc = (ServerHandshakeContext)context;
+
+            // clean up this consumer
+            shc.handshakeConsumers.remove(SSLHandshake.END_OF_EARLY_DATA.id);
+
+            EndOfEarlyDataMessage eoedm =
+                    new EndOfEarlyDataMessage(shc, message);
+            if (SSLLogger.isOn && SSLLogger.isOn("ssl,handshake")) {
+                SSLLogger.fine(
+                        "Consuming EndOfEarlyData handshake message", eoedm);
+            }
+
+            if (shc.reservedReadCipher == null || shc.earlyData == null) {
+                // unlikely
+                throw shc.conContext.fatal(Alert.INTERNAL_ERROR,
+                        "No handshake traffic keys");
+            }
+
+            //
+            // update
+            //
+            // Use the handshake traffic keys from now on, and keep the early
+            // data for the application.
+            shc.conContext.inputRecord.changeReadCiphers(
+                    shc.reservedReadCipher);
+            shc.reservedReadCipher = null;
+            shc.conContext.earlyData = shc.earlyData.toByteArray();
+            shc.earlyData = null;
+
+            //
+            // produce
+            //
+            // Need no new handshake message producers here.
+        }
+    }
+}
@@ -26,15 +26,53 @@
 package org.openjsse.sun.security.ssl;
 
 import java.security.*;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.openjsse.sun.security.ssl.DHKeyExchange.DHEPossession;
+import org.openjsse.sun.security.ssl.ECDHKeyExchange.ECDHEPossession;
+import org.openjsse.sun.security.ssl.SupportedGroupsExtension.NamedGroup;
+import org.openjsse.sun.security.ssl.SupportedGroupsExtension.NamedGroupType;
+import sun.security.action.GetIntegerAction;
 
 /**
- * The "KeyManager" for ephemeral RSA keys. Ephemeral DH and ECDH keys
- * are handled by the DHCrypt and ECDHCrypt classes, respectively.
+ * The "KeyManager" for ephemeral keys: the temporary RSA keys, and the
+ * ECDHE and FFDHE key pairs of the named groups.
+ *
+ * If the "org.openjsse.keyShare.poolDepth" system property is positive,
+ * up to that many ECDHE or FFDHE key pairs of each named group in use are
+ * generated ahead of time by a low priority background thread, so that a
+ * handshake takes a ready key pair rather than generating one.  Every
+ * pregenerated key pair is used only once.
  *
  * @author  Andreas Sterbenz
  */
 final class EphemeralKeyManager {
 
+    // the depth of the key pair pool of each named group, 0 if disabled
+    private static final int keyPoolDepth = Math.max(0,
+            AccessController.doPrivileged(new GetIntegerAction(
+                    "org.openjsse.keyShare.poolDepth", 0)).intValue());
+
+    // the thread refilling the key pair pools, shared by all managers
+    private static final ExecutorService keyPoolRefiller =
+            (keyPoolDepth == 0) ? null : Executors.newSingleThreadExecutor(
+                new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = Executors.defaultThreadFactory().newThread(r);
+                t.setName("OpenJSSE ephemeral key generator");
+                t.setDaemon(true);
+                t.setPriority(Thread.MIN_PRIORITY);
+                return t;
+            }
+        });
+
     // indices for the keys array below
     private static final int INDEX_RSA512 = 0;
     private static final int INDEX_RSA1024 = 1;
@@ -48,10 +86,50 @@ final class EphemeralKeyManager {
         new EphemeralKeyPair(null),
     };
 
+    // the key pair pools of the named groups, created on first use
+    private final Map<NamedGroup, KeyPairPool> keyPools =
+            new ConcurrentHashMap<>();
+
     EphemeralKeyManager() {
         // empty
     }
 
+    /*
+     * Get an ephemeral ECDHE or FFDHE KeyPair of the named group, which
+     * is not used by any other handshake.
+     */
+    KeyPair getKeyPair(NamedGroup namedGroup, SecureRandom random) {
+        if (keyPoolDepth != 0) {
+            KeyPairPool pool = keyPools.get(namedGroup);
+            if (pool == null) {
+                pool = new KeyPairPool(namedGroup, random);
+                KeyPairPool previous = keyPools.putIfAbsent(namedGroup, pool);
+                if (previous != null) {
+                    pool = previous;
+                }
+            }
+
+            KeyPair kp = pool.take();
+            if (kp != null) {
+                return kp;
+            }
+        }
+
+        return generateKeyPair(namedGroup, random);
+    }
+
+    private static KeyPair generateKeyPair(
+            NamedGroup namedGroup, SecureRandom random) {
+        if (namedGroup.type == NamedGroupType.NAMED_GROUP_ECDHE) {
+            return ECDHEPossession.generateKeyPair(namedGroup, random);
+        } else if (namedGroup.type == NamedGroupType.NAMED_GROUP_FFDHE) {
+            return DHEPossession.generateKeyPair(namedGroup, random);
+        }
+
+        throw new IllegalArgumentException(
+                "Unsupported ephemeral key group: " + namedGroup);
+    }
+
     /*
      * Get a temporary RSA KeyPair.
      */
@@ -81,6 +159,56 @@ final class EphemeralKeyManager {
         }
     }
 
+    /**
+     * The pregenerated KeyPairs of a named group.
+     */
+    private static final class KeyPairPool implements Runnable {
+        private final NamedGroup namedGroup;
+        private final SecureRandom random;
+        private final ArrayBlockingQueue<KeyPair> keyPairs;
+        private final AtomicBoolean isRefilling = new AtomicBoolean();
+
+        private KeyPairPool(NamedGroup namedGroup, SecureRandom random) {
+            this.namedGroup = namedGroup;
+            this.random = random;
+            this.keyPairs = new ArrayBlockingQueue<>(keyPoolDepth);
+        }
+
+        /*
+         * Remove a KeyPair from the pool, or return null if the pool is
+         * empty.  Schedule a refill if the pool is not full.
+         */
+        private KeyPair take() {
+            KeyPair kp = keyPairs.poll();
+            if (keyPairs.remainingCapacity() != 0 &&
+                    isRefilling.compareAndSet(false, true)) {
+                try {
+                    keyPoolRefiller.execute(this);
+                } catch (RejectedExecutionException ree) {
+                    isRefilling.set(false);
+                }
+            }
+
+            return kp;
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (keyPairs.remainingCapacity() != 0) {
+                    keyPairs.offer(generateKeyPair(namedGroup, random));
+                }
+            } catch (RuntimeException re) {
+                if (SSLLogger.isOn && SSLLogger.isOn("ssl,keygen")) {
+                    SSLLogger.warning("Failed to pregenerate " +
+                            namedGroup + " ephemeral keys", re);
+                }
+            } finally {
+                isRefilling.set(false);
+            }
+        }
+    }
+
     /**
      * Inner class to handle storage of ephemeral KeyPairs.
      */
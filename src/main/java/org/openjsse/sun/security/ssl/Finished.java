@@ -346,9 +346,12 @@ final class Finished {
             String hmacAlg =
                 "Hmac" + hashAlg.name.replace("-", "");
             try {
-                Mac hmac = JsseJce.getMac(hmacAlg);
+                Mac hmac = JsseJce.acquireMac(hmacAlg);
                 hmac.init(finishedSecret);
-                return hmac.doFinal(context.handshakeHash.digest());
+                byte[] verifyData =
+                        hmac.doFinal(context.handshakeHash.digest());
+                JsseJce.releaseMac(hmac);
+                return verifyData;
             } catch (NoSuchAlgorithmException |InvalidKeyException ex) {
                 throw new ProviderException(
                         "Failed to generate verify_data", ex);
@@ -990,6 +993,9 @@ final class Finished {
             chc.handshakeProducers.put(SSLHandshake.FINISHED.id,
                         SSLHandshake.FINISHED);
             SSLHandshake[] probableHandshakeMessages = new SSLHandshake[] {
+                // accepted early data
+                SSLHandshake.END_OF_EARLY_DATA,
+
                 // full handshake messages
                 SSLHandshake.CERTIFICATE,
                 SSLHandshake.CERTIFICATE_VERIFY,
@@ -1019,6 +1025,13 @@ final class Finished {
                 }
             }
 
+            // Make sure that the accepted early data has been ended.
+            if (shc.handshakeConsumers.containsKey(
+                    SSLHandshake.END_OF_EARLY_DATA.id)) {
+                throw shc.conContext.fatal(Alert.UNEXPECTED_MESSAGE,
+                        "Unexpected Finished handshake message");
+            }
+
             FinishedMessage fm = new FinishedMessage(shc, message);
             if (SSLLogger.isOn && SSLLogger.isOn("ssl,handshake")) {
                 SSLLogger.fine(
@@ -1055,10 +1068,17 @@ final class Finished {
             }
 
             // save the session
+            //
+            // With stateless tickets, the session is carried in the
+            // NewSessionTicket message rather than cached.
             if (!shc.isResumption && shc.handshakeSession.isRejoinable()) {
                 SSLSessionContextImpl sessionContext = (SSLSessionContextImpl)
                 shc.sslContext.engineGetServerSessionContext();
-                sessionContext.put(shc.handshakeSession);
+                if (SessionTicketKeys.enableStatelessTickets) {
+                    shc.handshakeSession.setContext(sessionContext);
+                } else {
+                    sessionContext.put(shc.handshakeSession);
+                }
             }
 
             try {
@@ -27,11 +27,14 @@ package org.openjsse.sun.security.ssl;
 
 import java.security.NoSuchAlgorithmException;
 import java.security.InvalidKeyException;
+import java.security.ProviderException;
 import javax.crypto.Mac;
 import javax.crypto.SecretKey;
 import javax.crypto.ShortBufferException;
 import javax.crypto.spec.SecretKeySpec;
 import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * An implementation of the HKDF key derivation algorithm outlined in RFC 5869,
@@ -41,11 +44,17 @@ import java.util.Objects;
  *
  * HKDF objects are created by specifying a message digest algorithm.  That
  * digest algorithm will be used by the HMAC function as part of the HKDF
- * derivation process.
+ * derivation process.  The HMAC objects are taken from the engine pool of
+ * JsseJce for each derivation, and are keyed only once for the outputs of
+ * the same pseudo random key that are expanded together.  The HMAC
+ * algorithm of each message digest algorithm is looked up only once.
  */
 final class HKDF {
+    // the HKDF objects of the message digest algorithms that have been used
+    private static final ConcurrentMap<String, HKDF> hkdfs =
+            new ConcurrentHashMap<>();
+
     private final String hmacAlg;
-    private final Mac hmacObj;
     private final int hmacLen;
 
     /**
@@ -61,9 +70,31 @@ final class HKDF {
     HKDF(String hashAlg) throws NoSuchAlgorithmException {
         Objects.requireNonNull(hashAlg,
                 "Must provide underlying HKDF Digest algorithm.");
-        hmacAlg = "Hmac" + hashAlg.replace("-", "");
-        hmacObj = JsseJce.getMac(hmacAlg);
-        hmacLen = hmacObj.getMacLength();
+        HKDF hkdf = hkdfs.get(hashAlg);
+        if (hkdf == null) {
+            String alg = "Hmac" + hashAlg.replace("-", "");
+            Mac hmacObj = JsseJce.acquireMac(alg);
+            hkdf = new HKDF(alg, hmacObj.getMacLength());
+            JsseJce.releaseMac(hmacObj);
+            hkdfs.put(hashAlg, hkdf);
+        }
+        hmacAlg = hkdf.hmacAlg;
+        hmacLen = hkdf.hmacLen;
+    }
+
+    private HKDF(String hmacAlg, int hmacLen) {
+        this.hmacAlg = hmacAlg;
+        this.hmacLen = hmacLen;
+    }
+
+    private Mac acquireMac() {
+        try {
+            return JsseJce.acquireMac(hmacAlg);
+        } catch (NoSuchAlgorithmException nsae) {
+            // unlikely, the algorithm was available at construction
+            throw new ProviderException(
+                    "Failed to get " + hmacAlg + " instance", nsae);
+        }
     }
 
     /**
@@ -88,10 +119,13 @@ final class HKDF {
         if (salt == null) {
             salt = new SecretKeySpec(new byte[hmacLen], "HKDF-Salt");
         }
+        Mac hmacObj = acquireMac();
         hmacObj.init(salt);
 
-        return new SecretKeySpec(hmacObj.doFinal(inputKey.getEncoded()),
-                keyAlg);
+        SecretKey prk = new SecretKeySpec(
+                hmacObj.doFinal(inputKey.getEncoded()), keyAlg);
+        JsseJce.releaseMac(hmacObj);
+        return prk;
     }
 
     /**
@@ -136,8 +170,6 @@ final class HKDF {
      */
     SecretKey expand(SecretKey pseudoRandKey, byte[] info, int outLen,
             String keyAlg) throws InvalidKeyException {
-        byte[] kdfOutput;
-
         // Calculate the number of rounds of HMAC that are needed to
         // meet the requested data.  Then set up the buffers we will need.
         Objects.requireNonNull(pseudoRandKey, "A null PRK is not allowed.");
@@ -147,7 +179,62 @@ final class HKDF {
             throw new IllegalArgumentException("Requested output length " +
                     "exceeds maximum length allowed for HKDF expansion");
         }
+        Mac hmacObj = acquireMac();
+        hmacObj.init(pseudoRandKey);
+        SecretKey key = expand(hmacObj, info, outLen, keyAlg);
+        JsseJce.releaseMac(hmacObj);
+
+        return key;
+    }
+
+    /**
+     * Perform the HKDF-Expand derivation for several single-key outputs of
+     * the same pseudo random key, with the HMAC keyed only once.
+     *
+     * @param pseudoRandKey the pseudo random key (PRK).
+     * @param infos optional context-specific info of each output.  A
+     * {@code null} value is allowed in which case a zero-length byte array
+     * will be used.
+     * @param outLens the length of each resulting {@code SecretKey}
+     * @param keyAlgs the algorithm name applied to each resulting
+     * {@code SecretKey}
+     *
+     * @return the resulting key derivations as {@code SecretKey} objects,
+     * in the order of the {@code infos}
+     *
+     * @throws InvalidKeyException if the underlying HMAC operation cannot
+     * be initialized using the provided {@code pseudoRandKey} object.
+     */
+    SecretKey[] expand(SecretKey pseudoRandKey, byte[][] infos,
+            int[] outLens, String[] keyAlgs) throws InvalidKeyException {
+        Objects.requireNonNull(pseudoRandKey, "A null PRK is not allowed.");
+
+        // Output from the expand operation must be <= 255 * hmac length
+        for (int outLen : outLens) {
+            if (outLen > 255 * hmacLen) {
+                throw new IllegalArgumentException("Requested output " +
+                        "length exceeds maximum length allowed for HKDF " +
+                        "expansion");
+            }
+        }
+
+        Mac hmacObj = acquireMac();
         hmacObj.init(pseudoRandKey);
+        SecretKey[] keys = new SecretKey[infos.length];
+        for (int k = 0; k < infos.length; k++) {
+            keys[k] = expand(hmacObj, infos[k], outLens[k], keyAlgs[k]);
+        }
+        JsseJce.releaseMac(hmacObj);
+
+        return keys;
+    }
+
+    // Expand one output with an HMAC keyed with the pseudo random key.  The
+    // HMAC is reset to the keyed state by doFinal().
+    private SecretKey expand(Mac hmacObj, byte[] info, int outLen,
+            String keyAlg) {
+        byte[] kdfOutput;
+
         if (info == null) {
             info = new byte[0];
         }
@@ -158,11 +158,21 @@ abstract class HandshakeContext implements ConnectionContext {
     // OCSP Stapling info
     boolean                                 staplingActive = false;
 
+    // the System.nanoTime() of the handshake phases, for metrics
+    final long                              startTime;
+    long                                    helloTime;
+    long                                    finishedTime;
+
+    // the JFR handshake event, or null if the event is disabled
+    final Object                            handshakeEvent;
+
     protected HandshakeContext(SSLContextImpl sslContext,
             TransportContext conContext) throws IOException {
         this.sslContext = sslContext;
         this.conContext = conContext;
         this.sslConfig = (SSLConfiguration)conContext.sslConfig.clone();
+        this.startTime = System.nanoTime();
+        this.handshakeEvent = SSLEvents.beginHandshake();
 
         this.algorithmConstraints = new SSLAlgorithmConstraints(
                 sslConfig.userSpecifiedAlgorithmConstraints);
@@ -213,6 +223,8 @@ abstract class HandshakeContext implements ConnectionContext {
         this.sslContext = conContext.sslContext;
         this.conContext = conContext;
         this.sslConfig = conContext.sslConfig;
+        this.startTime = System.nanoTime();
+        this.handshakeEvent = null;
 
         this.negotiatedProtocol = conContext.protocolVersion;
         this.negotiatedCipherSuite = conContext.cipherSuite;
@@ -226,7 +238,7 @@ abstract class HandshakeContext implements ConnectionContext {
         this.activeCipherSuites = null;
         this.algorithmConstraints = null;
         this.maximumActiveProtocol = null;
-        this.handshakeExtensions = Collections.emptyMap();  // Not in TLS13
+        this.handshakeExtensions = new HashMap<>();
         this.handshakePossessions = null;
         this.handshakeCredentials = null;
     }
@@ -392,7 +404,7 @@ abstract class HandshakeContext implements ConnectionContext {
     void dispatch(byte handshakeType, Plaintext plaintext) throws IOException {
         if (conContext.transport.useDelegatedTask()) {
             boolean hasDelegated = !delegatedActions.isEmpty();
-            if (hasDelegated ||
+            if (hasDelegated || sslConfig.delegatesAllHandshakeTasks() ||
                    (handshakeType != SSLHandshake.FINISHED.id &&
                     handshakeType != SSLHandshake.KEY_UPDATE.id &&
                     handshakeType != SSLHandshake.NEW_SESSION_TICKET.id)) {
@@ -442,6 +454,7 @@ abstract class HandshakeContext implements ConnectionContext {
                     SSLHandshake.nameOf(handshakeType));
         }
 
+        markPhase(handshakeType);
         try {
             consumer.consume(this, fragment);
         } catch (UnsupportedOperationException unsoe) {
@@ -458,6 +471,23 @@ abstract class HandshakeContext implements ConnectionContext {
         handshakeHash.consume();
     }
 
+    /*
+     * Note the end of a handshake phase, when a handshake message of the
+     * specified type is received or has been produced.
+     *
+     * The hello phase ends with the last ServerHello message, which may
+     * follow a HelloRetryRequest, and the key exchange phase with the
+     * first Finished message.
+     */
+    void markPhase(byte handshakeType) {
+        if (handshakeType == SSLHandshake.SERVER_HELLO.id) {
+            helloTime = System.nanoTime();
+        } else if (handshakeType == SSLHandshake.FINISHED.id &&
+                finishedTime == 0) {
+            finishedTime = System.nanoTime();
+        }
+    }
+
     abstract void kickstart() throws IOException;
 
     /**
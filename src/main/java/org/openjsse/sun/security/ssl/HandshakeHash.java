@@ -27,27 +27,47 @@ package org.openjsse.sun.security.ssl;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.nio.ByteBuffer;
 import java.security.MessageDigest;
+import java.util.ArrayDeque;
 import java.util.Arrays;
-import java.util.LinkedList;
 import javax.crypto.SecretKey;
 import org.openjsse.sun.security.util.MessageDigestSpi2;
 
+/*
+ * The transcript hash of the handshake messages.
+ *
+ * The received handshake messages are reserved until they are consumed,
+ * because the digest may be needed without the message being consumed.
+ * Once the transcript hash algorithm is determined, a received message is
+ * hashed right away from the input buffer, if the messages reserved before
+ * are hashed already, and only the state of the transcript hash before the
+ * message is reserved, see HashedMessage.  Otherwise, a copy of the message
+ * is reserved, and hashed when the message is consumed.
+ */
 final class HandshakeHash {
     private TranscriptHash transcriptHash;
-    private LinkedList<byte[]> reserves;    // one handshake message per entry
+    // one handshake message per entry, a byte[] copy or a HashedMessage
+    private ArrayDeque<Object> reserves;
     private boolean hasBeenUsed;
 
     HandshakeHash() {
         this.transcriptHash = new CacheOnlyHash();
-        this.reserves = new LinkedList<>();
+        this.reserves = new ArrayDeque<>();
         this.hasBeenUsed = false;
     }
 
     // fix the negotiated protocol version and cipher suite
     void determine(ProtocolVersion protocolVersion,
             CipherSuite cipherSuite) {
+        determine(protocolVersion, cipherSuite, true);
+    }
+
+    // fix the negotiated protocol version and cipher suite, and whether
+    // the handshake messages are archived for archived() in TLS 1.2
+    void determine(ProtocolVersion protocolVersion,
+            CipherSuite cipherSuite, boolean archiving) {
         if (!(transcriptHash instanceof CacheOnlyHash)) {
             throw new IllegalStateException(
                     "Not expected instance of transcript hash");
@@ -57,16 +77,32 @@ final class HandshakeHash {
         if (protocolVersion.useTLS13PlusSpec()) {
             transcriptHash = new T13HandshakeHash(cipherSuite);
         } else if (protocolVersion.useTLS12PlusSpec()) {
-            transcriptHash = new T12HandshakeHash(cipherSuite);
+            transcriptHash = new T12HandshakeHash(cipherSuite, archiving);
         } else if (protocolVersion.useTLS10PlusSpec()) {
             transcriptHash = new T10HandshakeHash(cipherSuite);
         } else {
             transcriptHash = new S30HandshakeHash(cipherSuite);
         }
 
-        byte[] reserved = coh.baos.toByteArray();
-        if (reserved.length != 0) {
-            transcriptHash.update(reserved, 0, reserved.length);
+        // Hash the cached messages where they are, without copying them.
+        if (coh.baos.size() != 0) {
+            final TranscriptHash th = transcriptHash;
+            try {
+                coh.baos.writeTo(new OutputStream() {
+                    @Override
+                    public void write(int b) {
+                        th.update(new byte[] {(byte)b}, 0, 1);
+                    }
+
+                    @Override
+                    public void write(byte[] b, int off, int len) {
+                        th.update(b, off, len);
+                    }
+                });
+            } catch (IOException ioe) {
+                // unlikely
+                throw new RuntimeException("Unable to hash the handshake");
+            }
         }
     }
 
@@ -74,7 +110,7 @@ final class HandshakeHash {
         if (transcriptHash instanceof CacheOnlyHash) {
             HandshakeHash result = new HandshakeHash();
             result.transcriptHash = ((CacheOnlyHash)transcriptHash).copy();
-            result.reserves = new LinkedList<>(reserves);
+            result.reserves = new ArrayDeque<>(reserves);
             result.hasBeenUsed = hasBeenUsed;
             return result;
         } else {
@@ -83,34 +119,75 @@ final class HandshakeHash {
     }
 
     void receive(byte[] input) {
-        reserves.add(Arrays.copyOf(input, input.length));
+        if (!hashOnReceipt(input, 0, input.length)) {
+            reserves.add(Arrays.copyOf(input, input.length));
+        }
     }
 
     void receive(ByteBuffer input, int length) {
         if (input.hasArray()) {
             int from = input.position() + input.arrayOffset();
-            int to = from + length;
-            reserves.add(Arrays.copyOfRange(input.array(), from, to));
+            if (!hashOnReceipt(input.array(), from, length)) {
+                int to = from + length;
+                reserves.add(Arrays.copyOfRange(input.array(), from, to));
+            }
         } else {
             int inPos = input.position();
             byte[] holder = new byte[length];
             input.get(holder);
             input.position(inPos);
-            reserves.add(Arrays.copyOf(holder, holder.length));
+            reserves.add(holder);
         }
     }
     void receive(ByteBuffer input) {
         receive(input, input.remaining());
     }
 
+    // Hash the received message right away, if possible.
+    private boolean hashOnReceipt(byte[] input, int offset, int length) {
+        // The messages reserved before must be hashed already.
+        if (!reserves.isEmpty() &&
+                !(reserves.peekLast() instanceof HashedMessage)) {
+            return false;
+        }
+
+        HashedMessage hashed;
+        if (transcriptHash instanceof T13HandshakeHash) {
+            hashed = ((T13HandshakeHash)transcriptHash).snapshot();
+        } else if (transcriptHash instanceof T12HandshakeHash) {
+            hashed = ((T12HandshakeHash)transcriptHash).snapshot();
+        } else {
+            hashed = null;
+        }
+
+        if (hashed == null) {
+            return false;
+        }
+
+        transcriptHash.update(input, offset, length);
+        reserves.add(hashed);
+        return true;
+    }
+
+    // Update the transcript hash with a reserved message.
+    private void hash(Object reserved) {
+        if (reserved instanceof byte[]) {
+            byte[] holder = (byte[])reserved;
+            transcriptHash.update(holder, 0, holder.length);
+        }   // otherwise, the message is hashed already
+    }
+
     // For HelloRetryRequest only! Please use this method very carefully!
+    //
+    // This happens before the transcript hash is determined, so that the
+    // messages are not hashed yet.
     void push(byte[] input) {
         reserves.push(Arrays.copyOf(input, input.length));
     }
 
     // For PreSharedKey to modify the state of the PSK binder hash
     byte[] removeLastReceived() {
-        return reserves.removeLast();
+        return (byte[])reserves.removeLast();
     }
 
     void deliver(byte[] input) {
@@ -143,8 +220,7 @@ final class HandshakeHash {
             return;
         }
         if (reserves.size() != 0) {
-            byte[] holder = reserves.remove();
-            transcriptHash.update(holder, 0, holder.length);
+            hash(reserves.remove());
             hasBeenUsed = true;
         }
     }
@@ -156,15 +232,13 @@ final class HandshakeHash {
             return;
         }
         if (reserves.size() != 0) {
-            byte[] holder = reserves.remove();
-            transcriptHash.update(holder, 0, holder.length);
+            hash(reserves.remove());
         }
     }
 
     void update() {
         while (reserves.size() != 0) {
-            byte[] holder = reserves.remove();
-            transcriptHash.update(holder, 0, holder.length);
+            hash(reserves.remove());
         }
         hasBeenUsed = false;
     }
@@ -172,12 +246,16 @@ final class HandshakeHash {
     byte[] digest() {
         // Note that the reserve handshake message may be not a part of
         // the expected digest.
+        Object reserved = reserves.peekFirst();
+        if (reserved instanceof HashedMessage) {
+            return ((HashedMessage)reserved).digest();
+        }
         return transcriptHash.digest();
     }
 
     void finish() {
         this.transcriptHash = new CacheOnlyHash();
-        this.reserves = new LinkedList<>();
+        this.reserves = new ArrayDeque<>();
         this.hasBeenUsed = false;
     }
 
@@ -185,6 +263,11 @@ final class HandshakeHash {
     byte[] archived() {
         // Note that the reserve handshake message may be not a part of
         // the expected digest.
+        Object reserved = reserves.peekFirst();
+        if (reserved instanceof HashedMessage) {
+            return ((T12HandshakeHash)transcriptHash).archived(
+                    ((HashedMessage)reserved).archivedLength);
+        }
         return transcriptHash.archived();
     }
 
@@ -273,13 +356,13 @@ final class HandshakeHash {
             this.mdSHA = JsseJce.getMessageDigest("SHA");
 
             boolean hasArchived = false;
-            if (mdMD5 instanceof Cloneable) {
+            if (isCloneable(mdMD5)) {
                 md5 = new CloneableHash(mdMD5);
             } else {
                 hasArchived = true;
                 md5 = new NonCloneableHash(mdMD5);
             }
-            if (mdSHA instanceof Cloneable) {
+            if (isCloneable(mdSHA)) {
                 sha = new CloneableHash(mdSHA);
             } else {
                 hasArchived = true;
@@ -371,7 +454,7 @@ final class HandshakeHash {
 
         private MessageDigest cloneMd5() {
             MessageDigest md5Clone;
-            if (mdMD5 instanceof Cloneable) {
+            if (md5 instanceof CloneableHash) {
                 try {
                     md5Clone = (MessageDigest)mdMD5.clone();
                 } catch (CloneNotSupportedException ex) {   // unlikely
@@ -388,7 +471,7 @@ final class HandshakeHash {
 
         private MessageDigest cloneSha() {
             MessageDigest shaClone;
-            if (mdSHA instanceof Cloneable) {
+            if (sha instanceof CloneableHash) {
                 try {
                     shaClone = (MessageDigest)mdSHA.clone();
                 } catch (CloneNotSupportedException ex) {   // unlikely
@@ -451,13 +534,13 @@ final class HandshakeHash {
             MessageDigest mdSHA = JsseJce.getMessageDigest("SHA");
 
             boolean hasArchived = false;
-            if (mdMD5 instanceof Cloneable) {
+            if (isCloneable(mdMD5)) {
                 md5 = new CloneableHash(mdMD5);
             } else {
                 hasArchived = true;
                 md5 = new NonCloneableHash(mdMD5);
             }
-            if (mdSHA instanceof Cloneable) {
+            if (isCloneable(mdSHA)) {
                 sha = new CloneableHash(mdSHA);
             } else {
                 hasArchived = true;
@@ -511,14 +594,14 @@ final class HandshakeHash {
 
     static final class T12HandshakeHash implements TranscriptHash {
         private final TranscriptHash transcriptHash;
-        private final ByteArrayOutputStream baos;
+        private final Archive baos;         // null if not archived
 
-        T12HandshakeHash(CipherSuite cipherSuite) {
+        T12HandshakeHash(CipherSuite cipherSuite, boolean archiving) {
             MessageDigest md =
                     JsseJce.getMessageDigest(cipherSuite.hashAlg.name);
-            if (md instanceof Cloneable) {
+            if (isCloneable(md)) {
                 transcriptHash = new CloneableHash(md);
-                this.baos = new ByteArrayOutputStream();
+                this.baos = archiving ? new Archive() : null;
             } else {
                 transcriptHash = new NonCloneableHash(md);
                 this.baos = null;
@@ -546,6 +629,22 @@ final class HandshakeHash {
                 return transcriptHash.archived();
             }
         }
+
+        // the first length bytes of the archived messages
+        byte[] archived(int length) {
+            return baos.toByteArray(length);
+        }
+
+        // the state before the next update, or null if not supported
+        HashedMessage snapshot() {
+            if (!(transcriptHash instanceof CloneableHash)) {
+                return null;
+            }
+
+            MessageDigest md = ((CloneableHash)transcriptHash).snapshot();
+            return (md != null) ? new HashedMessage(md,
+                    (baos != null) ? baos.size() : -1) : null;
+        }
     }
 
     static final class T13HandshakeHash implements TranscriptHash {
@@ -554,7 +653,7 @@ final class HandshakeHash {
         T13HandshakeHash(CipherSuite cipherSuite) {
             MessageDigest md =
                     JsseJce.getMessageDigest(cipherSuite.hashAlg.name);
-            if (md instanceof Cloneable) {
+            if (isCloneable(md)) {
                 transcriptHash = new CloneableHash(md);
             } else {
                 transcriptHash = new NonCloneableHash(md);
@@ -577,10 +676,42 @@ final class HandshakeHash {
             throw new UnsupportedOperationException(
                     "TLS 1.3 does not require archived.");
         }
+
+        // the state before the next update, or null if not supported
+        HashedMessage snapshot() {
+            if (!(transcriptHash instanceof CloneableHash)) {
+                return null;
+            }
+
+            MessageDigest md = ((CloneableHash)transcriptHash).snapshot();
+            return (md != null) ? new HashedMessage(md, -1) : null;
+        }
+    }
+
+    /*
+     * Whether the MessageDigest can be cloned.
+     *
+     * On JDK 8, the MessageDigest returned by MessageDigest.getInstance()
+     * does not implement Cloneable even if its implementation does, so the
+     * digest has to be asked to clone itself.  Otherwise every transcript
+     * would be buffered and re-hashed from the start for each digest.
+     */
+    private static boolean isCloneable(MessageDigest md) {
+        if (md instanceof Cloneable) {
+            return true;
+        }
+
+        try {
+            md.clone();
+            return true;
+        } catch (CloneNotSupportedException cnse) {
+            return false;
+        }
     }
 
     static final class CloneableHash implements TranscriptHash {
         private final MessageDigest md;
+        private byte[] digest;      // the digest of the current state, if any
 
         CloneableHash(MessageDigest md) {
             this.md = md;
@@ -589,15 +720,32 @@ final class HandshakeHash {
         @Override
         public void update(byte[] input, int offset, int length) {
             md.update(input, offset, length);
+            digest = null;
         }
 
         @Override
         public byte[] digest() {
+            // The same digest is usually asked for several times, for the
+            // secrets and the Finished messages of the same transcript.
+            if (digest == null) {
+                MessageDigest state = snapshot();
+                if (state == null) {
+                    // unlikely
+                    return new byte[0];
+                }
+                digest = state.digest();
+            }
+
+            return digest.clone();
+        }
+
+        // a copy of the current state, or null if not supported
+        MessageDigest snapshot() {
             try {
-                return ((MessageDigest)md.clone()).digest();
+                return (MessageDigest)md.clone();
             } catch (CloneNotSupportedException ex) {
                 // unlikely
-                return new byte[0];
+                return null;
             }
         }
 
@@ -607,6 +755,41 @@ final class HandshakeHash {
         }
     }
 
+    // The archived handshake messages of TLS 1.2.
+    private static final class Archive extends ByteArrayOutputStream {
+        Archive() {
+            // room for the usual handshake messages
+            super(4096);
+        }
+
+        synchronized byte[] toByteArray(int length) {
+            return Arrays.copyOf(buf, length);
+        }
+    }
+
+    /*
+     * A received handshake message that was hashed as it was received, with
+     * the state of the transcript hash before the message.
+     */
+    private static final class HashedMessage {
+        private final MessageDigest before;     // finished by digest()
+        private final int archivedLength;       // -1 if not archived
+        private byte[] digest;
+
+        HashedMessage(MessageDigest before, int archivedLength) {
+            this.before = before;
+            this.archivedLength = archivedLength;
+        }
+
+        byte[] digest() {
+            if (digest == null) {
+                digest = before.digest();
+            }
+
+            return digest.clone();
+        }
+    }
+
     static final class NonCloneableHash implements TranscriptHash {
         private final MessageDigest md;
         private final ByteArrayOutputStream baos = new ByteArrayOutputStream();
@@ -143,10 +143,11 @@ abstract class HelloCookieManager {
                 cookieVersion++;
             }
 
-            MessageDigest md = JsseJce.getMessageDigest("SHA-256");
+            MessageDigest md = JsseJce.acquireMessageDigest("SHA-256");
             byte[] helloBytes = clientHello.getHelloCookieBytes();
             md.update(helloBytes);
             byte[] cookie = md.digest(secret);      // 32 bytes
+            JsseJce.releaseMessageDigest(md);
             cookie[0] = (byte)((version >> 24) & 0xFF);
 
             return cookie;
@@ -169,10 +170,11 @@ abstract class HelloCookieManager {
                 }
             }
 
-            MessageDigest md = JsseJce.getMessageDigest("SHA-256");
+            MessageDigest md = JsseJce.acquireMessageDigest("SHA-256");
             byte[] helloBytes = clientHello.getHelloCookieBytes();
             md.update(helloBytes);
             byte[] target = md.digest(secret);      // 32 bytes
+            JsseJce.releaseMessageDigest(md);
             target[0] = cookie[0];
 
             return MessageDigest.isEqual(target, cookie);
@@ -234,11 +236,12 @@ abstract class HelloCookieManager {
                 cookieVersion++;        // allow wrapped version number
             }
 
-            MessageDigest md = JsseJce.getMessageDigest(
+            MessageDigest md = JsseJce.acquireMessageDigest(
                     context.negotiatedCipherSuite.hashAlg.name);
             byte[] headerBytes = clientHello.getHeaderBytes();
             md.update(headerBytes);
             byte[] headerCookie = md.digest(secret);
+            JsseJce.releaseMessageDigest(md);
 
             // hash of ClientHello handshake message
             context.handshakeHash.update();
@@ -300,10 +303,11 @@ abstract class HelloCookieManager {
                 }
             }
 
-            MessageDigest md = JsseJce.getMessageDigest(cs.hashAlg.name);
+            MessageDigest md = JsseJce.acquireMessageDigest(cs.hashAlg.name);
             byte[] headerBytes = clientHello.getHeaderBytes();
             md.update(headerBytes);
             byte[] headerCookie = md.digest(secret);
+            JsseJce.releaseMessageDigest(md);
 
             if (!MessageDigest.isEqual(headerCookie, prevHeadCookie)) {
                 return false;
@@ -32,6 +32,7 @@ import java.io.OutputStream;
 import java.nio.BufferUnderflowException;
 import java.nio.ByteBuffer;
 import javax.crypto.BadPaddingException;
+import javax.net.ssl.SSLProtocolException;
 import org.openjsse.sun.security.ssl.SSLCipher.SSLReadCipher;
 
 /**
@@ -56,6 +57,10 @@ abstract class InputRecord implements Record, Closeable {
     // fragment size
     int                 fragmentSize;
 
+    // The remaining amount of rejected TLS 1.3 early data that could be
+    // skipped, until a record is protected with the expected keys.
+    int                 skippableEarlyData = 0;
+
     InputRecord(HandshakeHash handshakeHash, SSLReadCipher readCipher) {
         this.readCipher = readCipher;
         this.helloVersion = ProtocolVersion.TLS10;
@@ -119,6 +124,50 @@ abstract class InputRecord implements Record, Closeable {
         this.readCipher = readCipher;
     }
 
+    // apply to SSLSocket and SSLEngine
+    void skipEarlyData(int maxEarlyDataSize) {
+        this.skippableEarlyData = maxEarlyDataSize;
+    }
+
+    /*
+     * Is the application data record of the specified length rejected
+     * early data, which must be skipped rather than processed?
+     *
+     * The server skips the early data that it cannot decrypt, or that
+     * follows a HelloRetryRequest, up to the max_early_data_size limit.
+     * Note that the record sequence number is not changed for a skipped
+     * record.
+     */
+    boolean isSkippableEarlyData(byte contentType, int contentLen,
+            byte[] sequence, boolean isDecrypted) throws SSLProtocolException {
+        if (skippableEarlyData <= 0 ||
+                contentType != ContentType.APPLICATION_DATA.id) {
+            return false;
+        }
+
+        if (isDecrypted) {
+            // The peer is using the expected keys now.
+            skippableEarlyData = 0;
+            return false;
+        }
+
+        if (contentLen > skippableEarlyData) {
+            throw new SSLProtocolException(
+                    "Too much early data, or unexpected application data");
+        }
+
+        skippableEarlyData -= contentLen;
+        if (sequence != null) {
+            readCipher.authenticator.resetSequenceNumber(sequence);
+        }
+
+        if (SSLLogger.isOn && SSLLogger.isOn("record")) {
+            SSLLogger.fine("Skip rejected early data, length = " + contentLen);
+        }
+
+        return true;
+    }
+
     // change fragment size
     void changeFragmentSize(int fragmentSize) {
         this.fragmentSize = fragmentSize;
@@ -337,7 +386,7 @@ abstract class InputRecord implements Record, Closeable {
         boolean hasFullHeader = false;
         int contentLen = -1;
         for (int i = offset, j = 0;
-                i < (offset + length) && j < headerSize; i++) {
+                i < (offset + length) && !hasFullHeader; i++) {
             int remains = buffers[i].remaining();
             int pos = buffers[i].position();
             for (int k = 0; k < remains && j < headerSize; j++, k++) {
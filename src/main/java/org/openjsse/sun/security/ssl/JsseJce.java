@@ -31,6 +31,7 @@ import java.security.interfaces.RSAPublicKey;
 import java.security.spec.*;
 import java.util.*;
 import javax.crypto.*;
+import javax.crypto.spec.SecretKeySpec;
 import sun.security.jca.ProviderList;
 import sun.security.jca.Providers;
 import static org.openjsse.sun.security.ssl.OpenJSSE.cryptoProvider;
@@ -175,6 +176,36 @@ final class JsseJce {
      */
     static final String SIGNATURE_SSLRSA = "MD5andSHA1withRSA";
 
+    /*
+     * The maximum number of idle engines of each kind pooled per thread, see
+     * acquireMessageDigest() and the like.  0 disables the pooling.
+     */
+    private static final int enginePoolSize = Utilities.getUIntProperty(
+            "org.openjsse.enginePoolSize", 4);
+
+    /*
+     * The idle engines of the current thread, by kind.
+     *
+     * The kind of an engine is its class and algorithm.  The engines do not
+     * depend on the SSLContext they are used for, and the cryptoProvider
+     * does not change once set, so in FIPS mode every pooled engine is one
+     * of the cryptoProvider.
+     *
+     * Only engines that do not hold a secret are pooled: message digests,
+     * which are reset, and MACs, which are re-keyed with a non-secret key.
+     * Signatures and ciphers keep their private or secret key, and are not
+     * pooled.  The pools outlive the class loader of this class in pooled
+     * threads, so only engines of providers loaded by an ancestor of that
+     * class loader are pooled.
+     */
+    private static final ThreadLocal<Map<String, ArrayDeque<Object>>>
+            enginePools = new ThreadLocal<Map<String, ArrayDeque<Object>>>() {
+                @Override
+                protected Map<String, ArrayDeque<Object>> initialValue() {
+                    return new HashMap<>();
+                }
+            };
+
     private JsseJce() {
         // no instantiation of this class
     }
@@ -330,6 +361,101 @@ final class JsseJce {
         }
     }
 
+    /**
+     * Return a MessageDigest for the specified algorithm, from the engine
+     * pool of the current thread if possible.
+     *
+     * The digest should be given back with releaseMessageDigest() once it
+     * is no longer used, and must not be used after that.
+     */
+    static MessageDigest acquireMessageDigest(String algorithm) {
+        MessageDigest md =
+                (MessageDigest)pollEngine("MessageDigest." + algorithm);
+        return (md != null) ? md : getMessageDigest(algorithm);
+    }
+
+    static void releaseMessageDigest(MessageDigest md) {
+        md.reset();
+        offerEngine("MessageDigest." + md.getAlgorithm(), md,
+                md.getProvider());
+    }
+
+    /**
+     * Return a Mac for the specified algorithm, from the engine pool of the
+     * current thread if possible.  It must be initialized before use.
+     *
+     * The Mac should be given back with releaseMac() once it is no longer
+     * used, and must not be used after that.
+     */
+    static Mac acquireMac(String algorithm) throws NoSuchAlgorithmException {
+        Mac mac = (Mac)pollEngine("Mac." + algorithm);
+        return (mac != null) ? mac : getMac(algorithm);
+    }
+
+    static void releaseMac(Mac mac) {
+        if (enginePoolSize == 0 || !isPoolable(mac.getProvider())) {
+            return;
+        }
+
+        // Do not keep the secret key in the pool.
+        try {
+            mac.init(new SecretKeySpec(
+                    new byte[mac.getMacLength()], mac.getAlgorithm()));
+        } catch (InvalidKeyException | RuntimeException e) {
+            return;
+        }
+        offerEngine("Mac." + mac.getAlgorithm(), mac, mac.getProvider());
+    }
+
+    private static Object pollEngine(String kind) {
+        if (enginePoolSize == 0) {
+            return null;
+        }
+
+        ArrayDeque<Object> engines = enginePools.get().get(kind);
+        return (engines != null) ? engines.pollFirst() : null;
+    }
+
+    private static void offerEngine(String kind, Object engine,
+            Provider provider) {
+        if (enginePoolSize == 0 || !isPoolable(provider)) {
+            return;
+        }
+
+        Map<String, ArrayDeque<Object>> pools = enginePools.get();
+        ArrayDeque<Object> engines = pools.get(kind);
+        if (engines == null) {
+            engines = new ArrayDeque<>(enginePoolSize);
+            pools.put(kind, engines);
+        }
+
+        if (engines.size() < enginePoolSize) {
+            engines.offerFirst(engine);
+        }
+    }
+
+    /*
+     * Whether the provider is loaded by the bootstrap class loader or by an
+     * ancestor of the class loader of this class, so that the engine pools
+     * do not pin a class loader that may be discarded.
+     */
+    private static boolean isPoolable(Provider provider) {
+        ClassLoader providerLoader = provider.getClass().getClassLoader();
+        if (providerLoader == null) {
+            return true;
+        }
+
+        ClassLoader loader = JsseJce.class.getClassLoader();
+        while (loader != null) {
+            loader = loader.getParent();
+            if (loader == providerLoader) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
     static int getRSAKeyLength(PublicKey key) {
         BigInteger modulus;
         if (key instanceof RSAPublicKey) {
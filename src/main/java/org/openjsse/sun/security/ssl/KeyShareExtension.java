@@ -30,6 +30,7 @@ import java.nio.ByteBuffer;
 import java.security.CryptoPrimitive;
 import java.security.GeneralSecurityException;
 import java.text.MessageFormat;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.EnumSet;
@@ -249,6 +250,33 @@ final class KeyShareExtension {
                     }
                     return null;
                 }
+
+                // Send the key share of the group that the server selected
+                // in its last HelloRetryRequest first, if it is still
+                // requested, so that the server need not request it again.
+                NamedGroup learnedGroup =
+                        chc.sslContext.getServerKeyShareGroup(
+                            chc.conContext.transport.getPeerHost(),
+                            chc.conContext.transport.getPeerPort());
+                if (learnedGroup != null &&
+                        learnedGroup != namedGroups.get(0) &&
+                        namedGroups.contains(learnedGroup)) {
+                    if (SSLLogger.isOn && SSLLogger.isOn("ssl,handshake")) {
+                        SSLLogger.fine("Use the key share of the group " +
+                            "previously selected by the server: " +
+                            learnedGroup.name);
+                    }
+
+                    List<NamedGroup> groups =
+                            new ArrayList<>(namedGroups.size());
+                    groups.add(learnedGroup);
+                    for (NamedGroup ng : namedGroups) {
+                        if (ng != learnedGroup) {
+                            groups.add(ng);
+                        }
+                    }
+                    namedGroups = groups;
+                }
             }
 
             List<KeyShareEntry> keyShares = new LinkedList<>();
@@ -981,6 +1009,11 @@ final class KeyShareExtension {
             //
             chc.serverSelectedNamedGroup = serverGroup;
             chc.handshakeExtensions.put(SSLExtension.HRR_KEY_SHARE, spec);
+
+            // Remember the selected group for the next connections.
+            chc.sslContext.putServerKeyShareGroup(
+                    chc.conContext.transport.getPeerHost(),
+                    chc.conContext.transport.getPeerPort(), serverGroup);
         }
     }
 }
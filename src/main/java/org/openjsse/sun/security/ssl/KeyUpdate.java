@@ -234,6 +234,8 @@ final class KeyUpdate {
 
                 rc.baseSecret = nplus1;
                 hc.conContext.inputRecord.changeReadCiphers(rc);
+                hc.conContext.metrics.keyUpdated(false);
+                SSLEvents.keyUpdate(hc.conContext, false);
                 if (SSLLogger.isOn && SSLLogger.isOn("ssl")) {
                     SSLLogger.fine("KeyUpdate: read key updated");
                 }
@@ -321,6 +323,8 @@ final class KeyUpdate {
             // changeWriteCiphers() implementation.
             wc.baseSecret = nplus1;
             hc.conContext.outputRecord.changeWriteCiphers(wc, km.status.id);
+            hc.conContext.metrics.keyUpdated(true);
+            SSLEvents.keyUpdate(hc.conContext, true);
             if (SSLLogger.isOn && SSLLogger.isOn("ssl")) {
                 SSLLogger.fine("KeyUpdate: write key updated");
             }
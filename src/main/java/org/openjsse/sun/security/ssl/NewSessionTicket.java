@@ -62,12 +62,12 @@ final class NewSessionTicket {
         final SSLExtensions extensions;
 
         NewSessionTicketMessage(HandshakeContext context,
-                int ticketLifetime, SecureRandom generator,
+                int ticketLifetime, int ticketAgeAdd,
                 byte[] ticketNonce, byte[] ticket) {
             super(context);
 
             this.ticketLifetime = ticketLifetime;
-            this.ticketAgeAdd = generator.nextInt();
+            this.ticketAgeAdd = ticketAgeAdd;
             this.ticketNonce = ticketNonce;
             this.ticket = ticket;
             this.extensions = new SSLExtensions(this);
@@ -172,12 +172,15 @@ final class NewSessionTicket {
         }
     }
 
+    private static final byte[] resumptionLabel =
+            "tls13 resumption".getBytes();
+
     private static SecretKey derivePreSharedKey(CipherSuite.HashAlg hashAlg,
             SecretKey resumptionMasterSecret, byte[] nonce) throws IOException {
         try {
             HKDF hkdf = new HKDF(hashAlg.name);
             byte[] hkdfInfo = SSLSecretDerivation.createHkdfInfo(
-                    "tls13 resumption".getBytes(), nonce, hashAlg.hashLength);
+                    resumptionLabel, nonce, hashAlg.hashLength);
             return hkdf.expand(resumptionMasterSecret, hkdfInfo,
                     hashAlg.hashLength, "TlsPreSharedKey");
         } catch  (GeneralSecurityException gse) {
@@ -248,25 +251,68 @@ final class NewSessionTicket {
                 }
                 return null;
             }
+            // create the new session
+            SecureRandom random = shc.sslContext.getSecureRandom();
+            int ticketAgeAdd = random.nextInt();
+            SSLSessionImpl sessionCopy =
+                    new SSLSessionImpl(shc.handshakeSession, newId);
+            sessionCopy.setPreSharedKey(psk);
+            sessionCopy.setTicketAgeAdd(ticketAgeAdd);
+            sessionCopy.setApplicationProtocol(
+                    shc.conContext.applicationProtocol);
+            if (shc.sslConfig.maxEarlyDataSize > 0 &&
+                    shc.sslConfig.isAvailable(SSLExtension.NST_EARLY_DATA,
+                            shc.negotiatedProtocol)) {
+                sessionCopy.setMaxEarlyDataSize(shc.sslConfig.maxEarlyDataSize);
+            }
+
+            // Use a stateless ticket if possible, the session is then
+            // carried in the ticket rather than in the session cache.
+            byte[] ticket = null;
+            if (SessionTicketKeys.enableStatelessTickets &&
+                    sessionCopy.isStatelessable()) {
+                try {
+                    ticket = sessionCache.getTicketKeys(random).encrypt(
+                            sessionCopy, random);
+                } catch (GeneralSecurityException gse) {
+                    if (SSLLogger.isOn && SSLLogger.isOn("ssl,handshake")) {
+                        SSLLogger.warning(
+                            "No stateless ticket key available", gse);
+                    }
+                }
+
+                if (ticket != null &&
+                        ticket.length >= Record.OVERFLOW_OF_INT16) {
+                    if (SSLLogger.isOn && SSLLogger.isOn("ssl,handshake")) {
+                        SSLLogger.fine("Session state is too large " +
+                            "for a stateless ticket, use session cache");
+                    }
+                    ticket = null;
+                }
+            }
+
+            if (ticket == null) {
+                // cache the new session
+                // The new session must be a child of the existing session so
+                // they will be invalidated together, etc.
+                ticket = newId.getId();
+                shc.handshakeSession.addChild(sessionCopy);
+                sessionCopy.setPskIdentity(ticket);
+                sessionCache.put(sessionCopy);
+            }
+
             NewSessionTicketMessage nstm = new NewSessionTicketMessage(shc,
-                sessionTimeoutSeconds, shc.sslContext.getSecureRandom(),
-                nonceArr, newId.getId());
+                sessionTimeoutSeconds, ticketAgeAdd, nonceArr, ticket);
+
+            // Produce extensions for NewSessionTicket handshake message.
+            SSLExtension[] extTypes = shc.sslConfig.getEnabledExtensions(
+                    SSLHandshake.NEW_SESSION_TICKET, shc.negotiatedProtocol);
+            nstm.extensions.produce(shc, extTypes);
             if (SSLLogger.isOn && SSLLogger.isOn("ssl,handshake")) {
                 SSLLogger.fine(
                         "Produced NewSessionTicket handshake message", nstm);
             }
 
-            // create and cache the new session
-            // The new session must be a child of the existing session so
-            // they will be invalidated together, etc.
-            SSLSessionImpl sessionCopy =
-                    new SSLSessionImpl(shc.handshakeSession, newId);
-            shc.handshakeSession.addChild(sessionCopy);
-            sessionCopy.setPreSharedKey(psk);
-            sessionCopy.setPskIdentity(newId.getId());
-            sessionCopy.setTicketAgeAdd(nstm.ticketAgeAdd);
-            sessionCache.put(sessionCopy);
-
             // Output the handshake message.
             nstm.write(shc.handshakeOutput);
             shc.handshakeOutput.flush();
@@ -329,6 +375,11 @@ final class NewSessionTicket {
                 "Consuming NewSessionTicket message", nstm);
             }
 
+            // Check and launch the NewSessionTicket extensions.
+            SSLExtension[] extTypes = hc.sslConfig.getEnabledExtensions(
+                    SSLHandshake.NEW_SESSION_TICKET);
+            nstm.extensions.consumeOnLoad(hc, extTypes);
+
             // discard tickets with timeout 0
             if (nstm.ticketLifetime <= 0 ||
                 nstm.ticketLifetime > MAX_TICKET_LIFETIME) {
@@ -379,6 +430,10 @@ final class NewSessionTicket {
             sessionCopy.setPreSharedKey(psk);
             sessionCopy.setTicketAgeAdd(nstm.ticketAgeAdd);
             sessionCopy.setPskIdentity(nstm.ticket);
+            sessionCopy.setApplicationProtocol(
+                    hc.conContext.applicationProtocol);
+            sessionCopy.setMaxEarlyDataSize(
+                    EarlyDataExtension.getMaxEarlyDataSize(hc));
             sessionCache.put(sessionCopy);
 
             // clean handshake context
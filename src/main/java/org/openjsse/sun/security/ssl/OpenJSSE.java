@@ -93,6 +93,58 @@ public abstract class OpenJSSE extends Provider {
         return fips;
     }
 
+    // install a session store behind an OpenJSSE session context
+    protected static void setSessionStore(
+            javax.net.ssl.SSLSessionContext context,
+            org.openjsse.net.ssl.SSLSessionStore store) {
+        if (!(context instanceof SSLSessionContextImpl)) {
+            throw new IllegalArgumentException(
+                "Not an OpenJSSE session context");
+        }
+        ((SSLSessionContextImpl)context).setSessionStore(store);
+    }
+
+    // get the metrics of an OpenJSSE SSLContext
+    protected static org.openjsse.net.ssl.SSLMetricsMXBean getMetrics(
+            javax.net.ssl.SSLContext context) {
+        return metricsOf(context);
+    }
+
+    // register a metrics listener with an OpenJSSE SSLContext
+    protected static void addMetricsListener(
+            javax.net.ssl.SSLContext context,
+            org.openjsse.net.ssl.SSLMetricsListener listener) {
+        metricsOf(context).addListener(listener);
+    }
+
+    // remove a metrics listener from an OpenJSSE SSLContext
+    protected static void removeMetricsListener(
+            javax.net.ssl.SSLContext context,
+            org.openjsse.net.ssl.SSLMetricsListener listener) {
+        metricsOf(context).removeListener(listener);
+    }
+
+    // reload the key entries of an OpenJSSE PKIX key manager
+    protected static void reloadKeyManager(javax.net.ssl.KeyManager km) {
+        if (!(km instanceof X509KeyManagerImpl)) {
+            throw new IllegalArgumentException(
+                "Not an OpenJSSE PKIX key manager");
+        }
+        ((X509KeyManagerImpl)km).reload();
+    }
+
+    private static SSLMetrics metricsOf(javax.net.ssl.SSLContext context) {
+        // The session contexts are the only parts of the SSLContextImpl
+        // exposed by the SSLContext.
+        javax.net.ssl.SSLSessionContext sessionContext =
+                context.getClientSessionContext();
+        if (!(sessionContext instanceof SSLSessionContextImpl)) {
+            throw new IllegalArgumentException(
+                "Not an OpenJSSE SSLContext");
+        }
+        return ((SSLSessionContextImpl)sessionContext).metrics;
+    }
+
     // ensure we can use FIPS mode using the specified crypto provider.
     // enable FIPS mode if not already enabled.
     private static synchronized void ensureFIPS(java.security.Provider p) {
@@ -45,6 +45,9 @@ abstract class OutputRecord
     // Needed for KeyUpdate, used after Handshake.Finished
     TransportContext            tc;
 
+    // the metrics of the SSLContextImpl, set by TransportContext
+    SSLMetrics                  metrics;
+
     final HandshakeHash         handshakeHash;
     boolean                     firstMessage;
 
@@ -123,6 +126,12 @@ abstract class OutputRecord
     // SSLEngine and SSLSocket
     abstract void encodeChangeCipherSpec() throws IOException;
 
+    // SSLEngine and SSLSocket
+    void encodeEarlyData(byte[] source,
+            int offset, int length) throws IOException {
+        throw new UnsupportedOperationException();
+    }
+
     // SSLEngine and SSLSocket
     void disposeWriteCipher() {
         throw new UnsupportedOperationException();
@@ -397,7 +397,14 @@ final class PreSharedKeyExtension {
                         shc.sslContext.engineGetServerSessionContext();
                 int idIndex = 0;
                 for (PskIdentity requestedId : pskSpec.identities) {
-                    SSLSessionImpl s = sessionCache.pull(requestedId.identity);
+                    SSLSessionImpl s = null;
+                    if (SessionTicketKeys.enableStatelessTickets) {
+                        s = pullStateless(shc, sessionCache,
+                                requestedId.identity);
+                    }
+                    if (s == null) {
+                        s = sessionCache.pull(requestedId.identity);
+                    }
                     if (s != null && canRejoin(clientHello, shc, s)) {
                         if (SSLLogger.isOn && SSLLogger.isOn("ssl,handshake")) {
                             SSLLogger.fine("Resuming session: ", s);
@@ -426,6 +433,70 @@ final class PreSharedKeyExtension {
         }
     }
 
+    /*
+     * Return the index of the PSK identity selected by the server, or -1
+     * if no PSK identity has been selected.
+     */
+    static int getSelectedIdentity(ServerHandshakeContext shc) {
+        SHPreSharedKeySpec shPsk = (SHPreSharedKeySpec)
+                shc.handshakeExtensions.get(SSLExtension.SH_PRE_SHARED_KEY);
+        return (shPsk == null) ? -1 : shPsk.selectedIdentity;
+    }
+
+    /*
+     * Return the obfuscated ticket age of the selected PSK identity, as an
+     * unsigned 32-bit value, or -1 if no PSK identity has been selected.
+     */
+    static long getSelectedTicketAge(ServerHandshakeContext shc) {
+        CHPreSharedKeySpec chPsk = (CHPreSharedKeySpec)
+                shc.handshakeExtensions.get(SSLExtension.CH_PRE_SHARED_KEY);
+        int index = getSelectedIdentity(shc);
+        if (chPsk == null || index < 0 || index >= chPsk.identities.size()) {
+            return -1;
+        }
+
+        return chPsk.identities.get(index).obfuscatedAge & 0xFFFFFFFFL;
+    }
+
+    /*
+     * Return the binder of the selected PSK identity, or null if no PSK
+     * identity has been selected.
+     */
+    static byte[] getSelectedBinder(ServerHandshakeContext shc) {
+        CHPreSharedKeySpec chPsk = (CHPreSharedKeySpec)
+                shc.handshakeExtensions.get(SSLExtension.CH_PRE_SHARED_KEY);
+        int index = getSelectedIdentity(shc);
+        if (chPsk == null || index < 0 || index >= chPsk.binders.size()) {
+            return null;
+        }
+
+        return chPsk.binders.get(index);
+    }
+
+    // Re-create the session from a stateless ticket, if possible.
+    private static SSLSessionImpl pullStateless(ServerHandshakeContext shc,
+            SSLSessionContextImpl sessionCache, byte[] ticket) {
+        SessionTicketKeys ticketKeys;
+        try {
+            ticketKeys = sessionCache.getTicketKeys(
+                    shc.sslContext.getSecureRandom());
+        } catch (GeneralSecurityException gse) {
+            if (SSLLogger.isOn && SSLLogger.isOn("ssl,handshake")) {
+                SSLLogger.warning("No stateless ticket key available", gse);
+            }
+            return null;
+        }
+
+        SSLSessionImpl s = ticketKeys.decrypt(ticket,
+                new SessionId(true, shc.sslContext.getSecureRandom()),
+                sessionCache.getSessionTimeout());
+        if (s != null) {
+            s.setContext(sessionCache);
+        }
+
+        return s;
+    }
+
     private static boolean canRejoin(ClientHelloMessage clientHello,
         ServerHandshakeContext shc, SSLSessionImpl s) {
 
@@ -778,24 +849,28 @@ final class PreSharedKeyExtension {
         return computeBinder(context, binderKey, session, digest);
     }
 
+    private static final byte[] finishedLabel = "tls13 finished".getBytes();
+    private static final byte[] binderLabel = "tls13 res binder".getBytes();
+
     private static byte[] computeBinder(HandshakeContext context,
             SecretKey binderKey,
             SSLSessionImpl session, byte[] digest) throws IOException {
         try {
             CipherSuite.HashAlg hashAlg = session.getSuite().hashAlg;
             HKDF hkdf = new HKDF(hashAlg.name);
-            byte[] label = ("tls13 finished").getBytes();
             byte[] hkdfInfo = SSLSecretDerivation.createHkdfInfo(
-                    label, new byte[0], hashAlg.hashLength);
+                    finishedLabel, new byte[0], hashAlg.hashLength);
             SecretKey finishedKey = hkdf.expand(
                     binderKey, hkdfInfo, hashAlg.hashLength, "TlsBinderKey");
 
             String hmacAlg =
                 "Hmac" + hashAlg.name.replace("-", "");
             try {
-                Mac hmac = JsseJce.getMac(hmacAlg);
+                Mac hmac = JsseJce.acquireMac(hmacAlg);
                 hmac.init(finishedKey);
-                return hmac.doFinal(digest);
+                byte[] binder = hmac.doFinal(digest);
+                JsseJce.releaseMac(hmac);
+                return binder;
             } catch (NoSuchAlgorithmException | InvalidKeyException ex) {
                 throw context.conContext.fatal(Alert.INTERNAL_ERROR, ex);
             }
@@ -812,10 +887,10 @@ final class PreSharedKeyExtension {
             byte[] zeros = new byte[hashAlg.hashLength];
             SecretKey earlySecret = hkdf.extract(zeros, psk, "TlsEarlySecret");
 
-            byte[] label = ("tls13 res binder").getBytes();
-            MessageDigest md = MessageDigest.getInstance(hashAlg.name);
+            MessageDigest md = JsseJce.acquireMessageDigest(hashAlg.name);
             byte[] hkdfInfo = SSLSecretDerivation.createHkdfInfo(
-                    label, md.digest(new byte[0]), hashAlg.hashLength);
+                    binderLabel, md.digest(new byte[0]), hashAlg.hashLength);
+            JsseJce.releaseMessageDigest(md);
             return hkdf.expand(earlySecret,
                     hkdfInfo, hashAlg.hashLength, "TlsBinderKey");
         } catch (GeneralSecurityException ex) {
@@ -29,6 +29,8 @@ import java.security.AlgorithmConstraints;
 import java.security.AlgorithmParameters;
 import java.security.CryptoPrimitive;
 import java.security.Key;
+import java.util.Arrays;
+import java.util.Objects;
 import java.util.Set;
 import org.openjsse.javax.net.ssl.*;
 import sun.security.util.DisabledAlgorithmConstraints;
@@ -221,6 +223,33 @@ final class SSLAlgorithmConstraints implements AlgorithmConstraints {
         return permitted;
     }
 
+    // Two instances are equal if they permit the same algorithms, so that
+    // certificate validation results can be cached per constraints.
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+
+        if (!(obj instanceof SSLAlgorithmConstraints)) {
+            return false;
+        }
+
+        SSLAlgorithmConstraints that = (SSLAlgorithmConstraints)obj;
+        return (enabledX509DisabledAlgConstraints ==
+                        that.enabledX509DisabledAlgConstraints) &&
+                Objects.equals(userSpecifiedConstraints,
+                        that.userSpecifiedConstraints) &&
+                Objects.equals(peerSpecifiedConstraints,
+                        that.peerSpecifiedConstraints);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(userSpecifiedConstraints,
+                peerSpecifiedConstraints, enabledX509DisabledAlgConstraints);
+    }
+
 
     private static class SupportedSignatureAlgorithmConstraints
                                     implements AlgorithmConstraints {
@@ -285,5 +314,22 @@ final class SSLAlgorithmConstraints implements AlgorithmConstraints {
 
             return permits(primitives, algorithm, parameters);
         }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+
+            return (obj instanceof SupportedSignatureAlgorithmConstraints) &&
+                    Arrays.equals(supportedAlgorithms,
+                    ((SupportedSignatureAlgorithmConstraints)obj)
+                            .supportedAlgorithms);
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(supportedAlgorithms);
+        }
     }
 }
@@ -26,7 +26,6 @@
 package org.openjsse.sun.security.ssl;
 
 import java.io.IOException;
-import java.nio.ByteBuffer;
 import java.security.GeneralSecurityException;
 import java.security.spec.AlgorithmParameterSpec;
 import javax.crypto.SecretKey;
@@ -39,9 +38,10 @@ final class SSLBasicKeyDerivation implements SSLKeyDerivation {
 
     SSLBasicKeyDerivation(SecretKey secret, String hashAlg,
             byte[] label, byte[] context, int length) {
-        this.hashAlg = hashAlg.replace("-", "");
+        this.hashAlg = hashAlg;
         this.secret = secret;
-        this.hkdfInfo = createHkdfInfo(label, context, length);
+        this.hkdfInfo =
+                SSLSecretDerivation.createHkdfInfo(label, context, length);
     }
 
     @Override
@@ -57,20 +57,6 @@ final class SSLBasicKeyDerivation implements SSLKeyDerivation {
         }
     }
 
-    private static byte[] createHkdfInfo(
-            byte[] label, byte[] context, int length) {
-        byte[] info = new byte[4 + label.length + context.length];
-        ByteBuffer m = ByteBuffer.wrap(info);
-        try {
-            Record.putInt16(m, length);
-            Record.putBytes8(m, label);
-            Record.putBytes8(m, context);
-        } catch (IOException ioe) {
-            // unlikely
-        }
-        return info;
-    }
-
     static class SecretSizeSpec implements AlgorithmParameterSpec {
         final int length;
 
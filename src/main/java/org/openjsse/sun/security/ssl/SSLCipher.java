@@ -1848,6 +1848,10 @@ enum SSLCipher {
             private final byte[] iv;
             private final SecureRandom random;
 
+            // reusable per-record nonce and additional authentication data
+            private final byte[] nonce;
+            private final byte[] aad;
+
             GcmReadCipher(Authenticator authenticator,
                     ProtocolVersion protocolVersion,
                     SSLCipher sslCipher, String algorithm,
@@ -1859,6 +1863,8 @@ enum SSLCipher {
                 this.key = key;
                 this.iv = ((IvParameterSpec)params).getIV();
                 this.random = random;
+                this.nonce = new byte[iv.length];
+                this.aad = new byte[authenticator.block.length];
 
                 keyLimitCountdown = cipherLimits.getOrDefault(
                         algorithm.toUpperCase() + ":" + tag[0], 0L);
@@ -1895,15 +1901,7 @@ enum SSLCipher {
                         "more than tag size (" + tagSize + ")");
                 }
 
-                byte[] sn = sequence;
-                if (sn == null) {
-                    sn = authenticator.sequenceNumber();
-                }
-                byte[] nonce = iv.clone();
-                int offset = nonce.length - sn.length;
-                for (int i = 0; i < sn.length; i++) {
-                    nonce[offset + i] ^= sn[i];
-                }
+                computeNonce(iv, sequence, authenticator, nonce);
 
                 // initialize the AEAD cipher for the unique IV
                 GCMParameterSpec spec =
@@ -1919,9 +1917,9 @@ enum SSLCipher {
 
                 // Update the additional authentication data, using the
                 // implicit sequence number of the authenticator.
-                byte[] aad = authenticator.acquireAuthenticationBytes(
-                                        contentType, bb.remaining(), sn);
-                cipher.updateAAD(aad);
+                int aadLen = authenticator.acquireAuthenticationBytes(
+                        contentType, bb.remaining(), sequence, aad);
+                cipher.updateAAD(aad, 0, aadLen);
 
                 int len, pos = bb.position();
                 ByteBuffer dup = bb.duplicate();
@@ -2002,6 +2000,10 @@ enum SSLCipher {
             private final byte[] iv;
             private final SecureRandom random;
 
+            // reusable per-record nonce and additional authentication data
+            private final byte[] nonce;
+            private final byte[] aad;
+
             GcmWriteCipher(Authenticator authenticator,
                     ProtocolVersion protocolVersion,
                     SSLCipher sslCipher, String algorithm,
@@ -2013,6 +2015,8 @@ enum SSLCipher {
                 this.key = key;
                 this.iv = ((IvParameterSpec)params).getIV();
                 this.random = random;
+                this.nonce = new byte[iv.length];
+                this.aad = new byte[authenticator.block.length];
 
                 keyLimitCountdown = cipherLimits.getOrDefault(
                         algorithm.toUpperCase() + ":" + tag[0], 0L);
@@ -2031,12 +2035,7 @@ enum SSLCipher {
             @Override
             public int encrypt(byte contentType,
                     ByteBuffer bb) {
-                byte[] sn = authenticator.sequenceNumber();
-                byte[] nonce = iv.clone();
-                int offset = nonce.length - sn.length;
-                for (int i = 0; i < sn.length; i++) {
-                    nonce[offset + i] ^= sn[i];
-                }
+                computeNonce(iv, null, authenticator, nonce);
 
                 // initialize the AEAD cipher for the unique IV
                 GCMParameterSpec spec =
@@ -2053,9 +2052,9 @@ enum SSLCipher {
                 // Update the additional authentication data, using the
                 // implicit sequence number of the authenticator.
                 int outputSize = cipher.getOutputSize(bb.remaining());
-                byte[] aad = authenticator.acquireAuthenticationBytes(
-                                        contentType, outputSize, sn);
-                cipher.updateAAD(aad);
+                int aadLen = authenticator.acquireAuthenticationBytes(
+                        contentType, outputSize, null, aad);
+                cipher.updateAAD(aad, 0, aadLen);
 
                 int len, pos = bb.position();
                 if (SSLLogger.isOn && SSLLogger.isOn("plaintext")) {
@@ -2402,6 +2401,10 @@ enum SSLCipher {
             private final byte[] iv;
             private final SecureRandom random;
 
+            // reusable per-record nonce and additional authentication data
+            private final byte[] nonce;
+            private final byte[] aad;
+
             CC20P1305ReadCipher(Authenticator authenticator,
                     ProtocolVersion protocolVersion,
                     SSLCipher sslCipher, String algorithm,
@@ -2413,6 +2416,8 @@ enum SSLCipher {
                 this.key = key;
                 this.iv = ((IvParameterSpec)params).getIV();
                 this.random = random;
+                this.nonce = new byte[iv.length];
+                this.aad = new byte[authenticator.block.length];
 
                 // DON'T initialize the cipher for AEAD!
             }
@@ -2439,16 +2444,7 @@ enum SSLCipher {
                         "more than tag size (" + tagSize + ")");
                 }
 
-                byte[] sn = sequence;
-                if (sn == null) {
-                    sn = authenticator.sequenceNumber();
-                }
-                byte[] nonce = new byte[iv.length];
-                System.arraycopy(sn, 0, nonce, nonce.length - sn.length,
-                        sn.length);
-                for (int i = 0; i < nonce.length; i++) {
-                    nonce[i] ^= iv[i];
-                }
+                computeNonce(iv, sequence, authenticator, nonce);
 
                 // initialize the AEAD cipher with the unique IV
                 AlgorithmParameterSpec spec = new IvParameterSpec(nonce);
@@ -2463,9 +2459,9 @@ enum SSLCipher {
 
                 // Update the additional authentication data, using the
                 // implicit sequence number of the authenticator.
-                byte[] aad = authenticator.acquireAuthenticationBytes(
-                                        contentType, bb.remaining(), sn);
-                cipher.updateAAD(aad);
+                int aadLen = authenticator.acquireAuthenticationBytes(
+                        contentType, bb.remaining(), sequence, aad);
+                cipher.updateAAD(aad, 0, aadLen);
 
                 int len = bb.remaining();
                 int pos = bb.position();
@@ -2544,6 +2540,10 @@ enum SSLCipher {
             private final byte[] iv;
             private final SecureRandom random;
 
+            // reusable per-record nonce and additional authentication data
+            private final byte[] nonce;
+            private final byte[] aad;
+
             CC20P1305WriteCipher(Authenticator authenticator,
                     ProtocolVersion protocolVersion,
                     SSLCipher sslCipher, String algorithm,
@@ -2555,6 +2555,8 @@ enum SSLCipher {
                 this.key = key;
                 this.iv = ((IvParameterSpec)params).getIV();
                 this.random = random;
+                this.nonce = new byte[iv.length];
+                this.aad = new byte[authenticator.block.length];
 
                 keyLimitCountdown = cipherLimits.getOrDefault(
                         algorithm.toUpperCase() + ":" + tag[0], 0L);
@@ -2573,13 +2575,7 @@ enum SSLCipher {
             @Override
             public int encrypt(byte contentType,
                     ByteBuffer bb) {
-                byte[] sn = authenticator.sequenceNumber();
-                byte[] nonce = new byte[iv.length];
-                System.arraycopy(sn, 0, nonce, nonce.length - sn.length,
-                        sn.length);
-                for (int i = 0; i < nonce.length; i++) {
-                    nonce[i] ^= iv[i];
-                }
+                computeNonce(iv, null, authenticator, nonce);
 
                 // initialize the AEAD cipher for the unique IV
                 AlgorithmParameterSpec spec = new IvParameterSpec(nonce);
@@ -2595,9 +2591,9 @@ enum SSLCipher {
                 // Update the additional authentication data, using the
                 // implicit sequence number of the authenticator.
                 int outputSize = cipher.getOutputSize(bb.remaining());
-                byte[] aad = authenticator.acquireAuthenticationBytes(
-                                        contentType, outputSize, sn);
-                cipher.updateAAD(aad);
+                int aadLen = authenticator.acquireAuthenticationBytes(
+                        contentType, outputSize, null, aad);
+                cipher.updateAAD(aad, 0, aadLen);
 
                 int len = bb.remaining();
                 int pos = bb.position();
@@ -2667,6 +2663,30 @@ enum SSLCipher {
         }
     }
 
+    /*
+     * Computes the per-record nonce of the TLS 1.3 AEAD ciphers into the
+     * reusable nonce array: the static IV XORed with the 64-bit record
+     * sequence number, left-padded to the IV length.
+     *
+     * The explicit sequence number is used if specified, otherwise the
+     * implicit sequence number of the authenticator.
+     *
+     * The parameter spec built from the nonce is still allocated for each
+     * record: GCMParameterSpec and IvParameterSpec are immutable copies,
+     * and Cipher.init() needs a spec carrying the new nonce.  The Plaintext
+     * returned by decrypt() is allocated for each record as well, since
+     * the record layers may hold several of them at once.
+     */
+    private static void computeNonce(byte[] iv, byte[] sequence,
+            Authenticator authenticator, byte[] nonce) {
+        byte[] sn = (sequence != null) ? sequence : authenticator.block;
+        int offset = nonce.length - 8;
+        System.arraycopy(iv, 0, nonce, 0, nonce.length);
+        for (int i = 0; i < 8; i++) {
+            nonce[offset + i] ^= sn[i];
+        }
+    }
+
     private static void addMac(MAC signer,
             ByteBuffer destination, byte contentType) {
         if (signer.macAlg().size != 0) {
@@ -61,6 +61,7 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
+import java.util.concurrent.Executor;
 import java.util.function.BiFunction;
 import javax.net.ssl.HandshakeCompletedListener;
 import javax.net.ssl.SNIMatcher;
@@ -89,6 +90,17 @@ final class SSLConfiguration implements Cloneable {
     boolean                     preferLocalCipherSuites;
     boolean                     enableRetransmissions;
     int                         maximumPacketSize;
+    int                         maxEarlyDataSize;
+
+    // Whether SSLEngine wrap/unwrap may process multiple records at once
+    boolean                     enableRecordBatching;
+
+    // Whether SSLEngine processes all handshake messages in delegated tasks,
+    // and the executor of the delegated tasks and its completion callback,
+    // if any
+    boolean                     delegateAllHandshakeTasks;
+    Executor                    delegatedTaskExecutor;
+    Runnable                    delegatedTaskCallback;
 
     // The configured signature schemes for "signature_algorithms" and
     // "signature_algorithms_cert" extensions
@@ -135,6 +147,12 @@ final class SSLConfiguration implements Cloneable {
            (java.security.AccessController.doPrivileged(
                new GetIntegerAction("jdk.tls.maxHandshakeMessageSize", 32768))).intValue();
 
+    // The default TLS 1.3 max_early_data_size of the server, 0 to disable
+    // early data.
+    static final int defaultMaxEarlyDataSize =
+           (java.security.AccessController.doPrivileged(
+               new GetIntegerAction("org.openjsse.server.maxEarlyDataSize", 0))).intValue();
+
     // Set the max certificate chain length to 10
     static final int maxCertificateChainLength =
            (java.security.AccessController.doPrivileged(
@@ -173,6 +191,12 @@ final class SSLConfiguration implements Cloneable {
         this.applicationProtocols = new String[0];
         this.enableRetransmissions = sslContext.isDTLS();
         this.maximumPacketSize = 0;         // please reset it explicitly later
+        this.maxEarlyDataSize = isClientMode ?
+                0 : Math.max(defaultMaxEarlyDataSize, 0);
+        this.enableRecordBatching = false;
+        this.delegateAllHandshakeTasks = false;
+        this.delegatedTaskExecutor = null;
+        this.delegatedTaskCallback = null;
 
         this.signatureSchemes = isClientMode ?
                 CustomizedClientSignatureSchemes.signatureSchemes :
@@ -232,6 +256,11 @@ final class SSLConfiguration implements Cloneable {
         params.setUseCipherSuitesOrder(this.preferLocalCipherSuites);
         params.setEnableRetransmissions(this.enableRetransmissions);
         params.setMaximumPacketSize(this.maximumPacketSize);
+        params.setMaxEarlyDataSize(this.maxEarlyDataSize);
+        params.setEnableRecordBatching(this.enableRecordBatching);
+        params.setDelegateAllHandshakeTasks(this.delegateAllHandshakeTasks);
+        params.setDelegatedTaskExecutor(
+                this.delegatedTaskExecutor, this.delegatedTaskCallback);
 
         return params;
     }
@@ -293,6 +322,11 @@ final class SSLConfiguration implements Cloneable {
 
             this.enableRetransmissions = ((org.openjsse.javax.net.ssl.SSLParameters)params).getEnableRetransmissions();
             this.maximumPacketSize = ((org.openjsse.javax.net.ssl.SSLParameters)params).getMaximumPacketSize();
+            this.maxEarlyDataSize = ((org.openjsse.javax.net.ssl.SSLParameters)params).getMaxEarlyDataSize();
+            this.enableRecordBatching = ((org.openjsse.javax.net.ssl.SSLParameters)params).getEnableRecordBatching();
+            this.delegateAllHandshakeTasks = ((org.openjsse.javax.net.ssl.SSLParameters)params).getDelegateAllHandshakeTasks();
+            this.delegatedTaskExecutor = ((org.openjsse.javax.net.ssl.SSLParameters)params).getDelegatedTaskExecutor();
+            this.delegatedTaskCallback = ((org.openjsse.javax.net.ssl.SSLParameters)params).getDelegatedTaskCallback();
         }
         this.preferLocalCipherSuites = params.getUseCipherSuitesOrder();
     }
@@ -325,6 +359,14 @@ final class SSLConfiguration implements Cloneable {
         }
     }
 
+    /**
+     * Return true if all handshake messages are processed in delegated
+     * tasks, either explicitly or because of a delegated task executor.
+     */
+    boolean delegatesAllHandshakeTasks() {
+        return delegateAllHandshakeTasks || (delegatedTaskExecutor != null);
+    }
+
     /**
      * Return true if the extension is available.
      */
@@ -74,6 +74,8 @@ import org.openjsse.javax.net.ssl.SSLSocket;
 import javax.net.ssl.ExtendedSSLSession;
 import sun.security.action.GetPropertyAction;
 import sun.security.provider.certpath.AlgorithmChecker;
+import org.openjsse.sun.security.ssl.SupportedGroupsExtension.NamedGroup;
+import org.openjsse.sun.security.util.Cache;
 import org.openjsse.sun.security.validator.Validator;
 
 /**
@@ -110,10 +112,34 @@ public abstract class SSLContextImpl extends SSLContextSpi {
 
     private volatile StatusResponseManager statusResponseManager;
 
+    // The encoded certificate_authorities of the trust manager.
+    private volatile CertificateRequest.EncodedAuthorities encodedAuthorities;
+
+    // The ClientHello binders of the accepted TLS 1.3 early data.
+    private final EarlyDataExtension.ReplayStore earlyDataReplayStore =
+            new EarlyDataExtension.ReplayStore();
+
+    // the metrics of the connections of this context
+    final SSLMetrics metrics;
+
+    // The maximum number of servers whose HelloRetryRequest selected group
+    // is remembered by the client side, 0 to disable.
+    private static final int keyShareGroupCacheSize =
+            Utilities.getUIntProperty(
+                    "org.openjsse.client.keyShareGroupCacheSize", 1024);
+
+    // The named groups selected by the servers in HelloRetryRequest
+    // messages, keyed by "host:port", so that later ClientHello messages
+    // to these servers send a key share of that group first.
+    private final Cache<String, NamedGroup> serverKeyShareGroups =
+            (keyShareGroupCacheSize == 0) ? Cache.newNullCache() :
+                    Cache.newHardMemoryCache(keyShareGroupCacheSize, 86400);
+
     SSLContextImpl() {
         ephemeralKeyManager = new EphemeralKeyManager();
-        clientCache = new SSLSessionContextImpl();
-        serverCache = new SSLSessionContextImpl();
+        metrics = new SSLMetrics(this);
+        clientCache = new SSLSessionContextImpl(metrics);
+        serverCache = new SSLSessionContextImpl(metrics);
     }
 
     @Override
@@ -285,6 +311,32 @@ public abstract class SSLContextImpl extends SSLContextSpi {
         return ephemeralKeyManager;
     }
 
+    /*
+     * Return the named group that the server at host:port selected in its
+     * last HelloRetryRequest message, or null if unknown.
+     */
+    NamedGroup getServerKeyShareGroup(String host, int port) {
+        if (host == null || port < 0) {
+            return null;
+        }
+
+        return serverKeyShareGroups.get(getServerKey(host, port));
+    }
+
+    /*
+     * Remember the named group that the server at host:port selected in a
+     * HelloRetryRequest message.
+     */
+    void putServerKeyShareGroup(String host, int port, NamedGroup group) {
+        if (host != null && port >= 0) {
+            serverKeyShareGroups.put(getServerKey(host, port), group);
+        }
+    }
+
+    private static String getServerKey(String host, int port) {
+        return host.toLowerCase(Locale.ENGLISH) + ":" + port;
+    }
+
     // Used for DTLS in server mode only.
     HelloCookieManager getHelloCookieManager(ProtocolVersion protocolVersion) {
         if (helloCookieManagerBuilder == null) {
@@ -299,6 +351,21 @@ public abstract class SSLContextImpl extends SSLContextSpi {
         return helloCookieManagerBuilder.valueOf(protocolVersion);
     }
 
+    // Used for CertificateRequest in server mode only.
+    CertificateRequest.EncodedAuthorities getEncodedAuthorities() {
+        return encodedAuthorities;
+    }
+
+    void setEncodedAuthorities(
+            CertificateRequest.EncodedAuthorities encodedAuthorities) {
+        this.encodedAuthorities = encodedAuthorities;
+    }
+
+    // Used for TLS 1.3 early data in server mode only.
+    EarlyDataExtension.ReplayStore getEarlyDataReplayStore() {
+        return earlyDataReplayStore;
+    }
+
     StatusResponseManager getStatusResponseManager() {
         if (serverEnableStapling && statusResponseManager == null) {
             synchronized (this) {
@@ -308,6 +375,7 @@ public abstract class SSLContextImpl extends SSLContextSpi {
                                 "Initializing StatusResponseManager");
                     }
                     statusResponseManager = new StatusResponseManager();
+                    metrics.statusResponseManager = statusResponseManager;
                 }
             }
         }
@@ -59,6 +59,8 @@ import java.security.PrivilegedActionException;
 import java.security.PrivilegedExceptionAction;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.function.BiFunction;
 import org.openjsse.javax.net.ssl.SSLEngine;
 import org.openjsse.javax.net.ssl.SSLEngineResult;
@@ -82,6 +84,9 @@ final class SSLEngineImpl extends SSLEngine implements SSLTransport {
     private final SSLContextImpl        sslContext;
     final TransportContext              conContext;
 
+    // A delegated task is running on the delegated task executor.
+    private volatile boolean            isTaskRunning = false;
+
     /**
      * Constructor for an SSLEngine from SSLContext, without
      * host/port hints.
@@ -135,16 +140,38 @@ final class SSLEngineImpl extends SSLEngine implements SSLTransport {
             throw conContext.fatal(Alert.INTERNAL_ERROR,
                 "Fail to begin handshake", ex);
         }
+
+        executeDelegatedTask(conContext.getHandshakeStatus());
     }
 
     @Override
-    public synchronized SSLEngineResult wrap(ByteBuffer[] appData,
+    public SSLEngineResult wrap(ByteBuffer[] appData,
             int offset, int length, ByteBuffer netData) throws SSLException {
         return wrap(appData, offset, length, new ByteBuffer[]{ netData }, 0, 1);
     }
 
     // @Override
-    public synchronized SSLEngineResult wrap(
+    public SSLEngineResult wrap(
+        ByteBuffer[] srcs, int srcsOffset, int srcsLength,
+        ByteBuffer[] dsts, int dstsOffset, int dstsLength) throws SSLException {
+
+        // Don't wait for the delegated task running on the executor,
+        // unless the engine is closed and the closure must be reported.
+        if (isTaskRunning &&
+                !conContext.isBroken && !conContext.isOutboundClosed()) {
+            return new SSLEngineResult(
+                    Status.OK, HandshakeStatus.NEED_TASK, 0, 0);
+        }
+
+        synchronized (this) {
+            SSLEngineResult result = doWrap(
+                srcs, srcsOffset, srcsLength, dsts, dstsOffset, dstsLength);
+            executeDelegatedTask(result.getHandshakeStatus());
+            return result;
+        }
+    }
+
+    private SSLEngineResult doWrap(
         ByteBuffer[] srcs, int srcsOffset, int srcsLength,
         ByteBuffer[] dsts, int dstsOffset, int dstsLength) throws SSLException {
 
@@ -258,6 +285,12 @@ final class SSLEngineImpl extends SSLEngine implements SSLTransport {
             if (ciphertext == null && srcsRemains != 0) {
                 ciphertext = encode(srcs, srcsOffset, srcsLength,
                         dsts, dstsOffset, dstsLength);
+
+                if (conContext.sslConfig.enableRecordBatching) {
+                    ciphertext = encodeMore(ciphertext,
+                            srcs, srcsOffset, srcsLength,
+                            dsts, dstsOffset, dstsLength);
+                }
             }
         } catch (IOException ioe) {
             if (ioe instanceof SSLException) {
@@ -365,6 +398,47 @@ final class SSLEngineImpl extends SSLEngine implements SSLTransport {
         return ciphertext;
     }
 
+    /*
+     * Encode more application data records, as long as the destination
+     * buffer can hold a full record, if record batching is enabled.
+     *
+     * Return the ciphertext of the last encoded record.
+     */
+    private Ciphertext encodeMore(Ciphertext ciphertext,
+        ByteBuffer[] srcs, int srcsOffset, int srcsLength,
+        ByteBuffer[] dsts, int dstsOffset, int dstsLength) throws IOException {
+
+        int packetSize = conContext.conSession.getPacketBufferSize();
+        while (ciphertext != null &&
+                ciphertext.contentType == ContentType.APPLICATION_DATA.id &&
+                ciphertext.handshakeStatus ==
+                        HandshakeStatus.NOT_HANDSHAKING &&
+                conContext.outputRecord.isEmpty() &&
+                dsts[dstsOffset].remaining() >= packetSize &&
+                remaining(srcs, srcsOffset, srcsLength) > 0) {
+
+            Ciphertext next = encode(srcs, srcsOffset, srcsLength,
+                    dsts, dstsOffset, dstsLength);
+            if (next == null) {
+                break;
+            }
+
+            ciphertext = next;
+        }
+
+        return ciphertext;
+    }
+
+    private static int remaining(
+            ByteBuffer[] buffers, int offset, int length) {
+        int remains = 0;
+        for (int i = offset; i < offset + length; i++) {
+            remains += buffers[i].remaining();
+        }
+
+        return remains;
+    }
+
     private HandshakeStatus tryToFinishHandshake(byte contentType) {
         HandshakeStatus hsStatus = null;
         if ((contentType == ContentType.HANDSHAKE.id) &&
@@ -456,14 +530,34 @@ final class SSLEngineImpl extends SSLEngine implements SSLTransport {
     }
 
     @Override
-    public synchronized SSLEngineResult unwrap(ByteBuffer src,
+    public SSLEngineResult unwrap(ByteBuffer src,
             ByteBuffer[] dsts, int offset, int length) throws SSLException {
         return unwrap(
                 new ByteBuffer[]{src}, 0, 1, dsts, offset, length);
     }
 
     // @Override
-    public synchronized SSLEngineResult unwrap(
+    public SSLEngineResult unwrap(
+        ByteBuffer[] srcs, int srcsOffset, int srcsLength,
+        ByteBuffer[] dsts, int dstsOffset, int dstsLength) throws SSLException {
+
+        // Don't wait for the delegated task running on the executor,
+        // unless the engine is closed and the closure must be reported.
+        if (isTaskRunning &&
+                !conContext.isBroken && !conContext.isInboundClosed()) {
+            return new SSLEngineResult(
+                    Status.OK, HandshakeStatus.NEED_TASK, 0, 0);
+        }
+
+        synchronized (this) {
+            SSLEngineResult result = doUnwrap(
+                srcs, srcsOffset, srcsLength, dsts, dstsOffset, dstsLength);
+            executeDelegatedTask(result.getHandshakeStatus());
+            return result;
+        }
+    }
+
+    private SSLEngineResult doUnwrap(
         ByteBuffer[] srcs, int srcsOffset, int srcsLength,
         ByteBuffer[] dsts, int dstsOffset, int dstsLength) throws SSLException {
 
@@ -674,6 +768,12 @@ final class SSLEngineImpl extends SSLEngine implements SSLTransport {
             }
         }
 
+        if (conContext.sslConfig.enableRecordBatching) {
+            plainText = decodeMore(plainText,
+                    srcs, srcsOffset, srcsLength,
+                    dsts, dstsOffset, dstsLength);
+        }
+
         /*
          * Check the various condition that we could be reporting.
          *
@@ -705,6 +805,54 @@ final class SSLEngineImpl extends SSLEngine implements SSLTransport {
                 status, hsStatus, deltaNet, deltaApp, plainText.recordSN, needUnwrapAgain);
     }
 
+    /*
+     * Decode more complete records, as long as the previous record is
+     * application data and the destination buffers can hold the next
+     * fragment, if record batching is enabled.
+     *
+     * Return the plaintext of the last decoded record.
+     */
+    private Plaintext decodeMore(Plaintext plainText,
+        ByteBuffer[] srcs, int srcsOffset, int srcsLength,
+        ByteBuffer[] dsts, int dstsOffset, int dstsLength) throws IOException {
+
+        while (plainText.contentType == ContentType.APPLICATION_DATA.id &&
+                plainText.handshakeStatus ==
+                        HandshakeStatus.NOT_HANDSHAKING &&
+                !isInboundDone()) {
+            int packetLen = conContext.inputRecord.bytesInCompletePacket(
+                    srcs, srcsOffset, srcsLength);
+            if (packetLen <= 0 ||
+                    packetLen > conContext.conSession.getPacketBufferSize() ||
+                    packetLen > remaining(srcs, srcsOffset, srcsLength) ||
+                    conContext.inputRecord.estimateFragmentSize(packetLen) >
+                            remaining(dsts, dstsOffset, dstsLength)) {
+                break;
+            }
+
+            Plaintext next;
+            try {
+                next = decode(srcs, srcsOffset, srcsLength,
+                        dsts, dstsOffset, dstsLength);
+            } catch (IOException ioe) {
+                if (ioe instanceof SSLException) {
+                    throw ioe;
+                } else {
+                    throw new SSLException("readRecord", ioe);
+                }
+            }
+
+            if (next == Plaintext.PLAINTEXT_NULL) {
+                // The record was discarded.
+                break;
+            }
+
+            plainText = next;
+        }
+
+        return plainText;
+    }
+
     private Plaintext decode(
         ByteBuffer[] srcs, int srcsOffset, int srcsLength,
         ByteBuffer[] dsts, int dstsOffset, int dstsLength) throws IOException {
@@ -734,17 +882,66 @@ final class SSLEngineImpl extends SSLEngine implements SSLTransport {
     }
 
     @Override
-    public synchronized Runnable getDelegatedTask() {
+    public Runnable getDelegatedTask() {
+        if (isTaskRunning) {
+            return null;
+        }
+
+        return nextDelegatedTask(null);
+    }
+
+    private synchronized DelegatedTask nextDelegatedTask(Runnable onTaskDone) {
         if (conContext.handshakeContext != null && // PRE or POST handshake
                 !conContext.handshakeContext.taskDelegated &&
                 !conContext.handshakeContext.delegatedActions.isEmpty()) {
             conContext.handshakeContext.taskDelegated = true;
-            return new DelegatedTask(this);
+            return new DelegatedTask(this, onTaskDone);
         }
 
         return null;
     }
 
+    /**
+     * Submit the pending delegated task to the delegated task executor, if
+     * one is configured.
+     *
+     * Must be called with the engine lock held.
+     */
+    private void executeDelegatedTask(HandshakeStatus hsStatus) {
+        Executor executor = conContext.sslConfig.delegatedTaskExecutor;
+        if (executor == null || hsStatus != HandshakeStatus.NEED_TASK) {
+            return;
+        }
+
+        if (isTaskRunning) {
+            return;
+        }
+
+        Runnable task = nextDelegatedTask(
+                conContext.sslConfig.delegatedTaskCallback);
+        if (task == null) {
+            return;
+        }
+
+        isTaskRunning = true;
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException ree) {
+            if (SSLLogger.isOn && SSLLogger.isOn("ssl")) {
+                SSLLogger.fine(
+                    "Delegated task rejected by the executor, " +
+                    "leave it to the application", ree);
+            }
+
+            // Let getDelegatedTask() return the task again.
+            isTaskRunning = false;
+            HandshakeContext hc = conContext.handshakeContext;
+            if (hc != null) {
+                hc.taskDelegated = false;
+            }
+        }
+    }
+
     @Override
     public synchronized void closeInbound() throws SSLException {
         if (isInboundDone()) {
@@ -841,8 +1038,14 @@ final class SSLEngineImpl extends SSLEngine implements SSLTransport {
     }
 
     @Override
-    public synchronized SSLEngineResult.HandshakeStatus getHandshakeStatus() {
-        return conContext.getHandshakeStatus();
+    public SSLEngineResult.HandshakeStatus getHandshakeStatus() {
+        if (isTaskRunning) {
+            return HandshakeStatus.NEED_TASK;
+        }
+
+        synchronized (this) {
+            return conContext.getHandshakeStatus();
+        }
     }
 
     @Override
@@ -916,6 +1119,36 @@ final class SSLEngineImpl extends SSLEngine implements SSLTransport {
         return conContext.applicationProtocol;
     }
 
+    @Override
+    public synchronized void setEarlyData(byte[] earlyData) {
+        if (!conContext.sslConfig.isClientMode) {
+            throw new IllegalStateException(
+                    "Early data can be sent in client mode only");
+        }
+
+        if (conContext.isNegotiated || conContext.handshakeContext != null) {
+            throw new IllegalStateException(
+                    "Early data cannot be set after the handshake started");
+        }
+
+        conContext.earlyData = (earlyData == null) ? null : earlyData.clone();
+    }
+
+    @Override
+    public synchronized boolean isEarlyDataAccepted() {
+        return conContext.isEarlyDataAccepted;
+    }
+
+    @Override
+    public synchronized byte[] getEarlyData() {
+        if (conContext.sslConfig.isClientMode ||
+                conContext.earlyData == null) {
+            return null;
+        }
+
+        return conContext.earlyData.clone();
+    }
+
     @Override
     public synchronized String getHandshakeApplicationProtocol() {
         return conContext.handshakeContext == null ?
@@ -1028,70 +1261,89 @@ final class SSLEngineImpl extends SSLEngine implements SSLTransport {
     private static class DelegatedTask implements Runnable {
         private final SSLEngineImpl engine;
 
-        DelegatedTask(SSLEngineImpl engineInstance) {
+        // The callback of the delegated task executor, if any.
+        private final Runnable onTaskDone;
+
+        DelegatedTask(SSLEngineImpl engineInstance, Runnable onTaskDone) {
             this.engine = engineInstance;
+            this.onTaskDone = onTaskDone;
         }
 
         @Override
         public void run() {
             synchronized (engine) {
-                HandshakeContext hc = engine.conContext.handshakeContext;
-                if (hc == null || hc.delegatedActions.isEmpty()) {
-                    return;
+                try {
+                    runDelegatedActions();
+                } finally {
+                    engine.isTaskRunning = false;
                 }
+            }
 
-                try {
-                    AccessController.doPrivileged(
-                            new DelegatedAction(hc), engine.conContext.acc);
-                } catch (PrivilegedActionException pae) {
-                    // Get the handshake context again in case the
-                    // handshaking has completed.
-                    Exception reportedException = pae.getException();
-
-                    // Report to both the TransportContext...
-                    if (engine.conContext.delegatedThrown == null) {
-                        engine.conContext.delegatedThrown = reportedException;
-                    }
+            // Outside of the engine lock, so that the callback can wrap
+            // and unwrap.
+            if (onTaskDone != null) {
+                onTaskDone.run();
+            }
+        }
 
-                    // ...and the HandshakeContext in case condition
-                    // wasn't fatal and the handshakeContext is still
-                    // around.
-                    hc = engine.conContext.handshakeContext;
-                    if (hc != null) {
-                        hc.delegatedThrown = reportedException;
-                    } else if (engine.conContext.closeReason != null) {
-                        // Update the reason in case there was a previous.
-                        engine.conContext.closeReason =
-                                getTaskThrown(reportedException);
-                    }
-                } catch (RuntimeException rte) {
-                    // Get the handshake context again in case the
-                    // handshaking has completed.
+        // Must be called with the engine lock held.
+        private void runDelegatedActions() {
+            HandshakeContext hc = engine.conContext.handshakeContext;
+            if (hc == null || hc.delegatedActions.isEmpty()) {
+                return;
+            }
 
-                    // Report to both the TransportContext...
-                    if (engine.conContext.delegatedThrown == null) {
-                        engine.conContext.delegatedThrown = rte;
-                    }
+            try {
+                AccessController.doPrivileged(
+                        new DelegatedAction(hc), engine.conContext.acc);
+            } catch (PrivilegedActionException pae) {
+                // Get the handshake context again in case the
+                // handshaking has completed.
+                Exception reportedException = pae.getException();
 
-                    // ...and the HandshakeContext in case condition
-                    // wasn't fatal and the handshakeContext is still
-                    // around.
-                    hc = engine.conContext.handshakeContext;
-                    if (hc != null) {
-                        hc.delegatedThrown = rte;
-                    } else if (engine.conContext.closeReason != null) {
-                        // Update the reason in case there was a previous.
-                        engine.conContext.closeReason = rte;
-                    }
+                // Report to both the TransportContext...
+                if (engine.conContext.delegatedThrown == null) {
+                    engine.conContext.delegatedThrown = reportedException;
                 }
 
+                // ...and the HandshakeContext in case condition
+                // wasn't fatal and the handshakeContext is still
+                // around.
+                hc = engine.conContext.handshakeContext;
+                if (hc != null) {
+                    hc.delegatedThrown = reportedException;
+                } else if (engine.conContext.closeReason != null) {
+                    // Update the reason in case there was a previous.
+                    engine.conContext.closeReason =
+                            getTaskThrown(reportedException);
+                }
+            } catch (RuntimeException rte) {
                 // Get the handshake context again in case the
                 // handshaking has completed.
+
+                // Report to both the TransportContext...
+                if (engine.conContext.delegatedThrown == null) {
+                    engine.conContext.delegatedThrown = rte;
+                }
+
+                // ...and the HandshakeContext in case condition
+                // wasn't fatal and the handshakeContext is still
+                // around.
                 hc = engine.conContext.handshakeContext;
                 if (hc != null) {
-                    hc.taskDelegated = false;
+                    hc.delegatedThrown = rte;
+                } else if (engine.conContext.closeReason != null) {
+                    // Update the reason in case there was a previous.
+                    engine.conContext.closeReason = rte;
                 }
             }
+
+            // Get the handshake context again in case the
+            // handshaking has completed.
+            hc = engine.conContext.handshakeContext;
+            if (hc != null) {
+                hc.taskDelegated = false;
+            }
         }
 
         private static class DelegatedAction
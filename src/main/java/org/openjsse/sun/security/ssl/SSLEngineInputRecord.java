@@ -61,7 +61,27 @@ final class SSLEngineInputRecord extends InputRecord implements SSLRecord {
     int bytesInCompletePacket(
         ByteBuffer[] srcs, int srcsOffset, int srcsLength) throws IOException {
 
-        return bytesInCompletePacket(srcs[srcsOffset]);
+        // Skip the leading empty buffers.
+        ByteBuffer packet = firstRemaining(srcs, srcsOffset, srcsLength);
+        if (packet == null) {
+            return -1;
+        }
+
+        return bytesInCompletePacket(packet);
+    }
+
+    /*
+     * Return the first buffer that has remaining bytes, or null if none.
+     */
+    private static ByteBuffer firstRemaining(
+            ByteBuffer[] srcs, int srcsOffset, int srcsLength) {
+        for (int i = srcsOffset; i < srcsOffset + srcsLength; i++) {
+            if (srcs[i].hasRemaining()) {
+                return srcs[i];
+            }
+        }
+
+        return null;
     }
 
     private int bytesInCompletePacket(ByteBuffer packet) throws SSLException {
@@ -159,7 +179,21 @@ final class SSLEngineInputRecord extends InputRecord implements SSLRecord {
         } else if (srcsLength == 1) {
             return decode(srcs[srcsOffset]);
         } else {
-            ByteBuffer packet = extract(srcs,
+            // Decode the record in place if it is contained in a single
+            // buffer, rather than coalescing the buffers.
+            ByteBuffer packet = firstRemaining(srcs, srcsOffset, srcsLength);
+            if (packet != null && formatVerified &&
+                    packet.remaining() >= headerSize) {
+                int pos = packet.position();
+                int packetLen = headerSize +
+                        ((packet.get(pos + 3) & 0xFF) << 8) +
+                        (packet.get(pos + 4) & 0xFF);
+                if (packet.remaining() >= packetLen) {
+                    return decode(packet);
+                }
+            }
+
+            packet = extract(srcs,
                     srcsOffset, srcsLength, SSLRecord.headerSize);
 
             return decode(packet);
@@ -235,13 +269,35 @@ final class SSLEngineInputRecord extends InputRecord implements SSLRecord {
         packet.limit(recLim);
         packet.position(srcPos + SSLRecord.headerSize);
 
+        // Skip rejected early data, which is protected with unknown keys.
+        byte[] sequence = null;
+        if (skippableEarlyData > 0) {
+            if (readCipher.isNullCipher()) {
+                if (isSkippableEarlyData(contentType, contentLen,
+                        null, false)) {
+                    packet.limit(srcLim);
+                    packet.position(recLim);
+                    return new Plaintext[0];
+                }
+            } else {
+                sequence = readCipher.authenticator.sequenceNumber();
+            }
+        }
+
         ByteBuffer fragment;
         try {
             Plaintext plaintext =
                     readCipher.decrypt(contentType, packet, null);
             fragment = plaintext.fragment;
+            if (sequence != null) {
+                isSkippableEarlyData(contentType, contentLen, null, true);
+            }
             contentType = plaintext.contentType;
         } catch (BadPaddingException bpe) {
+            if (sequence != null && isSkippableEarlyData(
+                    contentType, contentLen, sequence, false)) {
+                return new Plaintext[0];
+            }
             throw bpe;
         } catch (GeneralSecurityException gse) {
             throw (SSLProtocolException)(new SSLProtocolException(
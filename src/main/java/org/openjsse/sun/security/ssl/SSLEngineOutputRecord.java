@@ -27,6 +27,7 @@ package org.openjsse.sun.security.ssl;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.Arrays;
 import java.util.LinkedList;
 import javax.net.ssl.SSLHandshakeException;
 
@@ -146,6 +147,23 @@ final class SSLEngineOutputRecord extends OutputRecord implements SSLRecord {
         fragmenter.queueUpChangeCipherSpec();
     }
 
+    @Override
+    void encodeEarlyData(byte[] source,
+            int offset, int length) throws IOException {
+        if (isClosed()) {
+            if (SSLLogger.isOn && SSLLogger.isOn("ssl")) {
+                SSLLogger.warning("outbound has closed, ignore outbound " +
+                    "early data");
+            }
+            return;
+        }
+
+        if (fragmenter == null) {
+           fragmenter = new HandshakeFragment();
+        }
+        fragmenter.queueUpEarlyData(source, offset, length);
+    }
+
     @Override
     void disposeWriteCipher() {
         if (fragmenter == null) {
@@ -278,6 +296,10 @@ final class SSLEngineOutputRecord extends OutputRecord implements SSLRecord {
                         ", length = " + destination.remaining());
             }
 
+            if (metrics != null) {
+                metrics.recordEncrypted(destination.remaining());
+            }
+
             // Encrypt the fragment and wrap up a record.
             recordSN = encrypt(writeCipher,
                     ContentType.APPLICATION_DATA.id, destination,
@@ -426,6 +448,20 @@ final class SSLEngineOutputRecord extends OutputRecord implements SSLRecord {
             handshakeMemos.add(memo);
         }
 
+        void queueUpEarlyData(byte[] source, int offset, int length) {
+            RecordMemo memo = new RecordMemo();
+
+            memo.contentType = ContentType.APPLICATION_DATA.id;
+            memo.majorVersion = protocolVersion.major;
+            memo.minorVersion = protocolVersion.minor;
+            memo.encodeCipher = writeCipher;
+
+            memo.fragment = new byte[length];
+            System.arraycopy(source, offset, memo.fragment, 0, length);
+
+            handshakeMemos.add(memo);
+        }
+
         void queueUpCipherDispose() {
             RecordMemo lastMemo = handshakeMemos.peekLast();
             if (lastMemo != null) {
@@ -460,6 +496,7 @@ final class SSLEngineOutputRecord extends OutputRecord implements SSLRecord {
             // Calculate more impact, for example TLS 1.3 padding.
             fragLen = calculateFragmentSize(fragLen);
 
+            boolean isMemoRemaining = false;
             int dstPos = dstBuf.position();
             int dstLim = dstBuf.limit();
             int dstContent = dstPos + headerSize +
@@ -514,7 +551,14 @@ final class SSLEngineOutputRecord extends OutputRecord implements SSLRecord {
                 fragLen = Math.min(fragLen, memo.fragment.length);
                 dstBuf.put(memo.fragment, 0, fragLen);
 
-                handshakeMemos.removeFirst();
+                if (fragLen < memo.fragment.length) {
+                    // Early data may span over multiple records.
+                    memo.fragment = Arrays.copyOfRange(
+                            memo.fragment, fragLen, memo.fragment.length);
+                    isMemoRemaining = true;
+                } else {
+                    handshakeMemos.removeFirst();
+                }
             }
 
             dstBuf.limit(dstBuf.position());
@@ -534,7 +578,7 @@ final class SSLEngineOutputRecord extends OutputRecord implements SSLRecord {
                     dstPos, dstLim, headerSize,
                     ProtocolVersion.valueOf(memo.majorVersion,
                             memo.minorVersion));
-            if (memo.disposeCipher) {
+            if (memo.disposeCipher && !isMemoRemaining) {
                 memo.encodeCipher.dispose();
             }
 
@@ -312,9 +312,33 @@ enum SSLExtension implements SSLStringizer {
     SESSION_TICKET          (0x0023, "session_ticket"),
 
     // extensions defined in TLS 1.3
-    CH_EARLY_DATA           (0x002A, "early_data"),
-    EE_EARLY_DATA           (0x002A, "early_data"),
-    NST_EARLY_DATA          (0x002A, "early_data"),
+    CH_EARLY_DATA           (0x002A, "early_data",
+                                SSLHandshake.CLIENT_HELLO,
+                                ProtocolVersion.PROTOCOLS_OF_13,
+                                EarlyDataExtension.chNetworkProducer,
+                                EarlyDataExtension.chOnLoadConsumer,
+                                null,
+                                null,
+                                null,
+                                EarlyDataExtension.edStringizer),
+    EE_EARLY_DATA           (0x002A, "early_data",
+                                SSLHandshake.ENCRYPTED_EXTENSIONS,
+                                ProtocolVersion.PROTOCOLS_OF_13,
+                                EarlyDataExtension.eeNetworkProducer,
+                                EarlyDataExtension.eeOnLoadConsumer,
+                                EarlyDataExtension.eeOnLoadAbsence,
+                                null,
+                                null,
+                                EarlyDataExtension.edStringizer),
+    NST_EARLY_DATA          (0x002A, "early_data",
+                                SSLHandshake.NEW_SESSION_TICKET,
+                                ProtocolVersion.PROTOCOLS_OF_13,
+                                EarlyDataExtension.nstNetworkProducer,
+                                EarlyDataExtension.nstOnLoadConsumer,
+                                null,
+                                null,
+                                null,
+                                EarlyDataExtension.edStringizer),
 
     CH_SUPPORTED_VERSIONS   (0x002B, "supported_versions",
                                 SSLHandshake.CLIENT_HELLO,
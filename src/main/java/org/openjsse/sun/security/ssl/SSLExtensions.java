@@ -151,6 +151,17 @@ final class SSLExtensions {
         return extMap.get(ext);
     }
 
+    /**
+     * Remove the specified extension, if it has been produced or loaded.
+     */
+    void remove(SSLExtension ext) {
+        byte[] old = extMap.remove(ext);
+        if (old != null) {
+            encodedLength -= old.length + 4;    // extension_type (2)
+                                                // extension_data length(2)
+        }
+    }
+
     /**
      * Consume the specified extensions.
      */
@@ -125,7 +125,21 @@ enum SSLHandshake implements SSLConsumer, HandshakeProducer {
                 ProtocolVersion.PROTOCOLS_OF_13
         )
         })),
-    END_OF_EARLY_DATA           ((byte)0x05, "end_of_early_data"),
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    END_OF_EARLY_DATA           ((byte)0x05, "end_of_early_data",
+        (Map.Entry<SSLConsumer, ProtocolVersion[]>[])(new Map.Entry[] {
+            new SimpleImmutableEntry<SSLConsumer, ProtocolVersion[]>(
+                EndOfEarlyData.handshakeConsumer,
+                ProtocolVersion.PROTOCOLS_OF_13
+        )
+        }),
+        (Map.Entry<HandshakeProducer, ProtocolVersion[]>[])(new Map.Entry[] {
+            new SimpleImmutableEntry<HandshakeProducer, ProtocolVersion[]>(
+                EndOfEarlyData.handshakeProducer,
+                ProtocolVersion.PROTOCOLS_OF_13
+        )
+        })),
 
     @SuppressWarnings({"unchecked", "rawtypes"})
     ENCRYPTED_EXTENSIONS        ((byte)0x08, "encrypted_extensions",
@@ -433,7 +447,9 @@ enum SSLHandshake implements SSLConsumer, HandshakeProducer {
             HandshakeMessage message) throws IOException {
         HandshakeProducer hp = getHandshakeProducer(context);
         if (hp != null) {
-            return hp.produce(context, message);
+            byte[] produced = hp.produce(context, message);
+            ((HandshakeContext)context).markPhase(id);
+            return produced;
         } else {
             throw new UnsupportedOperationException(
                     "Unsupported handshake producer: " + this.name);
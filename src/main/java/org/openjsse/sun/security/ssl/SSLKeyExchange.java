@@ -571,11 +571,9 @@ final class SSLKeyExchange implements SSLKeyAgreementGenerator,
         @Override
         public SSLPossession createPossession(HandshakeContext hc) {
             if (namedGroup.type == NamedGroupType.NAMED_GROUP_ECDHE) {
-                return new ECDHEPossession(
-                        namedGroup, hc.sslContext.getSecureRandom());
+                return new ECDHEPossession(namedGroup, hc.sslContext);
             } else if (namedGroup.type == NamedGroupType.NAMED_GROUP_FFDHE) {
-                return new DHEPossession(
-                        namedGroup, hc.sslContext.getSecureRandom());
+                return new DHEPossession(namedGroup, hc.sslContext);
             }
 
             return null;
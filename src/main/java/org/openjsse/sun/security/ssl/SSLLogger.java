@@ -51,9 +51,12 @@
 
 package org.openjsse.sun.security.ssl;
 
+import java.io.BufferedOutputStream;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.PrintStream;
 import java.nio.ByteBuffer;
 import java.security.cert.Certificate;
@@ -61,10 +64,15 @@ import java.security.cert.Extension;
 import java.security.cert.X509Certificate;
 import java.text.MessageFormat;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.ResourceBundle;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 import sun.security.action.GetPropertyAction;
 import org.openjsse.sun.security.util.HexDumpEncoder;
 import sun.security.x509.*;
@@ -79,12 +87,39 @@ import sun.security.x509.*;
  * and applications can customize and configure the logger or use external
  * logging mechanisms.  If the system property "javax.net.debug" is defined
  * and non-empty, a private debug logger implemented in this class is used.
+ *
+ * The private debug logger formats and writes each message in the calling
+ * thread.  If the system property "org.openjsse.debug.async" is true, the
+ * messages are instead queued in a bounded buffer, and written as JSON
+ * lines by a background thread, to System.err or to the file named by the
+ * "org.openjsse.debug.file" system property.  The buffer holds up to
+ * "org.openjsse.debug.bufferSize" messages (8192 by default); messages
+ * logged while it is full are dropped and counted, rather than blocking
+ * the connections.
  */
 public final class SSLLogger {
     private static final SSLConsoleLogger logger;
+    private static final SSLAsyncWriter asyncWriter;
     private static final String property;
     public static final boolean isOn;
 
+    // the debug check points, as bits of the check point masks
+    private static final String[] checkPointNames = {
+        "ssl", "record", "handshake", "keygen", "session", "defaultctx",
+        "sslctx", "sessioncache", "keymanager", "trustmanager",
+        "pluggability", "data", "verbose", "plaintext", "packet", "respmgr"
+    };
+
+    // bit of the check points that are never enabled
+    private static final long UNKNOWN_CHECK_POINT = 1L << 63;
+
+    // the check points enabled by the "javax.net.debug" property
+    private static final long enabledCheckPoints;
+
+    // the masks of the check point strings passed to isOn(String)
+    private static final Map<String, Long> checkPointMasks =
+            new ConcurrentHashMap<>();
+
     //JDK8
     public enum Level {
 
@@ -178,6 +213,23 @@ public final class SSLLogger {
             logger = null;
             isOn = false;
         }
+
+        long enabled = 0;
+        if (property != null && !property.isEmpty()) {
+            for (int i = 0; i < checkPointNames.length; i++) {
+                if (hasOption(checkPointNames[i])) {
+                    enabled |= 1L << i;
+                }
+            }
+        }
+        enabledCheckPoints = enabled;
+
+        if (logger != null && Utilities.getBooleanProperty(
+                "org.openjsse.debug.async", false)) {
+            asyncWriter = SSLAsyncWriter.create();
+        } else {
+            asyncWriter = null;
+        }
     }
 
     private static void help() {
@@ -222,15 +274,38 @@ public final class SSLLogger {
             return true;
         }                                   // use provider logger
 
+        Long mask = checkPointMasks.get(checkPoints);
+        if (mask == null) {
+            mask = checkPointMask(checkPoints);
+            checkPointMasks.put(checkPoints, mask);
+        }
+
+        return (mask & ~enabledCheckPoints) == 0;
+    }
+
+    // Return the bits of the check points, or UNKNOWN_CHECK_POINT if one
+    // of the check points not listed in checkPointNames is not enabled.
+    private static long checkPointMask(String checkPoints) {
+        long mask = 0;
         String[] options = checkPoints.split(",");
         for (String option : options) {
-            option = option.trim();
-            if (!SSLLogger.hasOption(option)) {
-                return false;
+            option = option.trim().toLowerCase(Locale.ENGLISH);
+            int index = -1;
+            for (int i = 0; i < checkPointNames.length; i++) {
+                if (checkPointNames[i].equals(option)) {
+                    index = i;
+                    break;
+                }
+            }
+
+            if (index >= 0) {
+                mask |= 1L << index;
+            } else if (!SSLLogger.hasOption(option)) {
+                mask |= UNKNOWN_CHECK_POINT;
             }
         }
 
-        return true;
+        return mask;
     }
 
     private static boolean hasOption(String option) {
@@ -277,7 +352,11 @@ public final class SSLLogger {
     }
 
     private static void log(Level level, String msg, Object... params) {
-        if (logger != null && logger.isLoggable(level)) {
+        if (asyncWriter != null) {
+            if (logger.isLoggable(level)) {
+                asyncWriter.submit(level, msg, params);
+            }
+        } else if (logger != null && logger.isLoggable(level)) {
             if (params == null || params.length == 0) {
                 logger.log(level, msg);
             } else {
@@ -358,6 +437,217 @@ public final class SSLLogger {
         }
     }
 
+    /**
+     * The background writer of the asynchronous debug logger.
+     *
+     * The calling threads only capture the fields of a message.  The
+     * parameters are formatted by the writer thread, except for the byte
+     * arrays and buffers, which are copied first as they are often reused.
+     */
+    private static final class SSLAsyncWriter implements Runnable {
+        private final ArrayBlockingQueue<LogEvent> queue;
+        private final OutputStream out;
+        private final AtomicLong dropped = new AtomicLong();
+
+        // used by the draining thread only
+        private final SimpleDateFormat dateFormat = new SimpleDateFormat(
+                "yyyy-MM-dd kk:mm:ss.SSS z", Locale.ENGLISH);
+        private final List<LogEvent> batch = new ArrayList<>();
+
+        private SSLAsyncWriter(int bufferSize, OutputStream out) {
+            this.queue = new ArrayBlockingQueue<>(bufferSize);
+            this.out = out;
+        }
+
+        static SSLAsyncWriter create() {
+            int bufferSize = Math.max(16, Utilities.getUIntProperty(
+                    "org.openjsse.debug.bufferSize", 8192));
+
+            OutputStream out = System.err;
+            String file = GetPropertyAction.privilegedGetProperty(
+                    "org.openjsse.debug.file");
+            if (file != null && !file.isEmpty()) {
+                try {
+                    out = new FileOutputStream(file, true);
+                } catch (IOException | SecurityException e) {
+                    // use System.err
+                }
+            }
+
+            SSLAsyncWriter writer = new SSLAsyncWriter(
+                    bufferSize, new BufferedOutputStream(out, 65536));
+            Thread thread = new Thread(null, writer, "OpenJSSE debug logger");
+            thread.setDaemon(true);
+            thread.start();
+            Runtime.getRuntime().addShutdownHook(new Thread(null,
+                    () -> writer.drain(null), "OpenJSSE debug logger flush"));
+
+            return writer;
+        }
+
+        void submit(Level level, String message, Object[] params) {
+            Thread thread = Thread.currentThread();
+            LogEvent event = new LogEvent(level, System.currentTimeMillis(),
+                    thread.getId(), thread.getName(), message,
+                    snapshot(params));
+            if (!queue.offer(event)) {
+                dropped.incrementAndGet();
+            }
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                try {
+                    drain(queue.take());
+                } catch (InterruptedException ie) {
+                    return;
+                }
+            }
+        }
+
+        // Write the event, if any, and all of the queued events.
+        private synchronized void drain(LogEvent event) {
+            if (event != null) {
+                batch.add(event);
+            }
+            queue.drainTo(batch);
+
+            StringBuilder builder = new StringBuilder(512);
+            try {
+                long lost = dropped.getAndSet(0);
+                if (lost != 0) {
+                    builder.append("{\"logger\":\"javax.net.ssl\"")
+                           .append(",\"level\":\"WARNING\"")
+                           .append(",\"message\":\"")
+                           .append(lost)
+                           .append(" debug messages dropped\"}\n");
+                    out.write(builder.toString().getBytes("UTF-8"));
+                }
+
+                for (LogEvent e : batch) {
+                    builder.setLength(0);
+                    format(builder, e);
+                    out.write(builder.toString().getBytes("UTF-8"));
+                }
+                out.flush();
+            } catch (Exception exp) {
+                // ignore it, just for debugging.
+            } finally {
+                batch.clear();
+            }
+        }
+
+        // {"logger":..,"level":..,"thread id":..,"thread name":..,
+        //  "time":..,"message":..,"specifics":[..]}
+        private void format(StringBuilder builder, LogEvent event) {
+            builder.append("{\"logger\":\"javax.net.ssl\",\"level\":\"")
+                   .append(event.level.getName())
+                   .append("\",\"thread id\":\"")
+                   .append(Utilities.toHexString(event.threadId))
+                   .append("\",\"thread name\":");
+            appendString(builder, event.threadName);
+            builder.append(",\"time\":\"")
+                   .append(dateFormat.format(new Date(event.time)))
+                   .append("\",\"message\":");
+            appendString(builder, event.message);
+            if (event.params != null && event.params.length != 0) {
+                builder.append(",\"specifics\":[");
+                for (int i = 0; i < event.params.length; i++) {
+                    if (i != 0) {
+                        builder.append(',');
+                    }
+                    String formatted;
+                    try {
+                        formatted = SSLSimpleFormatter.formatParameters(
+                                event.params[i]);
+                    } catch (Exception exp) {
+                        formatted = "unexpected exception thrown: " +
+                                exp.getMessage();
+                    }
+                    appendString(builder, formatted);
+                }
+                builder.append(']');
+            }
+            builder.append("}\n");
+        }
+
+        private static void appendString(StringBuilder builder, String str) {
+            if (str == null) {
+                builder.append("null");
+                return;
+            }
+
+            builder.append('"');
+            for (int i = 0; i < str.length(); i++) {
+                char c = str.charAt(i);
+                switch (c) {
+                    case '"':
+                        builder.append("\\\"");
+                        break;
+                    case '\\':
+                        builder.append("\\\\");
+                        break;
+                    case '\n':
+                        builder.append("\\n");
+                        break;
+                    case '\r':
+                        builder.append("\\r");
+                        break;
+                    case '\t':
+                        builder.append("\\t");
+                        break;
+                    default:
+                        if (c < 0x20) {
+                            builder.append(String.format("\\u%04x", (int)c));
+                        } else {
+                            builder.append(c);
+                        }
+                }
+            }
+            builder.append('"');
+        }
+
+        private static Object[] snapshot(Object[] params) {
+            if (params == null || params.length == 0) {
+                return null;
+            }
+
+            Object[] copy = params.clone();
+            for (int i = 0; i < copy.length; i++) {
+                if (copy[i] instanceof ByteBuffer) {
+                    ByteBuffer bb = ((ByteBuffer)copy[i]).duplicate();
+                    byte[] bytes = new byte[bb.remaining()];
+                    bb.get(bytes);
+                    copy[i] = bytes;
+                } else if (copy[i] instanceof byte[]) {
+                    copy[i] = ((byte[])copy[i]).clone();
+                }
+            }
+
+            return copy;
+        }
+
+        private static final class LogEvent {
+            final Level level;
+            final long time;
+            final long threadId;
+            final String threadName;
+            final String message;
+            final Object[] params;
+
+            LogEvent(Level level, long time, long threadId,
+                    String threadName, String message, Object[] params) {
+                this.level = level;
+                this.time = time;
+                this.threadId = threadId;
+                this.threadName = threadName;
+                this.message = message;
+                this.params = params;
+            }
+        }
+    }
+
     private static class SSLSimpleFormatter {
         private static final ThreadLocal<SimpleDateFormat> dateFormat =
             new ThreadLocal<SimpleDateFormat>() {
@@ -0,0 +1,488 @@
+/*
+ * Copyright 2019 Azul Systems, Inc.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.openjsse.sun.security.ssl;
+
+import java.lang.management.ManagementFactory;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.security.AccessController;
+import java.security.PrivilegedAction;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.net.ssl.SSLSession;
+import org.openjsse.net.ssl.SSLMetricsListener;
+import org.openjsse.net.ssl.SSLMetricsMXBean;
+
+/**
+ * The metrics of an SSLContextImpl.
+ *
+ * The counters are LongAdders, so that the connections of a context
+ * can update them concurrently without contention.  The hooks are in
+ * TransportContext, HandshakeContext, SSLSessionContextImpl, the output
+ * records and the status response manager.
+ *
+ * The metrics of the contexts are registered with the platform MBean
+ * server if the "org.openjsse.metrics.jmx" System Property is true.
+ */
+final class SSLMetrics implements SSLMetricsMXBean {
+    // Register the metrics of every SSLContextImpl as an MBean?
+    private static final boolean registerMBeans =
+            Utilities.getBooleanProperty("org.openjsse.metrics.jmx", false);
+
+    // The handshake phases
+    static final int PHASE_HELLO = 0;
+    static final int PHASE_KEY_EXCHANGE = 1;
+    static final int PHASE_FINISH = 2;
+    static final int PHASE_TOTAL = 3;
+    private static final String[] phaseNames = {
+            "hello", "keyExchange", "finish", "total"
+        };
+
+    private final LongAdder fullHandshakes = new LongAdder();
+    private final LongAdder resumedHandshakes = new LongAdder();
+    private final Map<String, LongAdder> handshakesByProtocol =
+            new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> handshakesByCipherSuite =
+            new ConcurrentHashMap<>();
+    private final Histogram[] handshakeDurations = {
+            new Histogram(), new Histogram(), new Histogram(), new Histogram()
+        };
+
+    private final Map<String, LongAdder> alertsSent =
+            new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> alertsReceived =
+            new ConcurrentHashMap<>();
+
+    private final LongAdder sessionCacheHits = new LongAdder();
+    private final LongAdder sessionCacheMisses = new LongAdder();
+
+    private final LongAdder staplingStapled = new LongAdder();
+    private final LongAdder staplingUnavailable = new LongAdder();
+
+    private final LongAdder keyUpdatesSent = new LongAdder();
+    private final LongAdder keyUpdatesReceived = new LongAdder();
+
+    private final LongAdder recordsEncrypted = new LongAdder();
+    private final LongAdder bytesEncrypted = new LongAdder();
+    private final LongAdder recordsDecrypted = new LongAdder();
+    private final LongAdder bytesDecrypted = new LongAdder();
+
+    private final List<SSLMetricsListener> listeners =
+            new CopyOnWriteArrayList<>();
+
+    // the status response manager of the context, created lazily
+    volatile StatusResponseManager statusResponseManager;
+
+    SSLMetrics(SSLContextImpl context) {
+        if (registerMBeans) {
+            Registry.register(context, this);
+        }
+    }
+
+    void addListener(SSLMetricsListener listener) {
+        if (listener == null) {
+            throw new NullPointerException("listener cannot be null");
+        }
+        listeners.add(listener);
+    }
+
+    void removeListener(SSLMetricsListener listener) {
+        listeners.remove(listener);
+    }
+
+    /*
+     * Record the completion of a handshake.  The phase timestamps are
+     * System.nanoTime() values, or 0 if the phase has not been seen.
+     */
+    void handshakeCompleted(SSLSession session, boolean isClient,
+            boolean isResumed, ProtocolVersion protocol,
+            CipherSuite cipherSuite, long startTime, long helloTime,
+            long finishedTime) {
+        long endTime = System.nanoTime();
+
+        (isResumed ? resumedHandshakes : fullHandshakes).increment();
+        increment(handshakesByProtocol,
+                protocol.name + (isResumed ? "/resumed" : "/full"));
+        increment(handshakesByCipherSuite, cipherSuite.name);
+
+        if (helloTime != 0) {
+            handshakeDurations[PHASE_HELLO].add(helloTime - startTime);
+            if (finishedTime != 0) {
+                handshakeDurations[PHASE_KEY_EXCHANGE].add(
+                        finishedTime - helloTime);
+            }
+        }
+        if (finishedTime != 0) {
+            handshakeDurations[PHASE_FINISH].add(endTime - finishedTime);
+        }
+        handshakeDurations[PHASE_TOTAL].add(endTime - startTime);
+
+        if (!listeners.isEmpty()) {
+            for (SSLMetricsListener listener : listeners) {
+                try {
+                    listener.handshakeCompleted(session,
+                            isClient, isResumed, endTime - startTime);
+                } catch (RuntimeException re) {
+                    logListenerFailure(re);
+                }
+            }
+        }
+    }
+
+    void alert(boolean isSent, Alert.Level level, Alert alert) {
+        increment(isSent ? alertsSent : alertsReceived, alert.description);
+
+        if (!listeners.isEmpty()) {
+            for (SSLMetricsListener listener : listeners) {
+                try {
+                    listener.alert(isSent,
+                            level == Alert.Level.FATAL, alert.description);
+                } catch (RuntimeException re) {
+                    logListenerFailure(re);
+                }
+            }
+        }
+    }
+
+    void keyUpdated(boolean isSent) {
+        (isSent ? keyUpdatesSent : keyUpdatesReceived).increment();
+
+        if (!listeners.isEmpty()) {
+            for (SSLMetricsListener listener : listeners) {
+                try {
+                    listener.keyUpdated(isSent);
+                } catch (RuntimeException re) {
+                    logListenerFailure(re);
+                }
+            }
+        }
+    }
+
+    void sessionLookup(boolean isHit) {
+        (isHit ? sessionCacheHits : sessionCacheMisses).increment();
+    }
+
+    void stapling(boolean isStapled) {
+        (isStapled ? staplingStapled : staplingUnavailable).increment();
+    }
+
+    void recordEncrypted(int bytes) {
+        recordsEncrypted.increment();
+        bytesEncrypted.add(bytes);
+    }
+
+    void recordDecrypted(int bytes) {
+        recordsDecrypted.increment();
+        bytesDecrypted.add(bytes);
+    }
+
+    private static void increment(Map<String, LongAdder> counters,
+            String key) {
+        LongAdder counter = counters.get(key);
+        if (counter == null) {
+            counter = counters.computeIfAbsent(key, k -> new LongAdder());
+        }
+        counter.increment();
+    }
+
+    private static Map<String, Long> snapshot(Map<String, LongAdder> counters) {
+        Map<String, Long> map = new TreeMap<>();
+        for (Map.Entry<String, LongAdder> entry : counters.entrySet()) {
+            map.put(entry.getKey(), entry.getValue().sum());
+        }
+
+        return Collections.unmodifiableMap(map);
+    }
+
+    private static void logListenerFailure(RuntimeException re) {
+        if (SSLLogger.isOn && SSLLogger.isOn("ssl")) {
+            SSLLogger.warning("Metrics listener failed", re);
+        }
+    }
+
+    @Override
+    public long getFullHandshakes() {
+        return fullHandshakes.sum();
+    }
+
+    @Override
+    public long getResumedHandshakes() {
+        return resumedHandshakes.sum();
+    }
+
+    @Override
+    public Map<String, Long> getHandshakesByProtocol() {
+        return snapshot(handshakesByProtocol);
+    }
+
+    @Override
+    public Map<String, Long> getHandshakesByCipherSuite() {
+        return snapshot(handshakesByCipherSuite);
+    }
+
+    @Override
+    public Map<String, Long> getHandshakeDurations() {
+        Map<String, Long> map = new TreeMap<>();
+        for (int i = 0; i < handshakeDurations.length; i++) {
+            handshakeDurations[i].snapshot(phaseNames[i], map);
+        }
+
+        return Collections.unmodifiableMap(map);
+    }
+
+    @Override
+    public Map<String, Long> getAlertsSent() {
+        return snapshot(alertsSent);
+    }
+
+    @Override
+    public Map<String, Long> getAlertsReceived() {
+        return snapshot(alertsReceived);
+    }
+
+    @Override
+    public long getSessionCacheHits() {
+        return sessionCacheHits.sum();
+    }
+
+    @Override
+    public long getSessionCacheMisses() {
+        return sessionCacheMisses.sum();
+    }
+
+    @Override
+    public Map<String, Long> getStaplingOutcomes() {
+        Map<String, Long> map = new TreeMap<>();
+        map.put("stapled", staplingStapled.sum());
+        map.put("unavailable", staplingUnavailable.sum());
+
+        StatusResponseManager srm = statusResponseManager;
+        map.put("cacheHits", srm != null ? srm.getCacheHits() : 0L);
+        map.put("cacheMisses", srm != null ? srm.getCacheMisses() : 0L);
+        map.put("refreshes", srm != null ? srm.getRefreshes() : 0L);
+        map.put("sharedFetches", srm != null ? srm.getSharedFetches() : 0L);
+
+        return Collections.unmodifiableMap(map);
+    }
+
+    @Override
+    public long getKeyUpdatesSent() {
+        return keyUpdatesSent.sum();
+    }
+
+    @Override
+    public long getKeyUpdatesReceived() {
+        return keyUpdatesReceived.sum();
+    }
+
+    @Override
+    public long getRecordsEncrypted() {
+        return recordsEncrypted.sum();
+    }
+
+    @Override
+    public long getBytesEncrypted() {
+        return bytesEncrypted.sum();
+    }
+
+    @Override
+    public long getRecordsDecrypted() {
+        return recordsDecrypted.sum();
+    }
+
+    @Override
+    public long getBytesDecrypted() {
+        return bytesDecrypted.sum();
+    }
+
+    // Note that the counters of the status response manager are not
+    // reset, they are shared with its own diagnostics.
+    @Override
+    public void reset() {
+        fullHandshakes.reset();
+        resumedHandshakes.reset();
+        handshakesByProtocol.clear();
+        handshakesByCipherSuite.clear();
+        for (Histogram histogram : handshakeDurations) {
+            histogram.reset();
+        }
+        alertsSent.clear();
+        alertsReceived.clear();
+        sessionCacheHits.reset();
+        sessionCacheMisses.reset();
+        staplingStapled.reset();
+        staplingUnavailable.reset();
+        keyUpdatesSent.reset();
+        keyUpdatesReceived.reset();
+        recordsEncrypted.reset();
+        bytesEncrypted.reset();
+        recordsDecrypted.reset();
+        bytesDecrypted.reset();
+    }
+
+    /*
+     * A histogram of durations, in power of two buckets of microseconds.
+     */
+    private static final class Histogram {
+        private static final int BUCKETS = 40;
+
+        private final LongAdder[] buckets = new LongAdder[BUCKETS];
+        private final LongAdder sum = new LongAdder();
+        private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+        Histogram() {
+            for (int i = 0; i < BUCKETS; i++) {
+                buckets[i] = new LongAdder();
+            }
+        }
+
+        void add(long nanos) {
+            long micros = Math.max(nanos / 1000, 0);
+            int bucket = Math.min(
+                    64 - Long.numberOfLeadingZeros(micros), BUCKETS - 1);
+            buckets[bucket].increment();
+            sum.add(micros);
+            max.accumulate(micros);
+        }
+
+        void snapshot(String name, Map<String, Long> map) {
+            long[] counts = new long[BUCKETS];
+            long total = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                counts[i] = buckets[i].sum();
+                total += counts[i];
+            }
+
+            long maximum = max.get();
+            map.put(name + ".count", total);
+            map.put(name + ".mean", total != 0 ? sum.sum() / total : 0L);
+            map.put(name + ".p50", percentile(counts, total, 50, maximum));
+            map.put(name + ".p90", percentile(counts, total, 90, maximum));
+            map.put(name + ".p99", percentile(counts, total, 99, maximum));
+            map.put(name + ".max", maximum);
+        }
+
+        // the upper bound of the bucket of the percentile
+        private static long percentile(
+                long[] counts, long total, int pct, long maximum) {
+            long rank = (total * pct + 99) / 100;
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += counts[i];
+                if (seen >= rank && seen != 0) {
+                    return i == 0 ? 0 : Math.min((1L << i) - 1, maximum);
+                }
+            }
+
+            return 0;
+        }
+
+        void reset() {
+            for (LongAdder bucket : buckets) {
+                bucket.reset();
+            }
+            sum.reset();
+            max.reset();
+        }
+    }
+
+    /*
+     * The MBean registrations of the metrics.  The registration of a
+     * context is removed after the context has been garbage collected.
+     */
+    private static final class Registry {
+        private static final AtomicInteger sequence = new AtomicInteger();
+        private static final ReferenceQueue<SSLContextImpl> queue =
+                new ReferenceQueue<>();
+        private static final Map<WeakReference<SSLContextImpl>, ObjectName>
+                registrations = new HashMap<>();
+
+        // Remove the registrations of the collected contexts as soon as
+        // they are collected, rather than when another context registers.
+        static {
+            Thread thread = new Thread(null,
+                    Registry::clean, "OpenJSSE metrics cleaner");
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        static synchronized void register(
+                SSLContextImpl context, SSLMetrics metrics) {
+            try {
+                ObjectName name = new ObjectName(
+                        "org.openjsse:type=SSLContext,name=" +
+                        context.getClass().getSimpleName() + "-" +
+                        sequence.incrementAndGet());
+                getServer().registerMBean(metrics, name);
+                registrations.put(new WeakReference<>(context, queue), name);
+            } catch (Exception e) {
+                if (SSLLogger.isOn && SSLLogger.isOn("ssl")) {
+                    SSLLogger.warning("Cannot register metrics MBean", e);
+                }
+            }
+        }
+
+        private static synchronized void unregister(Object ref) {
+            ObjectName name = registrations.remove(ref);
+            if (name == null) {
+                return;
+            }
+
+            try {
+                getServer().unregisterMBean(name);
+            } catch (Exception e) {
+                // ignore, it may have been unregistered already
+            }
+        }
+
+        private static void clean() {
+            while (true) {
+                try {
+                    unregister(queue.remove());
+                } catch (InterruptedException ie) {
+                    // ignore, keep on cleaning
+                }
+            }
+        }
+
+        private static MBeanServer getServer() {
+            return AccessController.doPrivileged(
+                    (PrivilegedAction<MBeanServer>)
+                    ManagementFactory::getPlatformMBeanServer);
+        }
+    }
+}
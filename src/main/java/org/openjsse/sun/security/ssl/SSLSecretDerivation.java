@@ -26,7 +26,6 @@
 package org.openjsse.sun.security.ssl;
 
 import java.io.IOException;
-import java.nio.ByteBuffer;
 import java.security.GeneralSecurityException;
 import java.security.spec.AlgorithmParameterSpec;
 import javax.crypto.SecretKey;
@@ -60,21 +59,31 @@ final class SSLSecretDerivation implements SSLKeyDerivation {
         (byte)0x48, (byte)0x98, (byte)0xB9, (byte)0x5B
     };
 
-    private final HandshakeContext context;
-    private final String hkdfAlg;
     private final HashAlg hashAlg;
     private final SecretKey secret;
     private final byte[] transcriptHash;  // handshake messages transcript hash
 
+    // The secret derived with the last one, in the same pass, but not
+    // asked for yet.
+    private SecretSchedule pendingSchedule;
+    private SecretKey pendingSecret;
+
     SSLSecretDerivation(
             HandshakeContext context, SecretKey secret) {
-        this.context = context;
+        this(context.negotiatedCipherSuite.hashAlg, secret,
+                transcriptHash(context));
+    }
+
+    SSLSecretDerivation(HashAlg hashAlg, SecretKey secret,
+            byte[] transcriptHash) {
         this.secret = secret;
-        this.hashAlg = context.negotiatedCipherSuite.hashAlg;
-        this.hkdfAlg =
-                "HKDF-Expand/Hmac" + hashAlg.name.replace("-", "");
+        this.hashAlg = hashAlg;
+        this.transcriptHash = transcriptHash;
+    }
+
+    private static byte[] transcriptHash(HandshakeContext context) {
         context.handshakeHash.update();
-        this.transcriptHash = context.handshakeHash.digest();
+        return context.handshakeHash.digest();
     }
 
     SSLSecretDerivation forContext(HandshakeContext context) {
@@ -85,6 +94,14 @@ final class SSLSecretDerivation implements SSLKeyDerivation {
     public SecretKey deriveKey(String algorithm,
             AlgorithmParameterSpec params) throws IOException {
         SecretSchedule ks = SecretSchedule.valueOf(algorithm);
+        if (ks == pendingSchedule) {
+            SecretKey derived = pendingSecret;
+            pendingSchedule = null;
+            pendingSecret = null;
+
+            return derived;
+        }
+
         try {
             byte[] expandContext;
             if (ks == SecretSchedule.TlsSaltSecret) {
@@ -106,25 +123,42 @@ final class SSLSecretDerivation implements SSLKeyDerivation {
                     expandContext, hashAlg.hashLength);
 
             HKDF hkdf = new HKDF(hashAlg.name);
-            return hkdf.expand(secret, hkdfInfo, hashAlg.hashLength, algorithm);
+            SecretSchedule peer = ks.peer();
+            if (peer == null) {
+                return hkdf.expand(
+                        secret, hkdfInfo, hashAlg.hashLength, algorithm);
+            }
+
+            // Both the client and the server traffic secrets are needed,
+            // so derive them in one pass of the keyed HMAC.
+            SecretKey[] derived = hkdf.expand(secret,
+                    new byte[][] {hkdfInfo, createHkdfInfo(peer.label,
+                            expandContext, hashAlg.hashLength)},
+                    new int[] {hashAlg.hashLength, hashAlg.hashLength},
+                    new String[] {algorithm, peer.name()});
+            pendingSchedule = peer;
+            pendingSecret = derived[1];
+
+            return derived[0];
         } catch (GeneralSecurityException gse) {
             throw (SSLHandshakeException) new SSLHandshakeException(
                 "Could not generate secret").initCause(gse);
         }
     }
 
+    /*
+     * Create the info of an HKDF-Expand-Label derivation, the HkdfLabel
+     * structure of RFC 8446, for a label that includes the "tls13 " prefix.
+     */
     public static byte[] createHkdfInfo(
             byte[] label, byte[] context, int length) {
         byte[] info = new byte[4 + label.length + context.length];
-        ByteBuffer m = ByteBuffer.wrap(info);
-        try {
-            Record.putInt16(m, length);
-            Record.putBytes8(m, label);
-            Record.putBytes8(m, context);
-        } catch (IOException ioe) {
-            // unlikely
-            throw new RuntimeException("Unexpected exception", ioe);
-        }
+        info[0] = (byte)(length >>> 8);
+        info[1] = (byte)length;
+        info[2] = (byte)label.length;
+        System.arraycopy(label, 0, info, 3, label.length);
+        info[3 + label.length] = (byte)context.length;
+        System.arraycopy(context, 0, info, 4 + label.length, context.length);
 
         return info;
     }
@@ -148,5 +182,21 @@ final class SSLSecretDerivation implements SSLKeyDerivation {
         private SecretSchedule(String label) {
             this.label = ("tls13 " + label).getBytes();
         }
+
+        // the secret that is always derived together with this one
+        SecretSchedule peer() {
+            switch (this) {
+                case TlsClientHandshakeTrafficSecret:
+                    return TlsServerHandshakeTrafficSecret;
+                case TlsServerHandshakeTrafficSecret:
+                    return TlsClientHandshakeTrafficSecret;
+                case TlsClientAppTrafficSecret:
+                    return TlsServerAppTrafficSecret;
+                case TlsServerAppTrafficSecret:
+                    return TlsClientAppTrafficSecret;
+                default:
+                    return null;
+            }
+        }
     }
 }
@@ -25,12 +25,20 @@
 
 package org.openjsse.sun.security.ssl;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Enumeration;
+import java.util.HashSet;
 import java.util.Locale;
 import javax.net.ssl.SSLSession;
 import javax.net.ssl.SSLSessionContext;
+import org.openjsse.net.ssl.SSLSessionStore;
 import org.openjsse.sun.security.util.Cache;
 
 
@@ -44,14 +52,31 @@ final class SSLSessionContextImpl implements SSLSessionContext {
     private int cacheLimit;             // the max cache size
     private int timeout;                // timeout in seconds
 
+    // key ring of the stateless session tickets, server side only
+    private volatile SessionTicketKeys ticketKeys;
+
+    // the session store behind the session caches, if any
+    private volatile SSLSessionStore sessionStore;
+
+    // the types of the session store keys
+    private static final byte STORE_KEY_SESSION_ID = 0x00;
+    private static final byte STORE_KEY_HOST_PORT = 0x01;
+
+    // the metrics of the SSLContextImpl
+    final SSLMetrics metrics;
+
     // package private
-    SSLSessionContextImpl() {
+    SSLSessionContextImpl(SSLMetrics metrics) {
+        this.metrics = metrics;
         cacheLimit = getDefaultCacheLimit();    // default cache size
         timeout = 86400;                        // default, 24 hours
 
         // use soft reference
         sessionCache = Cache.newSoftMemoryCache(cacheLimit, timeout);
         sessionHostPortCache = Cache.newSoftMemoryCache(cacheLimit, timeout);
+        sessionCache.setEvictionListener(
+                (key, session, expired) ->
+                        SSLEvents.sessionCacheEviction(session, expired));
     }
 
     /**
@@ -64,6 +89,10 @@ final class SSLSessionContextImpl implements SSLSessionContext {
         }
 
         SSLSessionImpl sess = sessionCache.get(new SessionId(sessionId));
+        SSLSessionStore store = sessionStore;
+        if (sess == null && store != null) {
+            sess = load(store, storeKey(STORE_KEY_SESSION_ID, sessionId));
+        }
         if (!isTimedout(sess)) {
             return sess;
         }
@@ -79,6 +108,11 @@ final class SSLSessionContextImpl implements SSLSessionContext {
         SessionCacheVisitor scVisitor = new SessionCacheVisitor();
         sessionCache.accept(scVisitor);
 
+        SSLSessionStore store = sessionStore;
+        if (store != null) {
+            store.visit(scVisitor);
+        }
+
         return scVisitor.getSessionIds();
     }
 
@@ -139,14 +173,26 @@ final class SSLSessionContextImpl implements SSLSessionContext {
 
     // package-private method, used ONLY by ServerHandshaker
     SSLSessionImpl get(byte[] id) {
-        return (SSLSessionImpl)getSession(id);
+        SSLSessionImpl sess = (SSLSessionImpl)getSession(id);
+        metrics.sessionLookup(sess != null);
+        return sess;
     }
 
     // package-private method, find and remove session from cache
     // return found session
     SSLSessionImpl pull(byte[] id) {
         if (id != null) {
-            return sessionCache.pull(new SessionId(id));
+            SSLSessionImpl sess = sessionCache.pull(new SessionId(id));
+            SSLSessionStore store = sessionStore;
+            if (store != null) {
+                byte[] key = storeKey(STORE_KEY_SESSION_ID, id);
+                if (sess == null) {
+                    sess = load(store, key);
+                }
+                store.remove(key);
+            }
+            metrics.sessionLookup(sess != null);
+            return sess;
         }
         return null;
     }
@@ -161,11 +207,101 @@ final class SSLSessionContextImpl implements SSLSessionContext {
             return null;
         }
 
-        SSLSessionImpl sess = sessionHostPortCache.get(getKey(hostname, port));
+        String key = getKey(hostname, port);
+        SSLSessionImpl sess = sessionHostPortCache.get(key);
+        SSLSessionStore store = sessionStore;
+        if (sess == null && store != null) {
+            sess = load(store, storeKey(STORE_KEY_HOST_PORT,
+                    key.getBytes(StandardCharsets.UTF_8)));
+        }
         if (!isTimedout(sess)) {
+            metrics.sessionLookup(sess != null);
             return sess;
         }
 
+        metrics.sessionLookup(false);
+        return null;
+    }
+
+    // package-private method, used ONLY by server side stateless tickets
+    SessionTicketKeys getTicketKeys(
+            SecureRandom random) throws GeneralSecurityException {
+        if (ticketKeys == null) {
+            synchronized (this) {
+                if (ticketKeys == null) {
+                    ticketKeys = SessionTicketKeys.createInstance(random);
+                }
+            }
+        }
+
+        return ticketKeys;
+    }
+
+    // package-private method, used ONLY by OpenJSSE.setSessionStore()
+    void setSessionStore(SSLSessionStore store) {
+        sessionStore = store;
+    }
+
+    private static byte[] storeKey(byte type, byte[] key) {
+        byte[] storeKey = new byte[key.length + 1];
+        storeKey[0] = type;
+        System.arraycopy(key, 0, storeKey, 1, key.length);
+        return storeKey;
+    }
+
+    // Put the session into the session store, as the session ID followed
+    // by the session state.
+    private void store(SSLSessionStore store, SSLSessionImpl s) {
+        if (!s.isStatelessable()) {
+            return;
+        }
+
+        byte[] value;
+        try {
+            HandshakeOutStream hos = new HandshakeOutStream(null);
+            hos.putBytes8(s.getSessionId().getId());
+            byte[] state = s.write();
+            hos.write(state, 0, state.length);
+            value = hos.toByteArray();
+        } catch (IOException | RuntimeException e) {
+            if (SSLLogger.isOn && SSLLogger.isOn("session")) {
+                SSLLogger.warning("Cannot store session", e);
+            }
+            return;
+        }
+
+        long expirationTime = (timeout == 0) ? 0 :
+                s.getCreationTime() + timeout * 1000L;
+        store.put(storeKey(STORE_KEY_SESSION_ID, s.getSessionId().getId()),
+                value, expirationTime);
+        if ((s.getPeerHost() != null) && (s.getPeerPort() != -1)) {
+            byte[] key = getKey(s.getPeerHost(), s.getPeerPort()).getBytes(
+                    StandardCharsets.UTF_8);
+            store.put(storeKey(STORE_KEY_HOST_PORT, key),
+                    value, expirationTime);
+        }
+    }
+
+    // Re-create a session from the session store.
+    private SSLSessionImpl load(SSLSessionStore store, byte[] storeKey) {
+        byte[] value = store.get(storeKey);
+        if (value == null) {
+            return null;
+        }
+
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(value);
+            SessionId id = new SessionId(Record.getBytes8(buffer));
+            SSLSessionImpl s = new SSLSessionImpl(id, buffer);
+            s.setContext(this);
+            return s;
+        } catch (IOException | RuntimeException e) {
+            if (SSLLogger.isOn && SSLLogger.isOn("session")) {
+                SSLLogger.warning("Invalid session in session store", e);
+            }
+            store.remove(storeKey);
+        }
+
         return null;
     }
 
@@ -192,6 +328,11 @@ final class SSLSessionContextImpl implements SSLSessionContext {
         }
 
         s.setContext(this);
+
+        SSLSessionStore store = sessionStore;
+        if (store != null) {
+            store(store, s);
+        }
     }
 
     // package-private method, remove a cached SSLSession
@@ -202,6 +343,20 @@ final class SSLSessionContextImpl implements SSLSessionContext {
             sessionHostPortCache.remove(
                     getKey(s.getPeerHost(), s.getPeerPort()));
         }
+
+        SSLSessionStore store = sessionStore;
+        if (store != null) {
+            byte[] idKey = storeKey(STORE_KEY_SESSION_ID, key.getId());
+            if (s == null) {
+                s = load(store, idKey);
+            }
+            store.remove(idKey);
+            if (s != null) {
+                store.remove(storeKey(STORE_KEY_HOST_PORT,
+                        getKey(s.getPeerHost(), s.getPeerPort()).getBytes(
+                                StandardCharsets.UTF_8)));
+            }
+        }
     }
 
     private static int getDefaultCacheLimit() {
@@ -251,8 +406,10 @@ final class SSLSessionContextImpl implements SSLSessionContext {
     }
 
     private final class SessionCacheVisitor
-            implements Cache.CacheVisitor<SessionId, SSLSessionImpl> {
+            implements Cache.CacheVisitor<SessionId, SSLSessionImpl>,
+                    SSLSessionStore.Visitor {
         ArrayList<byte[]> ids = null;
+        HashSet<SessionId> visited = new HashSet<>();
 
         // public void visit(java.util.Map<K,V> map) {}
         @Override
@@ -263,6 +420,22 @@ final class SSLSessionContextImpl implements SSLSessionContext {
                 SSLSessionImpl value = map.get(key);
                 if (!isTimedout(value)) {
                     ids.add(key.getId());
+                    visited.add(key);
+                }
+            }
+        }
+
+        // the session store has removed the timed out entries
+        @Override
+        public void visit(byte[] key, byte[] state) {
+            if (key.length > 1 && key[0] == STORE_KEY_SESSION_ID) {
+                SessionId id =
+                        new SessionId(Arrays.copyOfRange(key, 1, key.length));
+                if (visited.add(id)) {
+                    if (ids == null) {
+                        ids = new ArrayList<>();
+                    }
+                    ids.add(id.getId());
                 }
             }
         }
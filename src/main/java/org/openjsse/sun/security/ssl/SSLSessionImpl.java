@@ -24,11 +24,18 @@
  */
 package org.openjsse.sun.security.ssl;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
 import java.math.BigInteger;
 import java.net.InetAddress;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.security.Principal;
 import java.security.PrivateKey;
 import java.security.cert.CertificateEncodingException;
+import java.security.cert.CertificateException;
+import java.security.cert.CertificateFactory;
 import java.security.cert.X509Certificate;
 import java.util.ArrayList;
 import java.util.Queue;
@@ -39,13 +46,18 @@ import java.util.List;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
 import org.openjsse.javax.net.ssl.ExtendedSSLSession;
+import javax.net.ssl.SNIHostName;
 import javax.net.ssl.SNIServerName;
+import javax.net.ssl.SSLException;
 import javax.net.ssl.SSLPeerUnverifiedException;
+import javax.net.ssl.SSLProtocolException;
 import javax.net.ssl.SSLPermission;
 import javax.net.ssl.SSLSessionBindingEvent;
 import javax.net.ssl.SSLSessionBindingListener;
 import javax.net.ssl.SSLSessionContext;
+import javax.net.ssl.StandardConstants;
 import javax.security.auth.x500.X500Principal;
 
 /**
@@ -98,9 +110,14 @@ final class SSLSessionImpl extends ExtendedSSLSession {
     private SecretKey           resumptionMasterSecret;
     private SecretKey           preSharedKey;
     private byte[]              pskIdentity;
-    private final long          ticketCreationTime = System.currentTimeMillis();
+    private long                ticketCreationTime = System.currentTimeMillis();
     private int                 ticketAgeAdd;
 
+    // TLS 1.3 early data, the max_early_data_size of the ticket, and the
+    // application protocol that the early data must be sent with.
+    private int                 maxEarlyDataSize = 0;
+    private String              applicationProtocol = "";
+
     private int                 negotiatedMaxFragLen = -1;
     private int                 maximumPacketSize;
 
@@ -242,6 +259,311 @@ final class SSLSessionImpl extends ExtendedSSLSession {
         }
     }
 
+    /*
+     * Re-create a session from the state encoded by write().
+     *
+     * The session ID is not part of the encoded state, the caller gives
+     * the new session an ID of its own.
+     */
+    SSLSessionImpl(SessionId id, ByteBuffer buf) throws IOException {
+        //  struct {
+        //      uint16 protocol_version;
+        //      uint16 cipher_suite;
+        //      uint64 creation_time;
+        //      SignatureScheme local_sign_algs<0..2^16-1>;
+        //      opaque peer_sign_algs<0..2^16-1>;       // names
+        //      select (protocol_version) {
+        //          case TLS 1.3:
+        //              opaque psk_algorithm<0..2^8-1>;
+        //              opaque psk<1..2^8-1>;
+        //              uint32 ticket_age_add;
+        //              uint64 ticket_creation_time;
+        //              opaque psk_identity<0..2^16-1>;
+        //          default:
+        //              opaque master_secret_algorithm<0..2^8-1>;
+        //              opaque master_secret<1..2^8-1>;
+        //              uint8 use_extended_master_secret;
+        //      };
+        //      opaque identification_protocol<0..2^8-1>;
+        //      ServerName server_name_indication;      // type 0xFF: none
+        //      ServerName requested_server_names<0..2^16-1>;
+        //      uint32 maximum_packet_size;
+        //      uint32 negotiated_max_frag_len;
+        //      opaque status_responses<0..2^24-1>;
+        //      opaque peer_certificates<0..2^24-1>;
+        //      opaque local_certificates<0..2^24-1>;
+        //      opaque host<0..2^8-1>;
+        //      uint32 port;
+        //      uint32 max_early_data_size;
+        //      opaque application_protocol<0..2^8-1>;
+        //  } SessionState;
+        try {
+            this.protocolVersion =
+                    ProtocolVersion.valueOf(Record.getInt16(buf));
+            this.cipherSuite = CipherSuite.valueOf(Record.getInt16(buf));
+            if (protocolVersion == null ||
+                    protocolVersion == ProtocolVersion.NONE ||
+                    cipherSuite == null) {
+                throw new SSLProtocolException(
+                        "Unsupported session state");
+            }
+            this.sessionId = id;
+            this.creationTime = buf.getLong();
+            this.lastUsedTime = System.currentTimeMillis();
+
+            int count = Record.getInt16(buf);
+            List<SignatureScheme> signAlgs = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                SignatureScheme ss =
+                        SignatureScheme.valueOf(Record.getInt16(buf));
+                if (ss != null) {
+                    signAlgs.add(ss);
+                }
+            }
+            this.localSupportedSignAlgs =
+                    Collections.unmodifiableCollection(signAlgs);
+
+            count = Record.getInt16(buf);
+            this.peerSupportedSignAlgs = new String[count];
+            for (int i = 0; i < count; i++) {
+                peerSupportedSignAlgs[i] = new String(
+                        Record.getBytes8(buf), StandardCharsets.UTF_8);
+            }
+
+            String keyAlg = new String(
+                    Record.getBytes8(buf), StandardCharsets.UTF_8);
+            SecretKey key = new SecretKeySpec(Record.getBytes8(buf), keyAlg);
+            if (protocolVersion.useTLS13PlusSpec()) {
+                this.preSharedKey = key;
+                this.ticketAgeAdd = Record.getInt32(buf);
+                this.ticketCreationTime = buf.getLong();
+                byte[] identity = Record.getBytes16(buf);
+                this.pskIdentity = (identity.length == 0) ? null : identity;
+                this.useExtendedMasterSecret = false;
+            } else {
+                this.masterSecret = key;
+                this.useExtendedMasterSecret = (Record.getInt8(buf) != 0);
+            }
+
+            byte[] b = Record.getBytes8(buf);
+            this.identificationProtocol = (b.length == 0) ? null :
+                    new String(b, StandardCharsets.UTF_8);
+
+            this.serverNameIndication = readServerName(buf);
+            count = Record.getInt16(buf);
+            List<SNIServerName> serverNames = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                serverNames.add(readServerName(buf));
+            }
+            this.requestedServerNames =
+                    Collections.<SNIServerName>unmodifiableList(serverNames);
+
+            this.maximumPacketSize = Record.getInt32(buf);
+            this.negotiatedMaxFragLen = Record.getInt32(buf);
+
+            ByteBuffer responses = ByteBuffer.wrap(Record.getBytes24(buf));
+            if (responses.hasRemaining()) {
+                List<byte[]> list = new ArrayList<>();
+                while (responses.hasRemaining()) {
+                    list.add(Record.getBytes24(responses));
+                }
+                this.statusResponses = list;
+            }
+
+            this.peerCerts = readCertificates(buf);
+            this.localCerts = readCertificates(buf);
+
+            b = Record.getBytes8(buf);
+            this.host = (b.length == 0) ? null :
+                    new String(b, StandardCharsets.UTF_8);
+            this.port = Record.getInt32(buf);
+
+            this.maxEarlyDataSize = Record.getInt32(buf);
+            this.applicationProtocol = new String(
+                    Record.getBytes8(buf), StandardCharsets.UTF_8);
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            throw (SSLProtocolException)new SSLProtocolException(
+                    "Invalid session state").initCause(e);
+        }
+
+        this.boundValues = new ConcurrentHashMap<>();
+
+        if (SSLLogger.isOn && SSLLogger.isOn("session")) {
+             SSLLogger.finest("Session restored:  " + this);
+        }
+    }
+
+    /*
+     * Can the state of this session be encoded with write()?
+     *
+     * The pre-shared key (TLS 1.3) or the master secret (TLS 1.2 and
+     * prior) must be exportable.  Application values bound to the session
+     * cannot be carried, so such sessions stay in memory.
+     */
+    boolean isStatelessable() {
+        SecretKey key = protocolVersion.useTLS13PlusSpec() ?
+                getPreSharedKey() : getMasterSecret();
+        if (key == null || key.getEncoded() == null) {
+            if (SSLLogger.isOn && SSLLogger.isOn("session")) {
+                SSLLogger.finest("No exportable session secret, " +
+                        "cannot make stateless");
+            }
+            return false;
+        }
+
+        if (!boundValues.isEmpty()) {
+            if (SSLLogger.isOn && SSLLogger.isOn("session")) {
+                SSLLogger.finest("There are bound values, " +
+                        "cannot make stateless");
+            }
+            return false;
+        }
+
+        return true;
+    }
+
+    /*
+     * Encode the state needed to resume this session.  See the
+     * SSLSessionImpl(SessionId, ByteBuffer) constructor for the format.
+     */
+    byte[] write() throws IOException {
+        HandshakeOutStream hos = new HandshakeOutStream(null);
+
+        hos.putInt16(protocolVersion.id);
+        hos.putInt16(cipherSuite.id);
+        long time = creationTime;
+        hos.putInt32((int)(time >>> 32));
+        hos.putInt32((int)time);
+
+        hos.putInt16(localSupportedSignAlgs.size());
+        for (SignatureScheme ss : localSupportedSignAlgs) {
+            hos.putInt16(ss.id);
+        }
+
+        if (peerSupportedSignAlgs == null) {
+            hos.putInt16(0);
+        } else {
+            hos.putInt16(peerSupportedSignAlgs.length);
+            for (String name : peerSupportedSignAlgs) {
+                hos.putBytes8(name.getBytes(StandardCharsets.UTF_8));
+            }
+        }
+
+        if (protocolVersion.useTLS13PlusSpec()) {
+            SecretKey psk = getPreSharedKey();
+            hos.putBytes8(
+                    psk.getAlgorithm().getBytes(StandardCharsets.UTF_8));
+            hos.putBytes8(psk.getEncoded());
+            hos.putInt32(ticketAgeAdd);
+            time = ticketCreationTime;
+            hos.putInt32((int)(time >>> 32));
+            hos.putInt32((int)time);
+            hos.putBytes16(pskIdentity);
+        } else {
+            hos.putBytes8(
+                    masterSecret.getAlgorithm().getBytes(
+                            StandardCharsets.UTF_8));
+            hos.putBytes8(masterSecret.getEncoded());
+            hos.putInt8(useExtendedMasterSecret ? 1 : 0);
+        }
+
+        hos.putBytes8(identificationProtocol == null ? null :
+                identificationProtocol.getBytes(StandardCharsets.UTF_8));
+
+        writeServerName(hos, serverNameIndication);
+        hos.putInt16(requestedServerNames.size());
+        for (SNIServerName serverName : requestedServerNames) {
+            writeServerName(hos, serverName);
+        }
+
+        hos.putInt32(maximumPacketSize);
+        hos.putInt32(negotiatedMaxFragLen);
+
+        HandshakeOutStream responses = new HandshakeOutStream(null);
+        if (statusResponses != null) {
+            for (byte[] response : statusResponses) {
+                responses.putBytes24(response);
+            }
+        }
+        hos.putBytes24(responses.toByteArray());
+
+        writeCertificates(hos, peerCerts);
+        writeCertificates(hos, localCerts);
+
+        hos.putBytes8(host == null ? null :
+                host.getBytes(StandardCharsets.UTF_8));
+        hos.putInt32(port);
+
+        hos.putInt32(maxEarlyDataSize);
+        hos.putBytes8(applicationProtocol.getBytes(StandardCharsets.UTF_8));
+
+        return hos.toByteArray();
+    }
+
+    private static void writeServerName(HandshakeOutStream hos,
+            SNIServerName serverName) throws IOException {
+        if (serverName == null) {
+            hos.putInt8(0xFF);
+        } else {
+            hos.putInt8(serverName.getType());
+            hos.putBytes16(serverName.getEncoded());
+        }
+    }
+
+    private static SNIServerName readServerName(
+            ByteBuffer buf) throws IOException {
+        int type = Record.getInt8(buf);
+        if (type == 0xFF) {
+            return null;
+        }
+
+        byte[] encoded = Record.getBytes16(buf);
+        if (type == StandardConstants.SNI_HOST_NAME) {
+            return new SNIHostName(encoded);
+        }
+
+        return new ServerNameExtension.CHServerNamesSpec.UnknownServerName(
+                type, encoded);
+    }
+
+    private static void writeCertificates(HandshakeOutStream hos,
+            X509Certificate[] certs) throws IOException {
+        HandshakeOutStream encoded = new HandshakeOutStream(null);
+        if (certs != null) {
+            try {
+                for (X509Certificate cert : certs) {
+                    encoded.putBytes24(cert.getEncoded());
+                }
+            } catch (CertificateEncodingException cee) {
+                throw new SSLException("Cannot encode certificate", cee);
+            }
+        }
+        hos.putBytes24(encoded.toByteArray());
+    }
+
+    private static X509Certificate[] readCertificates(
+            ByteBuffer buf) throws IOException {
+        ByteBuffer encoded = ByteBuffer.wrap(Record.getBytes24(buf));
+        if (!encoded.hasRemaining()) {
+            return null;
+        }
+
+        List<X509Certificate> certs = new ArrayList<>();
+        try {
+            CertificateFactory cf = CertificateFactory.getInstance("X.509");
+            while (encoded.hasRemaining()) {
+                certs.add((X509Certificate)cf.generateCertificate(
+                        new ByteArrayInputStream(
+                                Record.getBytes24(encoded))));
+            }
+        } catch (CertificateException ce) {
+            throw new SSLProtocolException(
+                    "Cannot decode certificate: " + ce.getMessage());
+        }
+
+        return certs.toArray(new X509Certificate[0]);
+    }
+
     void setMasterSecret(SecretKey secret) {
         masterSecret = secret;
     }
@@ -266,6 +588,23 @@ final class SSLSessionImpl extends ExtendedSSLSession {
         this.pskIdentity = pskIdentity;
     }
 
+    void setMaxEarlyDataSize(int maxEarlyDataSize) {
+        this.maxEarlyDataSize = maxEarlyDataSize;
+    }
+
+    int getMaxEarlyDataSize() {
+        return maxEarlyDataSize;
+    }
+
+    void setApplicationProtocol(String applicationProtocol) {
+        this.applicationProtocol =
+                (applicationProtocol == null) ? "" : applicationProtocol;
+    }
+
+    String getApplicationProtocol() {
+        return applicationProtocol;
+    }
+
     BigInteger incrTicketNonceCounter() {
         BigInteger result = ticketNonceCounter;
         ticketNonceCounter = ticketNonceCounter.add(BigInteger.valueOf(1));
@@ -1317,6 +1317,53 @@ public final class SSLSocketImpl
          }
     }
 
+    @Override
+    public void setEarlyData(byte[] earlyData) {
+        socketLock.lock();
+        try {
+            if (!conContext.sslConfig.isClientMode) {
+                throw new IllegalStateException(
+                        "Early data can be sent in client mode only");
+            }
+
+            if (conContext.isNegotiated ||
+                    conContext.handshakeContext != null) {
+                throw new IllegalStateException(
+                        "Early data cannot be set after the handshake started");
+            }
+
+            conContext.earlyData =
+                    (earlyData == null) ? null : earlyData.clone();
+        } finally {
+            socketLock.unlock();
+        }
+    }
+
+    @Override
+    public boolean isEarlyDataAccepted() {
+        socketLock.lock();
+        try {
+            return conContext.isEarlyDataAccepted;
+        } finally {
+            socketLock.unlock();
+        }
+    }
+
+    @Override
+    public byte[] getEarlyData() {
+        socketLock.lock();
+        try {
+            if (conContext.sslConfig.isClientMode ||
+                    conContext.earlyData == null) {
+                return null;
+            }
+
+            return conContext.earlyData.clone();
+        } finally {
+            socketLock.unlock();
+        }
+    }
+
     @Override
      public String getApplicationProtocol() {
          socketLock.lock();
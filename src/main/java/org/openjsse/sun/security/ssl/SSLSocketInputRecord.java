@@ -257,13 +257,33 @@ final class SSLSocketInputRecord extends InputRecord implements SSLRecord {
         //
         // Decrypt the fragment
         //
+        // Skip rejected early data, which is protected with unknown keys.
+        byte[] sequence = null;
+        if (skippableEarlyData > 0) {
+            if (readCipher.isNullCipher()) {
+                if (isSkippableEarlyData(contentType, contentLen,
+                        null, false)) {
+                    return new Plaintext[0];
+                }
+            } else {
+                sequence = readCipher.authenticator.sequenceNumber();
+            }
+        }
+
         ByteBuffer fragment;
         try {
             Plaintext plaintext =
                     readCipher.decrypt(contentType, recordBody, null);
             fragment = plaintext.fragment;
+            if (sequence != null) {
+                isSkippableEarlyData(contentType, contentLen, null, true);
+            }
             contentType = plaintext.contentType;
         } catch (BadPaddingException bpe) {
+            if (sequence != null && isSkippableEarlyData(
+                    contentType, contentLen, sequence, false)) {
+                return new Plaintext[0];
+            }
             throw bpe;
         } catch (GeneralSecurityException gse) {
             throw (SSLProtocolException)(new SSLProtocolException(
@@ -230,6 +230,13 @@ final class SSLSocketOutputRecord extends OutputRecord implements SSLRecord {
         count = 0;
     }
 
+    @Override
+    void encodeEarlyData(byte[] source,
+            int offset, int length) throws IOException {
+        // Early data is written as application data records.
+        deliver(source, offset, length);
+    }
+
     @Override
     void disposeWriteCipher() {
         writeCipher.dispose();
@@ -317,6 +324,10 @@ final class SSLSocketOutputRecord extends OutputRecord implements SSLRecord {
                         ", length = " + (count - position));
             }
 
+            if (metrics != null) {
+                metrics.recordEncrypted(fragLen);
+            }
+
             // Encrypt the fragment and wrap up a record.
             encrypt(writeCipher, ContentType.APPLICATION_DATA.id, headerSize);
 
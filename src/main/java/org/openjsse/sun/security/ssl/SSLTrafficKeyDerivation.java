@@ -26,7 +26,6 @@
 package org.openjsse.sun.security.ssl;
 
 import java.io.IOException;
-import java.nio.ByteBuffer;
 import java.security.GeneralSecurityException;
 import java.security.ProviderException;
 import java.security.spec.AlgorithmParameterSpec;
@@ -136,43 +135,68 @@ enum SSLTrafficKeyDerivation implements SSLKeyDerivationGenerator {
         private final CipherSuite cs;
         private final SecretKey secret;
 
+        // The key or IV derived with the last one, in the same pass, but
+        // not asked for yet.
+        private KeySchedule pendingSchedule;
+        private SecretKey pendingKey;
+
         T13TrafficKeyDerivation(
                 HandshakeContext context, SecretKey secret) {
+            this(context.negotiatedCipherSuite, secret);
+        }
+
+        // For the early traffic keys, before the cipher suite negotiation.
+        T13TrafficKeyDerivation(CipherSuite cs, SecretKey secret) {
             this.secret = secret;
-            this.cs = context.negotiatedCipherSuite;
+            this.cs = cs;
         }
 
         @Override
         public SecretKey deriveKey(String algorithm,
                 AlgorithmParameterSpec params) throws IOException {
             KeySchedule ks = KeySchedule.valueOf(algorithm);
+            if (ks == pendingSchedule) {
+                SecretKey derived = pendingKey;
+                pendingSchedule = null;
+                pendingKey = null;
+
+                return derived;
+            }
+
             try {
                 HKDF hkdf = new HKDF(cs.hashAlg.name);
                 byte[] hkdfInfo =
                         createHkdfInfo(ks.label, ks.getKeyLength(cs));
-                return hkdf.expand(secret, hkdfInfo,
-                        ks.getKeyLength(cs),
-                        ks.getAlgorithm(cs, algorithm));
+                KeySchedule peer = ks.peer();
+                if (peer == null) {
+                    return hkdf.expand(secret, hkdfInfo,
+                            ks.getKeyLength(cs),
+                            ks.getAlgorithm(cs, algorithm));
+                }
+
+                // The write or read key and IV are used together, so derive
+                // them in one pass of the keyed HMAC.
+                SecretKey[] derived = hkdf.expand(secret,
+                        new byte[][] {hkdfInfo, createHkdfInfo(
+                                peer.label, peer.getKeyLength(cs))},
+                        new int[] {
+                                ks.getKeyLength(cs), peer.getKeyLength(cs)},
+                        new String[] {ks.getAlgorithm(cs, algorithm),
+                                peer.getAlgorithm(cs, peer.name())});
+                pendingSchedule = peer;
+                pendingKey = derived[1];
+
+                return derived[0];
             } catch (GeneralSecurityException gse) {
                 throw (SSLHandshakeException)(new SSLHandshakeException(
                     "Could not generate secret").initCause(gse));
             }
         }
 
-        private static byte[] createHkdfInfo(
-                byte[] label, int length) throws IOException {
-            byte[] info = new byte[4 + label.length];
-            ByteBuffer m = ByteBuffer.wrap(info);
-            try {
-                Record.putInt16(m, length);
-                Record.putBytes8(m, label);
-                Record.putInt8(m, 0x00);    // zero-length context
-            } catch (IOException ioe) {
-                // unlikely
-                throw new RuntimeException("Unexpected exception", ioe);
-            }
-
-            return info;
+        private static byte[] createHkdfInfo(byte[] label, int length) {
+            // zero-length context
+            return SSLSecretDerivation.createHkdfInfo(
+                    label, new byte[0], length);
         }
     }
 
@@ -199,6 +223,18 @@ enum SSLTrafficKeyDerivation implements SSLKeyDerivationGenerator {
         String getAlgorithm(CipherSuite cs, String algorithm) {
             return isIv ? algorithm : cs.bulkCipher.algorithm;
         }
+
+        // the key or IV that is always derived together with this one
+        KeySchedule peer() {
+            switch (this) {
+                case TlsKey:
+                    return TlsIv;
+                case TlsIv:
+                    return TlsKey;
+                default:
+                    return null;
+            }
+        }
     }
 
     @SuppressWarnings("deprecation")
@@ -178,9 +178,14 @@ interface SSLTransport {
                             ContentType.APPLICATION_DATA.id) {
                 // check handshake status
                 //
-                // Note that JDK does not support 0-RTT yet.  Otherwise, it is
-                // needed to check early_data.
+                // Note that the accepted TLS 1.3 early data is buffered in
+                // the handshake context, and delivered after the handshake.
                 if (!context.isNegotiated) {
+                    if (EarlyDataExtension.receive(
+                            context, plainText.fragment)) {
+                        continue;
+                    }
+
                     if (SSLLogger.isOn && SSLLogger.isOn("ssl,verbose")) {
                         SSLLogger.warning("unexpected application data " +
                             "before handshake completion");
@@ -190,6 +195,9 @@ interface SSLTransport {
                         "Receiving application data before handshake complete");
                 }
 
+                context.metrics.recordDecrypted(
+                        plainText.fragment.remaining());
+
                 // Fill the destination buffers.
                 if ((dsts != null) && (dstsLength > 0)) {
                     ByteBuffer fragment = plainText.fragment;
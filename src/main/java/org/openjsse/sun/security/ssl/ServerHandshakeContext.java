@@ -25,11 +25,13 @@
 
 package org.openjsse.sun.security.ssl;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.security.AlgorithmConstraints;
 import java.security.AccessController;
 import sun.security.util.LegacyAlgorithmConstraints;
 import sun.security.action.GetLongAction;
+import org.openjsse.sun.security.ssl.SSLCipher.SSLReadCipher;
 
 class ServerHandshakeContext extends HandshakeContext {
     // To prevent the TLS renegotiation issues, by setting system property
@@ -56,6 +58,11 @@ class ServerHandshakeContext extends HandshakeContext {
     private static final long DEFAULT_STATUS_RESP_DELAY = 5000L;
     final long statusRespTimeout;
 
+    // TLS 1.3 early data
+    SSLReadCipher earlyReadCipher;          // pending early traffic cipher
+    SSLReadCipher reservedReadCipher;       // handshake traffic cipher
+    ByteArrayOutputStream earlyData;        // the received early data
+
 
     ServerHandshakeContext(SSLContextImpl sslContext,
             TransportContext conContext) throws IOException {
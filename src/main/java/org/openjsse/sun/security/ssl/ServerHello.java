@@ -302,8 +302,12 @@ final class ServerHello {
                 shc.handshakeSession.setSuite(credentials.cipherSuite);
                 shc.handshakePossessions.addAll(
                         Arrays.asList(credentials.possessions));
+                // The handshake messages are only archived to verify the
+                // client CertificateVerify message.
                 shc.handshakeHash.determine(
-                        shc.negotiatedProtocol, shc.negotiatedCipherSuite);
+                        shc.negotiatedProtocol, shc.negotiatedCipherSuite,
+                        shc.sslConfig.clientAuthType !=
+                                ClientAuthType.CLIENT_AUTH_NONE);
 
                 // Check the incoming OCSP stapling extensions and attempt
                 // to get responses.  If the resulting stapleParams is non
@@ -342,8 +346,10 @@ final class ServerHello {
                 shc.negotiatedProtocol =
                         shc.resumingSession.getProtocolVersion();
                 shc.negotiatedCipherSuite = shc.resumingSession.getSuite();
+                // no CertificateVerify in an abbreviated handshake
                 shc.handshakeHash.determine(
-                        shc.negotiatedProtocol, shc.negotiatedCipherSuite);
+                        shc.negotiatedProtocol, shc.negotiatedCipherSuite,
+                        false);
             }
 
             // Generate the ServerHello handshake message.
@@ -546,6 +552,10 @@ final class ServerHello {
 
                 setUpPskKD(shc,
                         shc.resumingSession.consumePreSharedKey());
+
+                // The early traffic keys depend on the early secret, and
+                // the ClientHello message only.
+                shc.earlyReadCipher = EarlyDataExtension.createReadCipher(shc);
             }
 
             // update the responders
@@ -636,7 +646,12 @@ final class ServerHello {
             }
 
             shc.baseReadSecret = readSecret;
-            shc.conContext.inputRecord.changeReadCiphers(readCipher);
+            if (shc.earlyReadCipher != null) {
+                // Install it once the early data is accepted or rejected.
+                shc.reservedReadCipher = readCipher;
+            } else {
+                shc.conContext.inputRecord.changeReadCiphers(readCipher);
+            }
 
             // update the handshake traffic write secret.
             SecretKey writeSecret = kd.deriveKey(
@@ -1329,8 +1344,17 @@ final class ServerHello {
             }
 
             chc.baseWriteSecret = writeSecret;
-            chc.conContext.outputRecord.changeWriteCiphers(
-                    writeCipher, (serverHello.sessionId.length() != 0));
+            if (chc.handshakeExtensions.containsKey(
+                    SSLExtension.CH_EARLY_DATA)) {
+                // Install it once the early data is ended or rejected.
+                chc.reservedWriteCipher = writeCipher;
+            } else {
+                // The change_cipher_spec record has been sent before the
+                // early data, if any.
+                chc.conContext.outputRecord.changeWriteCiphers(writeCipher,
+                        (serverHello.sessionId.length() != 0) &&
+                        !chc.isEarlyDataSent);
+            }
 
             // Should use resumption_master_secret for TLS 1.3.
             // chc.handshakeSession.setMasterSecret(masterSecret);
@@ -1456,6 +1480,16 @@ final class ServerHello {
 
             chc.handshakeHash.receive(hrrMessage);
 
+            // The early data is rejected.  It is not allowed in the updated
+            // ClientHello, which is sent in plaintext.
+            if (chc.handshakeExtensions.remove(
+                    SSLExtension.CH_EARLY_DATA) != null) {
+                chc.initialClientHelloMsg.extensions.remove(
+                        SSLExtension.CH_EARLY_DATA);
+                chc.conContext.outputRecord.changeWriteCiphers(
+                        SSLWriteCipher.nullTlsWriteCipher(), false);
+            }
+
             // Update the initial ClientHello handshake message.
             chc.initialClientHelloMsg.extensions.reproduce(chc,
                     new SSLExtension[] {
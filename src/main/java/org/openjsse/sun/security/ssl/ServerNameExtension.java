@@ -169,7 +169,7 @@ final class ServerNameExtension {
             }
         }
 
-        private static class UnknownServerName extends SNIServerName {
+        static class UnknownServerName extends SNIServerName {
             UnknownServerName(int code, byte[] encoded) {
                 super(code, encoded);
             }
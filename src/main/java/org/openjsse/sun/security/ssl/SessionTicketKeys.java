@@ -0,0 +1,291 @@
+/*
+ * Copyright 2019 Azul Systems, Inc.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.openjsse.sun.security.ssl;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.security.AccessController;
+import java.security.GeneralSecurityException;
+import java.security.PrivilegedActionException;
+import java.security.PrivilegedExceptionAction;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import sun.security.action.GetPropertyAction;
+
+/**
+ * The rotating key ring used to protect stateless TLS 1.3 session tickets.
+ *
+ * With stateless tickets enabled, the server does not cache the resumable
+ * session.  Instead, the session state is encoded with
+ * {@link SSLSessionImpl#write()}, encrypted with AES-GCM and sent to the
+ * client as the ticket of the NewSessionTicket handshake message.  When
+ * the client offers the ticket in the "pre_shared_key" extension, the
+ * server decrypts it and re-creates the session from the state.
+ *
+ * The ticket encryption keys are derived with HKDF from a master secret
+ * and the number of the current key period, so the key ring rotates every
+ * period without any coordination.  Servers sharing the master secret
+ * (see the "org.openjsse.server.statelessTicketKeyFile" System Property)
+ * derive the same key ring and can resume each other's tickets.  If no
+ * key file is configured, a random master secret is used and the tickets
+ * can be resumed by the issuing SSLContext only.
+ *
+ * The ticket has the following format:
+ * <pre>
+ *     struct {
+ *         uint32 key_period;                 // also the AEAD AAD
+ *         opaque iv[12];
+ *         opaque encrypted_state<...>;       // with 16 bytes tag
+ *     } StatelessTicket;
+ * </pre>
+ */
+final class SessionTicketKeys {
+    // Is the stateless session ticket enabled on server side?
+    static final boolean enableStatelessTickets = Utilities.getBooleanProperty(
+            "org.openjsse.server.enableStatelessTickets", false);
+
+    // The lifetime of a ticket encryption key, in seconds.
+    private static final long keyLifetime = getKeyLifetime();
+
+    // The file containing the shared master secret of the key ring.
+    private static final String keyFile =
+            GetPropertyAction.privilegedGetProperty(
+                    "org.openjsse.server.statelessTicketKeyFile");
+
+    private static final int MIN_SECRET_LENGTH = 32;
+    private static final int KEY_LENGTH = 32;           // AES-256
+    private static final int IV_LENGTH = 12;
+    private static final int TAG_LENGTH = 16;
+    private static final int HEADER_LENGTH = 4 + IV_LENGTH;
+    private static final byte[] KEY_LABEL =
+            "openjsse ticket key".getBytes();
+
+    private final SecretKey masterKey;
+
+    // The derived ticket encryption keys, indexed by the key period.
+    private final ConcurrentHashMap<Integer, SecretKey> keys =
+            new ConcurrentHashMap<>();
+
+    private SessionTicketKeys(byte[] secret) throws GeneralSecurityException {
+        HKDF hkdf = new HKDF("SHA-256");
+        this.masterKey = hkdf.extract((byte[])null,
+                new SecretKeySpec(secret, "TlsTicketSecret"), "TlsTicketKey");
+        Arrays.fill(secret, (byte)0);
+    }
+
+    /**
+     * Create the key ring of a server session context, using the shared
+     * master secret if configured, or a random one otherwise.
+     */
+    static SessionTicketKeys createInstance(SecureRandom random)
+            throws GeneralSecurityException {
+        byte[] secret;
+        if (keyFile != null && !keyFile.isEmpty()) {
+            try {
+                secret = AccessController.doPrivileged(
+                        new PrivilegedExceptionAction<byte[]>() {
+                    @Override
+                    public byte[] run() throws IOException {
+                        return Files.readAllBytes(Paths.get(keyFile));
+                    }
+                });
+            } catch (PrivilegedActionException pae) {
+                throw new GeneralSecurityException(
+                        "Cannot read the stateless ticket key file " +
+                        keyFile, pae.getException());
+            }
+
+            if (secret.length < MIN_SECRET_LENGTH) {
+                throw new GeneralSecurityException(
+                        "The stateless ticket key file " + keyFile +
+                        " should contain at least " + MIN_SECRET_LENGTH +
+                        " bytes");
+            }
+
+            if (SSLLogger.isOn && SSLLogger.isOn("ssl,sslctx")) {
+                SSLLogger.fine(
+                        "Use the shared stateless ticket key: " + keyFile);
+            }
+        } else {
+            secret = new byte[MIN_SECRET_LENGTH];
+            random.nextBytes(secret);
+        }
+
+        return new SessionTicketKeys(secret);
+    }
+
+    /**
+     * Encrypt the state of the session into a ticket.
+     *
+     * @return the ticket, or null if the session cannot be made stateless
+     */
+    byte[] encrypt(SSLSessionImpl session, SecureRandom random) {
+        try {
+            byte[] state = session.write();
+            int period = currentPeriod();
+
+            byte[] ticket = new byte[HEADER_LENGTH + state.length + TAG_LENGTH];
+            ticket[0] = (byte)(period >>> 24);
+            ticket[1] = (byte)(period >>> 16);
+            ticket[2] = (byte)(period >>> 8);
+            ticket[3] = (byte)period;
+            byte[] iv = new byte[IV_LENGTH];
+            random.nextBytes(iv);
+            System.arraycopy(iv, 0, ticket, 4, IV_LENGTH);
+
+            Cipher cipher = JsseJce.getCipher("AES/GCM/NoPadding");
+            cipher.init(Cipher.ENCRYPT_MODE, getKey(period),
+                    new GCMParameterSpec(TAG_LENGTH * 8, iv), random);
+            cipher.updateAAD(ticket, 0, 4);
+            cipher.doFinal(state, 0, state.length, ticket, HEADER_LENGTH);
+            Arrays.fill(state, (byte)0);
+
+            return ticket;
+        } catch (GeneralSecurityException | IOException
+                | RuntimeException e) {
+            if (SSLLogger.isOn && SSLLogger.isOn("ssl,handshake")) {
+                SSLLogger.warning("Cannot encrypt the stateless ticket", e);
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Decrypt the ticket and re-create the session from its state.
+     *
+     * @param  timeout the session timeout in seconds, 0 for no limit
+     * @return the restored session, or null if the ticket was not
+     *         issued with this key ring, or it has timed out
+     */
+    SSLSessionImpl decrypt(byte[] ticket, SessionId id, int timeout) {
+        if (ticket == null || ticket.length <= HEADER_LENGTH + TAG_LENGTH) {
+            return null;
+        }
+
+        int period = ((ticket[0] & 0xFF) << 24) | ((ticket[1] & 0xFF) << 16) |
+                     ((ticket[2] & 0xFF) << 8) | (ticket[3] & 0xFF);
+        int current = currentPeriod();
+        long maxAge = (timeout == 0) ? Long.MAX_VALUE :
+                ((timeout + keyLifetime - 1) / keyLifetime);
+        // one more period is allowed for the clock skew between servers
+        if (period > current + 1 || (current - (long)period) > maxAge) {
+            if (SSLLogger.isOn && SSLLogger.isOn("ssl,handshake,verbose")) {
+                SSLLogger.finest(
+                        "Ignore stateless ticket of key period " + period);
+            }
+            return null;
+        }
+
+        byte[] state = null;
+        try {
+            Cipher cipher = JsseJce.getCipher("AES/GCM/NoPadding");
+            cipher.init(Cipher.DECRYPT_MODE, getKey(period),
+                    new GCMParameterSpec(TAG_LENGTH * 8, ticket, 4, IV_LENGTH));
+            cipher.updateAAD(ticket, 0, 4);
+            state = cipher.doFinal(ticket,
+                    HEADER_LENGTH, ticket.length - HEADER_LENGTH);
+
+            SSLSessionImpl session =
+                    new SSLSessionImpl(id, ByteBuffer.wrap(state));
+            if (timeout != 0 && (session.getCreationTime() +
+                    timeout * 1000L) <= System.currentTimeMillis()) {
+                if (SSLLogger.isOn && SSLLogger.isOn("ssl,handshake")) {
+                    SSLLogger.fine("Stateless ticket has timed out");
+                }
+                return null;
+            }
+
+            return session;
+        } catch (GeneralSecurityException | IOException
+                | RuntimeException e) {
+            // Not a ticket of this key ring, or a corrupted one.
+            if (SSLLogger.isOn && SSLLogger.isOn("ssl,handshake,verbose")) {
+                SSLLogger.finest("Cannot decrypt the stateless ticket", e);
+            }
+        } finally {
+            if (state != null) {
+                Arrays.fill(state, (byte)0);
+            }
+        }
+
+        return null;
+    }
+
+    private static int currentPeriod() {
+        return (int)(System.currentTimeMillis() / (keyLifetime * 1000L));
+    }
+
+    private SecretKey getKey(int period) throws GeneralSecurityException {
+        SecretKey key = keys.get(period);
+        if (key != null) {
+            return key;
+        }
+
+        byte[] info = Arrays.copyOf(KEY_LABEL, KEY_LABEL.length + 4);
+        info[KEY_LABEL.length] = (byte)(period >>> 24);
+        info[KEY_LABEL.length + 1] = (byte)(period >>> 16);
+        info[KEY_LABEL.length + 2] = (byte)(period >>> 8);
+        info[KEY_LABEL.length + 3] = (byte)period;
+        key = new HKDF("SHA-256").expand(masterKey, info, KEY_LENGTH, "AES");
+
+        // Only keep the keys of the recent periods, the older ones are
+        // rarely used and could be derived again if needed.
+        if (keys.size() > 2) {
+            int current = currentPeriod();
+            for (Integer p : keys.keySet()) {
+                if (p < current - 1 && p != period) {
+                    keys.remove(p);
+                }
+            }
+        }
+
+        SecretKey previous = keys.putIfAbsent(period, key);
+        return (previous != null) ? previous : key;
+    }
+
+    private static long getKeyLifetime() {
+        int lifetime = Utilities.getUIntProperty(
+                "org.openjsse.server.statelessTicketKeyLifetime", 3600);
+        if (lifetime <= 0) {
+            if (SSLLogger.isOn && SSLLogger.isOn("ssl")) {
+                SSLLogger.warning("Invalid stateless ticket key lifetime " +
+                        lifetime + ", use the default value 3600");
+            }
+            lifetime = 3600;
+        }
+
+        return lifetime;
+    }
+}
@@ -38,13 +38,17 @@ import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
 import sun.security.action.GetBooleanAction;
 import sun.security.action.GetIntegerAction;
 import sun.security.action.GetPropertyAction;
@@ -62,6 +66,8 @@ final class StatusResponseManager {
     private static final int DEFAULT_CORE_THREADS = 8;
     private static final int DEFAULT_CACHE_SIZE = 256;
     private static final int DEFAULT_CACHE_LIFETIME = 3600;     // seconds
+    private static final int DEFAULT_REFRESH_AHEAD = 0;         // seconds
+    private static final int REFRESH_RETRY_INTERVAL = 60;       // seconds
 
     private final ScheduledThreadPoolExecutor threadMgr;
     private final Cache<CertId, ResponseCacheEntry> responseCache;
@@ -70,6 +76,18 @@ final class StatusResponseManager {
     private final int cacheCapacity;
     private final int cacheLifetime;
     private final boolean ignoreExtensions;
+    private final int refreshAhead;
+    private final boolean nonBlocking;
+
+    // The fetches in progress for cacheable responses, so that concurrent
+    // handshakes for the same certificate share a single OCSP request.
+    private final Map<CertId, Future<StatusInfo>> inFlight =
+            new ConcurrentHashMap<>();
+
+    private final LongAdder cacheHits = new LongAdder();
+    private final LongAdder cacheMisses = new LongAdder();
+    private final LongAdder refreshes = new LongAdder();
+    private final LongAdder sharedFetches = new LongAdder();
 
     /**
      * Create a StatusResponseManager with default parameters.
@@ -101,6 +119,20 @@ final class StatusResponseManager {
         ignoreExtensions = AccessController.doPrivileged(
                 new GetBooleanAction("jdk.tls.stapling.ignoreExtensions"));
 
+        // Refresh cached responses in the background this many seconds
+        // before they expire.  Zero disables the background refresh.
+        int ahead = AccessController.doPrivileged(
+                new GetIntegerAction(
+                    "org.openjsse.server.stapling.refreshAhead",
+                    DEFAULT_REFRESH_AHEAD));
+        refreshAhead = ahead > 0 ? ahead : 0;
+
+        // Do not wait for OCSP responders during handshakes, staple only
+        // the responses that are cached already.
+        nonBlocking = AccessController.doPrivileged(
+                new GetBooleanAction(
+                    "org.openjsse.server.stapling.nonBlocking"));
+
         threadMgr = new ScheduledThreadPoolExecutor(DEFAULT_CORE_THREADS,
                 new ThreadFactory() {
             @Override
@@ -168,6 +200,56 @@ final class StatusResponseManager {
         return ignoreExtensions;
     }
 
+    /**
+     * Get the background refresh setting.
+     *
+     * @return the number of seconds before expiration at which cached
+     *      responses are refreshed, or zero if background refresh is
+     *      disabled.
+     */
+    int getRefreshAhead() {
+        return refreshAhead;
+    }
+
+    /**
+     * Get the non-blocking setting.
+     *
+     * @return {@code true} if handshakes never wait for OCSP responders,
+     *      {@code false} otherwise.
+     */
+    boolean isNonBlocking() {
+        return nonBlocking;
+    }
+
+    /**
+     * Returns the number of status requests answered from the cache.
+     */
+    long getCacheHits() {
+        return cacheHits.sum();
+    }
+
+    /**
+     * Returns the number of status requests that needed a fetch.
+     */
+    long getCacheMisses() {
+        return cacheMisses.sum();
+    }
+
+    /**
+     * Returns the number of background refreshes of cached responses.
+     */
+    long getRefreshes() {
+        return refreshes.sum();
+    }
+
+    /**
+     * Returns the number of status requests that joined a fetch which
+     * was already in progress for the same certificate.
+     */
+    long getSharedFetches() {
+        return sharedFetches.sum();
+    }
+
     /**
      * Clear the status response cache
      */
@@ -287,7 +369,8 @@ final class StatusResponseManager {
                 OCSPStatusRequest ocspReq = (OCSPStatusRequest)request;
                 CertId cid = new CertId(chain[1],
                         new SerialNumber(chain[0].getSerialNumber()));
-                ResponseCacheEntry cacheEntry = getFromCache(cid, ocspReq);
+                ResponseCacheEntry cacheEntry =
+                        getFromCache(chain[0], cid, ocspReq);
                 if (cacheEntry != null) {
                     responseMap.put(chain[0], cacheEntry.ocspBytes);
                 } else {
@@ -314,7 +397,7 @@ final class StatusResponseManager {
                     CertId cid = new CertId(chain[ctr + 1],
                         new SerialNumber(chain[ctr].getSerialNumber()));
                     ResponseCacheEntry cacheEntry =
-                        getFromCache(cid, ocspReq);
+                        getFromCache(chain[ctr], cid, ocspReq);
                     if (cacheEntry != null) {
                         responseMap.put(chain[ctr], cacheEntry.ocspBytes);
                     } else {
@@ -337,40 +420,68 @@ final class StatusResponseManager {
         // If we were able to create one or more Fetches, go and run all
         // of them in separate threads.  For all the threads that completed
         // in the allotted time, put those status responses into the
-        // returned Map.
+        // returned Map.  Cacheable fetches that did not complete in time
+        // are not cancelled, their responses will be cached for later
+        // handshakes.  Fetches that cannot be cached are cancelled, and
+        // are not started at all in non-blocking mode, as nothing would
+        // ever read their responses.
         if (!requestList.isEmpty()) {
-            try {
-                // Set a bunch of threads to go do the fetching
-                List<Future<StatusInfo>> resultList =
-                        threadMgr.invokeAll(requestList, delay, unit);
-
-                // Go through the Futures and from any non-cancelled task,
-                // get the bytes and attach them to the responseMap.
-                for (Future<StatusInfo> task : resultList) {
-                    if (!task.isDone()) {
-                        continue;
+            cacheMisses.add(requestList.size());
+
+            List<Future<StatusInfo>> resultList =
+                    new ArrayList<>(requestList.size());
+            for (OCSPFetchCall call : requestList) {
+                if (nonBlocking && !call.cacheable) {
+                    if (SSLLogger.isOn && SSLLogger.isOn("respmgr")) {
+                        SSLLogger.fine("Skipping non-cacheable fetch " +
+                                "in non-blocking mode");
                     }
+                    resultList.add(null);
+                } else {
+                    resultList.add(fetch(call));
+                }
+            }
 
-                    if (!task.isCancelled()) {
-                        StatusInfo info = task.get();
-                        if (info != null && info.responseData != null) {
-                            responseMap.put(info.cert,
-                                    info.responseData.ocspBytes);
-                        } else if (SSLLogger.isOn &&
-                                SSLLogger.isOn("respmgr")) {
-                            SSLLogger.fine(
-                                "Completed task had no response data");
-                        }
-                    } else {
-                        if (SSLLogger.isOn && SSLLogger.isOn("respmgr")) {
-                            SSLLogger.fine("Found cancelled task");
-                        }
+            long deadline = System.nanoTime() +
+                    (nonBlocking ? 0 : unit.toNanos(delay));
+            for (int i = 0; i < resultList.size(); i++) {
+                Future<StatusInfo> task = resultList.get(i);
+                StatusInfo info;
+                try {
+                    if (task == null || (nonBlocking && !task.isDone())) {
+                        continue;
+                    }
+                    info = task.get(
+                            Math.max(deadline - System.nanoTime(), 0),
+                            TimeUnit.NANOSECONDS);
+                } catch (TimeoutException te) {
+                    if (SSLLogger.isOn && SSLLogger.isOn("respmgr")) {
+                        SSLLogger.fine("Fetch did not complete in time");
                     }
+                    continue;
+                } catch (InterruptedException | ExecutionException exc) {
+                    // Not sure what else to do here
+                    if (SSLLogger.isOn && SSLLogger.isOn("respmgr")) {
+                        SSLLogger.fine("Exception when getting data: ", exc);
+                    }
+                    break;
                 }
-            } catch (InterruptedException | ExecutionException exc) {
-                // Not sure what else to do here
-                if (SSLLogger.isOn && SSLLogger.isOn("respmgr")) {
-                    SSLLogger.fine("Exception when getting data: ", exc);
+
+                // The fetch may be shared with other handshakes, so use
+                // the certificate of this request as the key.
+                if (info != null && info.responseData != null) {
+                    responseMap.put(requestList.get(i).statInfo.cert,
+                            info.responseData.ocspBytes);
+                } else if (SSLLogger.isOn && SSLLogger.isOn("respmgr")) {
+                    SSLLogger.fine("Completed task had no response data");
+                }
+            }
+
+            // Cancel the non-cacheable fetches that are still running.
+            for (int i = 0; i < resultList.size(); i++) {
+                Future<StatusInfo> task = resultList.get(i);
+                if (task != null && !requestList.get(i).cacheable) {
+                    task.cancel(true);
                 }
             }
         }
@@ -378,9 +489,54 @@ final class StatusResponseManager {
         return Collections.unmodifiableMap(responseMap);
     }
 
+    /**
+     * Start an OCSP fetch, or join the fetch that is in progress for the
+     * same {@code CertId} if the response is cacheable.
+     *
+     * @param call the fetch to run
+     *
+     * @return the {@code Future} of the fetch
+     */
+    private Future<StatusInfo> fetch(OCSPFetchCall call) {
+        if (!call.cacheable) {
+            return threadMgr.submit(call);
+        }
+
+        final CertId cid = call.statInfo.cid;
+        FutureTask<StatusInfo> task = new FutureTask<StatusInfo>(call) {
+            @Override
+            protected void done() {
+                inFlight.remove(cid, this);
+            }
+        };
+
+        Future<StatusInfo> current = inFlight.putIfAbsent(cid, task);
+        if (current != null) {
+            if (SSLLogger.isOn && SSLLogger.isOn("respmgr")) {
+                SSLLogger.fine("Joining fetch in progress for SN " +
+                        cid.getSerialNumber());
+            }
+            sharedFetches.increment();
+            return current;
+        }
+
+        threadMgr.execute(task);
+        if (threadMgr.isShutdown()) {
+            // The task may have been discarded.
+            task.cancel(false);
+        }
+
+        return task;
+    }
+
     /**
      * Check the cache for a given {@code CertId}.
      *
+     * If background refresh is enabled and the cached response is about
+     * to expire, a fetch of a new response is started.  The cached
+     * response is still returned, as it has not expired yet.
+     *
+     * @param cert the certificate the response is for
      * @param cid the CertId of the response to look up
      * @param ocspRequest the OCSP request structure sent by the client
      *      in the TLS status_request[_v2] hello extension.
@@ -389,8 +545,8 @@ final class StatusResponseManager {
      *      {@code null} if it is not found or a nonce extension has been
      *      requested by the caller.
      */
-    private ResponseCacheEntry getFromCache(CertId cid,
-            OCSPStatusRequest ocspRequest) {
+    private ResponseCacheEntry getFromCache(X509Certificate cert,
+            CertId cid, OCSPStatusRequest ocspRequest) {
         // Determine if the nonce extension is present in the request.  If
         // so, then do not attempt to retrieve the response from the cache.
         for (Extension ext : ocspRequest.extensions) {
@@ -423,9 +579,62 @@ final class StatusResponseManager {
                     "Check cache for SN" + cid.getSerialNumber() + ": " +
                     (respEntry != null ? "HIT" : "MISS"));
         }
+
+        if (respEntry != null) {
+            cacheHits.increment();
+
+            long now = System.currentTimeMillis();
+            if (now >= respEntry.refreshTime) {
+                // Back off, in case the responder cannot be reached.
+                respEntry.refreshTime =
+                        now + REFRESH_RETRY_INTERVAL * 1000L;
+
+                if (SSLLogger.isOn && SSLLogger.isOn("respmgr")) {
+                    SSLLogger.fine("Refreshing cached response for SN " +
+                            cid.getSerialNumber());
+                }
+                refreshes.increment();
+                fetch(new OCSPFetchCall(
+                        new StatusInfo(cert, cid), ocspRequest));
+            }
+        }
+
         return respEntry;
     }
 
+    /**
+     * Determine the delay to use when scheduling the task that will
+     * update the OCSP response.  This is the shorter time between the
+     * cache lifetime and the nextUpdate.  If no nextUpdate is present
+     * in the response, then only the cache lifetime is used.
+     * If cache timeouts are disabled (a zero value) and there's no
+     * nextUpdate, then the entry is not cached and no rescheduling
+     * will take place.
+     *
+     * @param nextUpdate a {@code Date} object corresponding to the
+     *      next update time from a SingleResponse.
+     *
+     * @return the number of seconds of delay before the next fetch
+     *      should be executed.  A zero value means that the fetch
+     *      should happen immediately, while a value less than zero
+     *      indicates no rescheduling should be done.
+     */
+    private long getNextTaskDelay(Date nextUpdate) {
+        long delaySec;
+        int lifetime = getCacheLifetime();
+
+        if (nextUpdate != null) {
+            long nuDiffSec = (nextUpdate.getTime() -
+                    System.currentTimeMillis()) / 1000;
+            delaySec = lifetime > 0 ? Long.min(nuDiffSec, lifetime) :
+                    nuDiffSec;
+        } else {
+            delaySec = lifetime > 0 ? lifetime : -1;
+        }
+
+        return delaySec;
+    }
+
     @Override
     public String toString() {
         StringBuilder sb = new StringBuilder("StatusResponseManager: ");
@@ -452,6 +661,17 @@ final class StatusResponseManager {
             sb.append("NONE");
         }
 
+        sb.append(", Refresh ahead: ");
+        if (refreshAhead > 0) {
+            sb.append(refreshAhead).append(" seconds");
+        } else {
+            sb.append("disabled");
+        }
+        sb.append(", Non-blocking: ").append(nonBlocking);
+        sb.append(", Hits: ").append(getCacheHits());
+        sb.append(", Misses: ").append(getCacheMisses());
+        sb.append(", Refreshes: ").append(getRefreshes());
+
         return sb.toString();
     }
 
@@ -537,6 +757,10 @@ final class StatusResponseManager {
         final OCSPResponse.SingleResponse singleResp;
         final ResponderId respId;
 
+        // When to start a background refresh of this response, in
+        // milliseconds since the epoch.
+        volatile long refreshTime;
+
         /**
          * Create a new cache entry from the raw bytes of the response
          *
@@ -569,6 +793,14 @@ final class StatusResponseManager {
             } else {
                 nextUpdate = null;
             }
+
+            long delaySec = getNextTaskDelay(nextUpdate);
+            if (refreshAhead > 0 && delaySec >= 0) {
+                refreshTime = System.currentTimeMillis() +
+                        Math.max(delaySec - refreshAhead, 0) * 1000L;
+            } else {
+                refreshTime = Long.MAX_VALUE;
+            }
         }
     }
 
@@ -582,6 +814,7 @@ final class StatusResponseManager {
         OCSPStatusRequest ocspRequest;
         List<Extension> extensions;
         List<ResponderId> responderIds;
+        boolean cacheable;
 
         /**
          * A constructor that builds the OCSPFetchCall from the provided
@@ -600,6 +833,17 @@ final class StatusResponseManager {
                     "Null OCSPStatusRequest not allowed");
             extensions = ocspRequest.extensions;
             responderIds = ocspRequest.responderIds;
+
+            // Responses to requests with a nonce are not cached, and
+            // cannot be shared.
+            cacheable = true;
+            for (Extension ext : extensions) {
+                if (ext.getId().equals(
+                        PKIXExtensions.OCSPNonce_Id.toString())) {
+                    cacheable = false;
+                    break;
+                }
+            }
         }
 
         /**
@@ -617,6 +861,9 @@ final class StatusResponseManager {
                     "Starting fetch for SN " +
                     statInfo.cid.getSerialNumber());
             }
+            Object event = null;
+            String status = "NO_RESPONSE";
+            int length = 0;
             try {
                 ResponseCacheEntry cacheEntry;
                 List<Extension> extsToSend;
@@ -651,6 +898,7 @@ final class StatusResponseManager {
                 extsToSend = (ignoreExtensions || !responderIds.isEmpty()) ?
                         Collections.emptyList() : extensions;
 
+                event = SSLEvents.beginStatusFetch();
                 byte[] respBytes = OCSP.getOCSPBytes(
                         Collections.singletonList(statInfo.cid),
                         statInfo.responder, extsToSend);
@@ -659,6 +907,8 @@ final class StatusResponseManager {
                     // Place the data into the response cache
                     cacheEntry = new ResponseCacheEntry(respBytes,
                             statInfo.cid);
+                    status = cacheEntry.status.toString();
+                    length = respBytes.length;
 
                     // Get the response status and act on it appropriately
                     if (SSLLogger.isOn && SSLLogger.isOn("respmgr")) {
@@ -680,9 +930,14 @@ final class StatusResponseManager {
                     }
                 }
             } catch (IOException ioe) {
+                status = ioe.getClass().getSimpleName();
                 if (SSLLogger.isOn && SSLLogger.isOn("respmgr")) {
                     SSLLogger.fine("Caught exception: ", ioe);
                 }
+            } finally {
+                SSLEvents.endStatusFetch(event, statInfo.responder,
+                        statInfo.cid.getSerialNumber().toString(16),
+                        status, length);
             }
 
             return statInfo;
@@ -712,39 +967,6 @@ final class StatusResponseManager {
                 }
             }
         }
-
-        /**
-         * Determine the delay to use when scheduling the task that will
-         * update the OCSP response.  This is the shorter time between the
-         * cache lifetime and the nextUpdate.  If no nextUpdate is present
-         * in the response, then only the cache lifetime is used.
-         * If cache timeouts are disabled (a zero value) and there's no
-         * nextUpdate, then the entry is not cached and no rescheduling
-         * will take place.
-         *
-         * @param nextUpdate a {@code Date} object corresponding to the
-         *      next update time from a SingleResponse.
-         *
-         * @return the number of seconds of delay before the next fetch
-         *      should be executed.  A zero value means that the fetch
-         *      should happen immediately, while a value less than zero
-         *      indicates no rescheduling should be done.
-         */
-        private long getNextTaskDelay(Date nextUpdate) {
-            long delaySec;
-            int lifetime = getCacheLifetime();
-
-            if (nextUpdate != null) {
-                long nuDiffSec = (nextUpdate.getTime() -
-                        System.currentTimeMillis()) / 1000;
-                delaySec = lifetime > 0 ? Long.min(nuDiffSec, lifetime) :
-                        nuDiffSec;
-            } else {
-                delaySec = lifetime > 0 ? lifetime : -1;
-            }
-
-            return delaySec;
-        }
     }
 
     static final StaplingParameters processStapling(
@@ -917,15 +1139,18 @@ final class StatusResponseManager {
                                     "response found for leaf certificate. " +
                                     "Stapling is disabled.");
                         }
+                        shc.sslContext.metrics.stapling(false);
                         return null;
                     }
                 }
                 params = new StaplingParameters(ext, type, req, responses);
+                shc.sslContext.metrics.stapling(true);
             } else {
                 if (SSLLogger.isOn && SSLLogger.isOn("ssl,handshake")) {
                     SSLLogger.finest("Warning: no OCSP responses obtained.  " +
                             "Stapling is disabled.");
                 }
+                shc.sslContext.metrics.stapling(false);
             }
         } else {
             // This should not happen, but if lazy initialization of the
@@ -82,6 +82,7 @@ class TransportContext implements ConnectionContext {
     final SSLConfiguration          sslConfig;
     final InputRecord               inputRecord;
     final OutputRecord              outputRecord;
+    final SSLMetrics                metrics;
 
     // connection status
     boolean                         isUnsureMode;
@@ -97,6 +98,11 @@ class TransportContext implements ConnectionContext {
     ProtocolVersion                 protocolVersion;
     String                          applicationProtocol= null;
 
+    // TLS 1.3 early data, the data to send in client side, or the data
+    // received in server side.
+    byte[]                          earlyData = null;
+    boolean                         isEarlyDataAccepted = false;
+
     // handshake context
     HandshakeContext                handshakeContext = null;
 
@@ -152,6 +158,8 @@ class TransportContext implements ConnectionContext {
         this.inputRecord = inputRecord;
         this.outputRecord = outputRecord;
         this.sslConfig = sslConfig;
+        this.metrics = sslContext.metrics;
+        outputRecord.metrics = metrics;
         if (this.sslConfig.maximumPacketSize == 0) {
             this.sslConfig.maximumPacketSize = outputRecord.getMaxPacketSize();
         }
@@ -280,6 +288,7 @@ class TransportContext implements ConnectionContext {
         if (isNegotiated || handshakeContext != null) {
             try {
                 outputRecord.encodeAlert(Alert.Level.WARNING.level, alert.id);
+                metrics.alert(true, Alert.Level.WARNING, alert);
             } catch (IOException ioe) {
                 if (SSLLogger.isOn && SSLLogger.isOn("ssl")) {
                     SSLLogger.warning(
@@ -375,6 +384,7 @@ class TransportContext implements ConnectionContext {
         if (SSLLogger.isOn && SSLLogger.isOn("ssl")) {
             SSLLogger.severe("Fatal (" + alert + "): " + diagnostic, cause);
         }
+        SSLEvents.fatalAlert(this, alert, !recvFatalAlert, diagnostic);
 
         // remember the close reason
         if (cause instanceof SSLException) {
@@ -418,6 +428,7 @@ class TransportContext implements ConnectionContext {
                 (isNegotiated || handshakeContext != null)) {
             try {
                 outputRecord.encodeAlert(Alert.Level.FATAL.level, alert.id);
+                metrics.alert(true, Alert.Level.FATAL, alert);
             } catch (IOException ioe) {
                 if (SSLLogger.isOn && SSLLogger.isOn("ssl")) {
                     SSLLogger.warning(
@@ -651,6 +662,7 @@ class TransportContext implements ConnectionContext {
     }
 
     HandshakeStatus finishHandshake() {
+        HandshakeContext hc = handshakeContext;
         if (protocolVersion.useTLS13PlusSpec()) {
             outputRecord.tc = this;
             inputRecord.tc = this;
@@ -667,6 +679,13 @@ class TransportContext implements ConnectionContext {
         outputRecord.finishHandshake();
         isNegotiated = true;
 
+        if (hc != null) {
+            metrics.handshakeCompleted(conSession, sslConfig.isClientMode,
+                    hc.isResumption, protocolVersion, conSession.getSuite(),
+                    hc.startTime, hc.helloTime, hc.finishedTime);
+            SSLEvents.endHandshake(hc.handshakeEvent, this, hc.isResumption);
+        }
+
         // Tell folk about handshake completion, but do it in a separate thread.
         if (transport instanceof SSLSocket &&
                 sslConfig.handshakeListeners != null &&
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2019 Azul Systems, Inc.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.openjsse.sun.security.ssl;
+
+import java.io.ByteArrayInputStream;
+import java.security.cert.CertificateException;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import org.openjsse.sun.security.util.Cache;
+import org.openjsse.sun.security.util.Cache.EqualByteArray;
+
+/**
+ * An interning cache of the X.509 certificates received in Certificate
+ * handshake messages.
+ *
+ * Peers usually send the same certificate chain on every connection.  The
+ * decoded certificates are cached by their DER encoding, as the X.509
+ * CertificateFactory does, so that a repeated chain is not decoded again
+ * and does not need a CertificateFactory lookup, and so that all sessions
+ * with the peer share the same X509Certificate objects.
+ *
+ * The maximum number of cached certificates is set with the
+ * "org.openjsse.certificateCacheSize" system property, 0 to disable the
+ * cache.  The certificates are softly referenced, and can be reclaimed
+ * when memory is short.
+ */
+final class X509CertificateCache {
+    private static final int cacheSize = Utilities.getUIntProperty(
+            "org.openjsse.certificateCacheSize", 1024);
+
+    private static final Cache<EqualByteArray, X509Certificate> certCache =
+            (cacheSize == 0) ? Cache.newNullCache() :
+                    Cache.newSoftMemoryCache(cacheSize);
+
+    private X509CertificateCache() {
+        // blank
+    }
+
+    /**
+     * Return the X.509 certificate of the DER encoding, decoding it
+     * unless the same encoding was decoded before.
+     *
+     * The encoding is kept as the cache key, and must not be modified
+     * afterwards.
+     */
+    static X509Certificate generateCertificate(
+            byte[] encoded) throws CertificateException {
+        EqualByteArray key = null;
+        if (cacheSize != 0) {
+            key = new EqualByteArray(encoded);
+
+            X509Certificate cert = certCache.get(key);
+            if (cert != null) {
+                return cert;
+            }
+        }
+
+        CertificateFactory cf = CertificateFactory.getInstance("X.509");
+        X509Certificate cert = (X509Certificate)cf.generateCertificate(
+                new ByteArrayInputStream(encoded));
+        if (key != null) {
+            certCache.put(key, cert);
+        }
+
+        return cert;
+    }
+}
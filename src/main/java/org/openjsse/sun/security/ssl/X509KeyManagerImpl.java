@@ -26,6 +26,7 @@
 package org.openjsse.sun.security.ssl;
 
 import java.lang.ref.*;
+import java.net.IDN;
 import java.net.Socket;
 import java.security.AlgorithmConstraints;
 import java.security.KeyStore;
@@ -50,6 +51,9 @@ import javax.net.ssl.SNIHostName;
 import javax.security.auth.x500.X500Principal;
 
 import sun.security.provider.certpath.AlgorithmChecker;
+import sun.security.util.DerValue;
+import sun.security.x509.X500Name;
+import org.openjsse.sun.security.util.HostnameChecker;
 import org.openjsse.sun.security.validator.Validator;
 
 /**
@@ -65,7 +69,10 @@ import org.openjsse.sun.security.validator.Validator;
  *  . it makes an effort to choose the key that matches best, i.e. one that
  *    is not expired and has the appropriate certificate extensions.
  *
- * Note that this code is not explicitly performance optimzied yet.
+ * By default, the key stores are scanned for every alias selection.  If
+ * the "org.openjsse.keymanager.indexed" system property is true, the key
+ * entries are instead loaded once into an index, see KeyIndex, and only
+ * reloaded on request.
  *
  * @author  Andreas Sterbenz
  */
@@ -84,6 +91,13 @@ final class X509KeyManagerImpl extends X509ExtendedKeyManager
     // cached entries
     private final Map<String,Reference<PrivateKeyEntry>> entryCacheMap;
 
+    // whether the key entries are indexed rather than scanned
+    private static final boolean useKeyIndex = Utilities.getBooleanProperty(
+            "org.openjsse.keymanager.indexed", false);
+
+    // the index of the key entries, or null if they are scanned
+    private volatile KeyIndex keyIndex;
+
     X509KeyManagerImpl(Builder builder) {
         this(Collections.singletonList(builder));
     }
@@ -93,6 +107,22 @@ final class X509KeyManagerImpl extends X509ExtendedKeyManager
         uidCounter = new AtomicLong();
         entryCacheMap = Collections.synchronizedMap
                         (new SizedMap<String,Reference<PrivateKeyEntry>>());
+        if (useKeyIndex) {
+            keyIndex = new KeyIndex(builders);
+        }
+    }
+
+    /*
+     * Reload the key entries of the key stores.
+     *
+     * The new index replaces the current one at once.  Aliases that were
+     * chosen before are still resolved, from the key stores if needed.
+     */
+    void reload() {
+        if (keyIndex != null) {
+            keyIndex = new KeyIndex(builders);
+        }
+        entryCacheMap.clear();
     }
 
     // LinkedHashMap with a max size of 10
@@ -283,6 +313,16 @@ final class X509KeyManagerImpl extends X509ExtendedKeyManager
             return null;
         }
 
+        // try to get the entry from the index
+        KeyIndex index = keyIndex;
+        if (index != null) {
+            PrivateKeyEntry indexed = index.entries.get(
+                    alias.substring(alias.indexOf('.') + 1));
+            if (indexed != null) {
+                return indexed;
+            }
+        }
+
         // try to get the entry from cache
         Reference<PrivateKeyEntry> ref = entryCacheMap.get(alias);
         PrivateKeyEntry entry = (ref != null) ? ref.get() : null;
@@ -410,6 +450,13 @@ final class X509KeyManagerImpl extends X509ExtendedKeyManager
         }
 
         Set<Principal> issuerSet = getIssuerSet(issuers);
+        KeyIndex index = keyIndex;
+        if (index != null) {
+            return chooseAlias(index, keyTypeList, issuerSet, checkType,
+                    constraints, certificateAuthorities,
+                    requestedServerNames, idAlgorithm);
+        }
+
         List<EntryStatus> allResults = null;
         for (int i = 0, n = builders.size(); i < n; i++) {
             try {
@@ -451,6 +498,117 @@ final class X509KeyManagerImpl extends X509ExtendedKeyManager
         return makeAlias(allResults.get(0));
     }
 
+    /*
+     * Return the best alias that fits the given parameters, using the index
+     * of the key entries instead of scanning the key stores.
+     *
+     * The choice is the same as the one of the scan.  The entries whose
+     * certificate names may match the requested host name are looked up
+     * in the hostname trie and checked first.  If none of them is a match,
+     * the entries of the requested key types (or of the requested issuers)
+     * are checked in order, until one is found that is as good as an entry
+     * without a matching name can be.  So the cost depends on the number
+     * of labels of the host name, not on the number of aliases.
+     */
+    private String chooseAlias(KeyIndex index, List<KeyType> keyTypeList,
+            Set<Principal> issuerSet, CheckType checkType,
+            AlgorithmConstraints constraints,
+            X500Principal[] certificateAuthorities,
+            List<SNIServerName> requestedServerNames, String idAlgorithm) {
+
+        Date date = (verificationDate != null) ? verificationDate : new Date();
+        String hostname = getHostName(requestedServerNames);
+        EntryStatus best = null;
+        if (hostname != null) {
+            for (IndexedEntry entry : index.hostnames.find(hostname)) {
+                EntryStatus status = checkAlias(entry.builderIndex,
+                        entry.alias, entry.chain, keyTypeList, issuerSet,
+                        checkType, constraints, certificateAuthorities,
+                        requestedServerNames, idAlgorithm, date);
+                if (status == null) {
+                    continue;
+                }
+
+                if (status.checkResult == CheckResult.OK &&
+                        status.keyIndex == 0) {
+                    best = status;
+                    break;
+                }
+
+                if (best == null || status.compareTo(best) < 0) {
+                    best = status;
+                }
+            }
+        }
+
+        // Entries that do not match the host name are INSENSITIVE at best.
+        if (best == null || best.checkResult != CheckResult.OK) {
+            CheckResult bestPossible = (hostname == null) ?
+                    CheckResult.OK : CheckResult.INSENSITIVE;
+            List<IndexedEntry> issued = (issuerSet != null) ?
+                    index.getIssuedEntries(issuerSet) : null;
+            search:
+            for (int k = 0, n = keyTypeList.size(); k < n; k++) {
+                List<IndexedEntry> entries = (issued != null) ? issued :
+                        index.getEntries(keyTypeList.get(k).keyAlgorithm);
+                for (IndexedEntry entry : entries) {
+                    EntryStatus status = checkAlias(entry.builderIndex,
+                            entry.alias, entry.chain, keyTypeList, issuerSet,
+                            checkType, constraints, certificateAuthorities,
+                            requestedServerNames, idAlgorithm, date);
+                    if (status == null || status.keyIndex != k) {
+                        continue;
+                    }
+
+                    if (best == null || status.compareTo(best) < 0) {
+                        best = status;
+                    }
+
+                    if (status.checkResult == bestPossible) {
+                        break search;
+                    }
+                }
+            }
+        }
+
+        if (best == null) {
+            if (SSLLogger.isOn && SSLLogger.isOn("keymanager")) {
+                SSLLogger.fine("KeyMgr: no matching key found");
+            }
+            return null;
+        }
+
+        if (SSLLogger.isOn && SSLLogger.isOn("keymanager")) {
+            SSLLogger.fine("KeyMgr: choosing key: " + best);
+        }
+        return makeAlias(best);
+    }
+
+    // Get the requested SNI host name, in lower case.
+    private static String getHostName(List<SNIServerName> serverNames) {
+        if (serverNames == null) {
+            return null;
+        }
+
+        for (SNIServerName serverName : serverNames) {
+            if (serverName.getType() != StandardConstants.SNI_HOST_NAME) {
+                continue;
+            }
+
+            try {
+                SNIHostName hostName = (serverName instanceof SNIHostName) ?
+                        (SNIHostName)serverName :
+                        new SNIHostName(serverName.getEncoded());
+                return hostName.getAsciiName().toLowerCase(Locale.ENGLISH);
+            } catch (IllegalArgumentException iae) {
+                // unlikely to happen, the check will tell
+                return null;
+            }
+        }
+
+        return null;
+    }
+
     /*
      * Return all aliases that (approximately) fit the parameters.
      * These are perfect matches plus imperfect matches (expired certificates
@@ -548,6 +706,277 @@ final class X509KeyManagerImpl extends X509ExtendedKeyManager
         }
     }
 
+    // an indexed key entry, in the order of the builders and aliases
+    private static final class IndexedEntry {
+        final int builderIndex;
+        final String alias;
+        final int order;
+        final Certificate[] chain;
+
+        IndexedEntry(int builderIndex, String alias,
+                int order, Certificate[] chain) {
+            this.builderIndex = builderIndex;
+            this.alias = alias;
+            this.order = order;
+            this.chain = chain;
+        }
+    }
+
+    private static final Comparator<IndexedEntry> ENTRY_ORDER =
+            new Comparator<IndexedEntry>() {
+        @Override
+        public int compare(IndexedEntry e1, IndexedEntry e2) {
+            return Integer.compare(e1.order, e2.order);
+        }
+    };
+
+    /*
+     * The index of the key entries of all builders.
+     *
+     * The private key entries are loaded, and so decrypted, once when the
+     * index is built, and are kept until the index is rebuilt.  The entries
+     * are indexed by the key algorithm of the end entity certificate, by
+     * the issuers of the chain, and by the DNS names of the end entity
+     * certificate in a HostnameTrie.  An index is never modified after it
+     * is built, so it is read without locking.
+     */
+    private static final class KeyIndex {
+        // the entries, keyed by "<builder index>.<alias>"
+        final Map<String, PrivateKeyEntry> entries = new HashMap<>();
+        final HostnameTrie hostnames = new HostnameTrie();
+
+        private final Map<String, List<IndexedEntry>> keyAlgorithms =
+                new HashMap<>();
+        private final Map<Principal, List<IndexedEntry>> issuers =
+                new HashMap<>();
+
+        KeyIndex(List<Builder> builders) {
+            int order = 0;
+            for (int i = 0, n = builders.size(); i < n; i++) {
+                Builder builder = builders.get(i);
+                KeyStore ks;
+                Enumeration<String> aliases;
+                try {
+                    ks = builder.getKeyStore();
+                    aliases = ks.aliases();
+                } catch (Exception e) {
+                    if (SSLLogger.isOn && SSLLogger.isOn("keymanager")) {
+                        SSLLogger.fine("Ignore key store of builder #" + i, e);
+                    }
+                    continue;
+                }
+
+                while (aliases.hasMoreElements()) {
+                    String alias = aliases.nextElement();
+                    try {
+                        if (!ks.isKeyEntry(alias)) {
+                            continue;
+                        }
+
+                        Entry entry = ks.getEntry(alias,
+                                builder.getProtectionParameter(alias));
+                        if (!(entry instanceof PrivateKeyEntry)) {
+                            continue;
+                        }
+
+                        PrivateKeyEntry keyEntry = (PrivateKeyEntry)entry;
+                        if (add(keyEntry, new IndexedEntry(i, alias, order,
+                                keyEntry.getCertificateChain()))) {
+                            order++;
+                        }
+                    } catch (Exception e) {
+                        if (SSLLogger.isOn && SSLLogger.isOn("keymanager")) {
+                            SSLLogger.fine("Ignore alias " + alias, e);
+                        }
+                    }
+                }
+            }
+
+            if (SSLLogger.isOn && SSLLogger.isOn("keymanager")) {
+                SSLLogger.fine("KeyMgr: indexed " + order + " key entries");
+            }
+        }
+
+        // Add the entry, if its chain is an X.509 one.
+        private boolean add(PrivateKeyEntry keyEntry, IndexedEntry entry)
+                throws CertificateException {
+            for (Certificate c : entry.chain) {
+                if (!(c instanceof X509Certificate)) {
+                    return false;
+                }
+            }
+
+            X509Certificate cert = (X509Certificate)entry.chain[0];
+            entries.put(entry.builderIndex + "." + entry.alias, keyEntry);
+            addTo(keyAlgorithms, cert.getPublicKey().getAlgorithm(), entry);
+            for (Certificate c : entry.chain) {
+                addTo(issuers,
+                        ((X509Certificate)c).getIssuerX500Principal(), entry);
+            }
+            for (String name : getDNSNames(cert)) {
+                hostnames.add(name, entry);
+            }
+            return true;
+        }
+
+        private static <K> void addTo(Map<K, List<IndexedEntry>> map,
+                K key, IndexedEntry entry) {
+            List<IndexedEntry> list = map.get(key);
+            if (list == null) {
+                list = new ArrayList<>(1);
+                map.put(key, list);
+            }
+
+            // A chain may have the same issuer more than once.
+            if (list.isEmpty() || list.get(list.size() - 1) != entry) {
+                list.add(entry);
+            }
+        }
+
+        // Get the entries of the key algorithm, in order.
+        List<IndexedEntry> getEntries(String keyAlgorithm) {
+            List<IndexedEntry> list = keyAlgorithms.get(keyAlgorithm);
+            return (list != null) ?
+                    list : Collections.<IndexedEntry>emptyList();
+        }
+
+        // Get the entries issued by any of the issuers, in order.
+        List<IndexedEntry> getIssuedEntries(Set<Principal> issuerSet) {
+            Set<IndexedEntry> issued = new HashSet<>();
+            for (Principal issuer : issuerSet) {
+                List<IndexedEntry> list = issuers.get(issuer);
+                if (list != null) {
+                    issued.addAll(list);
+                }
+            }
+
+            List<IndexedEntry> result = new ArrayList<>(issued);
+            Collections.sort(result, ENTRY_ORDER);
+            return result;
+        }
+
+        // Get the names the certificate may be selected for, in the same
+        // way HostnameChecker matches them: the DNS subject alternative
+        // names, or else the most specific common name.
+        private static List<String> getDNSNames(
+                X509Certificate cert) throws CertificateException {
+            List<String> names = new ArrayList<>();
+            Collection<List<?>> subjAltNames =
+                    cert.getSubjectAlternativeNames();
+            if (subjAltNames != null) {
+                for (List<?> next : subjAltNames) {
+                    if (((Integer)next.get(0)).intValue() == 2) {   // dNSName
+                        names.add(normalize((String)next.get(1)));
+                    }
+                }
+            }
+
+            if (names.isEmpty()) {
+                X500Name subjectName =
+                        HostnameChecker.getSubjectX500Name(cert);
+                DerValue derValue = subjectName.findMostSpecificAttribute(
+                        X500Name.commonName_oid);
+                if (derValue != null) {
+                    try {
+                        names.add(normalize(derValue.getAsString()));
+                    } catch (java.io.IOException ioe) {
+                        // ignore
+                    }
+                }
+            }
+
+            return names;
+        }
+
+        private static String normalize(String name) {
+            if (name.endsWith(".")) {
+                name = name.substring(0, name.length() - 1);
+            }
+
+            try {
+                name = IDN.toASCII(name, IDN.ALLOW_UNASSIGNED);
+            } catch (IllegalArgumentException iae) {
+                // use the name as it is
+            }
+
+            return name.toLowerCase(Locale.ENGLISH);
+        }
+    }
+
+    /*
+     * A trie of host names, with one node per label from the top level
+     * domain down.  A wildcard name, such as "*.example.com", is kept at
+     * the node of its parent domain.
+     *
+     * Looking up a host name costs one step per label, and yields the
+     * entries whose names may match it.  HostnameChecker still decides if
+     * they do.
+     */
+    private static final class HostnameTrie {
+        private final Map<String, HostnameTrie> children = new HashMap<>();
+        private List<IndexedEntry> names;           // exact names
+        private List<IndexedEntry> wildcardNames;   // "*.<this domain>"
+
+        void add(String name, IndexedEntry entry) {
+            String[] labels = name.split("\\.");
+            boolean isWildcard =
+                    (labels.length > 1) && (labels[0].indexOf('*') >= 0);
+            HostnameTrie node = this;
+            for (int i = labels.length - 1; i >= (isWildcard ? 1 : 0); i--) {
+                HostnameTrie child = node.children.get(labels[i]);
+                if (child == null) {
+                    child = new HostnameTrie();
+                    node.children.put(labels[i], child);
+                }
+                node = child;
+            }
+
+            if (isWildcard) {
+                node.wildcardNames = addTo(node.wildcardNames, entry);
+            } else {
+                node.names = addTo(node.names, entry);
+            }
+        }
+
+        private static List<IndexedEntry> addTo(
+                List<IndexedEntry> list, IndexedEntry entry) {
+            if (list == null) {
+                list = new ArrayList<>(1);
+            }
+            if (list.isEmpty() || list.get(list.size() - 1) != entry) {
+                list.add(entry);
+            }
+            return list;
+        }
+
+        List<IndexedEntry> find(String hostname) {
+            String[] labels = hostname.split("\\.");
+            HostnameTrie node = this;
+            for (int i = labels.length - 1; i > 0 && node != null; i--) {
+                node = node.children.get(labels[i]);
+            }
+            if (node == null) {
+                return Collections.emptyList();
+            }
+
+            HostnameTrie leaf = node.children.get(labels[0]);
+            List<IndexedEntry> exact = (leaf != null) ? leaf.names : null;
+            List<IndexedEntry> wildcard = node.wildcardNames;
+            if (wildcard == null) {
+                return (exact != null) ?
+                        exact : Collections.<IndexedEntry>emptyList();
+            } else if (exact == null) {
+                return wildcard;
+            }
+
+            Set<IndexedEntry> matches = new HashSet<>(exact);
+            matches.addAll(wildcard);
+            List<IndexedEntry> result = new ArrayList<>(matches);
+            Collections.sort(result, ENTRY_ORDER);
+            return result;
+        }
+    }
+
     // enum for the type of certificate check we want to perform
     // (client or server)
     // also includes the check code itself
@@ -762,7 +1191,7 @@ final class X509KeyManagerImpl extends X509ExtendedKeyManager
         Builder builder = builders.get(builderIndex);
         KeyStore ks = builder.getKeyStore();
         List<EntryStatus> results = null;
-        Date date = verificationDate;
+        Date date = (verificationDate != null) ? verificationDate : new Date();
         boolean preferred = false;
         for (Enumeration<String> e = ks.aliases(); e.hasMoreElements(); ) {
             String alias = e.nextElement();
@@ -789,90 +1218,15 @@ final class X509KeyManagerImpl extends X509ExtendedKeyManager
                 continue;
             }
 
-            // check keytype
-            int keyIndex = -1;
-            int j = 0;
-            for (KeyType keyType : keyTypes) {
-                if (keyType.matches(chain)) {
-                    keyIndex = j;
-                    break;
-                }
-                j++;
-            }
-            if (keyIndex == -1) {
-                if (SSLLogger.isOn && SSLLogger.isOn("keymanager")) {
-                    SSLLogger.fine("Ignore alias " + alias
-                                + ": key algorithm does not match");
-                }
-                continue;
-            }
-            // check issuers
-            if (issuerSet != null) {
-                boolean found = false;
-                for (Certificate cert : chain) {
-                    X509Certificate xcert = (X509Certificate)cert;
-                    if (issuerSet.contains(xcert.getIssuerX500Principal())) {
-                        found = true;
-                        break;
-                    }
-                }
-                if (found == false) {
-                    if (SSLLogger.isOn && SSLLogger.isOn("keymanager")) {
-                        SSLLogger.fine(
-                                "Ignore alias " + alias
-                                + ": issuers do not match");
-                    }
-                    continue;
-                }
-            }
-
-            // check that certificate chain has an indicated certificate authority
-            // (if indications are available)
-            if (certificateAuthorities != null) {
-                boolean foundCertificateAuthority = false;
-                // Iterate the certificate chain starting from root certificate
-                for (int i = chain.length-1; i >=0 && !foundCertificateAuthority; i--) {
-                    final X509Certificate cert = (X509Certificate) chain[i];
-                    // Can safely cast because of
-                    // previous check for X509Certificate
-                    for (X500Principal ca : certificateAuthorities) {
-                        try {
-                            if (ca.equals(cert.getSubjectX500Principal())) {
-                                foundCertificateAuthority = true;
-                            }
-                        } catch (Exception e1) {
-                        // Certificate matching is a best-effort. Continue looking for matches.
-                        }
-                    }
-                }
-                if (!foundCertificateAuthority) {
-                    continue;
-                }
-            }
-
-            // check the algorithm constraints
-            if (constraints != null &&
-                    !conformsToAlgorithmConstraints(constraints, chain,
-                            checkType.getValidator())) {
-
-                if (SSLLogger.isOn && SSLLogger.isOn("keymanager")) {
-                    SSLLogger.fine("Ignore alias " + alias +
-                            ": certificate list does not conform to " +
-                            "algorithm constraints");
-                }
+            EntryStatus status = checkAlias(builderIndex, alias, chain,
+                    keyTypes, issuerSet, checkType, constraints,
+                    certificateAuthorities, requestedServerNames,
+                    idAlgorithm, date);
+            if (status == null) {
                 continue;
             }
-
-            if (date == null) {
-                date = new Date();
-            }
-            CheckResult checkResult =
-                    checkType.check((X509Certificate)chain[0], date,
-                                    requestedServerNames, idAlgorithm);
-            EntryStatus status =
-                    new EntryStatus(builderIndex, keyIndex,
-                                        alias, chain, checkResult);
-            if (!preferred && checkResult == CheckResult.OK && keyIndex == 0) {
+            if (!preferred && status.checkResult == CheckResult.OK &&
+                    status.keyIndex == 0) {
                 preferred = true;
             }
             if (preferred && (findAll == false)) {
@@ -889,6 +1243,101 @@ final class X509KeyManagerImpl extends X509ExtendedKeyManager
         return results;
     }
 
+    /*
+     * Check a key entry against the parameters.
+     *
+     * Return null if the entry does not fit at all, or the result of the
+     * certificate check otherwise.
+     */
+    private static EntryStatus checkAlias(int builderIndex, String alias,
+            Certificate[] chain, List<KeyType> keyTypes,
+            Set<Principal> issuerSet, CheckType checkType,
+            AlgorithmConstraints constraints,
+            X500Principal[] certificateAuthorities,
+            List<SNIServerName> requestedServerNames,
+            String idAlgorithm, Date date) {
+
+        // check keytype
+        int keyIndex = -1;
+        int j = 0;
+        for (KeyType keyType : keyTypes) {
+            if (keyType.matches(chain)) {
+                keyIndex = j;
+                break;
+            }
+            j++;
+        }
+        if (keyIndex == -1) {
+            if (SSLLogger.isOn && SSLLogger.isOn("keymanager")) {
+                SSLLogger.fine("Ignore alias " + alias
+                            + ": key algorithm does not match");
+            }
+            return null;
+        }
+        // check issuers
+        if (issuerSet != null) {
+            boolean found = false;
+            for (Certificate cert : chain) {
+                X509Certificate xcert = (X509Certificate)cert;
+                if (issuerSet.contains(xcert.getIssuerX500Principal())) {
+                    found = true;
+                    break;
+                }
+            }
+            if (found == false) {
+                if (SSLLogger.isOn && SSLLogger.isOn("keymanager")) {
+                    SSLLogger.fine(
+                            "Ignore alias " + alias
+                            + ": issuers do not match");
+                }
+                return null;
+            }
+        }
+
+        // check that certificate chain has an indicated certificate authority
+        // (if indications are available)
+        if (certificateAuthorities != null) {
+            boolean foundCertificateAuthority = false;
+            // Iterate the certificate chain starting from root certificate
+            for (int i = chain.length-1; i >=0 && !foundCertificateAuthority; i--) {
+                final X509Certificate cert = (X509Certificate) chain[i];
+                // Can safely cast because of
+                // previous check for X509Certificate
+                for (X500Principal ca : certificateAuthorities) {
+                    try {
+                        if (ca.equals(cert.getSubjectX500Principal())) {
+                            foundCertificateAuthority = true;
+                        }
+                    } catch (Exception e1) {
+                    // Certificate matching is a best-effort. Continue looking for matches.
+                    }
+                }
+            }
+            if (!foundCertificateAuthority) {
+                return null;
+            }
+        }
+
+        // check the algorithm constraints
+        if (constraints != null &&
+                !conformsToAlgorithmConstraints(constraints, chain,
+                        checkType.getValidator())) {
+
+            if (SSLLogger.isOn && SSLLogger.isOn("keymanager")) {
+                SSLLogger.fine("Ignore alias " + alias +
+                        ": certificate list does not conform to " +
+                        "algorithm constraints");
+            }
+            return null;
+        }
+
+        CheckResult checkResult =
+                checkType.check((X509Certificate)chain[0], date,
+                                requestedServerNames, idAlgorithm);
+        return new EntryStatus(builderIndex, keyIndex,
+                                    alias, chain, checkResult);
+    }
+
     private static boolean conformsToAlgorithmConstraints(
             AlgorithmConstraints constraints, Certificate[] chain,
             String variant) {
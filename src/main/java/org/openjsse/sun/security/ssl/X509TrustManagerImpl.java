@@ -25,6 +25,7 @@
 
 package org.openjsse.sun.security.ssl;
 
+import java.io.IOException;
 import java.net.Socket;
 import java.security.*;
 import java.security.cert.*;
@@ -36,7 +37,11 @@ import javax.net.ssl.SNIServerName;
 import javax.net.ssl.SNIHostName;
 import javax.net.ssl.SSLSession;
 import javax.net.ssl.StandardConstants;
+import sun.security.provider.certpath.CertId;
+import sun.security.provider.certpath.OCSPResponse;
 import sun.security.util.AnchorCertificates;
+import sun.security.x509.SerialNumber;
+import org.openjsse.sun.security.util.Cache;
 import org.openjsse.sun.security.util.HostnameChecker;
 import org.openjsse.sun.security.validator.*;
 
@@ -56,6 +61,16 @@ import org.openjsse.sun.security.validator.*;
 final class X509TrustManagerImpl extends X509ExtendedTrustManager
         implements X509TrustManager {
 
+    // The maximum number of successful certificate chain validations that
+    // are remembered and reused by each trust manager, 0 to disable.
+    private static final int validationCacheSize = Utilities.getUIntProperty(
+            "org.openjsse.trustmanager.validationCacheSize", 0);
+
+    // The maximum time in seconds a validation result is reused.
+    private static final int validationCacheLifetime =
+            Utilities.getUIntProperty(
+                    "org.openjsse.trustmanager.validationCacheLifetime", 300);
+
     private final String validatorType;
 
     /**
@@ -69,6 +84,11 @@ final class X509TrustManagerImpl extends X509ExtendedTrustManager
     // the different extension checks. They are initialized lazily on demand.
     private volatile Validator clientValidator, serverValidator;
 
+    // Successful validations, keyed by the chain and the validation
+    // context.  The trust anchors of a trust manager never change, so
+    // the cache lives and dies with this instance.
+    private final Cache<ValidationKey, ValidationResult> validationCache;
+
     X509TrustManagerImpl(String validatorType,
             Collection<X509Certificate> trustedCerts) {
 
@@ -80,6 +100,7 @@ final class X509TrustManagerImpl extends X509ExtendedTrustManager
         }
 
         this.trustedCerts = trustedCerts;
+        this.validationCache = createValidationCache();
 
         if (SSLLogger.isOn && SSLLogger.isOn("ssl,trustmanager")) {
             SSLLogger.fine("adding as trusted certificates",
@@ -97,6 +118,7 @@ final class X509TrustManagerImpl extends X509ExtendedTrustManager
         Validator v = getValidator(Validator.VAR_TLS_SERVER);
         trustedCerts = v.getTrustedCertificates();
         serverValidator = v;
+        validationCache = createValidationCache();
 
         if (SSLLogger.isOn && SSLLogger.isOn("ssl,trustmanager")) {
             SSLLogger.fine("adding as trusted certificates",
@@ -310,16 +332,195 @@ final class X509TrustManagerImpl extends X509ExtendedTrustManager
         return v;
     }
 
-    private static X509Certificate[] validate(Validator v,
+    private static Cache<ValidationKey, ValidationResult>
+            createValidationCache() {
+        if (validationCacheSize == 0) {
+            return null;
+        }
+
+        return Cache.newHardMemoryCache(
+                validationCacheSize, validationCacheLifetime);
+    }
+
+    private X509Certificate[] validate(Validator v,
             X509Certificate[] chain, List<byte[]> responseList,
             AlgorithmConstraints constraints, String authType)
             throws CertificateException {
+        ValidationKey key = null;
+        if (validationCache != null) {
+            key = new ValidationKey(
+                    v, chain, responseList, constraints, authType);
+            ValidationResult result = validationCache.get(key);
+            if (result != null) {
+                if (result.expiry > System.currentTimeMillis()) {
+                    if (SSLLogger.isOn &&
+                            SSLLogger.isOn("ssl,trustmanager")) {
+                        SSLLogger.finest(
+                                "Use cached certificate chain validation");
+                    }
+                    return result.trustedChain.clone();
+                }
+
+                validationCache.remove(key);
+            }
+        }
+
+        X509Certificate[] trustedChain;
         Object o = JsseJce.beginFipsProvider();
+        Object event = SSLEvents.beginCertificateValidation();
+        boolean isValid = false;
         try {
-            return v.validate(chain, null, responseList, constraints, authType);
+            trustedChain = v.validate(
+                    chain, null, responseList, constraints, authType);
+            isValid = true;
         } finally {
+            SSLEvents.endCertificateValidation(
+                    event, chain, authType, isValid);
             JsseJce.endFipsProvider(o);
         }
+
+        if (key != null) {
+            long expiry = getValidationExpiry(v, trustedChain, responseList);
+            if (expiry > System.currentTimeMillis()) {
+                validationCache.put(key,
+                        new ValidationResult(trustedChain, expiry));
+            }
+        }
+
+        return trustedChain;
+    }
+
+    /*
+     * Return the time until which a successful validation may be reused,
+     * or 0 if it must not be reused.
+     *
+     * The result must not outlive the validity period of any certificate
+     * in the chain, nor the freshness of the revocation status it relies
+     * on.  The status of stapled OCSP responses is fresh until their
+     * nextUpdate time; only the response for the certificate at the same
+     * position of the chain is taken into account.  The freshness of a
+     * status that the validator fetched by itself is not known, so such
+     * results are not reused.
+     */
+    private static long getValidationExpiry(Validator v,
+            X509Certificate[] trustedChain, List<byte[]> responseList) {
+        long expiry = System.currentTimeMillis() +
+                validationCacheLifetime * 1000L;
+        for (X509Certificate cert : trustedChain) {
+            expiry = Math.min(expiry, cert.getNotAfter().getTime());
+        }
+
+        if (!(v instanceof PKIXValidator) ||
+                !((PKIXValidator)v).getParameters().isRevocationEnabled()) {
+            return expiry;
+        }
+
+        // Every certificate but the trust anchor needs a stapled response.
+        int checked = trustedChain.length - 1;
+        if (responseList.size() < checked) {
+            return 0;
+        }
+
+        for (int i = 0; i < checked; i++) {
+            byte[] respBytes = responseList.get(i);
+            if (respBytes == null || respBytes.length == 0) {
+                return 0;
+            }
+
+            try {
+                // The response must be about this certificate, or the
+                // revocation checker fetched the status by itself.
+                OCSPResponse ocspResponse = new OCSPResponse(respBytes);
+                CertId certId = new CertId(trustedChain[i + 1],
+                        new SerialNumber(trustedChain[i].getSerialNumber()));
+                OCSPResponse.SingleResponse singleResponse =
+                        ocspResponse.getSingleResponse(certId);
+                if (singleResponse == null ||
+                        singleResponse.getNextUpdate() == null) {
+                    return 0;
+                }
+                expiry = Math.min(expiry,
+                        singleResponse.getNextUpdate().getTime());
+            } catch (IOException ioe) {
+                return 0;
+            }
+        }
+
+        return expiry;
+    }
+
+    /*
+     * The key of a cached validation: the SHA-256 fingerprint of the
+     * chain and of the stapled OCSP responses, the validator (and so the
+     * trust anchors and the variant), the algorithm constraints and the
+     * authentication type.
+     */
+    private static final class ValidationKey {
+        private final byte[] fingerprint;
+        private final Validator validator;
+        private final AlgorithmConstraints constraints;
+        private final String authType;
+        private final int hashCode;
+
+        ValidationKey(Validator validator, X509Certificate[] chain,
+                List<byte[]> responseList, AlgorithmConstraints constraints,
+                String authType) throws CertificateException {
+            MessageDigest md = JsseJce.acquireMessageDigest("SHA-256");
+            for (X509Certificate cert : chain) {
+                md.update(cert.getEncoded());
+            }
+
+            // Length prefixed, as the responses may be empty.
+            for (byte[] respBytes : responseList) {
+                int length = (respBytes == null) ? 0 : respBytes.length;
+                md.update(new byte[] {
+                        (byte)(length >>> 24), (byte)(length >>> 16),
+                        (byte)(length >>> 8), (byte)length});
+                if (length != 0) {
+                    md.update(respBytes);
+                }
+            }
+
+            this.fingerprint = md.digest();
+            JsseJce.releaseMessageDigest(md);
+            this.validator = validator;
+            this.constraints = constraints;
+            this.authType = authType;
+            this.hashCode = Arrays.hashCode(fingerprint) ^
+                    Objects.hash(validator, constraints, authType);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+
+            if (!(obj instanceof ValidationKey)) {
+                return false;
+            }
+
+            ValidationKey that = (ValidationKey)obj;
+            return (validator == that.validator) &&
+                    Objects.equals(authType, that.authType) &&
+                    Objects.equals(constraints, that.constraints) &&
+                    MessageDigest.isEqual(fingerprint, that.fingerprint);
+        }
+    }
+
+    private static final class ValidationResult {
+        private final X509Certificate[] trustedChain;
+        private final long expiry;
+
+        ValidationResult(X509Certificate[] trustedChain, long expiry) {
+            this.trustedChain = trustedChain;
+            this.expiry = expiry;
+        }
     }
 
     // Get string representation of HostName from a list of server names.
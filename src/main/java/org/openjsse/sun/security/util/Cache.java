@@ -26,6 +26,10 @@
 package org.openjsse.sun.security.util;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
 import java.lang.ref.*;
 
 /**
@@ -39,7 +43,8 @@ import java.lang.ref.*;
  *
  *  . keys and values must be non-null
  *
- *  . maximum size. Replacements are made in LRU order.
+ *  . maximum size. Replacements are made in approximate LRU order, with
+ *    a frequency based admission filter (see MemoryCache).
  *
  *  . optional lifetime, specified in seconds.
  *
@@ -57,15 +62,9 @@ import java.lang.ref.*;
  * eagerly. Performance may be improved if the Java heap size is set to larger
  * value using e.g. java -ms64M -mx128M foo.Test
  *
- * Cache sizing: the memory cache is implemented on top of a LinkedHashMap.
- * In its current implementation, the number of buckets (NOT entries) in
- * (Linked)HashMaps is always a power of two. It is recommended to set the
- * maximum cache size to value that uses those buckets fully. For example,
- * if a cache with somewhere between 500 and 1000 entries is desired, a
- * maximum size of 750 would be a good choice: try 1024 buckets, with a
- * load factor of 0.75f, the number of entries can be calculated as
- * buckets / 4 * 3. As mentioned above, with a SoftReference cache, it is
- * generally reasonable to set the size to a fairly large value.
+ * Cache sizing: lookups do not lock, so a large maximum size does not
+ * make the cache slower. With a SoftReference cache, it is generally
+ * reasonable to set the size to a fairly large value.
  *
  * @author Andreas Sterbenz
  */
@@ -120,6 +119,15 @@ public abstract class Cache<K,V> {
      */
     public abstract void accept(CacheVisitor<K,V> visitor);
 
+    /**
+     * Set a listener notified of the entries removed because of the
+     * capacity or of the timeout of the cache, or null to remove it.
+     * Caches that never evict entries ignore the listener.
+     */
+    public void setEvictionListener(EvictionListener<K,V> listener) {
+        // blank
+    }
+
     /**
      * Return a new memory cache with the specified maximum size, unlimited
      * lifetime for entries, with the values held by SoftReferences.
@@ -199,6 +207,10 @@ public abstract class Cache<K,V> {
         public void visit(Map<K,V> map);
     }
 
+    public interface EvictionListener<K,V> {
+        public void evicted(K key, V value, boolean expired);
+    }
+
 }
 
 class NullCache<K,V> extends Cache<K,V> {
@@ -247,349 +259,708 @@ class NullCache<K,V> extends Cache<K,V> {
 
 }
 
+/**
+ * The memory cache implementation behind the factory methods.
+ *
+ * Lookups never block: entries live in a ConcurrentHashMap and a hit is
+ * only recorded in one of a set of small, lossy, per-thread-striped read
+ * buffers. Structural changes (put, remove, eviction, expiry) and the
+ * replay of buffered reads are serialized by a single eviction lock that
+ * is held for a bounded amount of work.
+ *
+ * The replacement policy is Window TinyLFU: new entries enter a small LRU
+ * window, and on overflow the oldest window entries compete with the LRU
+ * victim of the main space, which is split into a probation and a
+ * protected LRU segment. A candidate is admitted only if a count-min
+ * sketch of recent access frequencies has seen it at least as often as
+ * the victim, so a burst of one-off entries cannot flush entries that are
+ * frequently reused. For caches without a size limit, eviction is never
+ * performed and the policy degenerates to plain expiry.
+ *
+ * Entries are additionally kept in insertion order, which is also their
+ * expiration order while the lifetime is unchanged, so expired entries
+ * are removed from the head of that list in amortized constant time
+ * instead of by scanning the whole cache.
+ */
 class MemoryCache<K,V> extends Cache<K,V> {
 
-    private static final float LOAD_FACTOR = 0.75f;
+    // percentage of the maximum size given to the admission window
+    private static final int WINDOW_PERCENT = 1;
 
-    // XXXX
-    private static final boolean DEBUG = false;
+    // percentage of the main space given to the protected segment
+    private static final int PROTECTED_PERCENT = 80;
 
-    private final Map<K, CacheEntry<K,V>> cacheMap;
-    private int maxSize;
-    private long lifetime;
-    private long nextExpirationTime = Long.MAX_VALUE;
+    // slots in each read buffer
+    private static final int READ_BUFFER_SIZE = 16;
+
+    // number of read buffers, a power of two
+    private static final int READ_BUFFERS;
+    static {
+        int n = Runtime.getRuntime().availableProcessors();
+        READ_BUFFERS = Math.min(32, Integer.highestOneBit((n << 1) - 1));
+    }
+
+    // queue types of a node
+    private static final byte WINDOW = 0;
+    private static final byte PROBATION = 1;
+    private static final byte PROTECTED = 2;
+    private static final byte DEAD = 3;
+
+    private final ConcurrentHashMap<K, Node<K,V>> cacheMap;
+    private final ReentrantLock evictionLock = new ReentrantLock();
+    private final ReadBuffer<K,V>[] readBuffers;
 
     // ReferenceQueue is of type V instead of Cache<K,V>
-    // to allow SoftCacheEntry to extend SoftReference<V>
+    // to allow SoftValue to extend SoftReference<V>
     private final ReferenceQueue<V> queue;
 
+    private volatile long lifetime;
+    private volatile EvictionListener<K,V> evictionListener;
+
+    // the following fields are guarded by evictionLock
+    private final AccessOrderList<K,V> window = new AccessOrderList<>();
+    private final AccessOrderList<K,V> probation = new AccessOrderList<>();
+    private final AccessOrderList<K,V> protectedList = new AccessOrderList<>();
+    private final FrequencySketch sketch = new FrequencySketch();
+    private Node<K,V> writeFirst;
+    private Node<K,V> writeLast;
+    private int maxSize;
+    private int windowMax;
+    private int protectedMax;
+
     public MemoryCache(boolean soft, int maxSize) {
         this(soft, maxSize, 0);
     }
 
+    @SuppressWarnings({"unchecked", "rawtypes"})
     public MemoryCache(boolean soft, int maxSize, int lifetime) {
-        this.maxSize = maxSize;
-        this.lifetime = lifetime * 1000;
+        this.lifetime = lifetime > 0 ? lifetime * 1000L : 0L;
         if (soft)
             this.queue = new ReferenceQueue<>();
         else
             this.queue = null;
 
-        cacheMap = new LinkedHashMap<>(1, LOAD_FACTOR, true);
+        cacheMap = new ConcurrentHashMap<>();
+        readBuffers = new ReadBuffer[READ_BUFFERS];
+        for (int i = 0; i < readBuffers.length; i++) {
+            readBuffers[i] = new ReadBuffer<>();
+        }
+        resize(maxSize);
     }
 
-    /**
-     * Empty the reference queue and remove all corresponding entries
-     * from the cache.
-     *
-     * This method should be called at the beginning of each public
-     * method.
-     */
-    private void emptyQueue() {
-        if (queue == null) {
-            return;
+    public int size() {
+        evictionLock.lock();
+        try {
+            maintenance();
+            return cacheMap.size();
+        } finally {
+            evictionLock.unlock();
         }
-        int startSize = cacheMap.size();
-        while (true) {
-            @SuppressWarnings("unchecked")
-            CacheEntry<K,V> entry = (CacheEntry<K,V>)queue.poll();
-            if (entry == null) {
-                break;
+    }
+
+    public void clear() {
+        evictionLock.lock();
+        try {
+            for (ReadBuffer<K,V> buffer : readBuffers) {
+                buffer.clear();
             }
-            K key = entry.getKey();
-            if (key == null) {
-                // key is null, entry has already been removed
-                continue;
+            for (Node<K,V> node : cacheMap.values()) {
+                // invalidate() first so that GC does not have to
+                // enqueue the soft references
+                node.queueType = DEAD;
+                node.invalidate();
             }
-            CacheEntry<K,V> currentEntry = cacheMap.remove(key);
-            // check if the entry in the map corresponds to the expired
-            // entry. If not, readd the entry
-            if ((currentEntry != null) && (entry != currentEntry)) {
-                cacheMap.put(key, currentEntry);
+            cacheMap.clear();
+            if (queue != null) {
+                while (queue.poll() != null) {
+                    // empty
+                }
             }
+            window.clear();
+            probation.clear();
+            protectedList.clear();
+            writeFirst = writeLast = null;
+        } finally {
+            evictionLock.unlock();
         }
-        if (DEBUG) {
-            int endSize = cacheMap.size();
-            if (startSize != endSize) {
-                System.out.println("*** Expunged " + (startSize - endSize)
-                        + " entries, " + endSize + " entries left");
+    }
+
+    public void put(K key, V value) {
+        long time = lifetime;
+        long expirationTime = (time == 0) ? Long.MAX_VALUE :
+                                        System.currentTimeMillis() + time;
+        Node<K,V> node = (queue != null) ?
+                new SoftNode<>(key, value, expirationTime, queue) :
+                new HardNode<>(key, value, expirationTime);
+
+        evictionLock.lock();
+        try {
+            Node<K,V> oldNode = cacheMap.put(key, node);
+            if (oldNode != null) {
+                unlink(oldNode);
+                oldNode.invalidate();
             }
+            node.queueType = WINDOW;
+            window.addLast(node);
+            linkWrite(node);
+            sketch.increment(key.hashCode());
+            maintenance();
+        } finally {
+            evictionLock.unlock();
         }
     }
 
-    /**
-     * Scan all entries and remove all expired ones.
-     */
-    private void expungeExpiredEntries() {
-        emptyQueue();
-        if (lifetime == 0) {
-            return;
-        }
-        int cnt = 0;
-        long time = System.currentTimeMillis();
-        if (nextExpirationTime > time) {
-            return;
-        }
-        nextExpirationTime = Long.MAX_VALUE;
-        for (Iterator<CacheEntry<K,V>> t = cacheMap.values().iterator();
-                t.hasNext(); ) {
-            CacheEntry<K,V> entry = t.next();
-            if (entry.isValid(time) == false) {
-                t.remove();
-                cnt++;
-            } else if (nextExpirationTime > entry.getExpirationTime()) {
-                nextExpirationTime = entry.getExpirationTime();
-            }
+    public V get(Object key) {
+        Node<K,V> node = cacheMap.get(key);
+        if (node == null) {
+            return null;
         }
-        if (DEBUG) {
-            if (cnt != 0) {
-                System.out.println("Removed " + cnt
-                        + " expired entries, remaining " + cacheMap.size());
+        V value = node.getValue();
+        if (value == null || node.isExpired()) {
+            if (cacheMap.remove(key, node)) {
+                evictionLock.lock();
+                try {
+                    unlink(node);
+                } finally {
+                    evictionLock.unlock();
+                }
+                notifyEviction(node, true);
+                node.invalidate();
             }
+            return null;
         }
+        afterRead(node);
+        return value;
     }
 
-    public synchronized int size() {
-        expungeExpiredEntries();
-        return cacheMap.size();
+    public void remove(Object key) {
+        pull(key);
     }
 
-    public synchronized void clear() {
-        if (queue != null) {
-            // if this is a SoftReference cache, first invalidate() all
-            // entries so that GC does not have to enqueue them
-            for (CacheEntry<K,V> entry : cacheMap.values()) {
-                entry.invalidate();
-            }
-            while (queue.poll() != null) {
-                // empty
-            }
+    public V pull(Object key) {
+        Node<K,V> node = cacheMap.remove(key);
+        if (node == null) {
+            return null;
+        }
+        V value = node.getValue();
+        boolean valid = (value != null) && !node.isExpired();
+        evictionLock.lock();
+        try {
+            unlink(node);
+        } finally {
+            evictionLock.unlock();
         }
-        cacheMap.clear();
+        node.invalidate();
+        return valid ? value : null;
     }
 
-    public synchronized void put(K key, V value) {
-        emptyQueue();
-        long expirationTime = (lifetime == 0) ? 0 :
-                                        System.currentTimeMillis() + lifetime;
-        if (expirationTime < nextExpirationTime) {
-            nextExpirationTime = expirationTime;
-        }
-        CacheEntry<K,V> newEntry = newEntry(key, value, expirationTime, queue);
-        CacheEntry<K,V> oldEntry = cacheMap.put(key, newEntry);
-        if (oldEntry != null) {
-            oldEntry.invalidate();
-            return;
+    public void setCapacity(int size) {
+        evictionLock.lock();
+        try {
+            resize(size);
+            maintenance();
+        } finally {
+            evictionLock.unlock();
         }
-        if (maxSize > 0 && cacheMap.size() > maxSize) {
-            expungeExpiredEntries();
-            if (cacheMap.size() > maxSize) { // still too large?
-                Iterator<CacheEntry<K,V>> t = cacheMap.values().iterator();
-                CacheEntry<K,V> lruEntry = t.next();
-                if (DEBUG) {
-                    System.out.println("** Overflow removal "
-                        + lruEntry.getKey() + " | " + lruEntry.getValue());
+    }
+
+    public void setTimeout(int timeout) {
+        lifetime = timeout > 0 ? timeout * 1000L : 0L;
+    }
+
+    // it is a heavyweight method.
+    @Override
+    public void setEvictionListener(EvictionListener<K,V> listener) {
+        this.evictionListener = listener;
+    }
+
+    public void accept(CacheVisitor<K,V> visitor) {
+        Map<K,V> cached;
+        evictionLock.lock();
+        try {
+            maintenance();
+            cached = new HashMap<>(cacheMap.size());
+            for (Node<K,V> node : cacheMap.values()) {
+                V value = node.getValue();
+                if (value != null) {
+                    cached.put(node.key, value);
                 }
-                t.remove();
-                lruEntry.invalidate();
             }
+        } finally {
+            evictionLock.unlock();
         }
+
+        visitor.visit(cached);
     }
 
-    public synchronized V get(Object key) {
-        emptyQueue();
-        CacheEntry<K,V> entry = cacheMap.get(key);
-        if (entry == null) {
-            return null;
-        }
-        long time = (lifetime == 0) ? 0 : System.currentTimeMillis();
-        if (entry.isValid(time) == false) {
-            if (DEBUG) {
-                System.out.println("Ignoring expired entry");
+    /**
+     * Record a hit. If the read buffer of the current thread is full,
+     * try to replay the buffered reads, but never wait for the lock:
+     * the hit is simply dropped if another thread holds it.
+     */
+    private void afterRead(Node<K,V> node) {
+        int index = (int)Thread.currentThread().getId() & (READ_BUFFERS - 1);
+        if (!readBuffers[index].offer(node) && evictionLock.tryLock()) {
+            try {
+                maintenance();
+            } finally {
+                evictionLock.unlock();
             }
-            cacheMap.remove(key);
-            return null;
         }
-        return entry.getValue();
     }
 
-    public synchronized void remove(Object key) {
+    /**
+     * Apply the buffered reads, drop the entries whose soft references
+     * were cleared, expire and evict.
+     *
+     * Must be called with evictionLock held.
+     */
+    private void maintenance() {
+        for (ReadBuffer<K,V> buffer : readBuffers) {
+            buffer.drainTo(this);
+        }
         emptyQueue();
-        CacheEntry<K,V> entry = cacheMap.remove(key);
-        if (entry != null) {
-            entry.invalidate();
+        expire();
+        evict();
+    }
+
+    private void emptyQueue() {
+        if (queue == null) {
+            return;
+        }
+        while (true) {
+            @SuppressWarnings("unchecked")
+            SoftValue<K,V> ref = (SoftValue<K,V>)queue.poll();
+            if (ref == null) {
+                break;
+            }
+            Node<K,V> node = ref.node;
+            if (node.queueType != DEAD) {
+                cacheMap.remove(node.key, node);
+                unlink(node);
+            }
         }
     }
 
-    public synchronized V pull(Object key) {
-        emptyQueue();
-        CacheEntry<K,V> entry = cacheMap.remove(key);
-        if (entry == null) {
-            return null;
+    private void expire() {
+        if (writeFirst == null || writeFirst.expirationTime == Long.MAX_VALUE) {
+            return;
+        }
+        long time = System.currentTimeMillis();
+        while (writeFirst != null && writeFirst.expirationTime < time) {
+            Node<K,V> node = writeFirst;
+            cacheMap.remove(node.key, node);
+            unlink(node);
+            notifyEviction(node, true);
+            node.invalidate();
         }
+    }
 
-        long time = (lifetime == 0) ? 0 : System.currentTimeMillis();
-        if (entry.isValid(time)) {
-            V value = entry.getValue();
-            entry.invalidate();
-            return value;
-        } else {
-            if (DEBUG) {
-                System.out.println("Ignoring expired entry");
+    private void notifyEviction(Node<K,V> node, boolean expired) {
+        EvictionListener<K,V> listener = evictionListener;
+        if (listener != null) {
+            V value = node.getValue();
+            if (value != null) {
+                listener.evicted(node.key, value, expired);
             }
-            return null;
         }
     }
 
-    public synchronized void setCapacity(int size) {
-        expungeExpiredEntries();
-        if (size > 0 && cacheMap.size() > size) {
-            Iterator<CacheEntry<K,V>> t = cacheMap.values().iterator();
-            for (int i = cacheMap.size() - size; i > 0; i--) {
-                CacheEntry<K,V> lruEntry = t.next();
-                if (DEBUG) {
-                    System.out.println("** capacity reset removal "
-                        + lruEntry.getKey() + " | " + lruEntry.getValue());
-                }
-                t.remove();
-                lruEntry.invalidate();
-            }
+    private void evict() {
+        if (maxSize == 0) {
+            return;
         }
 
-        maxSize = size > 0 ? size : 0;
+        // Move the overflow of the window to the tail of the probation
+        // segment, where the moved entries become admission candidates.
+        Node<K,V> candidate = null;
+        while (window.size > windowMax) {
+            Node<K,V> node = window.first;
+            window.remove(node);
+            node.queueType = PROBATION;
+            probation.addLast(node);
+            if (candidate == null) {
+                candidate = node;
+            }
+        }
 
-        if (DEBUG) {
-            System.out.println("** capacity reset to " + size);
+        while (window.size + probation.size + protectedList.size > maxSize) {
+            Node<K,V> victim = (probation.first != null) ? probation.first :
+                    (protectedList.first != null) ? protectedList.first :
+                    window.first;
+            if (candidate != null && candidate != victim &&
+                    sketch.frequency(candidate.key.hashCode()) <
+                    sketch.frequency(victim.key.hashCode())) {
+                // the victim is used more often, reject the candidate
+                victim = candidate;
+            }
+            if (victim == candidate) {
+                candidate = candidate.next;
+            }
+            cacheMap.remove(victim.key, victim);
+            unlink(victim);
+            notifyEviction(victim, false);
+            victim.invalidate();
         }
     }
 
-    public synchronized void setTimeout(int timeout) {
-        emptyQueue();
-        lifetime = timeout > 0 ? timeout * 1000L : 0L;
-
-        if (DEBUG) {
-            System.out.println("** lifetime reset to " + timeout);
+    /**
+     * Replay a buffered hit on the access order lists.
+     *
+     * Must be called with evictionLock held.
+     */
+    void onAccess(Node<K,V> node) {
+        switch (node.queueType) {
+            case WINDOW:
+                window.moveToLast(node);
+                break;
+            case PROBATION:
+                probation.remove(node);
+                node.queueType = PROTECTED;
+                protectedList.addLast(node);
+                if (protectedList.size > protectedMax) {
+                    Node<K,V> demoted = protectedList.first;
+                    protectedList.remove(demoted);
+                    demoted.queueType = PROBATION;
+                    probation.addLast(demoted);
+                }
+                break;
+            case PROTECTED:
+                protectedList.moveToLast(node);
+                break;
+            default:
+                // removed since the hit was buffered
+                return;
         }
+        sketch.increment(node.key.hashCode());
     }
 
-    // it is a heavyweight method.
-    public synchronized void accept(CacheVisitor<K,V> visitor) {
-        expungeExpiredEntries();
-        Map<K,V> cached = getCachedEntries();
+    private void resize(int size) {
+        maxSize = size > 0 ? size : 0;
+        if (maxSize == 0) {
+            windowMax = Integer.MAX_VALUE;
+            protectedMax = 0;
+        } else {
+            windowMax = Math.max(1, (int)((long)maxSize * WINDOW_PERCENT / 100));
+            protectedMax =
+                (int)((long)(maxSize - windowMax) * PROTECTED_PERCENT / 100);
+            sketch.ensureCapacity(maxSize);
+        }
 
-        visitor.visit(cached);
+        // entries of the main space stay where they are, the new limits
+        // are applied by the next eviction
     }
 
-    private Map<K,V> getCachedEntries() {
-        Map<K,V> kvmap = new HashMap<>(cacheMap.size());
-
-        for (CacheEntry<K,V> entry : cacheMap.values()) {
-            kvmap.put(entry.getKey(), entry.getValue());
+    private void unlink(Node<K,V> node) {
+        switch (node.queueType) {
+            case WINDOW:
+                window.remove(node);
+                break;
+            case PROBATION:
+                probation.remove(node);
+                break;
+            case PROTECTED:
+                protectedList.remove(node);
+                break;
+            default:
+                // already unlinked
+                return;
         }
+        node.queueType = DEAD;
 
-        return kvmap;
+        Node<K,V> prev = node.prevWrite;
+        Node<K,V> next = node.nextWrite;
+        if (prev == null) {
+            writeFirst = next;
+        } else {
+            prev.nextWrite = next;
+            node.prevWrite = null;
+        }
+        if (next == null) {
+            writeLast = prev;
+        } else {
+            next.prevWrite = prev;
+            node.nextWrite = null;
+        }
     }
 
-    protected CacheEntry<K,V> newEntry(K key, V value,
-            long expirationTime, ReferenceQueue<V> queue) {
-        if (queue != null) {
-            return new SoftCacheEntry<>(key, value, expirationTime, queue);
+    private void linkWrite(Node<K,V> node) {
+        node.prevWrite = writeLast;
+        if (writeLast == null) {
+            writeFirst = node;
         } else {
-            return new HardCacheEntry<>(key, value, expirationTime);
+            writeLast.nextWrite = node;
         }
+        writeLast = node;
     }
 
-    private static interface CacheEntry<K,V> {
+    private abstract static class Node<K,V> {
+
+        final K key;
+        final long expirationTime;
 
-        boolean isValid(long currentTime);
+        // guarded by the eviction lock
+        byte queueType;
+        Node<K,V> prev;
+        Node<K,V> next;
+        Node<K,V> prevWrite;
+        Node<K,V> nextWrite;
 
-        void invalidate();
+        Node(K key, long expirationTime) {
+            this.key = key;
+            this.expirationTime = expirationTime;
+        }
 
-        K getKey();
+        boolean isExpired() {
+            return (expirationTime != Long.MAX_VALUE) &&
+                    (System.currentTimeMillis() > expirationTime);
+        }
 
-        V getValue();
+        abstract V getValue();
 
-        long getExpirationTime();
+        abstract void invalidate();
     }
 
-    private static class HardCacheEntry<K,V> implements CacheEntry<K,V> {
+    private static final class HardNode<K,V> extends Node<K,V> {
 
-        private K key;
-        private V value;
-        private long expirationTime;
+        private volatile V value;
 
-        HardCacheEntry(K key, V value, long expirationTime) {
-            this.key = key;
+        HardNode(K key, V value, long expirationTime) {
+            super(key, expirationTime);
             this.value = value;
-            this.expirationTime = expirationTime;
         }
 
-        public K getKey() {
-            return key;
+        V getValue() {
+            return value;
         }
 
-        public V getValue() {
-            return value;
+        void invalidate() {
+            value = null;
         }
+    }
 
-        public long getExpirationTime() {
-            return expirationTime;
+    private static final class SoftNode<K,V> extends Node<K,V> {
+
+        private final SoftValue<K,V> ref;
+
+        SoftNode(K key, V value, long expirationTime,
+                ReferenceQueue<V> queue) {
+            super(key, expirationTime);
+            this.ref = new SoftValue<>(value, queue, this);
         }
 
-        public boolean isValid(long currentTime) {
-            boolean valid = (currentTime <= expirationTime);
-            if (valid == false) {
-                invalidate();
-            }
-            return valid;
+        V getValue() {
+            return ref.get();
         }
 
-        public void invalidate() {
-            key = null;
-            value = null;
-            expirationTime = -1;
+        void invalidate() {
+            ref.clear();
         }
     }
 
-    private static class SoftCacheEntry<K,V>
-            extends SoftReference<V>
-            implements CacheEntry<K,V> {
+    private static final class SoftValue<K,V> extends SoftReference<V> {
 
-        private K key;
-        private long expirationTime;
+        final Node<K,V> node;
 
-        SoftCacheEntry(K key, V value, long expirationTime,
-                ReferenceQueue<V> queue) {
+        SoftValue(V value, ReferenceQueue<V> queue, Node<K,V> node) {
             super(value, queue);
-            this.key = key;
-            this.expirationTime = expirationTime;
+            this.node = node;
         }
+    }
 
-        public K getKey() {
-            return key;
+    /**
+     * A doubly linked list of nodes in access order, from the least
+     * recently used to the most recently used entry.
+     */
+    private static final class AccessOrderList<K,V> {
+
+        Node<K,V> first;
+        Node<K,V> last;
+        int size;
+
+        void addLast(Node<K,V> node) {
+            node.prev = last;
+            node.next = null;
+            if (last == null) {
+                first = node;
+            } else {
+                last.next = node;
+            }
+            last = node;
+            size++;
+        }
+
+        void remove(Node<K,V> node) {
+            Node<K,V> prev = node.prev;
+            Node<K,V> next = node.next;
+            if (prev == null) {
+                first = next;
+            } else {
+                prev.next = next;
+                node.prev = null;
+            }
+            if (next == null) {
+                last = prev;
+            } else {
+                next.prev = prev;
+                node.next = null;
+            }
+            size--;
         }
 
-        public V getValue() {
-            return get();
+        void moveToLast(Node<K,V> node) {
+            if (node != last) {
+                remove(node);
+                addLast(node);
+            }
         }
 
-        public long getExpirationTime() {
-            return expirationTime;
+        void clear() {
+            first = last = null;
+            size = 0;
         }
+    }
+
+    /**
+     * A small lossy buffer of hits. Offers are lock-free; a full buffer
+     * rejects further hits until it is drained under the eviction lock.
+     */
+    private static final class ReadBuffer<K,V> {
 
-        public boolean isValid(long currentTime) {
-            boolean valid = (currentTime <= expirationTime) && (get() != null);
-            if (valid == false) {
-                invalidate();
+        private final AtomicReferenceArray<Node<K,V>> slots =
+                new AtomicReferenceArray<>(READ_BUFFER_SIZE);
+        private final AtomicInteger writeIndex = new AtomicInteger();
+
+        boolean offer(Node<K,V> node) {
+            if (writeIndex.get() >= READ_BUFFER_SIZE) {
+                return false;
+            }
+            int index = writeIndex.getAndIncrement();
+            if (index >= READ_BUFFER_SIZE) {
+                return false;
+            }
+            slots.lazySet(index, node);
+            return true;
+        }
+
+        void drainTo(MemoryCache<K,V> cache) {
+            int count = Math.min(writeIndex.get(), READ_BUFFER_SIZE);
+            if (count == 0) {
+                return;
+            }
+            for (int i = 0; i < count; i++) {
+                Node<K,V> node = slots.getAndSet(i, null);
+                if (node != null) {
+                    cache.onAccess(node);
+                }
             }
-            return valid;
+            writeIndex.set(0);
         }
 
-        public void invalidate() {
-            clear();
-            key = null;
-            expirationTime = -1;
+        void clear() {
+            for (int i = 0; i < READ_BUFFER_SIZE; i++) {
+                slots.lazySet(i, null);
+            }
+            writeIndex.set(0);
         }
     }
 
+    /**
+     * A count-min sketch of the access frequency of keys, using four
+     * 4-bit counters per key packed into longs. All counters are halved
+     * once the number of increments reaches ten times the maximum size,
+     * so that the sketch follows changes of the working set.
+     *
+     * Guarded by the eviction lock.
+     */
+    private static final class FrequencySketch {
+
+        private static final long[] SEEDS = {
+            0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L,
+            0x9ae16a3b2f90404fL, 0xcbf29ce484222325L
+        };
+        private static final long RESET_MASK = 0x7777777777777777L;
+        private static final long ONE_MASK = 0x1111111111111111L;
+
+        // the table is capped at 8 MB
+        private static final int MAX_TABLE_SIZE = 1 << 20;
+
+        private long[] table;
+        private int tableMask;
+        private int sampleSize;
+        private int size;
+
+        void ensureCapacity(int maximumSize) {
+            int length = Math.min(MAX_TABLE_SIZE,
+                    Integer.highestOneBit(Math.max(8, maximumSize) - 1) << 1);
+            sampleSize = (int)Math.min(10L * maximumSize, Integer.MAX_VALUE);
+            if (table != null && table.length >= length) {
+                return;
+            }
+            table = new long[length];
+            tableMask = length - 1;
+            size = 0;
+        }
+
+        int frequency(int hashCode) {
+            if (table == null) {
+                return 0;
+            }
+            int hash = spread(hashCode);
+            int start = (hash & 3) << 2;
+            int frequency = Integer.MAX_VALUE;
+            for (int i = 0; i < 4; i++) {
+                int index = indexOf(hash, i);
+                int count = (int)((table[index] >>> ((start + i) << 2)) & 0xfL);
+                frequency = Math.min(frequency, count);
+            }
+            return frequency;
+        }
+
+        void increment(int hashCode) {
+            if (table == null) {
+                return;
+            }
+            int hash = spread(hashCode);
+            int start = (hash & 3) << 2;
+            boolean added = false;
+            for (int i = 0; i < 4; i++) {
+                added |= incrementAt(indexOf(hash, i), start + i);
+            }
+            if (added && (++size == sampleSize)) {
+                reset();
+            }
+        }
+
+        private boolean incrementAt(int i, int j) {
+            int offset = j << 2;
+            long mask = (0xfL << offset);
+            if ((table[i] & mask) != mask) {
+                table[i] += (1L << offset);
+                return true;
+            }
+            return false;
+        }
+
+        private void reset() {
+            int count = 0;
+            for (int i = 0; i < table.length; i++) {
+                count += Long.bitCount(table[i] & ONE_MASK);
+                table[i] = (table[i] >>> 1) & RESET_MASK;
+            }
+            size = (size >>> 1) - (count >>> 2);
+        }
+
+        private int indexOf(int item, int i) {
+            long hash = (item + SEEDS[i]) * SEEDS[i];
+            hash += (hash >>> 32);
+            return ((int)hash) & tableMask;
+        }
+
+        private static int spread(int x) {
+            x = ((x >>> 16) ^ x) * 0x45d9f3b;
+            x = ((x >>> 16) ^ x) * 0x45d9f3b;
+            return (x >>> 16) ^ x;
+        }
+    }
 }
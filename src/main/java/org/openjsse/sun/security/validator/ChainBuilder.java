@@ -0,0 +1,225 @@
+/*
+ * Copyright 2019 Azul Systems, Inc.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.openjsse.sun.security.validator;
+
+import java.security.cert.CertificateException;
+import java.security.cert.TrustAnchor;
+import java.security.cert.X509Certificate;
+import java.util.*;
+
+import javax.security.auth.x500.X500Principal;
+import sun.security.x509.KeyIdentifier;
+import sun.security.x509.X509CertImpl;
+
+/**
+ * Chain builder for the common case of a chain that leads from the end
+ * entity certificate, through a few intermediate certificates, to a trust
+ * anchor.
+ * <p>
+ * The trust anchors are indexed by subject DN and by subject key
+ * identifier, so that the anchors which may have issued a certificate are
+ * found without going through all of them.  They are selected the way the
+ * PKIX CertPathValidator selects them: by the issuer DN of the certificate
+ * and, if the certificate has an authority key identifier, by the subject
+ * key identifier of the anchor.
+ * <p>
+ * A chain is built by following the issuer of each certificate, taking the
+ * first certificate that may be the issuer, without backtracking.  If this
+ * does not lead to a trust anchor, or if the chain built does not validate,
+ * PKIXValidator falls back to the PKIX CertPathBuilder.
+ * <p>
+ * {@code ChainBuilder} objects are immutable once they have been created.
+ */
+final class ChainBuilder {
+
+    // the maximum number of certificates of a chain, not counting the anchor
+    private static final int MAX_CHAIN_LENGTH = 8;
+
+    private final Map<X500Principal, Set<TrustAnchor>> anchorsBySubject =
+            new HashMap<>();
+    private final Map<KeyIdentifier, Set<TrustAnchor>> anchorsByKeyId =
+            new HashMap<>();
+
+    ChainBuilder(Set<TrustAnchor> trustAnchors) {
+        for (TrustAnchor anchor : trustAnchors) {
+            // Anchors given as a CA name and public key are not indexed,
+            // the PKIX CertPath API takes care of them.
+            X509Certificate cert = anchor.getTrustedCert();
+            if (cert == null) {
+                continue;
+            }
+
+            add(anchorsBySubject, cert.getSubjectX500Principal(), anchor);
+            KeyIdentifier keyId = getSubjectKeyId(cert);
+            if (keyId != null) {
+                add(anchorsByKeyId, keyId, anchor);
+            }
+        }
+    }
+
+    private static <K> void add(Map<K, Set<TrustAnchor>> map,
+            K key, TrustAnchor anchor) {
+        Set<TrustAnchor> anchors = map.get(key);
+        if (anchors == null) {
+            anchors = new HashSet<>(2);
+            map.put(key, anchors);
+        }
+        anchors.add(anchor);
+    }
+
+    /**
+     * Return the trust anchors that may have issued the certificate, or an
+     * empty set if there is none.
+     */
+    Set<TrustAnchor> getAnchors(X509Certificate cert) {
+        X500Principal issuer = cert.getIssuerX500Principal();
+        KeyIdentifier keyId = getAuthKeyId(cert);
+        if (keyId == null) {
+            Set<TrustAnchor> anchors = anchorsBySubject.get(issuer);
+            return (anchors != null) ?
+                    anchors : Collections.<TrustAnchor>emptySet();
+        }
+
+        Set<TrustAnchor> anchors = anchorsByKeyId.get(keyId);
+        if (anchors == null) {
+            return Collections.<TrustAnchor>emptySet();
+        }
+
+        Set<TrustAnchor> matches = null;
+        for (TrustAnchor anchor : anchors) {
+            if (issuer.equals(
+                    anchor.getTrustedCert().getSubjectX500Principal())) {
+                if (matches == null) {
+                    matches = new HashSet<>(2);
+                }
+                matches.add(anchor);
+            }
+        }
+
+        return (matches != null) ?
+                matches : Collections.<TrustAnchor>emptySet();
+    }
+
+    /**
+     * Build a chain from chain[0] to a trust anchor, out of the
+     * certificates of chain and otherCerts, in any order.
+     *
+     * @return the chain built, or null if it does not lead to a trust
+     *         anchor
+     */
+    Chain build(X509Certificate[] chain,
+            Collection<X509Certificate> otherCerts) {
+        List<X509Certificate> certs = new ArrayList<>(chain.length);
+        X509Certificate cert = chain[0];
+        while (true) {
+            certs.add(cert);
+            Set<TrustAnchor> anchors = getAnchors(cert);
+            if (!anchors.isEmpty()) {
+                return new Chain(
+                        certs.toArray(new X509Certificate[certs.size()]),
+                        anchors);
+            }
+
+            if (certs.size() == MAX_CHAIN_LENGTH) {
+                return null;
+            }
+
+            X509Certificate issuer =
+                    findIssuer(cert, Arrays.asList(chain), certs);
+            if (issuer == null && otherCerts != null) {
+                issuer = findIssuer(cert, otherCerts, certs);
+            }
+
+            if (issuer == null) {
+                return null;
+            }
+            cert = issuer;
+        }
+    }
+
+    // Find the first of the candidates that may have issued the certificate,
+    // and is not yet in the chain.
+    private static X509Certificate findIssuer(X509Certificate cert,
+            Collection<X509Certificate> candidates,
+            List<X509Certificate> chain) {
+        X500Principal issuer = cert.getIssuerX500Principal();
+        KeyIdentifier keyId = null;
+        boolean keyIdParsed = false;
+        for (X509Certificate candidate : candidates) {
+            if (!issuer.equals(candidate.getSubjectX500Principal()) ||
+                    chain.contains(candidate)) {
+                continue;
+            }
+
+            if (!keyIdParsed) {
+                keyId = getAuthKeyId(cert);
+                keyIdParsed = true;
+            }
+
+            if (keyId != null) {
+                KeyIdentifier subjectKeyId = getSubjectKeyId(candidate);
+                if (subjectKeyId != null && !keyId.equals(subjectKeyId)) {
+                    continue;
+                }
+            }
+
+            return candidate;
+        }
+
+        return null;
+    }
+
+    private static KeyIdentifier getAuthKeyId(X509Certificate cert) {
+        try {
+            return X509CertImpl.toImpl(cert).getAuthKeyId();
+        } catch (CertificateException ce) {
+            return null;
+        }
+    }
+
+    private static KeyIdentifier getSubjectKeyId(X509Certificate cert) {
+        try {
+            return X509CertImpl.toImpl(cert).getSubjectKeyId();
+        } catch (CertificateException ce) {
+            return null;
+        }
+    }
+
+    /**
+     * A chain built, and the trust anchors that may have issued its last
+     * certificate.
+     */
+    static final class Chain {
+        final X509Certificate[] certs;
+        final Set<TrustAnchor> anchors;
+
+        Chain(X509Certificate[] certs, Set<TrustAnchor> anchors) {
+            this.certs = certs;
+            this.anchors = anchors;
+        }
+    }
+}
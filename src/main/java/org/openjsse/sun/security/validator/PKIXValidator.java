@@ -110,6 +110,9 @@ public final class PKIXValidator extends Validator {
     private final Map<X500Principal, List<PublicKey>> trustedSubjects;
     private final CertificateFactory factory;
 
+    // the trust anchor index and chain builder
+    private final ChainBuilder chainBuilder;
+
     private final boolean plugin;
 
     PKIXValidator(String variant, Collection<X509Certificate> trustedCerts) {
@@ -136,6 +139,7 @@ public final class PKIXValidator extends Validator {
         plugin = variant.equals(VAR_PLUGIN_CODE_SIGNING);
 
         trustedSubjects = setTrustedSubjects();
+        chainBuilder = new ChainBuilder(trustAnchors);
     }
 
     PKIXValidator(String variant, PKIXBuilderParameters params) {
@@ -158,6 +162,7 @@ public final class PKIXValidator extends Validator {
         plugin = variant.equals(VAR_PLUGIN_CODE_SIGNING);
 
         trustedSubjects = setTrustedSubjects();
+        chainBuilder = new ChainBuilder(params.getTrustAnchors());
     }
 
     /**
@@ -286,7 +291,7 @@ public final class PKIXValidator extends Validator {
                 // Remove and call validator on partial chain [0 .. i-1]
                 X509Certificate[] newChain = new X509Certificate[i];
                 System.arraycopy(chain, 0, newChain, 0, i);
-                return doValidate(newChain, pkixParameters);
+                return doIndexedValidate(newChain, pkixParameters);
             }
             prevIssuer = cert.getIssuerX500Principal();
         }
@@ -297,7 +302,7 @@ public final class PKIXValidator extends Validator {
         X500Principal subject = last.getSubjectX500Principal();
         if (trustedSubjects.containsKey(issuer) &&
                 isSignatureValid(trustedSubjects.get(issuer), last)) {
-            return doValidate(chain, pkixParameters);
+            return doIndexedValidate(chain, pkixParameters);
         }
 
         // don't fallback to builder if called from plugin/webstart
@@ -384,9 +389,16 @@ public final class PKIXValidator extends Validator {
             // do the validation
             CertPathValidator validator = CertPathValidator.getInstance("PKIX");
             // JDK8 use custom X509CertImpl to validate RSASSA-PSS signed cert
+            //
+            // The copy is only needed for certificates of other
+            // implementations.  A certificate that is exactly an
+            // X509CertImpl (not a subclass) verifies its signature with the
+            // same code as a copy would, and is used as it is, so that the
+            // signature verifications it cached are not done again.
             X509Certificate[] newChain = new X509Certificate[chain.length];
             for(int i=0; i<chain.length; i++) {
-               newChain[i] = new X509CertImpl(chain[i].getEncoded());
+               newChain[i] = (chain[i].getClass() == X509CertImpl.class) ?
+                       chain[i] : new X509CertImpl(chain[i].getEncoded());
             }
             CertPath path = factory.generateCertPath(Arrays.asList(newChain));
             certPathLength = chain.length;
@@ -400,6 +412,64 @@ public final class PKIXValidator extends Validator {
         }
     }
 
+    /**
+     * Validate the chain against the trust anchors that may have issued its
+     * last certificate, as found in the trust anchor index, and against all
+     * trust anchors if none of them is an anchor of the chain.
+     */
+    private X509Certificate[] doIndexedValidate(X509Certificate[] chain,
+            PKIXBuilderParameters params) throws CertificateException {
+        Set<TrustAnchor> anchors =
+                chainBuilder.getAnchors(chain[chain.length - 1]);
+        if (!anchors.isEmpty()) {
+            X509Certificate[] result = doValidate(chain, anchors, params);
+            if (result != null) {
+                return result;
+            }
+        }
+
+        return doValidate(chain, params);
+    }
+
+    /**
+     * Validate the chain against the given trust anchors only.
+     *
+     * Return null if the chain does not chain to any of these trust
+     * anchors, so that the caller can fall back to all trust anchors.  Any
+     * other validation failure is thrown, as it does not depend on the
+     * trust anchors.  The trust anchors of the parameters are restored.
+     */
+    private X509Certificate[] doValidate(X509Certificate[] chain,
+            Set<TrustAnchor> anchors, PKIXBuilderParameters params)
+            throws CertificateException {
+        Set<TrustAnchor> trustAnchors = params.getTrustAnchors();
+        try {
+            params.setTrustAnchors(anchors);
+            return doValidate(chain, params);
+        } catch (ValidatorException ve) {
+            if (isNoTrustAnchor(ve)) {
+                return null;
+            }
+            throw ve;
+        } catch (InvalidAlgorithmParameterException iape) {
+            return null;
+        } finally {
+            try {
+                params.setTrustAnchors(trustAnchors);
+            } catch (InvalidAlgorithmParameterException iape) {
+                // should never occur, the anchors were valid before
+                throw new RuntimeException("Unexpected error", iape);
+            }
+        }
+    }
+
+    private static boolean isNoTrustAnchor(ValidatorException ve) {
+        Throwable cause = ve.getCause();
+        return (cause instanceof CertPathValidatorException) &&
+                ((CertPathValidatorException)cause).getReason() ==
+                        PKIXReason.NO_TRUST_ANCHOR;
+    }
+
     /**
      * Verify that a trust anchor certificate is a CA certificate.
      */
@@ -439,6 +509,23 @@ public final class PKIXValidator extends Validator {
         Collection<X509Certificate> otherCerts,
         PKIXBuilderParameters params) throws CertificateException {
 
+        // Try the common case of a chain leading to a trust anchor first,
+        // which does not need the PKIX CertPathBuilder.
+        ChainBuilder.Chain built = chainBuilder.build(chain, otherCerts);
+        if (built != null) {
+            // The built chain is one of the possible paths, and the
+            // CertPathBuilder may find another one if it does not validate.
+            try {
+                X509Certificate[] result =
+                        doValidate(built.certs, built.anchors, params);
+                if (result != null) {
+                    return result;
+                }
+            } catch (CertificateException ce) {
+                // use the CertPathBuilder
+            }
+        }
+
         try {
             setDate(params);
 
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2019 Azul Systems, Inc.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.openjsse.sun.security.ssl;
+
+import java.net.URI;
+import java.security.cert.X509Certificate;
+
+/**
+ * The Java Flight Recorder events of OpenJSSE.
+ *
+ * JFR events are supported on Java 11 and later only, so all methods of
+ * this variant do nothing.
+ */
+final class SSLEvents {
+    private SSLEvents() {
+        // blank
+    }
+
+    static Object beginHandshake() {
+        return null;
+    }
+
+    static void endHandshake(Object event,
+            TransportContext tc, boolean isResumed) {
+        // blank
+    }
+
+    static Object beginCertificateValidation() {
+        return null;
+    }
+
+    static void endCertificateValidation(Object event,
+            X509Certificate[] chain, String authType, boolean isValid) {
+        // blank
+    }
+
+    static Object beginStatusFetch() {
+        return null;
+    }
+
+    static void endStatusFetch(Object event, URI responder,
+            String serialNumber, String status, int responseLength) {
+        // blank
+    }
+
+    static void sessionCacheEviction(
+            SSLSessionImpl session, boolean isExpired) {
+        // blank
+    }
+
+    static void keyUpdate(TransportContext tc, boolean isSent) {
+        // blank
+    }
+
+    static void fatalAlert(TransportContext tc,
+            Alert alert, boolean isSent, String diagnostic) {
+        // blank
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright 2019 Azul Systems, Inc.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.openjsse.sun.security.ssl;
+
+import java.net.URI;
+import java.security.cert.X509Certificate;
+import java.util.Optional;
+
+/**
+ * The Java Flight Recorder events of OpenJSSE.
+ *
+ * The events are disabled unless a recording enables them, for example
+ * with the "org.openjsse.*" settings of a custom JFR configuration.  A
+ * disabled event is never begun nor committed, and the allocation of
+ * the event object is removed by escape analysis.
+ *
+ * The jdk.jfr module is optional: if the runtime does not have it, or
+ * if it is not in the module graph, all methods of this class do
+ * nothing and SSLJfrEvents is never loaded.
+ *
+ * The begin methods return the event object, to be passed to the
+ * matching end method, or null if the event is disabled.
+ */
+final class SSLEvents {
+    private static final boolean isAvailable = isJfrAvailable();
+
+    private SSLEvents() {
+        // blank
+    }
+
+    private static boolean isJfrAvailable() {
+        Optional<Module> jfr = ModuleLayer.boot().findModule("jdk.jfr");
+        return jfr.isPresent() &&
+                SSLEvents.class.getModule().canRead(jfr.get());
+    }
+
+    static Object beginHandshake() {
+        return isAvailable ? SSLJfrEvents.beginHandshake() : null;
+    }
+
+    static void endHandshake(Object event,
+            TransportContext tc, boolean isResumed) {
+        if (event != null) {
+            SSLJfrEvents.endHandshake(event, tc, isResumed);
+        }
+    }
+
+    static Object beginCertificateValidation() {
+        return isAvailable ? SSLJfrEvents.beginCertificateValidation() : null;
+    }
+
+    static void endCertificateValidation(Object event,
+            X509Certificate[] chain, String authType, boolean isValid) {
+        if (event != null) {
+            SSLJfrEvents.endCertificateValidation(
+                    event, chain, authType, isValid);
+        }
+    }
+
+    static Object beginStatusFetch() {
+        return isAvailable ? SSLJfrEvents.beginStatusFetch() : null;
+    }
+
+    static void endStatusFetch(Object event, URI responder,
+            String serialNumber, String status, int responseLength) {
+        if (event != null) {
+            SSLJfrEvents.endStatusFetch(event,
+                    responder, serialNumber, status, responseLength);
+        }
+    }
+
+    static void sessionCacheEviction(
+            SSLSessionImpl session, boolean isExpired) {
+        if (isAvailable) {
+            SSLJfrEvents.sessionCacheEviction(session, isExpired);
+        }
+    }
+
+    static void keyUpdate(TransportContext tc, boolean isSent) {
+        if (isAvailable) {
+            SSLJfrEvents.keyUpdate(tc, isSent);
+        }
+    }
+
+    static void fatalAlert(TransportContext tc,
+            Alert alert, boolean isSent, String diagnostic) {
+        if (isAvailable) {
+            SSLJfrEvents.fatalAlert(tc, alert, isSent, diagnostic);
+        }
+    }
+}
@@ -0,0 +1,306 @@
+/*
+ * Copyright 2019 Azul Systems, Inc.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.openjsse.sun.security.ssl;
+
+import java.net.URI;
+import java.security.cert.X509Certificate;
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * The Java Flight Recorder events of OpenJSSE, used through SSLEvents.
+ *
+ * This class is the only one that links to the jdk.jfr module, and is
+ * not loaded if that module is not available.
+ */
+final class SSLJfrEvents {
+    private SSLJfrEvents() {
+        // blank
+    }
+
+    static Object beginHandshake() {
+        HandshakeEvent event = new HandshakeEvent();
+        if (!event.isEnabled()) {
+            return null;
+        }
+
+        event.begin();
+        return event;
+    }
+
+    static void endHandshake(Object event,
+            TransportContext tc, boolean isResumed) {
+        if (event == null) {
+            return;
+        }
+
+        HandshakeEvent he = (HandshakeEvent)event;
+        he.end();
+        if (he.shouldCommit()) {
+            SSLSessionImpl session = tc.conSession;
+            he.peerHost = session.getPeerHost();
+            he.peerPort = session.getPeerPort();
+            he.protocolVersion = session.getProtocol();
+            he.cipherSuite = session.getCipherSuite();
+            he.isClient = tc.sslConfig.isClientMode;
+            he.isResumed = isResumed;
+            he.commit();
+        }
+    }
+
+    static Object beginCertificateValidation() {
+        CertificateValidationEvent event = new CertificateValidationEvent();
+        if (!event.isEnabled()) {
+            return null;
+        }
+
+        event.begin();
+        return event;
+    }
+
+    static void endCertificateValidation(Object event,
+            X509Certificate[] chain, String authType, boolean isValid) {
+        if (event == null) {
+            return;
+        }
+
+        CertificateValidationEvent cve = (CertificateValidationEvent)event;
+        cve.end();
+        if (cve.shouldCommit()) {
+            if (chain != null && chain.length > 0) {
+                cve.subject = chain[0].getSubjectX500Principal().getName();
+                cve.issuer = chain[0].getIssuerX500Principal().getName();
+                cve.chainLength = chain.length;
+            }
+            cve.authType = authType;
+            cve.isValid = isValid;
+            cve.commit();
+        }
+    }
+
+    static Object beginStatusFetch() {
+        StatusFetchEvent event = new StatusFetchEvent();
+        if (!event.isEnabled()) {
+            return null;
+        }
+
+        event.begin();
+        return event;
+    }
+
+    static void endStatusFetch(Object event, URI responder,
+            String serialNumber, String status, int responseLength) {
+        if (event == null) {
+            return;
+        }
+
+        StatusFetchEvent sfe = (StatusFetchEvent)event;
+        sfe.end();
+        if (sfe.shouldCommit()) {
+            sfe.responder = (responder != null) ? responder.toString() : null;
+            sfe.serialNumber = serialNumber;
+            sfe.status = status;
+            sfe.responseLength = responseLength;
+            sfe.commit();
+        }
+    }
+
+    static void sessionCacheEviction(
+            SSLSessionImpl session, boolean isExpired) {
+        SessionCacheEvictionEvent event = new SessionCacheEvictionEvent();
+        if (event.shouldCommit()) {
+            event.peerHost = session.getPeerHost();
+            event.peerPort = session.getPeerPort();
+            event.protocolVersion = session.getProtocol();
+            event.cipherSuite = session.getCipherSuite();
+            event.isExpired = isExpired;
+            event.commit();
+        }
+    }
+
+    static void keyUpdate(TransportContext tc, boolean isSent) {
+        KeyUpdateEvent event = new KeyUpdateEvent();
+        if (event.shouldCommit()) {
+            SSLSessionImpl session = tc.conSession;
+            event.peerHost = session.getPeerHost();
+            event.peerPort = session.getPeerPort();
+            event.cipherSuite = session.getCipherSuite();
+            event.isSent = isSent;
+            event.commit();
+        }
+    }
+
+    static void fatalAlert(TransportContext tc,
+            Alert alert, boolean isSent, String diagnostic) {
+        FatalAlertEvent event = new FatalAlertEvent();
+        if (event.shouldCommit()) {
+            SSLSessionImpl session = tc.conSession;
+            if (session != null) {
+                event.peerHost = session.getPeerHost();
+                event.peerPort = session.getPeerPort();
+            }
+            event.alert = alert.description;
+            event.isSent = isSent;
+            event.isHandshaking = (tc.handshakeContext != null);
+            event.diagnostic = diagnostic;
+            event.commit();
+        }
+    }
+
+    @Name("org.openjsse.TLSHandshake")
+    @Label("TLS Handshake")
+    @Category({"Java Application", "OpenJSSE"})
+    @Description("A completed TLS handshake, from its start to its end")
+    static final class HandshakeEvent extends Event {
+        @Label("Peer Host")
+        String peerHost;
+
+        @Label("Peer Port")
+        int peerPort;
+
+        @Label("Protocol Version")
+        String protocolVersion;
+
+        @Label("Cipher Suite")
+        String cipherSuite;
+
+        @Label("Client Mode")
+        boolean isClient;
+
+        @Label("Resumed")
+        boolean isResumed;
+    }
+
+    @Name("org.openjsse.CertificateValidation")
+    @Label("Certificate Validation")
+    @Category({"Java Application", "OpenJSSE"})
+    @Description("The validation of a peer certificate chain by the " +
+            "X509TrustManager")
+    static final class CertificateValidationEvent extends Event {
+        @Label("Subject")
+        String subject;
+
+        @Label("Issuer")
+        String issuer;
+
+        @Label("Chain Length")
+        int chainLength;
+
+        @Label("Authentication Type")
+        String authType;
+
+        @Label("Valid")
+        boolean isValid;
+    }
+
+    @Name("org.openjsse.OCSPFetch")
+    @Label("OCSP Stapling Fetch")
+    @Category({"Java Application", "OpenJSSE"})
+    @Description("The fetch of an OCSP response to staple")
+    static final class StatusFetchEvent extends Event {
+        @Label("Responder")
+        String responder;
+
+        @Label("Serial Number")
+        String serialNumber;
+
+        @Label("Response Status")
+        String status;
+
+        @Label("Response Length")
+        @DataAmount
+        int responseLength;
+    }
+
+    @Name("org.openjsse.SessionCacheEviction")
+    @Label("Session Cache Eviction")
+    @Category({"Java Application", "OpenJSSE"})
+    @Description("A session removed from the session cache, because of " +
+            "the cache size or of the session timeout")
+    static final class SessionCacheEvictionEvent extends Event {
+        @Label("Peer Host")
+        String peerHost;
+
+        @Label("Peer Port")
+        int peerPort;
+
+        @Label("Protocol Version")
+        String protocolVersion;
+
+        @Label("Cipher Suite")
+        String cipherSuite;
+
+        @Label("Expired")
+        boolean isExpired;
+    }
+
+    @Name("org.openjsse.KeyUpdate")
+    @Label("TLS Key Update")
+    @Category({"Java Application", "OpenJSSE"})
+    @Description("The traffic keys updated by a TLS 1.3 KeyUpdate message")
+    static final class KeyUpdateEvent extends Event {
+        @Label("Peer Host")
+        String peerHost;
+
+        @Label("Peer Port")
+        int peerPort;
+
+        @Label("Cipher Suite")
+        String cipherSuite;
+
+        @Label("Sent")
+        boolean isSent;
+    }
+
+    @Name("org.openjsse.FatalAlert")
+    @Label("TLS Fatal Alert")
+    @Category({"Java Application", "OpenJSSE"})
+    @Description("A fatal alert sent or received, closing the connection")
+    static final class FatalAlertEvent extends Event {
+        @Label("Peer Host")
+        String peerHost;
+
+        @Label("Peer Port")
+        int peerPort;
+
+        @Label("Alert")
+        String alert;
+
+        @Label("Sent")
+        boolean isSent;
+
+        @Label("During Handshake")
+        boolean isHandshaking;
+
+        @Label("Diagnostic")
+        String diagnostic;
+    }
+}
@@ -26,6 +26,8 @@
 
 open module org.openjsse {
     provides java.security.Provider with org.openjsse.net.ssl.OpenJSSE;
+    requires java.management;
+    requires static jdk.jfr;
     requires jdk.unsupported;
     exports org.openjsse.net.ssl;
     exports org.openjsse.javax.net.ssl;